@@ -0,0 +1,74 @@
+package com.exalt.training.benchmarks;
+
+import com.exalt.training.benchmarks.support.Fixtures;
+import com.exalt.training.benchmarks.support.InMemoryUserRepository;
+import com.exalt.training.benchmarks.support.StubBlockedUsersHttp;
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.metrics.AuthenticationMetrics;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.service.AuthenticationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks {@link AuthenticationService#signIn} and {@link AuthenticationService#signUp}
+ * against an in-memory repository and a stubbed BLOCKED-USERS endpoint.
+ * <p>
+ * The BCrypt strength is a parameter: strength 10 is the production default and dominates the cost,
+ * strength 4 exposes the overhead of the surrounding service code.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AuthenticationServiceBenchmark {
+    private static final int USERS = 10_000;
+
+    @Param({"4", "10"})
+    public int bcryptStrength;
+
+    private AuthenticationService authenticationService;
+    private final AtomicInteger nextSignIn = new AtomicInteger();
+    private final AtomicInteger nextSignUp = new AtomicInteger(USERS);
+
+    @Setup
+    public void setUp() {
+        PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(bcryptStrength);
+        InMemoryUserRepository repository = new InMemoryUserRepository();
+        String encodedPassword = passwordEncoder.encode(Fixtures.PASSWORD);
+        for (int i = 0; i < USERS; i++) {
+            repository.save(Fixtures.user(i, encodedPassword, false));
+        }
+        ShardedUserRepository users = repository.asShardedRepository();
+        authenticationService = new AuthenticationService(users, passwordEncoder,
+                new StubBlockedUsersHttp().client(), new AuthenticationMetrics(new SimpleMeterRegistry()),
+                new ReplicaReadPolicy("users", Duration.ofSeconds(5), new SimpleMeterRegistry()),
+                repository.asLedgerService(new SimpleMeterRegistry()), AuditLog.disabled(new SimpleMeterRegistry()),
+                repository.asEmailFilter(new SimpleMeterRegistry()),
+                VelocityDetector.unlimited(users, new SimpleMeterRegistry()), TransactionOperations.withoutTransaction());
+    }
+
+    @Benchmark
+    public User signIn() {
+        int i = Math.floorMod(nextSignIn.getAndIncrement(), USERS);
+        return authenticationService.signIn(Fixtures.email(i), Fixtures.PASSWORD);
+    }
+
+    @Benchmark
+    public User signUp() {
+        return authenticationService.signUp(Fixtures.userDTO(nextSignUp.getAndIncrement()));
+    }
+}
@@ -0,0 +1,77 @@
+package com.exalt.training.benchmarks;
+
+import com.exalt.training.benchmarks.support.Fixtures;
+import com.exalt.training.benchmarks.support.InMemoryBlockedUsersRepository;
+import com.exalt.training.blockedusers.gossip.BlockGossip;
+import com.exalt.training.blockedusers.metrics.BlockedUsersMetrics;
+import com.exalt.training.blockedusers.repository.BlockedUsersRepository;
+import com.exalt.training.blockedusers.service.BlockedUsersService;
+import com.exalt.training.blockedusers.snapshot.BlockedSetStore;
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks {@link BlockedUsersService#isUserBlocked} with one blocked user in ten.
+ * <p>
+ * {@code snapshot=true} answers from the memory-mapped {@link BlockedSetStore};
+ * {@code snapshot=false} leaves the store without a snapshot so every lookup goes to the (in-memory) repository.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BlockedUsersServiceBenchmark {
+    private static final int USERS = 100_000;
+
+    @Param({"true", "false"})
+    public boolean snapshot;
+
+    private BlockedUsersService blockedUsersService;
+    private BlockedSetStore blockedSetStore;
+    private Path directory;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("blocked-users-bench");
+        blockedSetStore = new BlockedSetStore(directory.toString(), Integer.MAX_VALUE);
+        blockedSetStore.load();
+        InMemoryBlockedUsersRepository store = new InMemoryBlockedUsersRepository();
+        BlockedUsersRepository repository = store.asRepository();
+        blockedUsersService = new BlockedUsersService(repository, blockedSetStore,
+                new BlockedUsersMetrics(new SimpleMeterRegistry()),
+                new ReplicaReadPolicy("blockedusers", Duration.ofSeconds(5), new SimpleMeterRegistry()),
+                store.asHistoryRepository(), BlockGossip.disabled(blockedSetStore, new SimpleMeterRegistry()));
+        for (int i = 0; i < USERS; i += 10) {
+            blockedUsersService.blockUser(Fixtures.nationalId(i), "user" + i);
+        }
+        if (snapshot) {
+            blockedSetStore.rebuild(() -> repository.findAllNationalIds().stream().mapToInt(BlockedSetStore::toKey).toArray());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        blockedSetStore.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean isUserBlocked() {
+        return blockedUsersService.isUserBlocked(Fixtures.nationalId(Math.floorMod(next.getAndIncrement(), USERS)));
+    }
+}
@@ -0,0 +1,149 @@
+package com.exalt.training.benchmarks;
+
+import com.exalt.training.benchmarks.support.FixedLoadBalancerClient;
+import com.exalt.training.benchmarks.support.Fixtures;
+import com.exalt.training.benchmarks.support.InMemoryBlockedUsersRepository;
+import com.exalt.training.blockedusers.controller.BlockedUsersController;
+import com.exalt.training.blockedusers.gossip.BlockGossip;
+import com.exalt.training.blockedusers.metrics.BlockedUsersMetrics;
+import com.exalt.training.blockedusers.repository.BlockedUsersRepository;
+import com.exalt.training.blockedusers.rpc.BlockedUsersRpcServer;
+import com.exalt.training.blockedusers.service.BlockedUsersService;
+import com.exalt.training.blockedusers.snapshot.BlockedSetStore;
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.blockedusers.RestBlockedUsersClient;
+import com.exalt.training.users.blockedusers.RpcBlockedUsersClient;
+import com.exalt.training.users.loadbalancer.InstanceStatsRegistry;
+import com.exalt.training.users.loadbalancer.LoadBalancingProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks a remote {@link BlockedUsersClient#isBlocked} lookup over each transport, from eight client threads,
+ * against a blocked-users service answering from its snapshot.
+ * <p>
+ * {@code transport=rest} calls a JDK HTTP server that renders the {@link BlockedUsersController} response as
+ * JSON, through a {@link RestTemplate} on the same pooled HTTP client as production.
+ * {@code transport=rpc} calls the {@link BlockedUsersRpcServer} over one multiplexed connection.
+ * Both run over loopback, so the results compare encoding and connection handling rather than the network.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class BlockedUsersTransportBenchmark {
+    private static final int USERS = 100_000;
+    private static final int SERVER_THREADS = 8;
+
+    @Param({"rest", "rpc"})
+    public String transport;
+
+    private BlockedSetStore blockedSetStore;
+    private Path directory;
+    private BlockedUsersClient client;
+    private Closeable server;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("blocked-users-transport-bench");
+        blockedSetStore = new BlockedSetStore(directory.toString(), Integer.MAX_VALUE);
+        blockedSetStore.load();
+        InMemoryBlockedUsersRepository store = new InMemoryBlockedUsersRepository();
+        BlockedUsersRepository repository = store.asRepository();
+        BlockedUsersService blockedUsersService = new BlockedUsersService(repository, blockedSetStore,
+                new BlockedUsersMetrics(new SimpleMeterRegistry()),
+                new ReplicaReadPolicy("blockedusers", Duration.ofSeconds(5), new SimpleMeterRegistry()),
+                store.asHistoryRepository(), BlockGossip.disabled(blockedSetStore, new SimpleMeterRegistry()));
+        for (int i = 0; i < USERS; i += 10) {
+            blockedUsersService.blockUser(Fixtures.nationalId(i), "user" + i);
+        }
+        blockedSetStore.rebuild(() -> repository.findAllNationalIds().stream().mapToInt(BlockedSetStore::toKey).toArray());
+
+        if (transport.equals("rpc")) {
+            BlockedUsersRpcServer rpcServer = new BlockedUsersRpcServer(blockedUsersService, 0, SERVER_THREADS,
+                    new SimpleMeterRegistry());
+            rpcServer.start();
+            server = rpcServer::stop;
+            DefaultServiceInstance instance = new DefaultServiceInstance("blocked-users-1",
+                    RpcBlockedUsersClient.SERVICE_ID, "localhost", 0, false,
+                    Map.of(RpcBlockedUsersClient.PORT_METADATA, String.valueOf(rpcServer.port())));
+            client = new RpcBlockedUsersClient(new FixedLoadBalancerClient(instance),
+                    new InstanceStatsRegistry(new LoadBalancingProperties(), new SimpleMeterRegistry()),
+                    null, Duration.ofSeconds(1), Duration.ofSeconds(2), new SimpleMeterRegistry());
+        } else {
+            BlockedUsersController controller = new BlockedUsersController(blockedUsersService);
+            ObjectMapper objectMapper = new ObjectMapper();
+            System.setProperty("sun.net.httpserver.nodelay", "true"); // Like Tomcat; otherwise delayed ACKs dominate
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            ExecutorService executor = Executors.newFixedThreadPool(SERVER_THREADS);
+            httpServer.setExecutor(executor);
+            httpServer.createContext("/exalt/training/userscontrol/isBlocked/", exchange -> {
+                String path = exchange.getRequestURI().getPath();
+                byte[] body = objectMapper.writeValueAsBytes(
+                        controller.isUserBlocked(path.substring(path.lastIndexOf('/') + 1)).getBody());
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            httpServer.start();
+            server = () -> {
+                httpServer.stop(0);
+                executor.shutdown();
+            };
+            RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(
+                    HttpClients.custom()
+                            .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                                    .setMaxConnTotal(50)
+                                    .setMaxConnPerRoute(50)
+                                    .build())
+                            .build()));
+            client = new RestBlockedUsersClient(restTemplate, "http://localhost:" + httpServer.getAddress().getPort());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (client instanceof Closeable closeable) {
+            closeable.close();
+        }
+        server.close();
+        blockedSetStore.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean isBlocked() {
+        return client.isBlocked(Fixtures.nationalId(Math.floorMod(next.getAndIncrement(), USERS)));
+    }
+}
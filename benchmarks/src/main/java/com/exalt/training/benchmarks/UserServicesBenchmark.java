@@ -0,0 +1,72 @@
+package com.exalt.training.benchmarks;
+
+import com.exalt.training.benchmarks.support.Fixtures;
+import com.exalt.training.benchmarks.support.InMemoryUserRepository;
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.metrics.AccountMetrics;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.service.UserServices;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the balance operations of {@link UserServices} against an in-memory repository
+ * holding logged-in users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserServicesBenchmark {
+    private static final int USERS = 10_000;
+
+    private UserServices userServices;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        InMemoryUserRepository repository = new InMemoryUserRepository();
+        for (int i = 0; i < USERS; i++) {
+            repository.save(Fixtures.user(i, "unused", true));
+        }
+        ShardedUserRepository users = repository.asShardedRepository();
+        userServices = new UserServices(users, new AccountMetrics(new SimpleMeterRegistry()),
+                new ReplicaReadPolicy("users", Duration.ofSeconds(5), new SimpleMeterRegistry()),
+                repository.asLedgerService(new SimpleMeterRegistry()),
+                VelocityDetector.unlimited(users, new SimpleMeterRegistry()));
+    }
+
+    private String nextNationalId() {
+        return Fixtures.nationalId(Math.floorMod(next.getAndIncrement(), USERS));
+    }
+
+    @Benchmark
+    public User checkBalance() {
+        return userServices.checkBalance(nextNationalId());
+    }
+
+    @Benchmark
+    public User requestCredit() {
+        return userServices.requestCredit(nextNationalId(), 1.0);
+    }
+
+    @Benchmark
+    @Group("creditDebit")
+    public User credit() {
+        return userServices.requestCredit(nextNationalId(), 1.0);
+    }
+
+    @Benchmark
+    @Group("creditDebit")
+    public User debit() {
+        return userServices.requestDebit(nextNationalId(), 1.0);
+    }
+}
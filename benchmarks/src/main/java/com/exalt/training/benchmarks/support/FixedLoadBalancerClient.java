@@ -0,0 +1,51 @@
+package com.exalt.training.benchmarks.support;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerRequest;
+import org.springframework.cloud.client.loadbalancer.Request;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Load balancer client that always picks the same instance, for benchmarks without service discovery.
+ */
+public final class FixedLoadBalancerClient implements LoadBalancerClient {
+    private final ServiceInstance instance; // Instance returned for every service
+
+    public FixedLoadBalancerClient(ServiceInstance instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public ServiceInstance choose(String serviceId) {
+        return instance;
+    }
+
+    @Override
+    public <T> ServiceInstance choose(String serviceId, Request<T> request) {
+        return instance;
+    }
+
+    @Override
+    public <T> T execute(String serviceId, LoadBalancerRequest<T> request) throws IOException {
+        return execute(serviceId, instance, request);
+    }
+
+    @Override
+    public <T> T execute(String serviceId, ServiceInstance serviceInstance, LoadBalancerRequest<T> request) throws IOException {
+        try {
+            return request.apply(serviceInstance);
+        } catch (IOException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public URI reconstructURI(ServiceInstance instance, URI original) {
+        return URI.create(instance.getUri() + original.getRawPath());
+    }
+}
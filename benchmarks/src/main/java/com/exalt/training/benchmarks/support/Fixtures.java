@@ -0,0 +1,68 @@
+package com.exalt.training.benchmarks.support;
+
+import com.exalt.training.users.dto.UserDTO;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.model.User;
+
+/**
+ * Synthetic account data shared by the benchmarks.
+ */
+public final class Fixtures {
+    public static final String PASSWORD = "benchmark-password"; // Plain-text password of every synthetic user
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the national ID of the i-th synthetic user.
+     *
+     * @param i the user index.
+     * @return a 9 digit national ID.
+     */
+    public static String nationalId(int i) {
+        return String.format("%09d", 100_000_000 + i);
+    }
+
+    /**
+     * Returns the email of the i-th synthetic user.
+     *
+     * @param i the user index.
+     * @return the email address.
+     */
+    public static String email(int i) {
+        return "user" + i + "@bench.exalt.com";
+    }
+
+    /**
+     * Builds the sign-up request of the i-th synthetic user.
+     *
+     * @param i the user index.
+     * @return the user DTO.
+     */
+    public static UserDTO userDTO(int i) {
+        Rule rule = Rule.values()[i % Rule.values().length];
+        return new UserDTO(nationalId(i), "user" + i, email(i), PASSWORD, "0599000000", rule, 1_000.0);
+    }
+
+    /**
+     * Builds the i-th synthetic user entity.
+     *
+     * @param i the user index.
+     * @param encodedPassword the already encoded password.
+     * @param loggedIn whether the user is logged in.
+     * @return the user entity.
+     */
+    public static User user(int i, String encodedPassword, boolean loggedIn) {
+        UserDTO dto = userDTO(i);
+        User user = new User();
+        user.setNationalId(dto.getNationalId());
+        user.setUsername(dto.getUsername());
+        user.setEmail(dto.getEmail());
+        user.setPassword(encodedPassword);
+        user.setPhoneNumber(dto.getPhoneNumber());
+        user.setRule(dto.getRule());
+        user.setBalance(dto.getBalance());
+        user.setLoggedIn(loggedIn);
+        return user;
+    }
+}
@@ -0,0 +1,77 @@
+package com.exalt.training.benchmarks.support;
+
+import com.exalt.training.blockedusers.model.BlockHistory;
+import com.exalt.training.blockedusers.model.BlockedUsers;
+import com.exalt.training.blockedusers.repository.BlockHistoryRepository;
+import com.exalt.training.blockedusers.repository.BlockedUsersRepository;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * In-memory stand-in for {@link BlockedUsersRepository} and {@link BlockHistoryRepository}.
+ * Only the repository methods the service calls are implemented; anything else fails fast.
+ */
+public final class InMemoryBlockedUsersRepository {
+    private final Map<String, BlockedUsers> byNationalId = new ConcurrentHashMap<>(); // Blocked users indexed by national ID
+    private final Queue<BlockHistory> history = new ConcurrentLinkedQueue<>(); // Lifted blocks, in the order they were lifted
+
+    /**
+     * Creates a {@link BlockedUsersRepository} backed by this store.
+     *
+     * @return the repository proxy.
+     */
+    public BlockedUsersRepository asRepository() {
+        return (BlockedUsersRepository) Proxy.newProxyInstance(BlockedUsersRepository.class.getClassLoader(),
+                new Class<?>[]{BlockedUsersRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findByNationalId" -> Optional.ofNullable(byNationalId.get((String) args[0]));
+                    case "existsByNationalId" -> byNationalId.containsKey((String) args[0]);
+                    case "findAllNationalIds" -> new ArrayList<>(byNationalId.keySet());
+                    case "save" -> {
+                        BlockedUsers blockedUser = (BlockedUsers) args[0];
+                        byNationalId.put(blockedUser.getNationalId(), blockedUser);
+                        yield blockedUser;
+                    }
+                    case "delete" -> {
+                        byNationalId.remove(((BlockedUsers) args[0]).getNationalId());
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryBlockedUsersRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates a {@link BlockHistoryRepository} backed by this store.
+     *
+     * @return the repository proxy.
+     */
+    public BlockHistoryRepository asHistoryRepository() {
+        return (BlockHistoryRepository) Proxy.newProxyInstance(BlockHistoryRepository.class.getClassLoader(),
+                new Class<?>[]{BlockHistoryRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findInRange" -> history.stream()
+                            .filter(block -> block.getNationalId().equals(args[0])
+                                    && !block.getCreatedAt().isBefore((LocalDateTime) args[1])
+                                    && block.getCreatedAt().isBefore((LocalDateTime) args[2]))
+                            .sorted(Comparator.comparing(BlockHistory::getCreatedAt))
+                            .toList();
+                    case "save" -> {
+                        history.add((BlockHistory) args[0]);
+                        yield args[0];
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryBlockHistoryRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,235 @@
+package com.exalt.training.benchmarks.support;
+
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.filter.EmailFilter;
+import com.exalt.training.users.model.IdempotencyRecord;
+import com.exalt.training.users.model.LedgerEntry;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.model.UserEmail;
+import com.exalt.training.users.portfolio.PortfolioAggregates;
+import com.exalt.training.users.repository.IdempotencyRecordRepository;
+import com.exalt.training.users.repository.LedgerEntryRepository;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.repository.UserEmailRepository;
+import com.exalt.training.users.repository.UserRepository;
+import com.exalt.training.users.service.LedgerService;
+import com.exalt.training.users.sharding.ShardDirectory;
+import com.exalt.training.users.sharding.ShardingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * In-memory stand-in for {@link UserRepository}, the email index, the idempotency keys and the ledger, so the benchmarks exercise the service code rather than PostgreSQL.
+ * Only the repository methods the services call are implemented; anything else fails fast.
+ */
+public final class InMemoryUserRepository {
+
+    private final Map<String, User> byEmail = new ConcurrentHashMap<>(); // Users indexed by email
+    private final Map<String, User> byNationalId = new ConcurrentHashMap<>(); // Users indexed by national ID
+    private final Map<String, String> emailIndex = new ConcurrentHashMap<>(); // Stand-in for the global email index
+    private final Map<IdempotencyRecord.Key, IdempotencyRecord> idempotencyRecords = new ConcurrentHashMap<>(); // Stand-in for idempotency_keys
+    private final AtomicInteger ids = new AtomicInteger(); // Stand-in for the user sequence
+    private final AtomicLong ledgerIds = new AtomicLong(); // Stand-in for the ledger sequence; entries are not kept
+
+    /**
+     * Creates a {@link UserRepository} backed by this store.
+     *
+     * @return the repository proxy.
+     */
+    public UserRepository asRepository() {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findByEmail" -> Optional.ofNullable(byEmail.get((String) args[0]));
+                    case "findByNationalId", "findByNationalIdForUpdate" ->
+                            Optional.ofNullable(byNationalId.get((String) args[0]));
+                    case "save" -> save((User) args[0]);
+                    case "markSignedIn" -> update((String) args[0], user -> {
+                        user.setLoggedIn(true);
+                        user.setFailedAttempts(0);
+                        return true;
+                    });
+                    case "markSignedOut" -> update((String) args[0], user -> {
+                        boolean wasLoggedIn = user.isLoggedIn();
+                        user.setLoggedIn(false);
+                        return wasLoggedIn;
+                    });
+                    case "incrementFailedAttempts" -> update((String) args[0], user -> {
+                        user.setFailedAttempts(user.getFailedAttempts() + 1);
+                        return true;
+                    });
+                    case "incrementAndGetFailedAttempts" -> {
+                        User user = byNationalId.get((String) args[0]);
+                        if (user == null) {
+                            yield 0;
+                        }
+                        synchronized (user) {
+                            user.setFailedAttempts(user.getFailedAttempts() + 1);
+                            yield user.getFailedAttempts();
+                        }
+                    }
+                    case "resetFailedAttempts" -> update((String) args[0], user -> {
+                        user.setFailedAttempts(0);
+                        return true;
+                    });
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryUserRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates a {@link UserEmailRepository} backed by this store.
+     *
+     * @return the repository proxy.
+     */
+    public UserEmailRepository asEmailRepository() {
+        return (UserEmailRepository) Proxy.newProxyInstance(UserEmailRepository.class.getClassLoader(),
+                new Class<?>[]{UserEmailRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "claim" -> {
+                        if (emailIndex.putIfAbsent((String) args[0], (String) args[1]) != null) {
+                            throw new DataIntegrityViolationException("Email is already claimed");
+                        }
+                        yield null;
+                    }
+                    case "findById" -> Optional.ofNullable(emailIndex.get((String) args[0]))
+                            .map(nationalId -> new UserEmail((String) args[0], nationalId));
+                    case "deleteById" -> emailIndex.remove((String) args[0]);
+                    case "findEmailsAfter" -> emailIndex.keySet().stream()
+                            .filter(email -> email.compareTo((String) args[0]) > 0)
+                            .sorted()
+                            .limit(((Pageable) args[1]).getPageSize())
+                            .toList();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryUserEmailRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates an {@link IdempotencyRecordRepository} backed by this store.
+     *
+     * @return the repository proxy.
+     */
+    public IdempotencyRecordRepository asIdempotencyRecordRepository() {
+        return (IdempotencyRecordRepository) Proxy.newProxyInstance(IdempotencyRecordRepository.class.getClassLoader(),
+                new Class<?>[]{IdempotencyRecordRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "insert" -> {
+                        IdempotencyRecord.Key key = new IdempotencyRecord.Key((String) args[0], (String) args[1]);
+                        IdempotencyRecord record = new IdempotencyRecord(key, (String) args[2], (Double) args[3],
+                                (Double) args[4], (Instant) args[5]);
+                        if (idempotencyRecords.putIfAbsent(key, record) != null) {
+                            throw new DataIntegrityViolationException("Idempotency key is already used");
+                        }
+                        yield null;
+                    }
+                    case "findById" -> Optional.ofNullable(idempotencyRecords.get((IdempotencyRecord.Key) args[0]));
+                    case "deleteCreatedBefore" -> {
+                        int before = idempotencyRecords.size();
+                        idempotencyRecords.values().removeIf(record -> record.getCreatedAt().isBefore((Instant) args[0]));
+                        yield before - idempotencyRecords.size();
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryIdempotencyRecordRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates a {@link LedgerEntryRepository} that assigns IDs but discards the entries, so long benchmark runs
+     * do not grow the heap.
+     *
+     * @return the repository proxy.
+     */
+    public LedgerEntryRepository asLedgerEntryRepository() {
+        return (LedgerEntryRepository) Proxy.newProxyInstance(LedgerEntryRepository.class.getClassLoader(),
+                new Class<?>[]{LedgerEntryRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "save" -> {
+                        LedgerEntry entry = (LedgerEntry) args[0];
+                        entry.setId(ledgerIds.incrementAndGet());
+                        yield entry;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryLedgerEntryRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates a single-shard {@link LedgerService} backed by this store.
+     *
+     * @param registry the registry for the ledger meters.
+     * @return the ledger service.
+     */
+    public LedgerService asLedgerService(MeterRegistry registry) {
+        return new LedgerService(asLedgerEntryRepository(), new ShardDirectory(new ShardingProperties().getBuckets(), 1),
+                AuditLog.disabled(registry), PortfolioAggregates.detached(registry), registry);
+    }
+
+    /**
+     * Creates an {@link EmailFilter} over the email index of this store, already rebuilt.
+     *
+     * @param registry the meter registry.
+     * @return the email filter.
+     */
+    public EmailFilter asEmailFilter(MeterRegistry registry) {
+        EmailFilter emailFilter = new EmailFilter(asEmailRepository(), 10_000, 0.01, registry);
+        emailFilter.rebuild();
+        return emailFilter;
+    }
+
+    /**
+     * Creates a single-shard {@link ShardedUserRepository} backed by this store.
+     *
+     * @return the sharded repository.
+     */
+    public ShardedUserRepository asShardedRepository() {
+        ShardingProperties properties = new ShardingProperties();
+        return new ShardedUserRepository(asRepository(), asEmailRepository(),
+                new ShardDirectory(properties.getBuckets(), 1), properties);
+    }
+
+    /**
+     * Stores a user, assigning an ID the first time it is saved.
+     *
+     * @param user the user to store.
+     * @return the stored user.
+     */
+    public User save(User user) {
+        if (user.getId() == null) {
+            user.setId(ids.incrementAndGet());
+        }
+        emailIndex.putIfAbsent(user.getEmail(), user.getNationalId());
+        byEmail.put(user.getEmail(), user);
+        byNationalId.put(user.getNationalId(), user);
+        return user;
+    }
+
+    /**
+     * Applies a narrow update to a stored user, standing in for an UPDATE by national ID.
+     *
+     * @return the number of users updated.
+     */
+    private int update(String nationalId, Predicate<User> change) {
+        User user = byNationalId.get(nationalId);
+        if (user == null) {
+            return 0;
+        }
+        synchronized (user) {
+            return change.test(user) ? 1 : 0;
+        }
+    }
+}
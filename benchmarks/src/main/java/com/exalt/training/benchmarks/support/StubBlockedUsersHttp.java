@@ -0,0 +1,129 @@
+package com.exalt.training.benchmarks.support;
+
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.blockedusers.RestBlockedUsersClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in for the BLOCKED-USERS service at the HTTP client level.
+ * <p>
+ * Requests never leave the JVM, but a real {@link RestTemplate} still builds them and parses the canned
+ * JSON responses, so the benchmarks keep the client-side serialization cost of the remote call.
+ * </p>
+ */
+public final class StubBlockedUsersHttp implements ClientHttpRequestFactory {
+    private static final byte[] BLOCKED = json("{\"status\":\"success\",\"statusCode\":200,\"message\":\"User is blocked\",\"isBlocked\":true}");
+    private static final byte[] NOT_BLOCKED = json("{\"status\":\"success\",\"statusCode\":200,\"message\":\"User is not blocked\",\"isBlocked\":false}");
+    private static final byte[] OK = json("{\"status\":\"success\",\"statusCode\":200,\"message\":\"OK\"}");
+
+    private final Set<String> blocked = ConcurrentHashMap.newKeySet(); // National IDs reported as blocked
+
+    /**
+     * Creates a {@link RestTemplate} whose requests are answered by this stub.
+     *
+     * @return the rest template.
+     */
+    public RestTemplate restTemplate() {
+        return new RestTemplate(this);
+    }
+
+    /**
+     * Creates a REST {@link BlockedUsersClient} whose requests are answered by this stub.
+     *
+     * @return the client.
+     */
+    public BlockedUsersClient client() {
+        return new RestBlockedUsersClient(restTemplate(), "http://BLOCKED-USERS");
+    }
+
+    /**
+     * Marks a national ID as blocked.
+     *
+     * @param nationalId the national ID.
+     */
+    public void block(String nationalId) {
+        blocked.add(nationalId);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new AbstractClientHttpRequest() {
+            @Override
+            public HttpMethod getMethod() {
+                return httpMethod;
+            }
+
+            @Override
+            public URI getURI() {
+                return uri;
+            }
+
+            @Override
+            protected OutputStream getBodyInternal(HttpHeaders headers) {
+                return OutputStream.nullOutputStream();
+            }
+
+            @Override
+            protected ClientHttpResponse executeInternal(HttpHeaders headers) {
+                String path = uri.getPath();
+                int idStart = path.lastIndexOf('/') + 1;
+                if (path.contains("/isBlocked/")) {
+                    return response(blocked.contains(path.substring(idStart)) ? BLOCKED : NOT_BLOCKED);
+                }
+                return response(OK);
+            }
+        };
+    }
+
+    private static ClientHttpResponse response(byte[] body) {
+        return new ClientHttpResponse() {
+            @Override
+            public HttpStatusCode getStatusCode() {
+                return HttpStatus.OK;
+            }
+
+            @Override
+            public String getStatusText() {
+                return HttpStatus.OK.getReasonPhrase();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                headers.setContentLength(body.length);
+                return headers;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(body);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static byte[] json(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
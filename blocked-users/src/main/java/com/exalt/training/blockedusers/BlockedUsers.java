@@ -2,11 +2,13 @@ package com.exalt.training.blockedusers;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 /**
  * Main class for the Blocked Users application.
  * This class bootstraps the Spring Boot application.
  */
-@SpringBootApplication
+@SpringBootApplication(scanBasePackages = {"com.exalt.training.blockedusers", "com.exalt.training.common"})
+@EnableScheduling
 public class BlockedUsers {
     public static void main(String[] args) {
         SpringApplication.run(BlockedUsers.class, args);
@@ -0,0 +1,38 @@
+package com.exalt.training.blockedusers.config;
+
+import com.exalt.training.common.datasource.ReplicaDataSourceConfig;
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Configuration class for the data source used by JPA.
+ * Read-only transactions go to the replica pool when {@code app.datasource.replica.url} is set, otherwise
+ * everything uses the primary. The pools themselves are defined by {@link ReplicaDataSourceConfig}.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Bean definition for the data source used by JPA, routing read-only transactions to the replica.
+     *
+     * @param primary the primary pool.
+     * @param replica the replica pool, if configured.
+     * @param policy the staleness policy for replica reads.
+     * @return the routing data source.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") ObjectProvider<DataSource> replica,
+                                 ReplicaReadPolicy policy) {
+        return new LazyConnectionDataSourceProxy(
+                ReplicaDataSourceConfig.readWriteRouting(primary, replica.getIfAvailable(), policy));
+    }
+}
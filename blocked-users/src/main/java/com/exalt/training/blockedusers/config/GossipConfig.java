@@ -0,0 +1,58 @@
+package com.exalt.training.blockedusers.config;
+
+import com.exalt.training.blockedusers.gossip.BlockGossip;
+import com.exalt.training.blockedusers.snapshot.BlockedSetStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration class for the replication of the blocked set between instances.
+ */
+@Configuration
+public class GossipConfig {
+
+    /**
+     * Bean definition for the gossip between the blocked-users instances.
+     *
+     * @param enabled whether changes are replicated.
+     * @param store the blocked set.
+     * @param discoveryClient finds the other instances.
+     * @param registration this instance, if it is registered.
+     * @param serviceId the service the instances are registered under.
+     * @param restTemplateBuilder builds the client calling the other instances.
+     * @param timeout the connect and read timeout of those calls.
+     * @param pushInterval how often own changes are pushed.
+     * @param antiEntropyInterval how often digests are exchanged.
+     * @param retention how long deltas are kept.
+     * @param rebuildInterval how often the blocked set is compared with the database, shorter than the retention.
+     * @param registry the meter registry.
+     * @return the gossip.
+     */
+    @Bean
+    public BlockGossip blockGossip(@Value("${app.gossip.enabled}") boolean enabled, BlockedSetStore store,
+                                   DiscoveryClient discoveryClient, ObjectProvider<Registration> registration,
+                                   @Value("${spring.application.name}") String serviceId,
+                                   RestTemplateBuilder restTemplateBuilder,
+                                   @Value("${app.gossip.timeout}") Duration timeout,
+                                   @Value("${app.gossip.push-interval}") Duration pushInterval,
+                                   @Value("${app.gossip.anti-entropy-interval}") Duration antiEntropyInterval,
+                                   @Value("${app.gossip.retention}") Duration retention,
+                                   @Value("${app.gossip.rebuild-interval}") Duration rebuildInterval,
+                                   MeterRegistry registry) {
+        if (rebuildInterval.compareTo(retention) >= 0) {
+            throw new IllegalArgumentException("app.gossip.rebuild-interval must be shorter than app.gossip.retention,"
+                    + " or changes missed for longer than the retention are never repaired");
+        }
+        return new BlockGossip(enabled, store, discoveryClient, registration.getIfAvailable(), serviceId,
+                restTemplateBuilder.setConnectTimeout(timeout).setReadTimeout(timeout).build(),
+                pushInterval, antiEntropyInterval, retention, registry);
+    }
+}
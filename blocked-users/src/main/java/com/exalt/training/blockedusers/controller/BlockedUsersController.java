@@ -1,14 +1,18 @@
 package com.exalt.training.blockedusers.controller;
 
 import com.exalt.training.blockedusers.exception.UserBlockedException;
+import com.exalt.training.blockedusers.model.BlockHistory;
 import com.exalt.training.blockedusers.service.BlockedUsersService;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -76,6 +80,68 @@ public class BlockedUsersController {
         }
     }
 
+    /**
+     * Endpoint to get the blocks of a user that started within a range of days.
+     *
+     * @param nationalId The national ID of the user.
+     * @param from The first day included, as an ISO date.
+     * @param to The last day included, as an ISO date.
+     * @return ResponseEntity containing the blocks, oldest first.
+     */
+    @GetMapping("/history/{nationalId}")
+    public ResponseEntity<Map<String, Object>> history(
+            @PathVariable("nationalId") String nationalId,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            List<BlockHistory> history = blockedUsersService.history(nationalId, from, to);
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "success");
+            response.put("statusCode", HttpStatus.OK.value());
+            response.put("history", history);
+
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (IllegalArgumentException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("statusCode", HttpStatus.BAD_REQUEST.value());
+            response.put("message", ex.getMessage());
+
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Endpoint to list blocked national IDs in ascending order, one page at a time.
+     *
+     * @param after The national ID the page starts after, empty to start at the first one.
+     * @param through The last national ID of the range, none for no end.
+     * @param limit The most IDs returned.
+     * @return ResponseEntity containing the national IDs.
+     */
+    @GetMapping("/blocked")
+    public ResponseEntity<Map<String, Object>> blockedIds(
+            @RequestParam(name = "after", defaultValue = "") String after,
+            @RequestParam(name = "through", required = false) String through,
+            @RequestParam(name = "limit", defaultValue = "1000") int limit) {
+        try {
+            List<String> nationalIds = blockedUsersService.blockedIds(after, through, limit);
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "success");
+            response.put("statusCode", HttpStatus.OK.value());
+            response.put("nationalIds", nationalIds);
+
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (IllegalArgumentException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("statusCode", HttpStatus.BAD_REQUEST.value());
+            response.put("message", ex.getMessage());
+
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+
     /**
      * Endpoint to check if a user is blocked by national ID.
      *
@@ -0,0 +1,345 @@
+package com.exalt.training.blockedusers.gossip;
+
+import com.exalt.training.blockedusers.snapshot.BlockedSetStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replicates blocks and unblocks between the blocked-users instances, so each one answers {@code isBlocked} from its
+ * {@link BlockedSetStore} without reading the database.
+ * <p>
+ * Every change is a {@link BlockDelta} stamped with a hybrid logical clock and the ID of the node that made it;
+ * per national ID the delta with the highest stamp wins, so deltas can be applied in any order, any number of
+ * times, and all nodes end up with the same set. A node pushes its own changes to every instance registered under
+ * the same service ID every {@code app.gossip.push-interval}. Every {@code app.gossip.anti-entropy-interval} it also
+ * sends a digest of its deltas, 256 buckets of hashes by national ID, to one random peer, and the two exchange the
+ * deltas of the buckets that differ, which repairs lost pushes and catches up restarted nodes. Deltas are kept for
+ * {@code app.gossip.retention}; older changes are already in the database every node rebuilds from on startup and
+ * reconciles with every {@code app.gossip.rebuild-interval}, which is shorter than the retention.
+ * </p>
+ */
+@Slf4j
+public class BlockGossip {
+    private static final int BUCKETS = 256; // Buckets of the digest
+    private static final int LOGICAL_BITS = 12; // Low bits of a stamp counting changes within one millisecond
+    private static final int QUEUE_CAPACITY = 10_000; // Own changes waiting to be pushed
+    private static final String PATH = "/internal/gossip";
+
+    /**
+     * A block or unblock, as exchanged between nodes.
+     *
+     * @param key     the numeric national ID, as returned by {@link BlockedSetStore#toKey(String)}.
+     * @param blocked true for a block, false for an unblock.
+     * @param version the hybrid logical clock of the change: milliseconds shifted left by 12 bits, plus a counter.
+     * @param origin  the ID of the node that made the change, breaking ties between equal versions.
+     */
+    public record BlockDelta(int key, boolean blocked, long version, int origin) {
+    }
+
+    /**
+     * Answer to a digest: the deltas of the buckets that differ, and those buckets so the sender returns its own.
+     *
+     * @param deltas  the deltas of the differing buckets.
+     * @param buckets the differing buckets.
+     */
+    public record DigestReply(List<BlockDelta> deltas, List<Integer> buckets) {
+    }
+
+    private final boolean enabled; // Whether changes are replicated at all
+    private final BlockedSetStore store; // Set the deltas are applied to
+    private final DiscoveryClient discoveryClient; // Finds the other instances
+    private final Registration registration; // This instance, excluded from the peers; null if not registered
+    private final String serviceId; // Service the peers are registered under
+    private final RestTemplate restTemplate; // Calls the peers
+    private final long retentionMillis; // How long deltas are kept
+    private final int origin = new SecureRandom().nextInt(); // ID of this node
+    private final Map<Integer, BlockDelta> deltas = new HashMap<>(); // Latest delta per key, guarded by this
+    private final long[] digest = new long[BUCKETS]; // XOR of the delta hashes per bucket, guarded by this
+    private long clock; // Highest stamp made or seen, guarded by this
+    private final BlockingQueue<BlockDelta> outgoing = new ArrayBlockingQueue<>(QUEUE_CAPACITY); // Own changes to push
+    private final ScheduledExecutorService scheduler; // Runs the gossip rounds
+    private final Counter sent; // Deltas sent to peers
+    private final Counter applied; // Deltas from peers that changed this node
+    private final Counter failures; // Calls to peers that failed
+    private final Counter overflows; // Own changes not pushed because the queue was full
+    private final Timer lag; // Time from a change to its arrival here
+
+    public BlockGossip(boolean enabled, BlockedSetStore store, DiscoveryClient discoveryClient, Registration registration,
+                       String serviceId, RestTemplate restTemplate, Duration pushInterval, Duration antiEntropyInterval,
+                       Duration retention, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.store = store;
+        this.discoveryClient = discoveryClient;
+        this.registration = registration;
+        this.serviceId = serviceId;
+        this.restTemplate = restTemplate;
+        this.retentionMillis = retention.toMillis();
+        this.sent = Counter.builder("blockedusers.gossip.sent")
+                .description("Block deltas sent to other instances")
+                .register(registry);
+        this.applied = Counter.builder("blockedusers.gossip.applied")
+                .description("Block deltas received from other instances that changed this instance")
+                .register(registry);
+        this.failures = Counter.builder("blockedusers.gossip.failures")
+                .description("Gossip calls to other instances that failed")
+                .register(registry);
+        this.overflows = Counter.builder("blockedusers.gossip.overflows")
+                .description("Own changes left to anti-entropy because the push queue was full")
+                .register(registry);
+        this.lag = Timer.builder("blockedusers.gossip.lag")
+                .description("Time from a block or unblock on another instance to its arrival here")
+                .register(registry);
+        Gauge.builder("blockedusers.gossip.tracked", this, BlockGossip::tracked)
+                .description("Deltas kept for anti-entropy")
+                .register(registry);
+        if (!enabled) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "block-gossip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::pushRound, pushInterval.toMillis(), pushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::antiEntropyRound, antiEntropyInterval.toMillis(),
+                antiEntropyInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a gossip that replicates nothing, for code run outside the application context.
+     *
+     * @param store the blocked set.
+     * @param registry the registry for the gossip meters.
+     * @return the gossip.
+     */
+    public static BlockGossip disabled(BlockedSetStore store, MeterRegistry registry) {
+        return new BlockGossip(false, store, null, null, null, null, Duration.ZERO, Duration.ZERO, Duration.ZERO, registry);
+    }
+
+    /**
+     * Replicates a change made on this node. Called once the change is committed, so a rollback is never replicated.
+     *
+     * @param key     the numeric national ID.
+     * @param blocked true for a block, false for an unblock.
+     */
+    public void publish(int key, boolean blocked) {
+        if (enabled) {
+            append(key, blocked);
+        }
+    }
+
+    /**
+     * Applies deltas received from a peer.
+     *
+     * @param received the deltas.
+     * @return how many changed this node.
+     */
+    public int receive(List<BlockDelta> received) {
+        long now = System.currentTimeMillis();
+        int changed = 0;
+        for (BlockDelta delta : received) {
+            if (merge(delta, now - retentionMillis)) {
+                changed++;
+                applied.increment();
+                lag.record(Math.max(0, now - (delta.version() >>> LOGICAL_BITS)), TimeUnit.MILLISECONDS);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Compares a peer's digest with this node's and returns the deltas of the buckets that differ.
+     *
+     * @param remote the peer's digest.
+     * @return the deltas of the differing buckets, and the buckets.
+     */
+    public synchronized DigestReply reply(long[] remote) {
+        List<Integer> buckets = new ArrayList<>();
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (remote.length != BUCKETS || remote[bucket] != digest[bucket]) {
+                buckets.add(bucket);
+            }
+        }
+        return new DigestReply(deltasIn(buckets), buckets);
+    }
+
+    /**
+     * Stops the gossip rounds.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private synchronized void append(int key, boolean blocked) {
+        clock = Math.max(clock + 1, System.currentTimeMillis() << LOGICAL_BITS);
+        BlockDelta delta = new BlockDelta(key, blocked, clock, origin);
+        merge(delta, Long.MIN_VALUE);
+        if (!outgoing.offer(delta)) {
+            overflows.increment();
+        }
+    }
+
+    /**
+     * Keeps a delta if it is newer than the one held for its key, and applies it to the store.
+     *
+     * @return whether the delta was kept.
+     */
+    private synchronized boolean merge(BlockDelta delta, long horizonMillis) {
+        if ((delta.version() >>> LOGICAL_BITS) < horizonMillis) {
+            return false;
+        }
+        clock = Math.max(clock, delta.version());
+        BlockDelta current = deltas.get(delta.key());
+        if (current != null && (current.version() > delta.version()
+                || current.version() == delta.version() && current.origin() >= delta.origin())) {
+            return false;
+        }
+        if (current != null) {
+            digest[bucket(current.key())] ^= hash(current);
+        }
+        deltas.put(delta.key(), delta);
+        digest[bucket(delta.key())] ^= hash(delta);
+        store.update(delta.key(), delta.blocked());
+        return true;
+    }
+
+    /**
+     * Sends the changes made here since the last round to every peer.
+     */
+    private void pushRound() {
+        List<BlockDelta> batch = new ArrayList<>();
+        outgoing.drainTo(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (URI peer : peers()) {
+            try {
+                restTemplate.postForObject(peer + PATH + "/deltas", batch, Integer.class);
+                sent.increment(batch.size());
+            } catch (RuntimeException ex) {
+                failures.increment();
+                log.debug("Could not push {} block deltas to {}, anti-entropy will repair it", batch.size(), peer, ex);
+            }
+        }
+    }
+
+    /**
+     * Drops expired deltas, then exchanges the deltas of differing buckets with one random peer.
+     */
+    private void antiEntropyRound() {
+        try {
+            prune(System.currentTimeMillis() - retentionMillis);
+            List<URI> peers = peers();
+            if (peers.isEmpty()) {
+                return;
+            }
+            URI peer = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+            DigestReply reply = restTemplate.postForObject(peer + PATH + "/digest", digest(), DigestReply.class);
+            if (reply == null || reply.buckets().isEmpty()) {
+                return;
+            }
+            receive(reply.deltas());
+            List<BlockDelta> own;
+            synchronized (this) {
+                own = deltasIn(reply.buckets());
+            }
+            if (!own.isEmpty()) {
+                restTemplate.postForObject(peer + PATH + "/deltas", own, Integer.class);
+                sent.increment(own.size());
+            }
+        } catch (RestClientException ex) {
+            failures.increment();
+            log.debug("Block gossip anti-entropy round failed", ex);
+        } catch (RuntimeException ex) {
+            log.warn("Block gossip anti-entropy round failed", ex);
+        }
+    }
+
+    private synchronized void prune(long horizonMillis) {
+        Iterator<BlockDelta> iterator = deltas.values().iterator();
+        while (iterator.hasNext()) {
+            BlockDelta delta = iterator.next();
+            if ((delta.version() >>> LOGICAL_BITS) < horizonMillis) {
+                digest[bucket(delta.key())] ^= hash(delta);
+                iterator.remove();
+            }
+        }
+    }
+
+    private List<BlockDelta> deltasIn(List<Integer> buckets) {
+        boolean[] wanted = new boolean[BUCKETS];
+        buckets.forEach(bucket -> wanted[bucket] = true);
+        return deltas.values().stream().filter(delta -> wanted[bucket(delta.key())]).toList();
+    }
+
+    private List<URI> peers() {
+        try {
+            return discoveryClient.getInstances(serviceId).stream()
+                    .filter(instance -> !isSelf(instance))
+                    .map(ServiceInstance::getUri)
+                    .toList();
+        } catch (RuntimeException ex) {
+            log.debug("Could not list the blocked-users instances", ex);
+            return List.of();
+        }
+    }
+
+    private boolean isSelf(ServiceInstance instance) {
+        return registration != null && (Objects.equals(registration.getInstanceId(), instance.getInstanceId())
+                || registration.getHost().equals(instance.getHost()) && registration.getPort() == instance.getPort());
+    }
+
+    /**
+     * Returns the digest of the deltas held, as sent to peers in anti-entropy rounds.
+     *
+     * @return a copy of the digest.
+     */
+    synchronized long[] digest() {
+        return digest.clone();
+    }
+
+    private synchronized double tracked() {
+        return deltas.size();
+    }
+
+    private static int bucket(int key) {
+        return key & (BUCKETS - 1);
+    }
+
+    private static long hash(BlockDelta delta) {
+        long hash = delta.version() * 0x9E3779B97F4A7C15L ^ ((long) delta.key() << 32 | delta.origin() & 0xFFFFFFFFL);
+        hash = (hash ^ (hash >>> 31)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return (hash ^ (hash >>> 31)) ^ (delta.blocked() ? 1 : 0);
+    }
+}
@@ -0,0 +1,43 @@
+package com.exalt.training.blockedusers.gossip;
+
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Controller class receiving the gossip of the other blocked-users instances.
+ * Lives outside {@code /exalt/} so the calls between instances are not held back by the concurrency limit.
+ */
+@RestController
+@AllArgsConstructor
+@RequestMapping("/internal/gossip")
+public class GossipController {
+
+    private final BlockGossip blockGossip; // Replicated blocked set
+
+    /**
+     * Endpoint receiving the block deltas of a peer.
+     *
+     * @param deltas the deltas.
+     * @return how many of them changed this instance.
+     */
+    @PostMapping("/deltas")
+    public int deltas(@RequestBody List<BlockGossip.BlockDelta> deltas) {
+        return blockGossip.receive(deltas);
+    }
+
+    /**
+     * Endpoint comparing the digest of a peer with this instance's.
+     *
+     * @param digest the peer's digest.
+     * @return the deltas of the buckets that differ, and the buckets.
+     */
+    @PostMapping("/digest")
+    public BlockGossip.DigestReply digest(@RequestBody long[] digest) {
+        return blockGossip.reply(digest);
+    }
+}
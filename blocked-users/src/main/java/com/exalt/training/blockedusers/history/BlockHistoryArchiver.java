@@ -0,0 +1,160 @@
+package com.exalt.training.blockedusers.history;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves the block history of old months out of the database into compressed files.
+ * <p>
+ * Every {@code app.history.archive-interval}, each month that ended more than {@code app.history.retention-months}
+ * months ago is written to {@code blocked_users_history_<yyyy>_<MM>_<first id>.csv.gz} in
+ * {@code app.history.archive-directory}, then deleted from the table, and its partition is dropped once empty.
+ * The file is complete and synced before any row is deleted, and only the rows written to it are deleted. A run
+ * that stops in between writes the same file again, since the month still starts at the same ID, while blocks of
+ * an archived month lifted later end up in a file of their own.
+ * </p>
+ */
+@Slf4j
+@Component
+public class BlockHistoryArchiver {
+    private static final String HEADER = "id,national_id,username,created_at,unblocked_at";
+
+    private final DataSource dataSource; // Primary pool, the rows are deleted right after they are read
+    private final BlockHistoryPartitionManager partitionManager; // Drops the emptied partitions
+    private final Path directory; // Where the archive files are written
+    private final int retentionMonths; // Whole months kept in the database before the current one
+    private final Counter archivedRows; // Rows moved to archive files
+
+    public BlockHistoryArchiver(@Qualifier("primaryDataSource") DataSource dataSource,
+                                BlockHistoryPartitionManager partitionManager,
+                                @Value("${app.history.archive-directory}") String directory,
+                                @Value("${app.history.retention-months}") int retentionMonths,
+                                MeterRegistry registry) {
+        this.dataSource = dataSource;
+        this.partitionManager = partitionManager;
+        this.directory = Paths.get(directory);
+        this.retentionMonths = retentionMonths;
+        this.archivedRows = Counter.builder("blockedusers.history.archived")
+                .description("Block history rows moved to archive files")
+                .register(registry);
+    }
+
+    /**
+     * Archives every month older than the retention, oldest first.
+     */
+    @Scheduled(fixedDelayString = "${app.history.archive-interval}", initialDelayString = "${app.history.archive-interval}")
+    public void archive() {
+        YearMonth firstKept = YearMonth.now().minusMonths(retentionMonths);
+        try {
+            TreeSet<YearMonth> months = new TreeSet<>(partitionManager.partitionMonths());
+            LocalDateTime oldest = new JdbcTemplate(dataSource)
+                    .queryForObject("select min(created_at) from blocked_users_history", LocalDateTime.class);
+            if (oldest != null) {
+                for (YearMonth month = YearMonth.from(oldest); month.isBefore(firstKept); month = month.plusMonths(1)) {
+                    months.add(month);
+                }
+            }
+            for (YearMonth month : months.headSet(firstKept)) {
+                archive(month);
+            }
+        } catch (DataAccessException | UncheckedIOException ex) {
+            log.warn("Block history archival stopped, it is retried on the next run", ex);
+        }
+    }
+
+    /**
+     * Writes the rows of one month to a new archive file, deletes them, and drops the month's partition.
+     */
+    private void archive(YearMonth month) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        Long firstId = jdbcTemplate.queryForObject("select min(id) from blocked_users_history"
+                + " where created_at >= ? and created_at < ?", Long.class, from, to);
+        if (firstId != null) {
+            Path file = directory.resolve(String.format("blocked_users_history_%d_%02d_%d.csv.gz",
+                    month.getYear(), month.getMonthValue(), firstId));
+            long[] lastId = {firstId};
+            long rows = write(file, out -> jdbcTemplate.query("select id, national_id, username, created_at, unblocked_at"
+                            + " from blocked_users_history where created_at >= ? and created_at < ? order by id",
+                    resultSet -> {
+                        lastId[0] = resultSet.getLong(1);
+                        out.accept(lastId[0] + "," + resultSet.getString(2) + "," + quote(resultSet.getString(3)) + ","
+                                + format(resultSet.getTimestamp(4)) + "," + format(resultSet.getTimestamp(5)) + "\n");
+                    }, from, to));
+            int deleted = jdbcTemplate.update("delete from blocked_users_history"
+                    + " where created_at >= ? and created_at < ? and id <= ?", from, to, lastId[0]);
+            archivedRows.increment(deleted);
+            log.info("Archived {} block history rows of {} to {}", rows, month, file);
+        }
+        if (partitionManager.dropIfEmpty(month)) {
+            log.info("Dropped the block history partition of {}", month);
+        }
+    }
+
+    /**
+     * Writes an archive file through a temporary file, so a file with the final name is always complete.
+     *
+     * @return the number of rows written.
+     */
+    private long write(Path file, Consumer<Consumer<String>> rows) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long[] count = {0};
+        try {
+            Files.createDirectories(directory);
+            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+                out.write(HEADER + "\n");
+                rows.accept(line -> {
+                    try {
+                        out.write(line);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    count[0]++;
+                });
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write the archive file " + file, ex);
+        }
+        return count[0];
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String format(Timestamp timestamp) {
+        return timestamp == null ? "" : timestamp.toLocalDateTime().toString();
+    }
+}
@@ -0,0 +1,169 @@
+package com.exalt.training.blockedusers.history;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Partitions the "blocked_users_history" table by month of {@code created_at} on PostgreSQL.
+ * <p>
+ * Hibernate creates the table as a plain one; on startup, an empty plain table is recreated as a range
+ * partitioned table with the same columns, a primary key of {@code (id, created_at)} as partitioning requires,
+ * and a default partition for blocks older than the first monthly partition. Monthly partitions are then kept
+ * {@code app.history.partition-months-ahead} months ahead, so history queries by time range only scan the
+ * months they cover and archived months can be dropped whole. Tables that already hold history are left as they
+ * are. Other databases, such as the in-memory H2 used in development, keep the plain table.
+ * </p>
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory") // The table must exist before it is changed
+public class BlockHistoryPartitionManager {
+    private static final String TABLE = "blocked_users_history";
+
+    private final DataSource dataSource; // Primary pool, DDL never goes to the replica
+    private final int monthsAhead; // Months of partitions created ahead of time
+    private volatile boolean partitioned; // Whether the table is partitioned
+
+    public BlockHistoryPartitionManager(@Qualifier("primaryDataSource") DataSource dataSource,
+                                        @Value("${app.history.partition-months-ahead}") int monthsAhead) {
+        this.dataSource = dataSource;
+        this.monthsAhead = monthsAhead;
+    }
+
+    /**
+     * Partitions the history table if possible and creates its upcoming partitions.
+     */
+    @PostConstruct
+    public void initialize() {
+        try {
+            partitioned = partition();
+        } catch (DataAccessException | MetaDataAccessException ex) {
+            log.warn("Could not partition the block history, it stays a plain table", ex);
+        }
+        createUpcomingPartitions();
+    }
+
+    /**
+     * Creates the monthly partitions that are missing up to {@code app.history.partition-months-ahead} months ahead.
+     */
+    @Scheduled(fixedDelayString = "${app.history.partition-check-interval}",
+            initialDelayString = "${app.history.partition-check-interval}")
+    public void createUpcomingPartitions() {
+        if (!partitioned) {
+            return;
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        YearMonth current = YearMonth.now();
+        for (int month = 0; month <= monthsAhead; month++) {
+            YearMonth partition = current.plusMonths(month);
+            try {
+                jdbcTemplate.execute("create table if not exists " + partitionName(partition) + " partition of " + TABLE
+                        + " for values from ('" + partition.atDay(1) + " 00:00:00')"
+                        + " to ('" + partition.plusMonths(1).atDay(1) + " 00:00:00')");
+            } catch (DataAccessException ex) {
+                log.warn("Could not create the block history partition for {}", partition, ex);
+            }
+        }
+    }
+
+    /**
+     * Drops the partition of a month if it exists and holds no rows. Does nothing if the table is not partitioned.
+     *
+     * @param month the month.
+     * @return whether a partition was dropped.
+     */
+    public boolean dropIfEmpty(YearMonth month) {
+        if (!partitioned) {
+            return false;
+        }
+        String name = partitionName(month);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        return Boolean.TRUE.equals(new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            if (jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class, name) != Boolean.TRUE) {
+                return false;
+            }
+            jdbcTemplate.execute("lock table " + name + " in access exclusive mode");
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("select exists (select 1 from " + name + ")", Boolean.class))) {
+                return false;
+            }
+            jdbcTemplate.execute("drop table " + name);
+            return true;
+        }));
+    }
+
+    /**
+     * Returns the months that have a partition, oldest first.
+     *
+     * @return the months, empty if the table is not partitioned.
+     */
+    public List<YearMonth> partitionMonths() {
+        if (!partitioned) {
+            return List.of();
+        }
+        return new JdbcTemplate(dataSource).queryForList("select c.relname from pg_inherits i"
+                        + " join pg_class c on c.oid = i.inhrelid join pg_class p on p.oid = i.inhparent"
+                        + " where p.relname = ? and c.relname ~ '_[0-9]{4}_[0-9]{2}$' order by c.relname",
+                String.class, TABLE).stream()
+                .map(name -> YearMonth.of(Integer.parseInt(name.substring(name.length() - 7, name.length() - 3)),
+                        Integer.parseInt(name.substring(name.length() - 2))))
+                .toList();
+    }
+
+    private static String partitionName(YearMonth month) {
+        return TABLE + "_" + month.getYear() + "_" + String.format("%02d", month.getMonthValue());
+    }
+
+    /**
+     * Recreates the history table as a partitioned table if it is an empty plain table on PostgreSQL.
+     *
+     * @return whether the history table is partitioned.
+     */
+    private boolean partition() throws MetaDataAccessException {
+        String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        if (!"PostgreSQL".equals(product)) {
+            log.info("Block history is not partitioned on {}", product);
+            return false;
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        List<String> kind = jdbcTemplate.queryForList("select c.relkind from pg_class c"
+                + " join pg_namespace n on n.oid = c.relnamespace"
+                + " where c.relname = ? and n.nspname = current_schema()", String.class, TABLE);
+        if (kind.isEmpty()) {
+            return false;
+        }
+        if ("p".equals(kind.get(0))) {
+            return true;
+        }
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("select exists (select 1 from " + TABLE + ")", Boolean.class))) {
+            log.warn("Block history already holds rows and stays a plain table");
+            return false;
+        }
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status -> {
+            jdbcTemplate.execute("create table " + TABLE + "_partitioned"
+                    + " (like " + TABLE + " including defaults including constraints) partition by range (created_at)");
+            jdbcTemplate.execute("drop table " + TABLE);
+            jdbcTemplate.execute("alter table " + TABLE + "_partitioned rename to " + TABLE);
+            jdbcTemplate.execute("alter table " + TABLE + " add primary key (id, created_at)");
+            jdbcTemplate.execute("create index " + TABLE + "_user_time on " + TABLE + " (national_id, created_at)");
+            jdbcTemplate.execute("create table " + TABLE + "_default partition of " + TABLE + " default");
+        });
+        log.info("Partitioned the block history by month");
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+package com.exalt.training.blockedusers.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for blocked-user lookups and changes.
+ * All meters are registered up front so recording on the request path does not allocate.
+ */
+@Component
+public class BlockedUsersMetrics {
+
+    /**
+     * Where a lookup was answered from.
+     */
+    public enum Source {
+        SNAPSHOT, DATABASE
+    }
+
+    private final Timer[] lookups = new Timer[4]; // Indexed by source and result
+    private final Counter blocked; // Successful blocks
+    private final Counter blockRejected; // Blocks of already blocked users
+    private final Counter unblocked; // Successful unblocks
+    private final Counter unblockRejected; // Unblocks of users that are not blocked
+
+    public BlockedUsersMetrics(MeterRegistry registry) {
+        for (Source source : Source.values()) {
+            for (boolean result : new boolean[]{false, true}) {
+                lookups[index(source, result)] = Timer.builder("blockedusers.lookup")
+                        .description("isBlocked lookups by source and result")
+                        .tag("source", source.name().toLowerCase(Locale.ROOT))
+                        .tag("result", result ? "blocked" : "not_blocked")
+                        .register(registry);
+            }
+        }
+        blocked = change(registry, "block", "success");
+        blockRejected = change(registry, "block", "already_blocked");
+        unblocked = change(registry, "unblock", "success");
+        unblockRejected = change(registry, "unblock", "not_blocked");
+    }
+
+    /**
+     * Records a finished lookup.
+     *
+     * @param source where the lookup was answered from.
+     * @param isBlocked the lookup result.
+     * @param startNanos the {@link System#nanoTime()} at which the lookup started.
+     */
+    public void lookup(Source source, boolean isBlocked, long startNanos) {
+        lookups[index(source, isBlocked)].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts a block request.
+     *
+     * @param success false if the user was already blocked.
+     */
+    public void block(boolean success) {
+        (success ? blocked : blockRejected).increment();
+    }
+
+    /**
+     * Counts an unblock request.
+     *
+     * @param success false if the user was not blocked.
+     */
+    public void unblock(boolean success) {
+        (success ? unblocked : unblockRejected).increment();
+    }
+
+    private static int index(Source source, boolean isBlocked) {
+        return source.ordinal() * 2 + (isBlocked ? 1 : 0);
+    }
+
+    private static Counter change(MeterRegistry registry, String operation, String outcome) {
+        return Counter.builder("blockedusers.changes")
+                .description("Block and unblock requests by outcome")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
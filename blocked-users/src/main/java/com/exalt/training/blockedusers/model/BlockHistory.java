@@ -0,0 +1,36 @@
+package com.exalt.training.blockedusers.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Entity representing a block that has been lifted.
+ * Maps to the "blocked_users_history" table, which is partitioned by month of {@code created_at} on PostgreSQL.
+ */
+@Data
+@Entity
+@Table(name = "blocked_users_history", indexes = @Index(name = "blocked_users_history_user_time", columnList = "national_id, created_at"))
+@AllArgsConstructor
+@NoArgsConstructor
+public class BlockHistory {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "block_history_seq_gen")
+    @SequenceGenerator(name = "block_history_seq_gen", sequenceName = "block_history_seq", allocationSize = 1)
+    @Column(name = "id")
+    private Long id; // Unique ID of the history record
+
+    @Column(name = "national_id", nullable = false)
+    private String nationalId; // National ID of the user who was blocked
+
+    @Column(name = "username", nullable = false)
+    private String userName; // Username of the user who was blocked
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt; // Time when the user was blocked, the partitioning key
+
+    @Column(name = "unblocked_at", nullable = false)
+    private LocalDateTime unblockedAt; // Time when the user was unblocked
+}
@@ -0,0 +1,30 @@
+package com.exalt.training.blockedusers.repository;
+
+import com.exalt.training.blockedusers.model.BlockHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository interface for managing {@link BlockHistory} entities.
+ * This interface extends {@link JpaRepository} to provide CRUD operations and time range queries for {@link BlockHistory}.
+ */
+public interface BlockHistoryRepository extends JpaRepository<BlockHistory, Long> {
+    /**
+     * Finds the lifted blocks of a user that started within a time range, oldest first.
+     * The range on the partitioning key lets PostgreSQL only scan the partitions of the months it covers.
+     *
+     * @param nationalId the national ID of the user.
+     * @param from the earliest block time included.
+     * @param to the block time after the range, excluded.
+     * @return the lifted blocks, ordered by block time.
+     */
+    @Transactional(readOnly = true)
+    @Query("select h from BlockHistory h where h.nationalId = :nationalId and h.createdAt >= :from and h.createdAt < :to"
+            + " order by h.createdAt")
+    List<BlockHistory> findInRange(@Param("nationalId") String nationalId, @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+}
@@ -1,7 +1,12 @@
 package com.exalt.training.blockedusers.repository;
 import com.exalt.training.blockedusers.model.BlockedUsers;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -16,4 +21,46 @@ public interface BlockedUsersRepository extends JpaRepository<BlockedUsers,Integ
      * @return an {@link Optional} containing the found {@link BlockedUsers} if present, or {@link Optional#empty()} if not.
      */
     Optional<BlockedUsers> findByNationalId(String nationalId);
+
+    /**
+     * Checks whether a national ID is blocked, in a read-only transaction so the lookup can be served by the replica.
+     *
+     * @param nationalId the national ID to check.
+     * @return true if a blocked user with this national ID exists.
+     */
+    @Transactional(readOnly = true)
+    boolean existsByNationalId(String nationalId);
+
+    /**
+     * Returns the national IDs of all blocked users without loading the entities.
+     *
+     * @return a list with the national ID of every blocked user.
+     */
+    @Query("select b.nationalId from BlockedUsers b")
+    List<String> findAllNationalIds();
+
+    /**
+     * Returns the next blocked national IDs after a given one, in ascending order, without loading the entities.
+     * Each page starts after the last ID of the previous one, so every page is a range scan of the unique index.
+     *
+     * @param after the national ID the page starts after.
+     * @param page the number of IDs to return, from the first page.
+     * @return the national IDs.
+     */
+    @Transactional(readOnly = true)
+    @Query("select b.nationalId from BlockedUsers b where b.nationalId > :after order by b.nationalId")
+    List<String> findNationalIdsAfter(@Param("after") String after, Pageable page);
+
+    /**
+     * Returns the next blocked national IDs after a given one and up to a last one, in ascending order.
+     *
+     * @param after the national ID the page starts after.
+     * @param through the last national ID that may be returned.
+     * @param page the number of IDs to return, from the first page.
+     * @return the national IDs.
+     */
+    @Transactional(readOnly = true)
+    @Query("select b.nationalId from BlockedUsers b where b.nationalId > :after and b.nationalId <= :through"
+            + " order by b.nationalId")
+    List<String> findNationalIdsBetween(@Param("after") String after, @Param("through") String through, Pageable page);
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package com.exalt.training.blockedusers.rpc;
+
+import com.exalt.training.blockedusers.exception.UserBlockedException;
+import com.exalt.training.blockedusers.service.BlockedUsersService;
+import com.exalt.training.common.rpc.RpcFrames;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves {@link BlockedUsersService} over the binary protocol described in {@link RpcFrames}.
+ * <p>
+ * Every connection has a reader thread that decodes frames and hands them to a shared worker pool,
+ * so a slow block or unblock does not hold up the lookups multiplexed on the same connection.
+ * Responses are written back as soon as they are ready, in completion order.
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.rpc.enabled", havingValue = "true")
+public class BlockedUsersRpcServer {
+    private static final int WORKER_QUEUE_SIZE = 1024; // Requests waiting for a worker before new ones are refused
+    private static final int MAX_MESSAGE_LENGTH = 512; // Longer error messages are cut to keep frames small
+    private static final byte[] EMPTY = new byte[0];
+    private static final String[] OUTCOMES = {"ok", "rejected", "error"}; // Indexed by response status
+
+    private final BlockedUsersService blockedUsersService; // Service answering the calls
+    private final int port; // Port to listen on, 0 for any free port
+    private final ThreadPoolExecutor workers; // Runs the decoded requests
+    private final Timer[][] requests = new Timer[4][OUTCOMES.length]; // Indexed by operation and status
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet(); // Open client connections
+    private final AtomicInteger connectionIds = new AtomicInteger(); // Names the reader threads
+    private ServerSocket serverSocket; // Listening socket, null until started
+
+    public BlockedUsersRpcServer(BlockedUsersService blockedUsersService,
+                                 @Value("${app.rpc.port}") int port,
+                                 @Value("${app.rpc.worker-threads}") int workerThreads,
+                                 MeterRegistry registry) {
+        this.blockedUsersService = blockedUsersService;
+        this.port = port;
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "blocked-users-rpc-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        for (byte operation = RpcFrames.IS_BLOCKED; operation <= RpcFrames.UNBLOCK; operation++) {
+            for (int status = 0; status < OUTCOMES.length; status++) {
+                requests[operation][status] = Timer.builder("blockedusers.rpc.requests")
+                        .description("Binary protocol requests by operation and outcome")
+                        .tag("operation", RpcFrames.operationName(operation))
+                        .tag("outcome", OUTCOMES[status])
+                        .register(registry);
+            }
+        }
+        registry.gauge("blockedusers.rpc.connections", connections, Set::size);
+    }
+
+    /**
+     * Binds the listening socket and starts accepting connections.
+     *
+     * @throws IOException if the port cannot be bound.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::acceptConnections, "blocked-users-rpc-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Binary protocol listening on port {}", serverSocket.getLocalPort());
+    }
+
+    /**
+     * Returns the port the server listens on, which differs from the configured one when that is 0.
+     *
+     * @return the bound port.
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and lets queued requests finish.
+     *
+     * @throws IOException if the listening socket cannot be closed.
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        serverSocket.close();
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+        workers.shutdown();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread reader = new Thread(() -> serve(socket), "blocked-users-rpc-" + connectionIds.incrementAndGet());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Failed to accept a binary protocol connection", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the frames of one connection until it is closed.
+     *
+     * @param socket the client connection.
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != RpcFrames.MAGIC) {
+                log.warn("Closing connection from {} that does not speak the binary protocol", socket.getRemoteSocketAddress());
+                return;
+            }
+            while (true) {
+                int length = in.readInt();
+                if (length < RpcFrames.HEADER_LENGTH || length > RpcFrames.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                long requestId = in.readLong();
+                byte operation = in.readByte();
+                byte[] payload = new byte[length - RpcFrames.HEADER_LENGTH];
+                in.readFully(payload);
+                try {
+                    workers.execute(() -> handle(out, requestId, operation, payload));
+                } catch (RejectedExecutionException ex) {
+                    respond(out, requestId, RpcFrames.ERROR, message("Server busy"));
+                }
+            }
+        } catch (EOFException | SocketException ex) {
+            // Closed by the client or by stop()
+        } catch (IOException ex) {
+            log.warn("Closing binary protocol connection from {}", socket.getRemoteSocketAddress(), ex);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Runs one request on a worker and writes its response.
+     */
+    private void handle(DataOutputStream out, long requestId, byte operation, byte[] payload) {
+        long start = System.nanoTime();
+        byte status = RpcFrames.OK;
+        byte[] response = EMPTY;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            switch (operation) {
+                case RpcFrames.IS_BLOCKED ->
+                        response = new byte[]{(byte) (blockedUsersService.isUserBlocked(in.readUTF()) ? 1 : 0)};
+                case RpcFrames.BLOCK -> blockedUsersService.blockUser(in.readUTF(), in.readUTF());
+                case RpcFrames.UNBLOCK -> blockedUsersService.unblockUser(in.readUTF());
+                default -> {
+                    status = RpcFrames.ERROR;
+                    response = message("Unknown operation " + operation);
+                }
+            }
+        } catch (IllegalStateException | UserBlockedException ex) {
+            status = RpcFrames.REJECTED;
+            response = message(ex.getMessage());
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Binary protocol {} request failed", RpcFrames.operationName(operation), ex);
+            status = RpcFrames.ERROR;
+            response = message(ex.toString());
+        }
+        if (operation >= RpcFrames.IS_BLOCKED && operation <= RpcFrames.UNBLOCK) {
+            requests[operation][status].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        try {
+            respond(out, requestId, status, response);
+        } catch (IOException ex) {
+            log.debug("Could not answer binary protocol request {}", requestId, ex);
+        }
+    }
+
+    private static void respond(DataOutputStream out, long requestId, byte status, byte[] payload) throws IOException {
+        synchronized (out) {
+            out.writeInt(RpcFrames.HEADER_LENGTH + payload.length);
+            out.writeLong(requestId);
+            out.writeByte(status);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    private static byte[] message(String message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            new DataOutputStream(bytes).writeUTF(message == null ? "" : message.substring(0, Math.min(message.length(), MAX_MESSAGE_LENGTH)));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            log.debug("Failed to close binary protocol connection", ex);
+        }
+    }
+}
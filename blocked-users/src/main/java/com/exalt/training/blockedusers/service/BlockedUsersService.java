@@ -1,11 +1,26 @@
 package com.exalt.training.blockedusers.service;
 import com.exalt.training.blockedusers.exception.UserBlockedException;
+import com.exalt.training.blockedusers.gossip.BlockGossip;
+import com.exalt.training.blockedusers.metrics.BlockedUsersMetrics;
+import com.exalt.training.blockedusers.metrics.BlockedUsersMetrics.Source;
+import com.exalt.training.blockedusers.model.BlockHistory;
+import com.exalt.training.blockedusers.repository.BlockHistoryRepository;
 import com.exalt.training.blockedusers.repository.BlockedUsersRepository;
+import com.exalt.training.blockedusers.snapshot.BlockedSetStore;
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
 import lombok.AllArgsConstructor;
 import com.exalt.training.blockedusers.model.BlockedUsers;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service class for managing blocked users.
@@ -13,7 +28,15 @@ import java.time.LocalDateTime;
 @Service
 @AllArgsConstructor
 public class BlockedUsersService {
+    private static final int MAX_HISTORY_DAYS = 366; // Longest range of days a history query may cover
+    private static final int MAX_ID_PAGE = 10_000; // Most national IDs returned by one page of blocked IDs
+
     private final BlockedUsersRepository blockedUsersRepository; // Repository for blocked users
+    private final BlockedSetStore blockedSetStore; // Local snapshot of blocked national IDs
+    private final BlockedUsersMetrics blockedUsersMetrics; // Lookup and change metrics
+    private final ReplicaReadPolicy replicaReadPolicy; // Keeps replica lookups from missing recent changes
+    private final BlockHistoryRepository blockHistoryRepository; // Repository for lifted blocks
+    private final BlockGossip blockGossip; // Replicates changes to the other instances
 
     /**
      * Blocks a user by national ID and username.
@@ -21,8 +44,10 @@ public class BlockedUsersService {
      * @param nationalId The national ID of the user.
      * @param userName The username of the user.
      */
+    @Transactional
     public void blockUser( String nationalId, String userName) {
         if (blockedUsersRepository.findByNationalId(nationalId).isPresent()) {
+            blockedUsersMetrics.block(false);
             throw new UserBlockedException("User is already blocked");
         }
         BlockedUsers blockedUser = new BlockedUsers();
@@ -30,27 +55,133 @@ public class BlockedUsersService {
         blockedUser.setUserName(userName);
         blockedUser.setCreatedAt(LocalDateTime.now());
         blockedUsersRepository.save(blockedUser);
+        updateStore(nationalId, true);
+        blockedUsersMetrics.block(true);
     }
 
     /**
      * Unblocks a user by national ID.
+     * The block is moved to the history in the same transaction, so only active blocks stay in "blocked_users".
      *
      * @param nationalId The national ID of the user to unblock.
      */
+    @Transactional
     public void unblockUser(String nationalId) {
-        BlockedUsers blockedUser = blockedUsersRepository.findByNationalId(nationalId)
-                .orElseThrow(() -> new IllegalStateException("user not found"));
+        BlockedUsers blockedUser = blockedUsersRepository.findByNationalId(nationalId).orElse(null);
+        if (blockedUser == null) {
+            blockedUsersMetrics.unblock(false);
+            throw new IllegalStateException("user not found");
+        }
+        blockHistoryRepository.save(new BlockHistory(null, blockedUser.getNationalId(), blockedUser.getUserName(),
+                blockedUser.getCreatedAt(), LocalDateTime.now()));
         blockedUsersRepository.delete(blockedUser);
+        updateStore(nationalId, false);
+        blockedUsersMetrics.unblock(true);
     }
 
     /**
      * Checks if a user is blocked by national ID.
+     * Answered from the local snapshot when it is loaded, which {@link BlockGossip} keeps in step with the changes
+     * made on the other instances, otherwise from the database replica (or the primary if the ID changed within
+     * the staleness bound).
      *
      * @param nationalId The national ID of the user.
      * @return True if the user is blocked, false otherwise.
      */
+    @SuppressWarnings("try")
     public boolean isUserBlocked(String nationalId) {
-        return blockedUsersRepository.findByNationalId(nationalId).isPresent();
+        long start = System.nanoTime();
+        int key = BlockedSetStore.toKey(nationalId);
+        if (key >= 0 && blockedSetStore.isReady()) {
+            boolean isBlocked = blockedSetStore.contains(key);
+            blockedUsersMetrics.lookup(Source.SNAPSHOT, isBlocked, start);
+            return isBlocked;
+        }
+        boolean isBlocked;
+        try (ReplicaReadPolicy.Scope ignored = replicaReadPolicy.readYourWrites(nationalId)) {
+            isBlocked = blockedUsersRepository.existsByNationalId(nationalId);
+        }
+        blockedUsersMetrics.lookup(Source.DATABASE, isBlocked, start);
+        return isBlocked;
+    }
+
+    /**
+     * Returns the blocks of a user that started within a range of days, oldest first, including the active block
+     * with no unblock time. Blocks of months older than {@code app.history.retention-months} are only kept in the
+     * archive files.
+     *
+     * @param nationalId The national ID of the user.
+     * @param from The first day included.
+     * @param to The last day included.
+     * @return The blocks, ordered by block time.
+     * @throws IllegalArgumentException if the range is empty or longer than {@value #MAX_HISTORY_DAYS} days.
+     */
+    public List<BlockHistory> history(String nationalId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The range must not end before it starts");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_HISTORY_DAYS) {
+            throw new IllegalArgumentException("The range must not cover more than " + MAX_HISTORY_DAYS + " days");
+        }
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.plusDays(1).atStartOfDay();
+        List<BlockHistory> blocks = new ArrayList<>(blockHistoryRepository.findInRange(nationalId, start, end));
+        blockedUsersRepository.findByNationalId(nationalId)
+                .filter(active -> !active.getCreatedAt().isBefore(start) && active.getCreatedAt().isBefore(end))
+                .ifPresent(active -> blocks.add(new BlockHistory(null, active.getNationalId(), active.getUserName(),
+                        active.getCreatedAt(), null)));
+        return blocks;
+    }
+
+    /**
+     * Returns a page of blocked national IDs within a range, in ascending order, read from the database replica.
+     * The next page starts after the last ID returned, so a caller can walk every blocked ID in sorted order.
+     *
+     * @param after The national ID the page starts after, empty to start at the first one.
+     * @param through The last national ID of the range, or null for no end.
+     * @param limit The most IDs returned.
+     * @return The national IDs, fewer than the limit only once the range is exhausted.
+     * @throws IllegalArgumentException if the limit is not between 1 and {@value #MAX_ID_PAGE}.
+     */
+    public List<String> blockedIds(String after, String through, int limit) {
+        if (limit < 1 || limit > MAX_ID_PAGE) {
+            throw new IllegalArgumentException("The limit must be between 1 and " + MAX_ID_PAGE);
+        }
+        PageRequest page = PageRequest.ofSize(limit);
+        return through == null
+                ? blockedUsersRepository.findNationalIdsAfter(after, page)
+                : blockedUsersRepository.findNationalIdsBetween(after, through, page);
+    }
+
+    /**
+     * Records a block or unblock for replica staleness checks, then in the local snapshot and for the other instances
+     * once the transaction commits, so a rollback leaves the snapshot alone and a rebuild that read the table before
+     * the commit cannot drop the change.
+     *
+     * @param nationalId The national ID of the user.
+     * @param blocked True for a block, false for an unblock.
+     */
+    private void updateStore(String nationalId, boolean blocked) {
+        replicaReadPolicy.recordWrite(nationalId);
+        int key = BlockedSetStore.toKey(nationalId);
+        if (key < 0) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyToStore(key, blocked);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                applyToStore(key, blocked);
+            }
+        });
+    }
+
+    private void applyToStore(int key, boolean blocked) {
+        blockedSetStore.update(key, blocked);
+        blockGossip.publish(key, blocked);
     }
 
 }
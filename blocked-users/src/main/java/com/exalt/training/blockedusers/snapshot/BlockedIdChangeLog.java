@@ -0,0 +1,118 @@
+package com.exalt.training.blockedusers.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of block and unblock operations applied after the last snapshot.
+ * <p>
+ * Each record is five bytes: an operation byte followed by the national ID as a little-endian int.
+ * Replaying the records in order on top of the snapshot rebuilds the current blocked set; a torn
+ * record at the tail (from a crash mid-write) is ignored.
+ * </p>
+ */
+public final class BlockedIdChangeLog implements Closeable {
+    private static final byte OP_BLOCK = 1;
+    private static final byte OP_UNBLOCK = 2;
+    private static final int RECORD_BYTES = 5;
+
+    /**
+     * Callback receiving replayed operations.
+     */
+    @FunctionalInterface
+    public interface Replayer {
+        /**
+         * Applies one replayed operation.
+         *
+         * @param id the numeric national ID.
+         * @param blocked true for a block, false for an unblock.
+         */
+        void apply(int id, boolean blocked);
+    }
+
+    private final FileChannel channel; // Channel opened in append mode
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN); // Reused write buffer
+    private int records; // Number of records currently in the log
+
+    private BlockedIdChangeLog(FileChannel channel, int records) {
+        this.channel = channel;
+        this.records = records;
+    }
+
+    /**
+     * Replays an existing log (if any) and opens it for appending.
+     *
+     * @param file the log file.
+     * @param replayer callback receiving each valid record in order.
+     * @return the opened log.
+     * @throws IOException if the file cannot be read or opened.
+     */
+    public static BlockedIdChangeLog openAndReplay(Path file, Replayer replayer) throws IOException {
+        int valid = 0;
+        if (Files.exists(file)) {
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            while (content.remaining() >= RECORD_BYTES) {
+                byte op = content.get();
+                int id = content.getInt();
+                if (op != OP_BLOCK && op != OP_UNBLOCK) {
+                    break;
+                }
+                replayer.apply(id, op == OP_BLOCK);
+                valid++;
+            }
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate((long) valid * RECORD_BYTES);
+        channel.position((long) valid * RECORD_BYTES);
+        return new BlockedIdChangeLog(channel, valid);
+    }
+
+    /**
+     * Appends one operation. Callers must serialize writes.
+     * The record is not forced to disk; the database stays the source of truth after a crash.
+     *
+     * @param id the numeric national ID.
+     * @param blocked true for a block, false for an unblock.
+     * @throws IOException if the record cannot be written.
+     */
+    public void append(int id, boolean blocked) throws IOException {
+        record.clear();
+        record.put(blocked ? OP_BLOCK : OP_UNBLOCK).putInt(id).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        records++;
+    }
+
+    /**
+     * Discards every record, typically right after a new snapshot has been written.
+     *
+     * @throws IOException if the file cannot be truncated.
+     */
+    public void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        records = 0;
+    }
+
+    /**
+     * Returns the number of records in the log.
+     *
+     * @return the record count.
+     */
+    public int size() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
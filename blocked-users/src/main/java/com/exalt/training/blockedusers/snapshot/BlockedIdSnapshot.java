@@ -0,0 +1,123 @@
+package com.exalt.training.blockedusers.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view over a memory-mapped snapshot of blocked national IDs.
+ * <p>
+ * The file holds a 16 byte header (magic, format version, entry count, reserved) followed by the
+ * national IDs as a sorted array of little-endian ints, so lookups are a binary search straight
+ * over the mapped pages without deserializing anything at startup.
+ * </p>
+ */
+public final class BlockedIdSnapshot {
+    private static final int MAGIC = 0x534B4C42; // "BLKS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    static final BlockedIdSnapshot EMPTY = new BlockedIdSnapshot(IntBuffer.allocate(0));
+
+    private final IntBuffer ids; // Sorted national IDs, backed by the mapped file
+
+    private BlockedIdSnapshot(IntBuffer ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Memory-maps an existing snapshot file.
+     *
+     * @param file the snapshot file.
+     * @return the mapped snapshot.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public static BlockedIdSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a blocked-users snapshot: " + file);
+            }
+            int count = buffer.getInt(8);
+            if (buffer.limit() < HEADER_BYTES + (long) count * Integer.BYTES) {
+                throw new IOException("Truncated blocked-users snapshot: " + file);
+            }
+            return new BlockedIdSnapshot(buffer.position(HEADER_BYTES).slice()
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().limit(count));
+        }
+    }
+
+    /**
+     * Atomically writes a new snapshot file, replacing any previous one.
+     *
+     * @param file the snapshot file.
+     * @param sortedIds the national IDs to store, sorted ascending and without duplicates.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(Path file, int[] sortedIds) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + sortedIds.length * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(sortedIds.length).putInt(0);
+        buffer.asIntBuffer().put(sortedIds);
+        buffer.rewind();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Checks whether the snapshot contains the given national ID.
+     *
+     * @param id the numeric national ID.
+     * @return true if the ID is in the snapshot.
+     */
+    public boolean contains(int id) {
+        int low = 0;
+        int high = ids.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = ids.get(mid);
+            if (value < id) {
+                low = mid + 1;
+            } else if (value > id) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of national IDs in the snapshot.
+     *
+     * @return the entry count.
+     */
+    public int size() {
+        return ids.limit();
+    }
+
+    /**
+     * Returns the national ID stored at the given position.
+     *
+     * @param index position in the sorted array.
+     * @return the national ID.
+     */
+    public int get(int index) {
+        return ids.get(index);
+    }
+}
@@ -0,0 +1,229 @@
+package com.exalt.training.blockedusers.snapshot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * In-memory view of the blocked national IDs, persisted to local disk as a memory-mapped snapshot plus a change log.
+ * <p>
+ * On startup the snapshot is mapped and the change log tail is replayed into a small overlay. Blocks and unblocks
+ * made while the instance was down are missing from it, so it only answers lookups once it has been reconciled
+ * with the database, which then only rewrites it if it differs. Lookups are lock-free; writes and compaction are
+ * serialized on the store.
+ * </p>
+ */
+@Slf4j
+@Component
+public class BlockedSetStore {
+    private static final String SNAPSHOT_FILE = "blocked-ids.snapshot";
+    private static final String LOG_FILE = "blocked-ids.log";
+
+    private final Path directory; // Directory holding the snapshot and change log
+    private final int compactionThreshold; // Change log size that triggers a new snapshot
+    private final Map<Integer, Boolean> overlay = new ConcurrentHashMap<>(); // Changes applied since the snapshot
+    private volatile BlockedIdSnapshot snapshot = BlockedIdSnapshot.EMPTY; // Currently mapped snapshot
+    private volatile boolean ready; // Whether the store reflects a loaded snapshot or database state
+    private BlockedIdChangeLog changeLog; // Log of changes applied since the snapshot
+
+    public BlockedSetStore(@Value("${app.snapshot.directory}") String directory,
+                           @Value("${app.snapshot.compaction-threshold}") int compactionThreshold) {
+        this.directory = Paths.get(directory);
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Converts a national ID to the numeric key used by the store.
+     *
+     * @param nationalId the national ID.
+     * @return the numeric key, or -1 if the ID is not 1 to 9 decimal digits.
+     */
+    public static int toKey(String nationalId) {
+        if (nationalId == null || nationalId.isEmpty() || nationalId.length() > 9) {
+            return -1;
+        }
+        int key = 0;
+        for (int i = 0; i < nationalId.length(); i++) {
+            char c = nationalId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    /**
+     * Maps the last snapshot and replays the change log written after it. The store is not ready until it is
+     * reconciled with the database.
+     */
+    @PostConstruct
+    public synchronized void load() {
+        try {
+            Files.createDirectories(directory);
+            Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+            if (Files.exists(snapshotFile)) {
+                snapshot = BlockedIdSnapshot.open(snapshotFile);
+            }
+            changeLog = BlockedIdChangeLog.openAndReplay(directory.resolve(LOG_FILE), overlay::put);
+            ready = false;
+            log.info("Loaded blocked-users snapshot with {} entries and {} logged changes",
+                    snapshot.size(), changeLog.size());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to load blocked-users snapshot from " + directory, ex);
+        }
+    }
+
+    /**
+     * Indicates whether lookups can be answered from the store.
+     *
+     * @return true once the store was rebuilt from or reconciled with the database.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Checks whether a national ID is blocked.
+     *
+     * @param key the numeric national ID, as returned by {@link #toKey(String)}.
+     * @return true if the ID is blocked.
+     */
+    public boolean contains(int key) {
+        Boolean changed = overlay.get(key);
+        return changed != null ? changed : snapshot.contains(key);
+    }
+
+    /**
+     * Records a block or an unblock and appends it to the change log.
+     *
+     * @param key the numeric national ID.
+     * @param blocked true for a block, false for an unblock.
+     */
+    public synchronized void update(int key, boolean blocked) {
+        overlay.put(key, blocked);
+        try {
+            changeLog.append(key, blocked);
+        } catch (IOException ex) {
+            log.warn("Failed to append to blocked-users change log", ex);
+        }
+    }
+
+    /**
+     * Replaces the whole blocked set, typically with the state read from the database, and writes a new snapshot.
+     * Writes are held off while the supplier runs so no concurrent change is lost.
+     *
+     * @param source supplies every blocked national ID, in any order.
+     */
+    public synchronized void rebuild(Supplier<int[]> source) {
+        int[] ids = source.get();
+        Arrays.sort(ids);
+        install(ids);
+        ready = true;
+    }
+
+    /**
+     * Aligns the blocked set with a complete source, typically the database, and writes a new snapshot only if they
+     * differ. Writes are held off while the supplier runs so no concurrent change is lost.
+     *
+     * @param source supplies every blocked national ID, in any order.
+     * @return how many national IDs the set had wrong, 0 if it already matched the source.
+     */
+    public synchronized int reconcile(Supplier<int[]> source) {
+        int[] ids = source.get();
+        Arrays.sort(ids);
+        int wrong = 0;
+        for (int id : ids) {
+            if (!contains(id)) {
+                wrong++;
+            }
+        }
+        BlockedIdSnapshot current = snapshot;
+        for (int i = 0; i < current.size(); i++) {
+            int id = current.get(i);
+            if (!Boolean.FALSE.equals(overlay.get(id)) && Arrays.binarySearch(ids, id) < 0) {
+                wrong++;
+            }
+        }
+        for (Map.Entry<Integer, Boolean> entry : overlay.entrySet()) {
+            int id = entry.getKey();
+            if (entry.getValue() && !current.contains(id) && Arrays.binarySearch(ids, id) < 0) {
+                wrong++;
+            }
+        }
+        if (wrong > 0) {
+            install(ids);
+        }
+        ready = true;
+        return wrong;
+    }
+
+    /**
+     * Folds the change log into a new snapshot once it exceeds the configured threshold.
+     */
+    public synchronized void compactIfNeeded() {
+        if (changeLog.size() < compactionThreshold) {
+            return;
+        }
+        BlockedIdSnapshot current = snapshot;
+        int[] merged = new int[current.size() + overlay.size()];
+        int count = 0;
+        for (int i = 0; i < current.size(); i++) {
+            int id = current.get(i);
+            if (!overlay.containsKey(id)) {
+                merged[count++] = id;
+            }
+        }
+        for (Map.Entry<Integer, Boolean> entry : overlay.entrySet()) {
+            if (entry.getValue()) {
+                merged[count++] = entry.getKey();
+            }
+        }
+        int[] ids = Arrays.copyOf(merged, count);
+        Arrays.sort(ids);
+        install(ids);
+    }
+
+    /**
+     * Writes and maps a new snapshot, then drops the changes it already contains.
+     * The new snapshot is published before the overlay is cleared so readers never see a gap.
+     *
+     * @param sortedIds the complete blocked set, sorted ascending.
+     */
+    private void install(int[] sortedIds) {
+        try {
+            Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+            BlockedIdSnapshot.write(snapshotFile, sortedIds);
+            snapshot = BlockedIdSnapshot.open(snapshotFile);
+            overlay.clear();
+            changeLog.reset();
+            log.info("Wrote blocked-users snapshot with {} entries", sortedIds.length);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to write blocked-users snapshot to " + directory, ex);
+        }
+    }
+
+    /**
+     * Flushes and closes the change log.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        try {
+            changeLog.close();
+        } catch (IOException ex) {
+            log.warn("Failed to close blocked-users change log", ex);
+        }
+    }
+}
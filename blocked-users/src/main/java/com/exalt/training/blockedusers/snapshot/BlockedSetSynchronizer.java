@@ -0,0 +1,69 @@
+package com.exalt.training.blockedusers.snapshot;
+
+import com.exalt.training.blockedusers.repository.BlockedUsersRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Keeps the {@link BlockedSetStore} aligned with the database and compacts its change log.
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class BlockedSetSynchronizer {
+    private final BlockedSetStore blockedSetStore; // Local snapshot of blocked national IDs
+    private final BlockedUsersRepository blockedUsersRepository; // Repository for blocked users
+
+    /**
+     * Reconciles the store with the database once the application has started, ahead of the warm-up. Spring Boot
+     * reports readiness and the instance is marked {@code UP} only after this returns, and until then, or if the
+     * database cannot be read, lookups go to the database instead of the possibly stale snapshot.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void rebuildFromDatabase() {
+        long start = System.nanoTime();
+        try {
+            int repaired = blockedSetStore.reconcile(this::blockedKeys);
+            log.info("Reconciled blocked-users snapshot with the database in {} ms, {} national IDs repaired",
+                    (System.nanoTime() - start) / 1_000_000, repaired);
+        } catch (RuntimeException ex) {
+            log.warn("Could not reconcile the blocked-users snapshot with the database, lookups use the database"
+                    + " until the next reconciliation", ex);
+        }
+    }
+
+    /**
+     * Periodically compares the store with the database and repairs it. Gossip deltas are only kept for
+     * {@code app.gossip.retention}, so a change this instance missed for longer is corrected here; the interval is
+     * shorter than the retention so no missed change outlives both.
+     */
+    @Scheduled(fixedDelayString = "${app.gossip.rebuild-interval}", initialDelayString = "${app.gossip.rebuild-interval}")
+    public void reconcileWithDatabase() {
+        int repaired = blockedSetStore.reconcile(this::blockedKeys);
+        if (repaired > 0) {
+            log.warn("Repaired {} national IDs of the blocked-users snapshot that differed from the database", repaired);
+        }
+    }
+
+    /**
+     * Periodically folds the change log into a new snapshot.
+     */
+    @Scheduled(fixedDelayString = "${app.snapshot.compaction-interval}")
+    public void compact() {
+        blockedSetStore.compactIfNeeded();
+    }
+
+    private int[] blockedKeys() {
+        List<String> nationalIds = blockedUsersRepository.findAllNationalIds();
+        return nationalIds.stream().mapToInt(BlockedSetStore::toKey).filter(key -> key >= 0).toArray();
+    }
+}
@@ -0,0 +1,65 @@
+package com.exalt.training.blockedusers.warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * Synthetic traffic for the warm-up: isBlocked lookups, history queries and unblocks sent to this instance's own
+ * endpoints over the loopback interface.
+ * <p>
+ * The requests go through the whole production stack (Tomcat, Jackson, the controller, the service, the snapshot
+ * and the database), so the code compiled is the code that later serves requests. They are built so that they
+ * change nothing: lookups and history queries only read, and unblocks use 10-digit national IDs, which no blocked
+ * user can have, so they take the "user not found" path. Lookups of 9-digit IDs are answered by the snapshot and
+ * those of 10-digit IDs by the database. The requests do show up in the exported metrics.
+ * </p>
+ */
+final class WarmupWorkload {
+    private static final int USERS = 4096;
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final HttpClient httpClient; // Loopback client
+    private final URI baseUri; // Base URI of this instance's API
+
+    WarmupWorkload(int port) {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+        this.baseUri = URI.create("http://localhost:" + port + "/exalt/training/userscontrol/");
+    }
+
+    /**
+     * Runs one round of requests.
+     *
+     * @param iteration the round number.
+     * @throws IOException if a request cannot be sent.
+     * @throws InterruptedException if interrupted while waiting for a response.
+     */
+    void run(int iteration) throws IOException, InterruptedException {
+        int i = iteration % USERS;
+        send(request("isBlocked/" + (900_000_000 + i)).GET());
+        if (iteration % 8 == 0) {
+            send(request("isBlocked/" + unknownNationalId(i)).GET());
+        }
+        if (iteration % 32 == 1) {
+            LocalDate today = LocalDate.now();
+            send(request("history/" + unknownNationalId(i) + "?from=" + today.minusDays(30) + "&to=" + today).GET());
+            send(request("unblock/" + unknownNationalId(i)).POST(HttpRequest.BodyPublishers.noBody()));
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(TIMEOUT);
+    }
+
+    private void send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static String unknownNationalId(int i) {
+        return String.valueOf(9_000_000_000L + i);
+    }
+}
@@ -0,0 +1,111 @@
+package com.exalt.training.blockedusers.gossip;
+
+import com.exalt.training.blockedusers.gossip.BlockGossip.BlockDelta;
+import com.exalt.training.blockedusers.snapshot.BlockedSetStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that two instances exchanging block deltas end up with the same blocked set. The gossip rounds are driven
+ * by hand, the scheduled ones are an hour apart and never run during a test.
+ */
+class BlockGossipTest {
+    private static final Duration ROUND = Duration.ofHours(1);
+    private static final Duration RETENTION = Duration.ofHours(1);
+
+    @TempDir
+    private Path directory;
+
+    private final List<BlockGossip> gossips = new ArrayList<>();
+    private final List<BlockedSetStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void stop() {
+        gossips.forEach(BlockGossip::stop);
+        stores.forEach(BlockedSetStore::close);
+    }
+
+    @Test
+    void deltasConvergeWhateverTheDeliveryOrder() {
+        BlockedSetStore firstStore = store("first");
+        BlockedSetStore secondStore = store("second");
+        BlockGossip first = gossip(firstStore);
+        BlockGossip second = gossip(secondStore);
+        long version = System.currentTimeMillis() << 12;
+        BlockDelta block = new BlockDelta(123, true, version, 1);
+        BlockDelta unblock = new BlockDelta(123, false, version + 1, 2);
+        BlockDelta other = new BlockDelta(456, true, version, 2);
+
+        first.receive(List.of(block, unblock, other));
+        second.receive(List.of(other, unblock));
+        second.receive(List.of(block));
+
+        assertFalse(firstStore.contains(123));
+        assertFalse(secondStore.contains(123));
+        assertTrue(firstStore.contains(456));
+        assertTrue(secondStore.contains(456));
+        assertArrayEquals(first.digest(), second.digest());
+    }
+
+    @Test
+    void antiEntropyRepairsLostPushes() {
+        BlockedSetStore firstStore = store("first");
+        BlockedSetStore secondStore = store("second");
+        BlockGossip first = gossip(firstStore);
+        BlockGossip second = gossip(secondStore);
+        first.publish(123, true);
+        first.publish(456, true);
+        second.publish(789, true);
+        second.publish(123, false);
+
+        BlockGossip.DigestReply reply = first.reply(second.digest());
+        assertFalse(reply.buckets().isEmpty());
+        second.receive(reply.deltas());
+        first.receive(second.reply(first.digest()).deltas());
+
+        assertArrayEquals(first.digest(), second.digest());
+        assertEquals(0, first.reply(second.digest()).buckets().size());
+        for (int key : new int[]{123, 456, 789}) {
+            assertEquals(firstStore.contains(key), secondStore.contains(key), "key " + key);
+        }
+        assertFalse(firstStore.contains(123));
+        assertTrue(secondStore.contains(456));
+        assertTrue(firstStore.contains(789));
+    }
+
+    @Test
+    void deltasOlderThanTheRetentionAreRejected() {
+        BlockedSetStore store = store("only");
+        BlockGossip gossip = gossip(store);
+        long expired = System.currentTimeMillis() - RETENTION.toMillis() - 60_000;
+
+        assertEquals(0, gossip.receive(List.of(new BlockDelta(123, true, expired << 12, 1))));
+        assertFalse(store.contains(123));
+    }
+
+    private BlockedSetStore store(String name) {
+        BlockedSetStore store = new BlockedSetStore(directory.resolve(name).toString(), 1_000);
+        store.load();
+        stores.add(store);
+        return store;
+    }
+
+    private BlockGossip gossip(BlockedSetStore store) {
+        BlockGossip gossip = new BlockGossip(true, store, null, null, "BLOCKED-USERS", null, ROUND, ROUND, RETENTION,
+                new SimpleMeterRegistry());
+        gossips.add(gossip);
+        return gossip;
+    }
+}
@@ -0,0 +1,127 @@
+package com.exalt.training.blockedusers.history;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the archiver moves the months past the retention into one compressed file each, deleting exactly the
+ * rows it wrote, keeps the recent months in the table, and puts blocks of an archived month lifted later into a
+ * file of their own. The database is an in-memory H2 one, so the history table is not partitioned.
+ */
+class BlockHistoryArchiverTest {
+    private static final YearMonth OLD = YearMonth.now().minusMonths(5);
+    private static final YearMonth OLDER = OLD.minusMonths(1);
+    private static final YearMonth RECENT = YearMonth.now().minusMonths(1);
+
+    @TempDir
+    private Path directory;
+
+    private DataSource dataSource;
+    private SimpleMeterRegistry registry;
+    private BlockHistoryArchiver archiver;
+
+    @BeforeEach
+    void createTable() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        new JdbcTemplate(dataSource).execute("create table blocked_users_history (id bigint primary key,"
+                + " national_id varchar(9), username varchar(64), created_at timestamp, unblocked_at timestamp)");
+        BlockHistoryPartitionManager partitionManager = new BlockHistoryPartitionManager(dataSource, 3);
+        partitionManager.initialize();
+        registry = new SimpleMeterRegistry();
+        archiver = new BlockHistoryArchiver(dataSource, partitionManager, directory.toString(), 3, registry);
+    }
+
+    @AfterEach
+    void dropTable() {
+        new JdbcTemplate(dataSource).execute("shutdown");
+    }
+
+    @Test
+    void monthsPastTheRetentionAreMovedToFiles() throws IOException {
+        block(1, "100000001", "first", OLDER.atDay(3).atTime(10, 0));
+        block(2, "100000002", "say \"hi\", twice", OLD.atDay(1).atStartOfDay());
+        block(3, "100000001", "first", OLD.atEndOfMonth().atTime(23, 59));
+        block(4, "100000003", "recent", RECENT.atDay(2).atTime(8, 30));
+
+        archiver.archive();
+
+        assertEquals(List.of(archive(OLDER, 1), archive(OLD, 2)), files());
+        assertEquals(List.of(
+                "id,national_id,username,created_at,unblocked_at",
+                "2,100000002,\"say \"\"hi\"\", twice\"," + OLD.atDay(1).atStartOfDay() + ","
+                        + OLD.atDay(1).atStartOfDay().plusDays(1),
+                "3,100000001,\"first\"," + OLD.atEndOfMonth().atTime(23, 59) + ","
+                        + OLD.atEndOfMonth().atTime(23, 59).plusDays(1)), lines(archive(OLD, 2)));
+        assertEquals(List.of(4L), new JdbcTemplate(dataSource).queryForList(
+                "select id from blocked_users_history", Long.class));
+        assertEquals(3, registry.get("blockedusers.history.archived").counter().count());
+    }
+
+    @Test
+    void blocksLiftedAfterTheirMonthWasArchivedGetAFileOfTheirOwn() throws IOException {
+        block(1, "100000001", "first", OLD.atDay(10).atStartOfDay());
+        archiver.archive();
+        block(2, "100000002", "late", OLD.atDay(5).atStartOfDay());
+
+        archiver.archive();
+
+        assertEquals(List.of(archive(OLD, 1), archive(OLD, 2)), files());
+        assertEquals(2, lines(archive(OLD, 1)).size());
+        assertEquals(2, lines(archive(OLD, 2)).size());
+        assertEquals(0, new JdbcTemplate(dataSource).queryForObject(
+                "select count(*) from blocked_users_history", Integer.class));
+    }
+
+    @Test
+    void nothingIsWrittenWithinTheRetention() throws IOException {
+        block(1, "100000001", "recent", RECENT.atDay(1).atStartOfDay());
+
+        archiver.archive();
+
+        assertEquals(List.of(), files());
+        assertEquals(1, new JdbcTemplate(dataSource).queryForObject(
+                "select count(*) from blocked_users_history", Integer.class));
+    }
+
+    private void block(long id, String nationalId, String username, LocalDateTime createdAt) {
+        new JdbcTemplate(dataSource).update("insert into blocked_users_history values (?, ?, ?, ?, ?)",
+                id, nationalId, username, createdAt, createdAt.plusDays(1));
+    }
+
+    private static String archive(YearMonth month, long firstId) {
+        return String.format("blocked_users_history_%d_%02d_%d.csv.gz", month.getYear(), month.getMonthValue(),
+                firstId);
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private List<String> lines(String file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve(file)))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.exalt.training.blockedusers.snapshot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link BlockedSetStore#reconcile} brings a drifted store back to the database state.
+ */
+class BlockedSetStoreTest {
+    @TempDir
+    private Path directory;
+
+    private BlockedSetStore store;
+
+    @BeforeEach
+    void open() {
+        store = new BlockedSetStore(directory.toString(), 1_000);
+        store.load();
+        store.rebuild(() -> new int[]{1, 2, 3});
+    }
+
+    @AfterEach
+    void close() {
+        store.close();
+    }
+
+    @Test
+    void reconcileRepairsMissedChanges() {
+        store.update(2, false); // Unblock the database never saw
+        store.update(4, true); // Block the database never saw
+
+        assertEquals(4, store.reconcile(() -> new int[]{5, 3, 2}));
+
+        assertFalse(store.contains(1));
+        assertTrue(store.contains(2));
+        assertTrue(store.contains(3));
+        assertFalse(store.contains(4));
+        assertTrue(store.contains(5));
+        assertEquals(0, store.reconcile(() -> new int[]{2, 3, 5}));
+    }
+
+    @Test
+    void reloadedStoreIsNotReadyUntilReconciled() {
+        store.update(4, true);
+        store.close();
+        store = new BlockedSetStore(directory.toString(), 1_000);
+        store.load();
+
+        assertFalse(store.isReady());
+        assertEquals(2, store.reconcile(() -> new int[]{1, 2}));
+        assertTrue(store.isReady());
+        assertFalse(store.contains(3));
+        assertFalse(store.contains(4));
+    }
+
+    @Test
+    void reconcileLeavesAMatchingStoreAlone() {
+        store.update(4, true);
+
+        assertEquals(0, store.reconcile(() -> new int[]{4, 3, 2, 1}));
+        assertTrue(store.contains(4));
+    }
+}
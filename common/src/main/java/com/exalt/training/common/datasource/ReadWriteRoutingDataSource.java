@@ -0,0 +1,47 @@
+package com.exalt.training.common.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Routes connections of read-only transactions to the replica pool and everything else to the primary pool.
+ * <p>
+ * Only transactions explicitly declared {@code readOnly} are candidates; derived repository finders called on
+ * their own run without a transaction and stay on the primary, so read-then-save flows never read stale rows.
+ * The routing key is evaluated when a connection is actually needed, which is why this data source sits behind
+ * a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction manager asks for
+ * a connection before the read-only flag is published.
+ * </p>
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private final ReplicaReadPolicy policy; // Staleness policy for replica reads
+    private final boolean replicaAvailable; // Whether a separate replica pool is configured
+
+    /**
+     * Creates the routing data source.
+     *
+     * @param primary the primary pool.
+     * @param replica the replica pool, or null to serve read-only transactions from the primary.
+     * @param policy the staleness policy for replica reads.
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReplicaReadPolicy policy) {
+        this.policy = policy;
+        this.replicaAvailable = replica != null;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica != null ? replica : primary));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        return policy.route(replicaAvailable) == ReplicaReadPolicy.Route.REPLICA ? REPLICA : PRIMARY;
+    }
+}
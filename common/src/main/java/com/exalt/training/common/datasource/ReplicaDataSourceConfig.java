@@ -0,0 +1,82 @@
+package com.exalt.training.common.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Configuration class for the primary and replica connection pools of both services.
+ * The replica pool is created only when {@code app.datasource.replica.url} is set. Each pool publishes its own
+ * {@code hikaricp.*} metrics, tagged by pool name. The data source used by JPA is left to each service, which
+ * routes read-only transactions to the replica with {@link #readWriteRouting(DataSource, DataSource, ReplicaReadPolicy)}.
+ */
+@Configuration
+public class ReplicaDataSourceConfig {
+
+    /**
+     * Bean definition for the primary pool, configured by {@code spring.datasource.*}.
+     *
+     * @param properties the primary datasource properties.
+     * @return the primary pool.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /**
+     * Bean definition for the replica pool, configured by {@code app.datasource.replica.*}.
+     * Credentials and driver default to those of the primary.
+     *
+     * @param properties the primary datasource properties.
+     * @param url the replica JDBC URL.
+     * @param username the replica user, empty for the primary's.
+     * @param password the replica password, empty for the primary's.
+     * @return the replica pool.
+     */
+    @Bean
+    @ConditionalOnProperty("app.datasource.replica.url")
+    @ConfigurationProperties("app.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${app.datasource.replica.url}") String url,
+                                              @Value("${app.datasource.replica.username:}") String username,
+                                              @Value("${app.datasource.replica.password:}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url)
+                .username(username.isEmpty() ? properties.determineUsername() : username)
+                .password(password.isEmpty() ? properties.determinePassword() : password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * Creates the initialised data source routing read-only transactions to the replica.
+     * It must be placed behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, directly
+     * or below another routing data source, see {@link ReadWriteRoutingDataSource}.
+     *
+     * @param primary the primary pool.
+     * @param replica the replica pool, or null to serve read-only transactions from the primary.
+     * @param policy the staleness policy for replica reads.
+     * @return the routing data source.
+     */
+    public static ReadWriteRoutingDataSource readWriteRouting(DataSource primary, DataSource replica,
+                                                             ReplicaReadPolicy policy) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, policy);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+}
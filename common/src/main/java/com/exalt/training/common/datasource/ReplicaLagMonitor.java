@@ -0,0 +1,75 @@
+package com.exalt.training.common.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Periodically measures how far the PostgreSQL replica is behind the primary and reports it to the {@link ReplicaReadPolicy}.
+ * <p>
+ * Lag is zero while the replica has replayed everything it received, otherwise the age of the last replayed
+ * transaction. A failed measurement counts as unbounded lag. Replicas other than PostgreSQL are not monitored.
+ * </p>
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("app.datasource.replica.url")
+public class ReplicaLagMonitor {
+    private static final String LAG_QUERY = "select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0"
+            + " else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    private final JdbcTemplate replica; // Queries the replica directly, bypassing routing
+    private final ReplicaReadPolicy policy; // Receives the measured lag
+    private final boolean postgres; // Whether the replica supports the lag query
+    private volatile double lagSeconds; // Last measured lag, published as a gauge
+
+    public ReplicaLagMonitor(@Qualifier("replicaDataSource") DataSource replicaDataSource, ReplicaReadPolicy policy,
+                             @Value("${app.meter-prefix}") String meterPrefix, MeterRegistry registry) {
+        this.replica = new JdbcTemplate(replicaDataSource);
+        this.policy = policy;
+        this.postgres = isPostgres(replicaDataSource);
+        Gauge.builder(meterPrefix + ".datasource.replica.lag", this, monitor -> monitor.lagSeconds)
+                .description("Replication lag of the read replica")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Measures the replica lag.
+     */
+    @Scheduled(fixedDelayString = "${app.datasource.replica.lag-check-interval}")
+    public void check() {
+        if (!postgres) {
+            return;
+        }
+        try {
+            Double lag = replica.queryForObject(LAG_QUERY, Double.class);
+            lagSeconds = lag != null ? lag : 0;
+            policy.replicaLag(Duration.ofMillis((long) (lagSeconds * 1000)));
+        } catch (RuntimeException ex) {
+            lagSeconds = Double.POSITIVE_INFINITY;
+            policy.replicaLag(null);
+            log.warn("Failed to measure replica lag, reading from the primary: {}", ex.getMessage());
+        }
+    }
+
+    private static boolean isPostgres(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            return "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+        } catch (SQLException ex) {
+            log.warn("Failed to inspect the replica, assuming PostgreSQL: {}", ex.getMessage());
+            return true;
+        }
+    }
+}
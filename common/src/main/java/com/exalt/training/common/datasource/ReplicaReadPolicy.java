@@ -0,0 +1,118 @@
+package com.exalt.training.common.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a read-only transaction may be served by the replica, keeping staleness bounded.
+ * <p>
+ * Writes are recorded per national ID; for {@code app.datasource.replica.max-staleness} after a write, reads of
+ * that ID made inside {@link #readYourWrites(String)} go to the primary so the change is seen at once.
+ * When the {@link ReplicaLagMonitor} reports more lag than the same bound, every read goes to the primary.
+ * </p>
+ */
+@Component
+public class ReplicaReadPolicy {
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    /**
+     * Route chosen for a read-only transaction, with the reason when it is the primary.
+     */
+    public enum Route {
+        REPLICA, NO_REPLICA, READ_YOUR_WRITES, REPLICA_LAG
+    }
+
+    /**
+     * Scope of a {@link #readYourWrites(String)} call; closing it restores the previous routing.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Scope NO_OP = () -> {
+    };
+
+    private final long maxStalenessNanos; // Longest tolerated replica staleness
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>(); // Last write time per national ID
+    private final ThreadLocal<Boolean> primaryForced = new ThreadLocal<>(); // Set while a recent writer reads
+    private final Counter[] reads = new Counter[Route.values().length]; // Routed read-only transactions, by route
+    private volatile boolean replicaLagging; // Whether the replica is further behind than allowed
+
+    public ReplicaReadPolicy(@Value("${app.meter-prefix}") String meterPrefix,
+                             @Value("${app.datasource.replica.max-staleness}") Duration maxStaleness,
+                             MeterRegistry registry) {
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        for (Route route : Route.values()) {
+            reads[route.ordinal()] = Counter.builder(meterPrefix + ".datasource.reads")
+                    .description("Read-only transactions by the datasource they were routed to")
+                    .tag("datasource", route == Route.REPLICA ? "replica" : "primary")
+                    .tag("reason", route.name().toLowerCase())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Records a write, so reads of the national ID go to the primary for the staleness bound.
+     *
+     * @param nationalId the national ID written.
+     */
+    public void recordWrite(String nationalId) {
+        long now = System.nanoTime();
+        recentWrites.put(nationalId, now);
+        if (recentWrites.size() > PURGE_THRESHOLD) {
+            recentWrites.values().removeIf(written -> now - written > maxStalenessNanos);
+        }
+    }
+
+    /**
+     * Opens a scope in which read-only transactions on this thread use the primary if the ID was written recently.
+     *
+     * @param nationalId the national ID being read.
+     * @return the scope, to be closed once the read is done.
+     */
+    public Scope readYourWrites(String nationalId) {
+        Long written = recentWrites.get(nationalId);
+        if (written == null || System.nanoTime() - written > maxStalenessNanos || primaryForced.get() != null) {
+            return NO_OP;
+        }
+        primaryForced.set(Boolean.TRUE);
+        return primaryForced::remove;
+    }
+
+    /**
+     * Chooses the datasource for the read-only transaction about to get its connection, and counts the choice.
+     *
+     * @param replicaAvailable whether a replica is configured.
+     * @return the route.
+     */
+    Route route(boolean replicaAvailable) {
+        Route route;
+        if (!replicaAvailable) {
+            route = Route.NO_REPLICA;
+        } else if (primaryForced.get() != null) {
+            route = Route.READ_YOUR_WRITES;
+        } else if (replicaLagging) {
+            route = Route.REPLICA_LAG;
+        } else {
+            route = Route.REPLICA;
+        }
+        reads[route.ordinal()].increment();
+        return route;
+    }
+
+    /**
+     * Updates the replica lag measured by the {@link ReplicaLagMonitor}.
+     *
+     * @param lag the measured lag, or null if it could not be measured.
+     */
+    void replicaLag(Duration lag) {
+        replicaLagging = lag == null || lag.toNanos() > maxStalenessNanos;
+    }
+}
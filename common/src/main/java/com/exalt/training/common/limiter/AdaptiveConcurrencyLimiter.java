@@ -0,0 +1,141 @@
+package com.exalt.training.common.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit that adapts to measured latency, following the gradient algorithm.
+ * <p>
+ * Request latencies are averaged over short windows and compared with a baseline: the lowest window average
+ * seen, which slowly drifts towards the recent averages so a lasting change of workload becomes the new normal.
+ * While a window's latency stays within {@code TOLERANCE} times the baseline the limit grows by its square root;
+ * when it rises above that, for example because the database slowed down, the limit shrinks in proportion.
+ * Windows in which the service was using less than half of the limit are ignored, since their latency says nothing
+ * about the limit. Requests beyond the limit are rejected right away instead of queueing.
+ * </p>
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1); // Minimum duration of a window
+    private static final int WINDOW_SAMPLES = 10; // Minimum requests in a window
+    private static final int BASELINE_DRIFT = 600; // Windows for the baseline to follow a latency increase
+    private static final double TOLERANCE = 1.5; // Latency increase tolerated before the limit shrinks
+    private static final double SMOOTHING = 0.2; // Weight of each new limit estimate
+
+    private final LongSupplier nanoTime; // Monotonic time, for the windows
+    private final int minLimit; // Lower bound of the limit
+    private final int maxLimit; // Upper bound of the limit
+    private final AtomicInteger inflight = new AtomicInteger(); // Requests being processed
+    private final Counter rejected; // Requests rejected over the limit
+    private volatile int limit; // Current limit
+    private double estimatedLimit; // Unrounded limit, guarded by this
+    private double baselineRtt; // Baseline latency in nanoseconds, guarded by this
+    private long windowStart; // Start of the current window, guarded by this
+    private long windowRttSum; // Latency sum of the current window, guarded by this
+    private int windowSamples; // Requests in the current window, guarded by this
+    private int windowMaxInflight; // Highest concurrency seen in the current window, guarded by this
+
+    public AdaptiveConcurrencyLimiter(String meterPrefix, int initialLimit, int minLimit, int maxLimit,
+                                      MeterRegistry registry) {
+        this(meterPrefix, initialLimit, minLimit, maxLimit, registry, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(String meterPrefix, int initialLimit, int minLimit, int maxLimit,
+                               MeterRegistry registry, LongSupplier nanoTime) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.nanoTime = nanoTime;
+        this.windowStart = nanoTime.getAsLong();
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.rejected = Counter.builder(meterPrefix + ".concurrency.rejected")
+                .description("Requests rejected because the concurrency limit was reached")
+                .register(registry);
+        Gauge.builder(meterPrefix + ".concurrency.limit", this, AdaptiveConcurrencyLimiter::limit)
+                .description("Current adaptive concurrency limit")
+                .register(registry);
+        Gauge.builder(meterPrefix + ".concurrency.inflight", inflight, AtomicInteger::get)
+                .description("Requests being processed")
+                .register(registry);
+    }
+
+    /**
+     * Takes a slot if the limit allows it. Every successful call must be followed by {@link #release}.
+     *
+     * @return whether the request may run.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Frees the slot of a finished request and records its latency.
+     *
+     * @param rttNanos how long the request took, in nanoseconds.
+     */
+    public void release(long rttNanos) {
+        int current = inflight.getAndDecrement();
+        sample(rttNanos, current);
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return the limit.
+     */
+    public int limit() {
+        return limit;
+    }
+
+    private synchronized void sample(long rttNanos, int concurrency) {
+        windowRttSum += rttNanos;
+        windowSamples++;
+        windowMaxInflight = Math.max(windowMaxInflight, concurrency);
+        long now = nanoTime.getAsLong();
+        if (windowSamples < WINDOW_SAMPLES || now - windowStart < WINDOW_NANOS) {
+            return;
+        }
+        double shortRtt = (double) windowRttSum / windowSamples;
+        int maxInflight = windowMaxInflight;
+        windowStart = now;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInflight = 0;
+        update(shortRtt, maxInflight);
+    }
+
+    /**
+     * Folds one window into the baseline and, unless the service was mostly idle, moves the limit
+     * towards {@code limit * gradient + sqrt(limit)}, where the gradient is the baseline latency times
+     * {@code TOLERANCE} over the window's latency, kept between 0.5 and 1.
+     */
+    private void update(double shortRtt, int maxInflight) {
+        baselineRtt = baselineRtt == 0 || shortRtt < baselineRtt
+                ? shortRtt
+                : baselineRtt + (shortRtt - baselineRtt) / BASELINE_DRIFT;
+        if (maxInflight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+                estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,55 @@
+package com.exalt.training.common.limiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Configuration class for the adaptive concurrency limit.
+ * The limit filter runs after the HTTP observation filter, so rejected requests still show up in
+ * {@code http.server.requests}, and in user-service right after the admission filter, so requests are ordered by rule
+ * before the limit decides whether they run. The measured latency covers everything from Spring Security to the database.
+ * Calls over the binary BLOCKED-USERS protocol are bounded by its worker pool instead.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.concurrency-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitConfig {
+
+    /**
+     * Bean definition for the adaptive concurrency limiter.
+     *
+     * @param meterPrefix the prefix of the limiter's meter names.
+     * @param initialLimit the limit to start from.
+     * @param minLimit the lowest the limit may fall.
+     * @param maxLimit the highest the limit may rise.
+     * @param registry the meter registry.
+     * @return the limiter.
+     */
+    @Bean
+    public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(
+            @Value("${app.meter-prefix}") String meterPrefix,
+            @Value("${app.concurrency-limit.initial-limit}") int initialLimit,
+            @Value("${app.concurrency-limit.min-limit}") int minLimit,
+            @Value("${app.concurrency-limit.max-limit}") int maxLimit,
+            MeterRegistry registry) {
+        return new AdaptiveConcurrencyLimiter(meterPrefix, initialLimit, minLimit, maxLimit, registry);
+    }
+
+    /**
+     * Bean definition registering the concurrency limit filter.
+     *
+     * @param limiter the limiter.
+     * @return the filter registration.
+     */
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(AdaptiveConcurrencyLimiter limiter) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(limiter));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 20);
+        return registration;
+    }
+}
@@ -0,0 +1,49 @@
+package com.exalt.training.common.rpc;
+
+/**
+ * Wire format of the binary BLOCKED-USERS protocol.
+ * <p>
+ * A connection starts with the client sending {@link #MAGIC}. After that both sides exchange frames of
+ * {@code int length | long requestId | byte code | payload}, where the length counts every byte after itself
+ * and the code is an operation in requests and a status in responses. Responses carry the request ID of the
+ * request they answer and may arrive in any order, so one connection carries many concurrent calls.
+ * Strings are written with {@link java.io.DataOutput#writeUTF}.
+ * </p>
+ * <ul>
+ *     <li>{@link #IS_BLOCKED}: national ID; answered with one byte, 1 if the user is blocked.</li>
+ *     <li>{@link #BLOCK}: national ID and user name; answered with an empty payload.</li>
+ *     <li>{@link #UNBLOCK}: national ID; answered with an empty payload.</li>
+ * </ul>
+ * Shared by the client in user-service and the server in blocked-users.
+ */
+public final class RpcFrames {
+    public static final int MAGIC = 0x424C4B31; // "BLK1", protocol identifier and version
+    public static final int HEADER_LENGTH = Long.BYTES + 1; // Request ID and code
+    public static final int MAX_FRAME_LENGTH = 4096; // Largest accepted frame, excluding the length field
+
+    public static final byte IS_BLOCKED = 1;
+    public static final byte BLOCK = 2;
+    public static final byte UNBLOCK = 3;
+
+    public static final byte OK = 0; // Call succeeded
+    public static final byte REJECTED = 1; // Call refused by a business rule, payload is the message
+    public static final byte ERROR = 2; // Call failed, payload is the message
+
+    private RpcFrames() {
+    }
+
+    /**
+     * Returns the name of an operation, as used in metric tags.
+     *
+     * @param operation the operation code.
+     * @return the operation name.
+     */
+    public static String operationName(byte operation) {
+        return switch (operation) {
+            case IS_BLOCKED -> "is_blocked";
+            case BLOCK -> "block";
+            case UNBLOCK -> "unblock";
+            default -> "unknown";
+        };
+    }
+}
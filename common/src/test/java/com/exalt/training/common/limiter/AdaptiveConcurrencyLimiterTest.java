@@ -0,0 +1,116 @@
+package com.exalt.training.common.limiter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the limit grows while latency stays at its baseline, shrinks to its lower bound when latency rises,
+ * ignores windows in which the service was mostly idle, and that requests over the limit are rejected right away.
+ * Time is driven by the test, one second per window.
+ */
+class AdaptiveConcurrencyLimiterTest {
+    private static final int INITIAL = 20;
+    private static final int MIN = 5;
+    private static final int MAX = 100;
+
+    private SimpleMeterRegistry registry;
+    private long now;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void createLimiter() {
+        registry = new SimpleMeterRegistry();
+        limiter = new AdaptiveConcurrencyLimiter("test", INITIAL, MIN, MAX, registry, () -> now);
+    }
+
+    @Test
+    void limitGrowsUpToItsBoundWhileLatencyIsSteady() {
+        window(10, INITIAL);
+        window(10, INITIAL);
+        assertTrue(limiter.limit() > INITIAL, "limit " + limiter.limit());
+
+        for (int i = 0; i < 200; i++) {
+            window(10, limiter.limit());
+        }
+        assertEquals(MAX, limiter.limit());
+    }
+
+    @Test
+    void limitShrinksToItsBoundWhenLatencyRises() {
+        for (int i = 0; i < 10; i++) {
+            window(10, limiter.limit());
+        }
+        int beforeSlowdown = limiter.limit();
+
+        window(50, limiter.limit());
+        assertTrue(limiter.limit() < beforeSlowdown, "limit " + limiter.limit());
+
+        for (int i = 0; i < 100; i++) {
+            window(50, limiter.limit());
+        }
+        assertEquals(MIN, limiter.limit());
+    }
+
+    @Test
+    void mostlyIdleWindowsLeaveTheLimitAlone() {
+        window(10, INITIAL);
+        int limit = limiter.limit();
+
+        for (int i = 0; i < 20; i++) {
+            window(50, 1);
+        }
+
+        assertEquals(limit, limiter.limit());
+    }
+
+    @Test
+    void requestsOverTheLimitAreRejected() {
+        for (int i = 0; i < INITIAL; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, registry.get("test.concurrency.rejected").counter().count());
+        assertEquals(INITIAL, registry.get("test.concurrency.inflight").gauge().value());
+
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void inconsistentLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveConcurrencyLimiter("test", 10, 0, 20, registry));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveConcurrencyLimiter("test", 10, 11, 20, registry));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdaptiveConcurrencyLimiter("test", 30, 1, 20, registry));
+    }
+
+    /**
+     * Runs one window of at least ten requests, {@code concurrency} at a time, that each took {@code rttMillis}.
+     * The window's second elapses just before its last request finishes, which closes it.
+     */
+    private void window(long rttMillis, int concurrency) {
+        int rounds = (10 + concurrency - 1) / concurrency;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < concurrency; i++) {
+                assertTrue(limiter.tryAcquire());
+            }
+            for (int i = 0; i < concurrency; i++) {
+                if (round == rounds - 1 && i == concurrency - 1) {
+                    now += TimeUnit.SECONDS.toNanos(1);
+                }
+                limiter.release(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+            }
+        }
+    }
+}
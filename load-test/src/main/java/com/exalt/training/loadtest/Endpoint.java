@@ -0,0 +1,12 @@
+package com.exalt.training.loadtest;
+
+/**
+ * Operations driven by the load generator, named after the keys used in the {@code loadtest.mix} setting.
+ */
+public enum Endpoint {
+    SIGNUP, // POST /exalt/training/auth/signup for a new user
+    SIGNIN, // POST /exalt/training/auth/signin for an existing user
+    CREDIT, // POST /exalt/training/user/requestCredit/{nationalId}
+    DEBIT, // POST /exalt/training/user/requestDebit/{nationalId}
+    BALANCE // GET /exalt/training/user/checkBalance/{nationalId}
+}
@@ -0,0 +1,210 @@
+package com.exalt.training.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Open-model load generator: requests are issued at a constant arrival rate whatever the response times.
+ * <p>
+ * Each latency is measured from the request's intended start time rather than from when it was actually
+ * sent, so a stalled system is charged for every request it delayed and the percentiles do not suffer
+ * from coordinated omission. Each seeded account keeps the caller token of its last sign-in and sends it with
+ * its requests, so user-service admits them under the account's rule.
+ * </p>
+ */
+public final class LoadGenerator {
+    private static final String PASSWORD = "loadtest-password";
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int SEED_ATTEMPTS = 5; // Tries of each seeding request
+    private static final String CALLER_TOKEN_HEADER = "X-Caller-Token"; // Sign-in token sent back for admission
+
+    private final HttpClient client; // Shared asynchronous HTTP client
+    private final String baseUrl; // Base URL of user-service
+    private final int users; // Number of seeded accounts
+    private final Endpoint[] schedule; // Endpoints repeated by weight, sampled uniformly
+    private final Map<Endpoint, Recorder> recorders = new EnumMap<>(Endpoint.class); // Latency recorders, in microseconds
+    private final Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class); // Failed requests per endpoint
+    private final AtomicReferenceArray<String> tokens; // Caller token of each seeded account, null before sign-in
+    private final AtomicInteger nextNewUser; // Index of the next account created by SIGNUP
+    private final AtomicInteger outstanding = new AtomicInteger(); // Requests sent but not yet completed
+    private volatile boolean recording; // Whether completions are recorded
+
+    public LoadGenerator(HttpClient client, String baseUrl, int users, Map<Endpoint, Integer> mix) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.users = users;
+        this.tokens = new AtomicReferenceArray<>(users);
+        this.nextNewUser = new AtomicInteger(users);
+        this.schedule = mix.entrySet().stream()
+                .flatMap(entry -> Stream.generate(entry::getKey).limit(entry.getValue()))
+                .toArray(Endpoint[]::new);
+        for (Endpoint endpoint : Endpoint.values()) {
+            recorders.put(endpoint, new Recorder(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(endpoint, new LongAdder());
+        }
+    }
+
+    /**
+     * Signs up and signs in the seeded accounts, one at a time and unrecorded. A request that fails is sent again,
+     * up to {@value #SEED_ATTEMPTS} times, so failures injected on the BLOCKED-USERS calls do not stop the run.
+     *
+     * @throws IOException          if an account cannot be created or signed in.
+     * @throws InterruptedException if interrupted.
+     */
+    public void seedUsers() throws IOException, InterruptedException {
+        for (int i = 0; i < users; i++) {
+            for (HttpRequest request : new HttpRequest[]{signUp(i), signIn(i)}) {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                for (int attempt = 1; attempt < SEED_ATTEMPTS && response.statusCode() >= 300; attempt++) {
+                    response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                }
+                if (response.statusCode() >= 300) {
+                    throw new IOException("Seeding user " + i + " failed with status " + response.statusCode()
+                            + " on " + request.uri());
+                }
+                rememberToken(i, response);
+            }
+        }
+    }
+
+    /**
+     * Issues requests at the given rate for the given duration, then waits for the outstanding ones.
+     *
+     * @param ratePerSecond the arrival rate.
+     * @param duration      how long to generate load.
+     * @param record        whether latencies and errors are recorded.
+     */
+    public void run(int ratePerSecond, Duration duration, boolean record) {
+        for (Recorder recorder : recorders.values()) {
+            recorder.reset();
+        }
+        errors.values().forEach(LongAdder::reset);
+        recording = record;
+        long interval = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long intended = start; intended < end; intended += interval) {
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            dispatch(schedule[ThreadLocalRandom.current().nextInt(schedule.length)], intended);
+        }
+        long drainDeadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        recording = false;
+    }
+
+    /**
+     * Returns the latency histogram recorded for an endpoint since the last run started.
+     *
+     * @param endpoint the endpoint.
+     * @return latencies in microseconds.
+     */
+    public Histogram histogram(Endpoint endpoint) {
+        return recorders.get(endpoint).getIntervalHistogram();
+    }
+
+    /**
+     * Returns the number of failed requests recorded for an endpoint since the last run started.
+     *
+     * @param endpoint the endpoint.
+     * @return requests that failed or returned a status of 400 or above.
+     */
+    public long errors(Endpoint endpoint) {
+        return errors.get(endpoint).sum();
+    }
+
+    private void dispatch(Endpoint endpoint, long intendedStart) {
+        int existing = ThreadLocalRandom.current().nextInt(users);
+        HttpRequest request = switch (endpoint) {
+            case SIGNUP -> signUp(nextNewUser.getAndIncrement());
+            case SIGNIN -> signIn(existing);
+            case CREDIT -> post("/exalt/training/user/requestCredit/" + nationalId(existing), "{\"amount\":10.0}",
+                    tokens.get(existing));
+            case DEBIT -> post("/exalt/training/user/requestDebit/" + nationalId(existing), "{\"amount\":10.0}",
+                    tokens.get(existing));
+            case BALANCE -> withToken(HttpRequest.newBuilder(URI.create(baseUrl + "/exalt/training/user/checkBalance/"
+                    + nationalId(existing))), tokens.get(existing)).timeout(REQUEST_TIMEOUT).GET().build();
+        };
+        outstanding.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            if (endpoint == Endpoint.SIGNIN && response != null) {
+                rememberToken(existing, response);
+            }
+            long latencyMicros = (System.nanoTime() - intendedStart) / 1_000;
+            if (recording) {
+                recorders.get(endpoint).recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+                if (failure != null || response.statusCode() >= 400) {
+                    errors.get(endpoint).increment();
+                }
+            }
+            outstanding.decrementAndGet();
+        });
+    }
+
+    private HttpRequest signUp(int i) {
+        String rule = i % 10 == 0 ? "GOLDEN_SUBSCRIPTION" : i % 3 == 0 ? "SHABAB" : "REGULAR";
+        return post("/exalt/training/auth/signup", String.format(
+                "{\"nationalId\":\"%s\",\"username\":\"loaduser%d\",\"email\":\"%s\",\"password\":\"%s\","
+                        + "\"phoneNumber\":\"0599000000\",\"rule\":\"%s\",\"balance\":1000000000.0}",
+                nationalId(i), i, email(i), PASSWORD, rule));
+    }
+
+    private HttpRequest signIn(int i) {
+        return post("/exalt/training/auth/signin",
+                String.format("{\"email\":\"%s\",\"password\":\"%s\"}", email(i), PASSWORD));
+    }
+
+    private HttpRequest post(String path, String json) {
+        return post(path, json, null);
+    }
+
+    private HttpRequest post(String path, String json, String token) {
+        return withToken(HttpRequest.newBuilder(URI.create(baseUrl + path)), token)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static HttpRequest.Builder withToken(HttpRequest.Builder builder, String token) {
+        return token == null ? builder : builder.header(CALLER_TOKEN_HEADER, token);
+    }
+
+    /**
+     * Keeps the caller token returned by a successful sign-in of a seeded account.
+     */
+    private void rememberToken(int i, HttpResponse<?> response) {
+        if (response.statusCode() < 300) {
+            response.headers().firstValue(CALLER_TOKEN_HEADER).ifPresent(token -> tokens.set(i, token));
+        }
+    }
+
+    private static String nationalId(int i) {
+        return Integer.toString(200_000_000 + i);
+    }
+
+    private static String email(int i) {
+        return "loaduser" + i + "@loadtest.exalt.com";
+    }
+}
@@ -0,0 +1,138 @@
+package com.exalt.training.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Entry point of the end-to-end load test.
+ * <p>
+ * Starts blocked-users and user-service in separate JVMs with their {@code perf} profile: in-memory H2 databases, with
+ * user-service resolving BLOCKED-USERS, and its binary protocol port, through a static service list instead of Eureka.
+ * Extra properties of each service, such as injected latency and failures on the BLOCKED-USERS calls, are passed
+ * through from {@code loadtest.user-service.properties} and {@code loadtest.blocked-users.properties}. Once both
+ * report readiness, which they do after their own JIT warm-up, it runs an unrecorded warm-up followed
+ * by the recorded phase and prints per-endpoint latency percentiles and error rates. Full percentile distributions are written as {@code <endpoint>.hgrm} files.
+ * </p>
+ */
+public final class LoadTest {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+    private static final String READINESS_PATH = "/actuator/health/readiness"; // Answers 503 until the warm-up is done
+    private static final String DATABASE_OPTIONS = ";DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String PERF_PROFILE = "spring.profiles.active=perf";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        Files.createDirectories(config.outputDirectory());
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        int rpcPort = ServiceProcess.freePort();
+
+        try (ServiceProcess blockedUsers = ServiceProcess.start("blocked-users",
+                "com.exalt.training.blockedusers.BlockedUsers", config.blockedUsersClasspath(),
+                config.serviceJvmArgs(), config.outputDirectory(),
+                perfProperties(config.blockedUsersProperties(), List.of(
+                        "app.snapshot.directory=" + config.outputDirectory().resolve("blocked-users-snapshot"),
+                        "app.rpc.port=" + rpcPort)))) {
+            blockedUsers.awaitFirstSuccess(client, READINESS_PATH, STARTUP_TIMEOUT);
+
+            try (ServiceProcess userService = ServiceProcess.start("user-service",
+                    "com.exalt.training.users.UserService", config.userServiceClasspath(),
+                    config.serviceJvmArgs(), config.outputDirectory(),
+                    perfProperties(config.userServiceProperties(), List.of(
+                            "app.audit.directory=" + config.outputDirectory().resolve("user-service-audit"),
+                            "spring.cloud.discovery.client.simple.instances.BLOCKED-USERS[0].uri=" + blockedUsers.baseUrl(),
+                            "spring.cloud.discovery.client.simple.instances.BLOCKED-USERS[0].metadata.rpc-port=" + rpcPort)))) {
+                userService.awaitFirstSuccess(client, READINESS_PATH, STARTUP_TIMEOUT);
+
+                LoadGenerator generator = new LoadGenerator(client, userService.baseUrl(), config.users(), config.mix());
+                System.out.printf("Seeding %d users%n", config.users());
+                generator.seedUsers();
+                System.out.printf("Warming up for %s at %d req/s%n", config.warmup(), config.rate());
+                generator.run(config.rate(), config.warmup(), false);
+                System.out.printf("Measuring for %s at %d req/s%n", config.duration(), config.rate());
+                generator.run(config.rate(), config.duration(), true);
+                report(generator, config);
+            }
+        }
+    }
+
+    /**
+     * Returns the properties of a service under test: its {@code perf} profile, the settings of this run, and the
+     * extra properties of the service. A setting of the run is left out when an extra property has the same key,
+     * since a key given twice on the command line would be bound as a list.
+     *
+     * @param extra the extra properties of the service.
+     * @param run   the settings of this run.
+     * @return the properties, as {@code key=value}.
+     */
+    private static List<String> perfProperties(List<String> extra, List<String> run) {
+        List<String> properties = new ArrayList<>();
+        properties.add(PERF_PROFILE);
+        Set<String> overridden = extra.stream()
+                .map(property -> property.substring(0, property.indexOf('=')))
+                .collect(Collectors.toSet());
+        run.stream()
+                .filter(property -> !overridden.contains(property.substring(0, property.indexOf('='))))
+                .forEach(properties::add);
+        properties.addAll(extra);
+        return properties;
+    }
+
+    /**
+     * Returns the properties shared by the services under test without a profile: an in-memory H2 database and
+     * no Eureka. Used where the active profiles are fixed at build time, as with Spring AOT.
+     *
+     * @param database the H2 database name.
+     * @param extra    service-specific properties.
+     * @return the properties, as {@code key=value}.
+     */
+    static List<String> serviceProperties(String database, List<String> extra) {
+        List<String> properties = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:mem:" + database + DATABASE_OPTIONS,
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "spring.jpa.show-sql=false",
+                "eureka.client.enabled=false"));
+        properties.addAll(extra);
+        return properties;
+    }
+
+    private static void report(LoadGenerator generator, LoadTestConfig config) throws IOException {
+        double seconds = config.duration().toMillis() / 1000.0;
+        System.out.printf("%n%-8s %9s %8s %8s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors%", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Endpoint endpoint : config.mix().keySet()) {
+            Histogram histogram = generator.histogram(endpoint);
+            long count = histogram.getTotalCount();
+            double errorRate = count == 0 ? 0 : 100.0 * generator.errors(endpoint) / count;
+            System.out.printf("%-8s %9d %8.1f %8.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    endpoint.name().toLowerCase(), count, count / seconds, errorRate,
+                    millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                    histogram.getMaxValue() / 1000.0);
+            try (PrintStream out = new PrintStream(config.outputDirectory()
+                    .resolve(endpoint.name().toLowerCase() + ".hgrm").toFile())) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        System.out.printf("%nPercentile distributions (in ms) written to %s%n", config.outputDirectory());
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
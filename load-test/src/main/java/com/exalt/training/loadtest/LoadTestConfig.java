@@ -0,0 +1,103 @@
+package com.exalt.training.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Load test settings, read from {@code loadtest.*} system properties.
+ *
+ * @param rate            target arrival rate in requests per second, held constant regardless of response times.
+ * @param warmup          duration of the unrecorded warm-up phase.
+ * @param duration        duration of the recorded phase.
+ * @param users           number of accounts signed up and signed in before the run.
+ * @param mix             relative weight of each endpoint.
+ * @param serviceJvmArgs  extra JVM arguments for both service processes.
+ * @param userServiceClasspath  runtime classpath of user-service.
+ * @param blockedUsersClasspath runtime classpath of blocked-users.
+ * @param userServiceProperties extra Spring properties of user-service, e.g. the transport and injected faults of its
+ *                              BLOCKED-USERS calls.
+ * @param blockedUsersProperties extra Spring properties of blocked-users.
+ * @param outputDirectory directory receiving service logs and histogram files.
+ */
+public record LoadTestConfig(int rate, Duration warmup, Duration duration, int users, Map<Endpoint, Integer> mix,
+                             String serviceJvmArgs, String userServiceClasspath, String blockedUsersClasspath,
+                             List<String> userServiceProperties, List<String> blockedUsersProperties,
+                             Path outputDirectory) {
+
+    /**
+     * Reads the settings from system properties, applying defaults where unset.
+     *
+     * @return the settings.
+     */
+    public static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig(
+                Integer.getInteger("loadtest.rate", 200),
+                Duration.ofSeconds(Long.getLong("loadtest.warmup-seconds", 30)),
+                Duration.ofSeconds(Long.getLong("loadtest.duration-seconds", 60)),
+                Integer.getInteger("loadtest.users", 200),
+                parseMix(System.getProperty("loadtest.mix", "signup:5,signin:10,credit:25,debit:25,balance:35")),
+                System.getProperty("loadtest.service-jvm-args", "-Xmx512m"),
+                required("loadtest.user-service.classpath"),
+                required("loadtest.blocked-users.classpath"),
+                parseProperties(System.getProperty("loadtest.user-service.properties", "")),
+                parseProperties(System.getProperty("loadtest.blocked-users.properties", "")),
+                Paths.get(System.getProperty("loadtest.output-directory", "build/load-test")));
+    }
+
+    /**
+     * Parses a mix such as {@code signin:10,balance:90}.
+     *
+     * @param value the mix setting.
+     * @return the weight of each endpoint listed.
+     */
+    static Map<Endpoint, Integer> parseMix(String value) {
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        for (String part : value.split(",")) {
+            String[] entry = part.trim().split(":");
+            if (entry.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry: " + part);
+            }
+            int weight = Integer.parseInt(entry[1].trim());
+            if (weight > 0) {
+                mix.put(Endpoint.valueOf(entry[0].trim().toUpperCase(Locale.ROOT)), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("Mix has no endpoint with a positive weight: " + value);
+        }
+        return mix;
+    }
+
+    /**
+     * Parses space-separated Spring properties such as {@code app.blocked-users.transport=in-process
+     * app.blocked-users.faults.latency=PT0.005S}.
+     *
+     * @param value the properties setting.
+     * @return the properties, as {@code key=value}.
+     */
+    static List<String> parseProperties(String value) {
+        List<String> properties = Arrays.stream(value.trim().split("\\s+"))
+                .filter(property -> !property.isEmpty())
+                .toList();
+        for (String property : properties) {
+            if (property.indexOf('=') <= 0) {
+                throw new IllegalArgumentException("Invalid property, expected key=value: " + property);
+            }
+        }
+        return properties;
+    }
+
+    private static String required(String name) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalStateException("Missing system property " + name + "; run through `gradle :load-test:loadTest`");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,138 @@
+package com.exalt.training.loadtest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A service started in its own JVM for the duration of the load test.
+ */
+public final class ServiceProcess implements AutoCloseable {
+    private final String name; // Service name, used for the log file
+    private final int port; // HTTP port the service listens on
+    private final Process process; // The running JVM
+    private final long startNanos; // When the JVM was launched
+
+    private ServiceProcess(String name, int port, Process process, long startNanos) {
+        this.name = name;
+        this.port = port;
+        this.process = process;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Starts a Spring Boot service on a free port, logging to {@code <outputDirectory>/<name>.log}.
+     *
+     * @param name            the service name.
+     * @param mainClass       the application class.
+     * @param classpath       the runtime classpath of the service.
+     * @param jvmArgs         extra JVM arguments, space separated.
+     * @param outputDirectory directory receiving the log file.
+     * @param properties      Spring properties passed as {@code --key=value} arguments.
+     * @return the started process.
+     * @throws IOException if the process cannot be started.
+     */
+    public static ServiceProcess start(String name, String mainClass, String classpath, String jvmArgs,
+                                       Path outputDirectory, List<String> properties) throws IOException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (!jvmArgs.isBlank()) {
+            command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+        }
+        command.addAll(List.of("-cp", classpath, mainClass, "--server.port=" + port));
+        properties.forEach(property -> command.add("--" + property));
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(outputDirectory.resolve(name + ".log").toFile());
+        long startNanos = System.nanoTime();
+        return new ServiceProcess(name, port, builder.start(), startNanos);
+    }
+
+    /**
+     * Waits for the first response to the given path that is not a server error, polling every few milliseconds.
+     *
+     * @param client  the HTTP client.
+     * @param path    the path to request.
+     * @param timeout how long to wait.
+     * @return the time from launching the JVM to that response.
+     * @throws IOException          if the process exits or does not answer in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Duration awaitFirstSuccess(HttpClient client, String path, Duration timeout)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl() + path)).timeout(Duration.ofSeconds(5)).build();
+        long deadline = startNanos + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException(name + " exited with code " + process.exitValue() + ", see " + name + ".log");
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 500) {
+                    return Duration.ofNanos(System.nanoTime() - startNanos);
+                }
+            } catch (IOException ex) {
+                // Not listening yet
+            }
+            Thread.sleep(10);
+        }
+        throw new IOException(name + " did not answer successfully within " + timeout);
+    }
+
+    /**
+     * Waits for the process to exit on its own, as a training run does.
+     *
+     * @param timeout how long to wait.
+     * @return the exit code.
+     * @throws IOException          if the process is still running after the timeout.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public int awaitExit(Duration timeout) throws IOException, InterruptedException {
+        if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IOException(name + " did not exit within " + timeout);
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * Returns the base URL of the service.
+     *
+     * @return the URL, without a trailing slash.
+     */
+    public String baseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            process.waitFor();
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a port that was free a moment ago.
+     *
+     * @return the port.
+     * @throws IOException if no port can be bound.
+     */
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.exalt.training.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long each service takes from JVM launch to its first successful request.
+ * <p>
+ * Every service is started alternately from its plain runtime classpath (the current build) and from its
+ * extracted boot jar with Spring AOT and an AppCDS archive. The archive is produced by a training run of the
+ * extracted jar under the same classpath and settings before measuring. Services run against in-memory H2
+ * databases with Eureka registration, fetching and the JIT warm-up turned off. Settings are read from
+ * {@code startup.*} system properties, which the {@code startupBenchmark} Gradle task fills in.
+ * </p>
+ */
+public final class StartupBenchmark {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+    private static final List<String> STANDALONE = List.of(
+            "eureka.client.register-with-eureka=false",
+            "eureka.client.fetch-registry=false",
+            "app.warmup.enabled=false");
+
+    /**
+     * A service under test.
+     *
+     * @param name       the service name, matching its Gradle project.
+     * @param mainClass  the application class.
+     * @param probePath  the request whose first success is timed.
+     * @param properties Spring properties passed to every run.
+     */
+    private record Target(String name, String mainClass, String probePath, List<String> properties) {
+    }
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = Integer.getInteger("startup.rounds", 5);
+        String jvmArgs = System.getProperty("startup.jvm-args", "-Xmx512m");
+        Path outputDirectory = Paths.get(System.getProperty("startup.output-directory", "build/startup-benchmark"));
+        Files.createDirectories(outputDirectory);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+
+        List<Target> targets = List.of(
+                new Target("eureka-server", "com.exalt.training.eurekaserver.EurekaServer", "/eureka/apps", STANDALONE),
+                new Target("blocked-users", "com.exalt.training.blockedusers.BlockedUsers",
+                        "/exalt/training/userscontrol/isBlocked/000000000",
+                        standalone(LoadTest.serviceProperties("blocked-users", List.of("app.rpc.port=0")))),
+                new Target("user-service", "com.exalt.training.users.UserService",
+                        "/exalt/training/user/checkBalance/000000000",
+                        standalone(LoadTest.serviceProperties("bank", List.of(
+                                "spring.cloud.discovery.client.simple.instances.BLOCKED-USERS[0].uri=http://localhost:1")))));
+
+        List<String> rows = new ArrayList<>();
+        for (Target target : targets) {
+            String baselineClasspath = required("startup." + target.name() + ".classpath");
+            String optimizedClasspath = required("startup." + target.name() + ".jar")
+                    + File.pathSeparator + required("startup.h2.classpath");
+            boolean springAot = Boolean.parseBoolean(System.getProperty("startup." + target.name() + ".spring-aot", "true"));
+            Path archive = outputDirectory.resolve(target.name() + ".jsa");
+            String optimizedJvmArgs = jvmArgs + (springAot ? " -Dspring.aot.enabled=true" : "");
+
+            train(target, optimizedClasspath, optimizedJvmArgs + " -XX:ArchiveClassesAtExit=" + archive + " -Xlog:cds=error",
+                    outputDirectory);
+            long[] baseline = new long[rounds];
+            long[] optimized = new long[rounds];
+            for (int round = 0; round < rounds; round++) {
+                baseline[round] = measure(client, target, "baseline-" + round, baselineClasspath, jvmArgs, outputDirectory);
+                optimized[round] = measure(client, target, "optimized-" + round, optimizedClasspath,
+                        optimizedJvmArgs + " -XX:SharedArchiveFile=" + archive, outputDirectory);
+            }
+            long baselineMedian = median(baseline);
+            rows.add(row(target.name(), "baseline", baseline, baselineMedian));
+            rows.add(row(target.name(), springAot ? "aot+cds" : "cds", optimized, baselineMedian));
+        }
+        System.out.printf("%n%-14s %-10s %9s %9s %9s %9s%n", "service", "variant", "min ms", "median ms", "max ms", "speedup");
+        rows.forEach(System.out::println);
+        System.out.printf("%nService logs written to %s%n", outputDirectory);
+    }
+
+    private static void train(Target target, String classpath, String jvmArgs, Path outputDirectory)
+            throws IOException, InterruptedException {
+        System.out.printf("Training CDS archive for %s%n", target.name());
+        try (ServiceProcess training = ServiceProcess.start(target.name() + "-training", target.mainClass(), classpath,
+                jvmArgs + " -Dspring.context.exit=onRefresh", outputDirectory, runProperties(target, "training", outputDirectory))) {
+            int exitCode = training.awaitExit(STARTUP_TIMEOUT);
+            if (exitCode != 0) {
+                throw new IOException("Training run of " + target.name() + " failed with code " + exitCode
+                        + ", see " + target.name() + "-training.log");
+            }
+        }
+    }
+
+    private static long measure(HttpClient client, Target target, String run, String classpath, String jvmArgs,
+                                Path outputDirectory) throws IOException, InterruptedException {
+        try (ServiceProcess service = ServiceProcess.start(target.name() + "-" + run, target.mainClass(), classpath,
+                jvmArgs, outputDirectory, runProperties(target, run, outputDirectory))) {
+            return service.awaitFirstSuccess(client, target.probePath(), STARTUP_TIMEOUT).toMillis();
+        }
+    }
+
+    private static List<String> runProperties(Target target, String run, Path outputDirectory) {
+        List<String> properties = new ArrayList<>(target.properties());
+        properties.add("app.snapshot.directory=" + outputDirectory.resolve(target.name() + "-" + run + "-snapshot"));
+        return properties;
+    }
+
+    private static List<String> standalone(List<String> properties) {
+        List<String> result = new ArrayList<>(properties);
+        result.addAll(STANDALONE);
+        return result;
+    }
+
+    private static String row(String service, String variant, long[] millis, long baselineMedian) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        return String.format("%-14s %-10s %9d %9d %9d %8.2fx", service, variant, sorted[0], median(millis),
+                sorted[sorted.length - 1], (double) baselineMedian / median(millis));
+    }
+
+    private static long median(long[] millis) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static String required(String name) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalStateException("Missing system property " + name + "; run through `gradle -Paot :load-test:startupBenchmark`");
+        }
+        return value;
+    }
+}
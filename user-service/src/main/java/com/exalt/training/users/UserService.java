@@ -2,6 +2,7 @@ package com.exalt.training.users;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Entry point for the Spring Boot application.
@@ -10,7 +11,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * The {@code @SpringBootApplication} annotation denotes that this is a Spring Boot application.
  * </p>
  */
-@SpringBootApplication
+@SpringBootApplication(scanBasePackages = {"com.exalt.training.users", "com.exalt.training.common"})
+@EnableScheduling
 public class UserService {
 
     public static void main(String[] args) {
@@ -0,0 +1,82 @@
+package com.exalt.training.users.admission;
+
+import com.exalt.training.users.admission.TieredAdmission.Rejection;
+import com.exalt.training.users.enums.Rule;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Servlet filter passing every API request through {@link TieredAdmission}.
+ * <p>
+ * Requests are classified by the rule in the {@value #CALLER_TOKEN_HEADER} header, a token signed by
+ * {@link CallerTokens} and returned by sign-in, so the request carries its own class and any instance can check it
+ * without state. The national ID in the path is never trusted, since any client can put a premium user's there.
+ * Sign-ins run with {@code app.admission.sign-in-rule}, so returning users are not shed first. Requests without a
+ * valid token (sign-up, anonymous calls, expired or forged tokens) are treated as {@link Rule#REGULAR}. Shed requests are answered with 503 and a {@code Retry-After} header. Actuator requests
+ * bypass admission so health probes keep working under overload.
+ * </p>
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+    public static final String CALLER_TOKEN_HEADER = "X-Caller-Token";
+    private static final String SIGN_IN_PATH = "/exalt/training/auth/signin";
+    private static final byte[] OVERLOADED = ("{\"status\":\"error\",\"statusCode\":503,"
+            + "\"message\":\"Service is overloaded, try again later\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final TieredAdmission admission; // Decides when requests run
+    private final CallerTokens callerTokens; // Checks the caller tokens
+    private final Rule signInRule; // Rule sign-ins are admitted with
+
+    public AdmissionFilter(TieredAdmission admission, CallerTokens callerTokens, Rule signInRule) {
+        this.admission = admission;
+        this.callerTokens = callerTokens;
+        this.signInRule = signInRule;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/exalt/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Rule rule = classify(request);
+        Rejection rejection;
+        try {
+            rejection = admission.acquire(rule);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            rejection = Rejection.TIMED_OUT;
+        }
+        if (rejection != null) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(OVERLOADED.length);
+            response.getOutputStream().write(OVERLOADED);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            admission.release(rule);
+        }
+    }
+
+    private Rule classify(HttpServletRequest request) {
+        if (SIGN_IN_PATH.equals(request.getRequestURI())) {
+            return signInRule;
+        }
+        Rule rule = callerTokens.ruleOf(request.getHeader(CALLER_TOKEN_HEADER));
+        return rule == null ? Rule.REGULAR : rule;
+    }
+}
@@ -0,0 +1,43 @@
+package com.exalt.training.users.admission;
+
+import com.exalt.training.users.enums.Rule;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of the rule-tiered admission of requests, bound from {@code app.admission.*}.
+ * Requests waiting in the queues hold a servlet thread, so {@code max-concurrency} plus the queue capacities
+ * should stay below {@code server.tomcat.threads.max}.
+ */
+@Data
+@ConfigurationProperties("app.admission")
+public class AdmissionProperties {
+    private boolean enabled = true; // Whether requests go through admission at all
+    private int maxConcurrency = 150; // Requests processed at once, across all tiers
+    private String tokenSecret; // Signs the caller tokens, the same on every instance; random per instance if unset
+    private Duration tokenTtl = Duration.ofHours(1); // How long a caller token is valid after sign-in
+    private Rule signInRule = Rule.SHABAB; // Rule sign-ins are admitted with, above anonymous traffic
+    private Map<Rule, Tier> tiers = new EnumMap<>(Map.of(
+            Rule.GOLDEN_SUBSCRIPTION, new Tier(150, 6, 25, Duration.ofSeconds(2)),
+            Rule.SHABAB, new Tier(100, 3, 15, Duration.ofSeconds(1)),
+            Rule.REGULAR, new Tier(60, 1, 10, Duration.ofMillis(250)))); // Budgets by rule
+
+    /**
+     * Budget of the requests of one rule.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Tier {
+        private int maxConcurrency; // Requests of this rule processed at once
+        private int weight; // Share of freed slots given to this rule's queue while several rules wait
+        private int queueCapacity; // Requests of this rule waiting at once; more are shed
+        private Duration maxWait; // How long a request waits for a slot before it is shed
+    }
+}
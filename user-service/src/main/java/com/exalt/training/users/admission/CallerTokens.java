@@ -0,0 +1,101 @@
+package com.exalt.training.users.admission;
+
+import com.exalt.training.users.enums.Rule;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Issues and checks the caller tokens that requests are classified by.
+ * <p>
+ * A token is handed out on sign-in and carries the user's national ID, {@link Rule} and expiry, signed with
+ * HMAC-SHA256 under {@code app.admission.token-secret}. Any instance sharing the secret can check it without a
+ * lookup or session, and a client cannot raise its rule without the secret. A rule change applies from the next
+ * sign-in, and a token stays valid until it expires, even after sign-out.
+ * </p>
+ */
+@Slf4j
+public class CallerTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key; // Signs and checks the tokens
+    private final long ttlSeconds; // How long a token is valid
+    private final Clock clock; // Current time, for expiry
+
+    public CallerTokens(String secret, Duration ttl, Clock clock) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            log.warn("app.admission.token-secret is not set, caller tokens are only accepted by this instance");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttlSeconds = ttl.toSeconds();
+        this.clock = clock;
+    }
+
+    /**
+     * Issues a token for a user who just signed in.
+     *
+     * @param nationalId the national ID of the user.
+     * @param rule the rule of the user.
+     * @return the token.
+     */
+    public String issue(String nationalId, Rule rule) {
+        long expires = clock.instant().getEpochSecond() + ttlSeconds;
+        String payload = ENCODER.encodeToString((nationalId + ':' + rule.name() + ':' + expires)
+                .getBytes(StandardCharsets.UTF_8));
+        return payload + '.' + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * Returns the rule carried by a token, if it is genuine and not expired.
+     *
+     * @param token the token, may be null.
+     * @return the rule, or null if the token is missing, forged, malformed or expired.
+     */
+    public Rule ruleOf(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            String payload = token.substring(0, dot);
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(dot + 1)))) {
+                return null;
+            }
+            String[] fields = new String(DECODER.decode(payload), StandardCharsets.UTF_8).split(":");
+            if (fields.length != 3 || Long.parseLong(fields[2]) < clock.instant().getEpochSecond()) {
+                return null;
+            }
+            return Rule.valueOf(fields[1]);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", ex);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.exalt.training.users.admission;
+
+import com.exalt.training.users.enums.Rule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits requests into processing by the {@link Rule} of the caller.
+ * <p>
+ * At most {@code max-concurrency} requests run at once, and each rule has its own smaller budget, so lower
+ * rules can never take every slot. A request that cannot run right away waits in its rule's queue; when a
+ * slot frees up, the queues that are within budget are served by smooth weighted round-robin, so premium
+ * requests get most freed slots without starving the others. Requests are shed when their queue is full or
+ * their wait exceeds the rule's {@code max-wait}, and the small queues and short waits of the lower rules
+ * make them the first to be shed.
+ * </p>
+ */
+public class TieredAdmission {
+    private static final Rule[] RULES = Rule.values();
+
+    /**
+     * Why a request was not admitted.
+     */
+    public enum Rejection {
+        QUEUE_FULL, TIMED_OUT
+    }
+
+    /**
+     * A request waiting for a slot.
+     */
+    private static final class Waiter {
+        private final Condition admittedSignal; // Signalled when the waiter is admitted
+        private boolean admitted; // Guarded by the lock
+
+        Waiter(Condition admittedSignal) {
+            this.admittedSignal = admittedSignal;
+        }
+    }
+
+    /**
+     * State of one rule.
+     */
+    private static final class Tier {
+        private final AdmissionProperties.Tier settings; // Budget, weight and queue limits
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>(); // Guarded by the lock
+        private int running; // Guarded by the lock
+        private int currentWeight; // Smooth weighted round-robin state, guarded by the lock
+        private final Counter admitted; // Requests admitted without waiting
+        private final Counter queued; // Requests admitted after waiting
+        private final Counter shedQueueFull; // Requests shed because the queue was full
+        private final Counter shedTimedOut; // Requests shed after waiting too long
+        private final Timer waits; // Time spent in the queue by requests that were admitted
+
+        Tier(Rule rule, AdmissionProperties.Tier settings, MeterRegistry registry) {
+            this.settings = settings;
+            String tag = rule.name().toLowerCase(Locale.ROOT);
+            this.admitted = outcome(registry, tag, "admitted");
+            this.queued = outcome(registry, tag, "queued");
+            this.shedQueueFull = outcome(registry, tag, "shed_queue_full");
+            this.shedTimedOut = outcome(registry, tag, "shed_timed_out");
+            this.waits = Timer.builder("users.admission.wait")
+                    .description("Time requests waited for a processing slot")
+                    .tag("rule", tag)
+                    .register(registry);
+        }
+
+        boolean canRun() {
+            return running < settings.getMaxConcurrency();
+        }
+
+        private static Counter outcome(MeterRegistry registry, String rule, String outcome) {
+            return Counter.builder("users.admission.requests")
+                    .description("Requests by caller rule and admission outcome")
+                    .tag("rule", rule)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+    }
+
+    private final int maxConcurrency; // Requests processed at once, across all tiers
+    private final Tier[] tiers = new Tier[RULES.length]; // Indexed by rule ordinal
+    private final ReentrantLock lock = new ReentrantLock();
+    private int running; // Guarded by the lock
+
+    public TieredAdmission(AdmissionProperties properties, MeterRegistry registry) {
+        this.maxConcurrency = properties.getMaxConcurrency();
+        for (Rule rule : RULES) {
+            AdmissionProperties.Tier settings = properties.getTiers().get(rule);
+            if (settings == null) {
+                throw new IllegalArgumentException("No admission settings for rule " + rule);
+            }
+            Tier tier = new Tier(rule, settings, registry);
+            tiers[rule.ordinal()] = tier;
+            String tag = rule.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("users.admission.running", this, admission -> admission.running(tier))
+                    .description("Requests being processed")
+                    .tag("rule", tag)
+                    .register(registry);
+            Gauge.builder("users.admission.queued", this, admission -> admission.queued(tier))
+                    .description("Requests waiting for a processing slot")
+                    .tag("rule", tag)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Waits for a processing slot. Every admitted request must be followed by {@link #release}.
+     *
+     * @param rule the caller's rule.
+     * @return null if the request was admitted, otherwise why it was shed.
+     * @throws InterruptedException if interrupted while waiting; the request is not admitted.
+     */
+    public Rejection acquire(Rule rule) throws InterruptedException {
+        Tier tier = tiers[rule.ordinal()];
+        long start = System.nanoTime();
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (tier.queue.isEmpty() && tier.canRun() && running < maxConcurrency) {
+                tier.running++;
+                running++;
+                tier.admitted.increment();
+                return null;
+            }
+            if (tier.queue.size() >= tier.settings.getQueueCapacity()) {
+                tier.shedQueueFull.increment();
+                return Rejection.QUEUE_FULL;
+            }
+            waiter = new Waiter(lock.newCondition());
+            tier.queue.addLast(waiter);
+            long remaining = tier.settings.getMaxWait().toNanos();
+            try {
+                while (!waiter.admitted && remaining > 0) {
+                    remaining = waiter.admittedSignal.awaitNanos(remaining);
+                }
+            } catch (InterruptedException ex) {
+                if (waiter.admitted) {
+                    releaseLocked(tier);
+                } else {
+                    tier.queue.remove(waiter);
+                }
+                throw ex;
+            }
+            if (!waiter.admitted) {
+                tier.queue.remove(waiter);
+                tier.shedTimedOut.increment();
+                return Rejection.TIMED_OUT;
+            }
+        } finally {
+            lock.unlock();
+        }
+        tier.queued.increment();
+        tier.waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return null;
+    }
+
+    /**
+     * Frees the slot of a finished request and hands it to a waiting one.
+     *
+     * @param rule the caller's rule, as passed to {@link #acquire}.
+     */
+    public void release(Rule rule) {
+        lock.lock();
+        try {
+            releaseLocked(tiers[rule.ordinal()]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked(Tier tier) {
+        tier.running--;
+        running--;
+        dispatch();
+    }
+
+    /**
+     * Admits waiting requests while there are free slots, choosing between the queues within budget by
+     * smooth weighted round-robin: each eligible queue gains its weight, the one with the most is served
+     * and pays back the total.
+     */
+    private void dispatch() {
+        while (running < maxConcurrency) {
+            Tier chosen = null;
+            int totalWeight = 0;
+            for (Tier tier : tiers) {
+                if (tier.queue.isEmpty() || !tier.canRun()) {
+                    continue;
+                }
+                tier.currentWeight += tier.settings.getWeight();
+                totalWeight += tier.settings.getWeight();
+                if (chosen == null || tier.currentWeight > chosen.currentWeight) {
+                    chosen = tier;
+                }
+            }
+            if (chosen == null) {
+                return;
+            }
+            chosen.currentWeight -= totalWeight;
+            Waiter waiter = chosen.queue.pollFirst();
+            waiter.admitted = true;
+            chosen.running++;
+            running++;
+            waiter.admittedSignal.signal();
+        }
+    }
+
+    private int running(Tier tier) {
+        lock.lock();
+        try {
+            return tier.running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int queued(Tier tier) {
+        lock.lock();
+        try {
+            return tier.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
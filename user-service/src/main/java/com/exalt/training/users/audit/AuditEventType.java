@@ -0,0 +1,32 @@
+package com.exalt.training.users.audit;
+
+import com.exalt.training.users.enums.LedgerEntryType;
+
+/**
+ * Enum to represent the kinds of events written to the audit journal.
+ * The journal stores the ordinal, so new types are only ever appended.
+ */
+public enum AuditEventType {
+    SIGN_UP, // A user registered; no longer written, sign-ups are audited as OPENING
+    SIGN_IN, // A user signed in
+    SIGN_IN_FAILED, // A sign-in was rejected because of a wrong password
+    BLOCK, // A user was blocked
+    UNBLOCK, // A user was unblocked
+    OPENING, // An account was opened with a balance
+    CREDIT, // A balance was credited
+    DEBIT; // A balance was debited
+
+    /**
+     * Returns the event type of a ledger entry type.
+     *
+     * @param type the ledger entry type.
+     * @return the matching event type.
+     */
+    public static AuditEventType of(LedgerEntryType type) {
+        return switch (type) {
+            case OPENING -> OPENING;
+            case CREDIT -> CREDIT;
+            case DEBIT -> DEBIT;
+        };
+    }
+}
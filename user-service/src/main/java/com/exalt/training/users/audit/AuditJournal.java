@@ -0,0 +1,225 @@
+package com.exalt.training.users.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only audit journal made of memory-mapped segment files.
+ * <p>
+ * Every event is a fixed {@value #RECORD_SIZE}-byte record: journal sequence, epoch milliseconds, national ID,
+ * amount, balance after, event type and a CRC32C of the rest. Records are written straight into the mapped
+ * segment, which is pre-sized, so an append is a memory copy; {@link #force()} flushes the written pages to
+ * disk. When a segment is full the next one is created, named after the sequence of its first record. On
+ * reopening, the last segment is scanned up to the first empty or corrupt record, so a record torn by a crash
+ * is overwritten and sequences continue where they stopped. Not thread-safe: there is a single writer.
+ * </p>
+ */
+public final class AuditJournal implements Closeable {
+    public static final int RECORD_SIZE = 64;
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * One event read back from the journal.
+     *
+     * @param sequence     the position of the event in the journal.
+     * @param timestamp    when the event was published.
+     * @param type         the event type.
+     * @param nationalId   the national ID of the user, or -1 if it was not numeric.
+     * @param amount       the amount of a balance change, otherwise 0.
+     * @param balanceAfter the balance after the event, if it is known, otherwise 0.
+     */
+    public record Event(long sequence, Instant timestamp, AuditEventType type, long nationalId, double amount,
+                        double balanceAfter) {
+    }
+
+    private static final AuditEventType[] TYPES = AuditEventType.values();
+
+    private final Path directory; // Directory of the segment files
+    private final int segmentRecords; // Records per segment
+    private final byte[] encoded = new byte[RECORD_SIZE]; // Record being encoded, reused
+    private final ByteBuffer recordBuffer = ByteBuffer.wrap(encoded); // View of the record being encoded
+    private final CRC32C checksum = new CRC32C(); // Checksum of the record being encoded, reused
+    private MappedByteBuffer segment; // Segment being appended to
+    private int position; // Byte offset of the next record in the segment
+    private long nextSequence; // Sequence of the next record
+
+    /**
+     * Opens the journal in a directory, creating it if needed.
+     *
+     * @param directory   the directory of the segment files.
+     * @param segmentSize the size of a segment file in bytes, rounded down to whole records.
+     * @throws IOException if the journal cannot be opened.
+     */
+    public AuditJournal(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentRecords = (int) Math.min(Integer.MAX_VALUE / RECORD_SIZE, Math.max(1, segmentSize / RECORD_SIZE));
+        Files.createDirectories(directory);
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        long firstSequence = firstSequence(last);
+        segment = map(last, FileChannel.MapMode.READ_WRITE, (long) segmentRecords * RECORD_SIZE);
+        nextSequence = firstSequence;
+        while (position < segment.capacity() && isValid(segment, position)) {
+            nextSequence = segment.getLong(position) + 1;
+            position += RECORD_SIZE;
+        }
+    }
+
+    /**
+     * Appends an event.
+     *
+     * @param timestampMillis when the event was published, in epoch milliseconds.
+     * @param type            the event type.
+     * @param nationalId      the national ID of the user.
+     * @param amount          the amount of a balance change.
+     * @param balanceAfter    the balance after the event.
+     * @throws UncheckedIOException if a new segment cannot be created.
+     */
+    public void append(long timestampMillis, AuditEventType type, long nationalId, double amount, double balanceAfter) {
+        if (position + RECORD_SIZE > segment.capacity()) {
+            segment.force();
+            try {
+                openSegment(nextSequence);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        recordBuffer.putLong(0, nextSequence)
+                .putLong(8, timestampMillis)
+                .putLong(16, nationalId)
+                .putDouble(24, amount)
+                .putDouble(32, balanceAfter)
+                .put(40, (byte) (type.ordinal() + 1));
+        checksum.reset();
+        checksum.update(encoded, 0, CHECKSUM_OFFSET);
+        recordBuffer.putInt(CHECKSUM_OFFSET, (int) checksum.getValue());
+        segment.put(position, encoded);
+        position += RECORD_SIZE;
+        nextSequence++;
+    }
+
+    /**
+     * Flushes the appended records to disk.
+     */
+    public void force() {
+        segment.force();
+    }
+
+    /**
+     * Returns the sequence the next record will get.
+     *
+     * @return the sequence.
+     */
+    public long nextSequence() {
+        return nextSequence;
+    }
+
+    @Override
+    public void close() {
+        segment.force();
+        segment = null;
+    }
+
+    /**
+     * Reads every event of a journal, oldest first.
+     *
+     * @param directory the directory of the segment files.
+     * @param consumer  receives the events.
+     * @throws IOException if a segment cannot be read.
+     */
+    public static void read(Path directory, Consumer<Event> consumer) throws IOException {
+        for (Path file : segments(directory)) {
+            MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY, Files.size(file));
+            for (int offset = 0; offset + RECORD_SIZE <= buffer.capacity() && isValid(buffer, offset); offset += RECORD_SIZE) {
+                consumer.accept(new Event(buffer.getLong(offset), Instant.ofEpochMilli(buffer.getLong(offset + 8)),
+                        TYPES[buffer.get(offset + 40) - 1], buffer.getLong(offset + 16), buffer.getDouble(offset + 24),
+                        buffer.getDouble(offset + 32)));
+            }
+        }
+    }
+
+    /**
+     * Converts a national ID to the number stored in the journal.
+     *
+     * @param nationalId the national ID.
+     * @return the number, or -1 if the ID is not 1 to 18 decimal digits.
+     */
+    public static long toKey(String nationalId) {
+        if (nationalId == null || nationalId.isEmpty() || nationalId.length() > 18) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < nationalId.length(); i++) {
+            char c = nationalId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        segment = map(file, FileChannel.MapMode.READ_WRITE, (long) segmentRecords * RECORD_SIZE);
+        position = 0;
+        nextSequence = firstSequence;
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int offset) {
+        int type = buffer.get(offset + 40);
+        if (type < 1 || type > TYPES.length) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, CHECKSUM_OFFSET));
+        return buffer.getInt(offset + CHECKSUM_OFFSET) == (int) crc.getValue();
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+}
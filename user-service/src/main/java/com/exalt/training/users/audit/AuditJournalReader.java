@@ -0,0 +1,43 @@
+package com.exalt.training.users.audit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command-line reader of the audit journal. Prints one tab-separated line per event: sequence, timestamp,
+ * type, national ID, amount and balance after.
+ * <p>
+ * Usage: {@code AuditJournalReader <journal directory> [national ID]}, or
+ * {@code gradle :user-service:readAuditJournal -Paudit.directory=... [-Paudit.national-id=...]}.
+ * The journal can be read while the service is writing it.
+ * </p>
+ */
+public final class AuditJournalReader {
+
+    private AuditJournalReader() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: AuditJournalReader <journal directory> [national ID]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        long nationalId = args.length == 2 ? AuditJournal.toKey(args[1]) : -1;
+        StringBuilder line = new StringBuilder();
+        AuditJournal.read(directory, event -> {
+            if (nationalId >= 0 && event.nationalId() != nationalId) {
+                return;
+            }
+            line.setLength(0);
+            line.append(event.sequence()).append('\t')
+                    .append(event.timestamp()).append('\t')
+                    .append(event.type()).append('\t')
+                    .append(event.nationalId() < 0 ? "-" : String.format("%09d", event.nationalId())).append('\t')
+                    .append(event.amount()).append('\t')
+                    .append(event.balanceAfter());
+            System.out.println(line);
+        });
+    }
+}
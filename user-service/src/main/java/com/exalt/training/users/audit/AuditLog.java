@@ -0,0 +1,196 @@
+package com.exalt.training.users.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records sign-ins, failed attempts, blocks and balance changes in the {@link AuditJournal} without slowing
+ * down the requests that cause them.
+ * <p>
+ * Request threads only copy the event into a pre-allocated {@link AuditRingBuffer}, which takes no lock and
+ * allocates nothing. A single background thread drains the ring into the journal and flushes it to disk every
+ * {@code app.audit.force-interval}, so an event is durable within that interval. If the writer falls
+ * {@code app.audit.buffer-size} events behind, new events are dropped and counted in
+ * {@code users.audit.events{outcome=dropped}} rather than blocking requests. On shutdown the ring is drained
+ * before the journal is closed.
+ * </p>
+ */
+@Slf4j
+@Component
+public class AuditLog {
+    private static final int DRAIN_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final boolean enabled; // Whether events are recorded at all
+    private final String directory; // Directory of the journal segments
+    private final long segmentSize; // Size of a journal segment in bytes
+    private final long forceIntervalNanos; // Longest time an appended event stays unflushed
+    private final AuditRingBuffer ring; // Events published but not written yet
+    private final Counter published; // Events accepted into the ring
+    private final Counter dropped; // Events rejected because the ring was full
+    private final Counter failed; // Events the journal could not write
+    private volatile boolean running; // Cleared on shutdown, the writer then drains and exits
+    private Thread writer; // Single consumer of the ring
+    private AuditJournal journal; // Owned by the writer thread once it runs
+
+    public AuditLog(@Value("${app.audit.enabled}") boolean enabled,
+                    @Value("${app.audit.directory}") String directory,
+                    @Value("${app.audit.buffer-size}") int bufferSize,
+                    @Value("${app.audit.segment-size}") DataSize segmentSize,
+                    @Value("${app.audit.force-interval}") Duration forceInterval,
+                    MeterRegistry registry) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize.toBytes();
+        this.forceIntervalNanos = forceInterval.toNanos();
+        this.ring = new AuditRingBuffer(enabled ? bufferSize : 2);
+        this.published = counter(registry, "published");
+        this.dropped = counter(registry, "dropped");
+        this.failed = counter(registry, "failed");
+        Gauge.builder("users.audit.backlog", ring, AuditRingBuffer::backlog)
+                .description("Audit events waiting to be written to the journal")
+                .register(registry);
+    }
+
+    private static Counter counter(MeterRegistry registry, String outcome) {
+        return Counter.builder("users.audit.events")
+                .description("Audit events by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Opens the journal and starts the writer thread.
+     *
+     * @throws UncheckedIOException if the journal cannot be opened.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Audit journal is disabled");
+            return;
+        }
+        try {
+            journal = new AuditJournal(Paths.get(directory), segmentSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open the audit journal in " + directory, ex);
+        }
+        log.info("Audit journal opened in {} at sequence {}", directory, journal.nextSequence());
+        running = true;
+        writer = new Thread(this::writeLoop, "audit-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Publishes an event. Never blocks.
+     *
+     * @param type         the event type.
+     * @param nationalId   the national ID of the user.
+     * @param amount       the amount of a balance change, otherwise 0.
+     * @param balanceAfter the balance after the event, if it is known, otherwise 0.
+     */
+    public void publish(AuditEventType type, String nationalId, double amount, double balanceAfter) {
+        if (!enabled) {
+            return;
+        }
+        if (ring.tryPublish(System.currentTimeMillis(), type, AuditJournal.toKey(nationalId), amount, balanceAfter)) {
+            published.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Publishes an event once the current transaction commits, or right away outside a transaction,
+     * so balance changes that roll back are not recorded.
+     *
+     * @param type         the event type.
+     * @param nationalId   the national ID of the user.
+     * @param amount       the amount of the balance change.
+     * @param balanceAfter the balance after the change.
+     */
+    public void publishAfterCommit(AuditEventType type, String nationalId, double amount, double balanceAfter) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(type, nationalId, amount, balanceAfter);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(type, nationalId, amount, balanceAfter);
+            }
+        });
+    }
+
+    private void writeLoop() {
+        long lastForce = System.nanoTime();
+        boolean unflushed = false;
+        while (running || ring.backlog() > 0) {
+            int drained = ring.drain(this::write, DRAIN_BATCH);
+            unflushed |= drained > 0;
+            long now = System.nanoTime();
+            if (unflushed && now - lastForce >= forceIntervalNanos) {
+                journal.force();
+                lastForce = now;
+                unflushed = false;
+            }
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        journal.close();
+    }
+
+    private void write(long timestampMillis, AuditEventType type, long nationalId, double amount, double balanceAfter) {
+        try {
+            journal.append(timestampMillis, type, nationalId, amount, balanceAfter);
+        } catch (UncheckedIOException ex) {
+            failed.increment();
+            log.error("Failed to write an audit event to the journal", ex);
+        }
+    }
+
+    /**
+     * Tells the writer to stop once the ring is drained, and waits for it to close the journal.
+     *
+     * @throws InterruptedException if interrupted while waiting for the writer.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Creates an audit log that records nothing, for code run outside the application context.
+     *
+     * @param registry the registry for the audit meters.
+     * @return the disabled audit log.
+     */
+    public static AuditLog disabled(MeterRegistry registry) {
+        return new AuditLog(false, null, 0, DataSize.ofBytes(AuditJournal.RECORD_SIZE), Duration.ZERO, registry);
+    }
+}
@@ -0,0 +1,111 @@
+package com.exalt.training.users.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pre-allocated, bounded ring of audit events with many lock-free producers and a single consumer.
+ * <p>
+ * Events are stored field by field in parallel primitive arrays, so publishing allocates nothing. A producer
+ * claims the next sequence with a compare-and-set, fills the slot, then marks the slot as published with a
+ * release store; the consumer reads slots in sequence order and stops at the first one not yet published, so
+ * a slow producer delays but never corrupts the events after it. When the consumer falls a full ring behind,
+ * publishing fails instead of waiting.
+ * </p>
+ */
+final class AuditRingBuffer {
+
+    /**
+     * Receives the events drained from the ring.
+     */
+    @FunctionalInterface
+    interface EventHandler {
+        void onEvent(long timestampMillis, AuditEventType type, long nationalId, double amount, double balanceAfter);
+    }
+
+    private static final AuditEventType[] TYPES = AuditEventType.values();
+
+    private final int capacity; // Number of slots, a power of two
+    private final int mask; // capacity - 1, maps a sequence to its slot
+    private final long[] timestamps; // Epoch milliseconds of each slot's event
+    private final byte[] types; // Ordinal of each slot's event type
+    private final long[] nationalIds; // National ID of each slot's event
+    private final double[] amounts; // Amount of each slot's event
+    private final double[] balances; // Balance after each slot's event
+    private final AtomicLongArray published; // Sequence last published in each slot
+    private final AtomicLong claimed = new AtomicLong(); // Next sequence to hand to a producer
+    private volatile long consumed; // Next sequence the consumer reads; slots before it are free
+
+    AuditRingBuffer(int requestedCapacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.types = new byte[capacity];
+        this.nationalIds = new long[capacity];
+        this.amounts = new double[capacity];
+        this.balances = new double[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            published.set(slot, -1);
+        }
+    }
+
+    /**
+     * Publishes an event without blocking.
+     *
+     * @return false if the ring is full.
+     */
+    boolean tryPublish(long timestampMillis, AuditEventType type, long nationalId, double amount, double balanceAfter) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        timestamps[slot] = timestampMillis;
+        types[slot] = (byte) type.ordinal();
+        nationalIds[slot] = nationalId;
+        amounts[slot] = amount;
+        balances[slot] = balanceAfter;
+        published.setRelease(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Hands the published events to a handler, oldest first. Must only be called by the consumer thread.
+     *
+     * @param handler the handler.
+     * @param limit   the most events to drain.
+     * @return the number of events drained.
+     */
+    int drain(EventHandler handler, int limit) {
+        long next = consumed;
+        int drained = 0;
+        while (drained < limit) {
+            int slot = (int) next & mask;
+            if (published.getAcquire(slot) != next) {
+                break;
+            }
+            handler.onEvent(timestamps[slot], TYPES[types[slot]], nationalIds[slot], amounts[slot], balances[slot]);
+            next++;
+            drained++;
+        }
+        consumed = next;
+        return drained;
+    }
+
+    /**
+     * Returns the number of events claimed but not drained yet.
+     *
+     * @return the backlog.
+     */
+    long backlog() {
+        return claimed.get() - consumed;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
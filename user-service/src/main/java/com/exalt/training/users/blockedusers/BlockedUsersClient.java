@@ -0,0 +1,48 @@
+package com.exalt.training.users.blockedusers;
+
+import java.util.List;
+
+/**
+ * Typed client of the BLOCKED-USERS service.
+ * Implemented over REST by {@link RestBlockedUsersClient} and over the binary protocol by {@link RpcBlockedUsersClient},
+ * selected with {@code app.blocked-users.transport}.
+ */
+public interface BlockedUsersClient {
+
+    /**
+     * Asks whether a user is blocked.
+     *
+     * @param nationalId the national ID of the user.
+     * @return true if the user is blocked.
+     * @throws IllegalStateException if the call fails or returns an invalid response.
+     */
+    boolean isBlocked(String nationalId);
+
+    /**
+     * Blocks a user.
+     *
+     * @param nationalId the national ID of the user.
+     * @param userName the user name of the user.
+     * @throws IllegalStateException if the call fails.
+     */
+    void block(String nationalId, String userName);
+
+    /**
+     * Unblocks a user.
+     *
+     * @param nationalId the national ID of the user.
+     * @throws IllegalStateException if the call fails.
+     */
+    void unblock(String nationalId);
+
+    /**
+     * Lists blocked national IDs within a range in ascending order, one page at a time.
+     *
+     * @param after the national ID the page starts after, empty to start at the first one.
+     * @param through the last national ID of the range, or null for no end.
+     * @param limit the most IDs returned.
+     * @return the national IDs, fewer than the limit only once the range is exhausted.
+     * @throws IllegalStateException if the call fails or returns an invalid response.
+     */
+    List<String> blockedIds(String after, String through, int limit);
+}
@@ -0,0 +1,131 @@
+package com.exalt.training.users.blockedusers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link BlockedUsersClient} that delays and fails calls before passing them to another client, as set by
+ * {@link RemoteFaultProperties}, to study how the service behaves when BLOCKED-USERS is slow or failing.
+ * <p>
+ * Each call waits the configured latency plus a random part of the jitter, or the slow latency for a share of
+ * the calls, then fails for a share of the calls with the same {@link IllegalStateException} as a failed remote
+ * call. The delay holds the calling thread, as a remote call would. Injected slow calls and failures are counted
+ * as {@code users.blockedusers.faults}.
+ * </p>
+ */
+public class FaultInjectingBlockedUsersClient implements BlockedUsersClient, Closeable {
+    private final BlockedUsersClient delegate; // Client the calls go to
+    private final long latencyNanos; // Delay of every call
+    private final long jitterNanos; // Random extra delay, up to
+    private final double slowRate; // Share of slow calls
+    private final long slowLatencyNanos; // Delay of the slow calls
+    private final double failureRate; // Share of failed calls
+    private final Counter slowCalls; // Calls given the slow latency
+    private final Counter failures; // Calls failed
+
+    private FaultInjectingBlockedUsersClient(BlockedUsersClient delegate, RemoteFaultProperties faults,
+                                             MeterRegistry registry) {
+        this.delegate = delegate;
+        this.latencyNanos = faults.getLatency().toNanos();
+        this.jitterNanos = faults.getJitter().toNanos();
+        this.slowRate = faults.getSlowRate();
+        this.slowLatencyNanos = faults.getSlowLatency().toNanos();
+        this.failureRate = faults.getFailureRate();
+        this.slowCalls = Counter.builder("users.blockedusers.faults")
+                .description("Calls to BLOCKED-USERS given an injected fault by kind")
+                .tag("fault", "slow")
+                .register(registry);
+        this.failures = Counter.builder("users.blockedusers.faults")
+                .description("Calls to BLOCKED-USERS given an injected fault by kind")
+                .tag("fault", "failure")
+                .register(registry);
+    }
+
+    /**
+     * Wraps a client if any fault is configured.
+     *
+     * @param delegate the client the calls go to.
+     * @param faults the faults to inject.
+     * @param registry the meter registry.
+     * @return the wrapping client, or the client itself if no fault is configured.
+     * @throws IllegalArgumentException if a rate is not between 0 and 1 or a delay is negative.
+     */
+    public static BlockedUsersClient wrap(BlockedUsersClient delegate, RemoteFaultProperties faults,
+                                          MeterRegistry registry) {
+        if (faults.getSlowRate() < 0 || faults.getSlowRate() > 1 || faults.getFailureRate() < 0
+                || faults.getFailureRate() > 1) {
+            throw new IllegalArgumentException("Fault rates must be between 0 and 1");
+        }
+        if (faults.getLatency().isNegative() || faults.getJitter().isNegative() || faults.getSlowLatency().isNegative()) {
+            throw new IllegalArgumentException("Fault delays must not be negative");
+        }
+        return faults.isActive() ? new FaultInjectingBlockedUsersClient(delegate, faults, registry) : delegate;
+    }
+
+    @Override
+    public boolean isBlocked(String nationalId) {
+        inject();
+        return delegate.isBlocked(nationalId);
+    }
+
+    @Override
+    public void block(String nationalId, String userName) {
+        inject();
+        delegate.block(nationalId, userName);
+    }
+
+    @Override
+    public void unblock(String nationalId) {
+        inject();
+        delegate.unblock(nationalId);
+    }
+
+    @Override
+    public List<String> blockedIds(String after, String through, int limit) {
+        inject();
+        return delegate.blockedIds(after, through, limit);
+    }
+
+    /**
+     * Closes the wrapped client if it holds connections.
+     */
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * Waits the delay of one call, then fails it if its draw says so.
+     *
+     * @throws IllegalStateException if the call is failed.
+     */
+    private void inject() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay;
+        if (slowRate > 0 && random.nextDouble() < slowRate) {
+            slowCalls.increment();
+            delay = slowLatencyNanos;
+        } else {
+            delay = latencyNanos + (jitterNanos > 0 ? random.nextLong(jitterNanos + 1) : 0);
+        }
+        long deadline = System.nanoTime() + delay;
+        for (long left = delay; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("Interrupted while calling BLOCKED-USERS");
+            }
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            failures.increment();
+            throw new IllegalStateException("BLOCKED-USERS call failed: injected failure");
+        }
+    }
+}
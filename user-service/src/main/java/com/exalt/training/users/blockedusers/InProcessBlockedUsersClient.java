@@ -0,0 +1,54 @@
+package com.exalt.training.users.blockedusers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link BlockedUsersClient} keeping the blocked users in this JVM instead of calling BLOCKED-USERS.
+ * <p>
+ * Follows the rules of the service: a user cannot be blocked twice or unblocked when not blocked. Used for
+ * performance experiments on one machine, with {@code app.blocked-users.transport} set to {@code in-process},
+ * so the remote path only costs what {@link FaultInjectingBlockedUsersClient} adds. Blocks are lost on restart.
+ * </p>
+ */
+public class InProcessBlockedUsersClient implements BlockedUsersClient {
+    private final ConcurrentNavigableMap<String, String> blocked = new ConcurrentSkipListMap<>(); // User names by national ID
+
+    @Override
+    public boolean isBlocked(String nationalId) {
+        return blocked.containsKey(nationalId);
+    }
+
+    @Override
+    public void block(String nationalId, String userName) {
+        if (blocked.putIfAbsent(nationalId, userName) != null) {
+            throw new IllegalStateException("User is already blocked");
+        }
+    }
+
+    @Override
+    public void unblock(String nationalId) {
+        if (blocked.remove(nationalId) == null) {
+            throw new IllegalStateException("user not found");
+        }
+    }
+
+    @Override
+    public List<String> blockedIds(String after, String through, int limit) {
+        NavigableMap<String, String> range = through == null
+                ? blocked.tailMap(after, false)
+                : blocked.subMap(after, false, through, true);
+        List<String> nationalIds = new ArrayList<>(Math.min(limit, 1024));
+        for (Map.Entry<String, String> entry : range.entrySet()) {
+            if (nationalIds.size() == limit) {
+                break;
+            }
+            nationalIds.add(entry.getKey());
+        }
+        return nationalIds;
+    }
+}
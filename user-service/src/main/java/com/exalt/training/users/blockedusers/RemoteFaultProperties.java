@@ -0,0 +1,29 @@
+package com.exalt.training.users.blockedusers;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Latency and failures added to every call to BLOCKED-USERS, bound from {@code app.blocked-users.faults.*}.
+ * All zero by default, which leaves the client untouched; meant for the {@code perf} profile.
+ */
+@Data
+@ConfigurationProperties("app.blocked-users.faults")
+public class RemoteFaultProperties {
+    private Duration latency = Duration.ZERO; // Delay added to every call
+    private Duration jitter = Duration.ZERO; // Random extra delay of every call, up to this
+    private double slowRate = 0; // Share of calls delayed by the slow latency instead, for tail latency
+    private Duration slowLatency = Duration.ofSeconds(1); // Delay of the slow calls
+    private double failureRate = 0; // Share of calls that fail after their delay
+
+    /**
+     * Returns whether any fault is configured.
+     *
+     * @return true if calls are delayed or failed.
+     */
+    public boolean isActive() {
+        return !latency.isZero() || !jitter.isZero() || slowRate > 0 || failureRate > 0;
+    }
+}
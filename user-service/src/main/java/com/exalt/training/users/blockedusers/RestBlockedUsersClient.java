@@ -0,0 +1,88 @@
+package com.exalt.training.users.blockedusers;
+
+import com.exalt.training.users.dto.BlockedUsersResponseDTO;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link BlockedUsersClient} calling the BLOCKED-USERS REST endpoints with JSON over HTTP/1.1.
+ */
+public class RestBlockedUsersClient implements BlockedUsersClient {
+    private final RestTemplate restTemplate; // Load balanced in production, stubbed in the benchmarks
+    private final String baseUrl; // Scheme and authority, e.g. http://BLOCKED-USERS
+
+    /**
+     * Creates a client.
+     *
+     * @param restTemplate the rest template.
+     * @param baseUrl the scheme and authority of the service, e.g. {@code http://BLOCKED-USERS}.
+     */
+    public RestBlockedUsersClient(RestTemplate restTemplate, String baseUrl) {
+        this.restTemplate = restTemplate;
+        this.baseUrl = baseUrl + "/exalt/training/userscontrol";
+    }
+
+    @Override
+    public boolean isBlocked(String nationalId) {
+        ResponseEntity<BlockedUsersResponseDTO> responseEntity = restTemplate.getForEntity(
+                baseUrl + "/isBlocked/{nationalId}", BlockedUsersResponseDTO.class, nationalId);
+        if (responseEntity.getStatusCode() != HttpStatus.OK) {
+            throw new IllegalStateException("Failed to determine if user is blocked: " + responseEntity.getStatusCode());
+        }
+        BlockedUsersResponseDTO responseBody = responseEntity.getBody();
+        if (responseBody != null && responseBody.getIsBlocked() != null) {
+            return responseBody.getIsBlocked();
+        } else {
+            throw new IllegalStateException("Invalid response from isBlocked API");
+        }
+    }
+
+    @Override
+    public void block(String nationalId, String userName) {
+        Map<String, Object> userData = new HashMap<>();
+        userData.put("nationalId", nationalId);
+        userData.put("userName", userName);
+        ResponseEntity<BlockedUsersResponseDTO> responseEntity = restTemplate.postForEntity(
+                baseUrl + "/block", userData, BlockedUsersResponseDTO.class);
+        if (responseEntity.getStatusCode() != HttpStatus.OK) {
+            throw new IllegalStateException("Failed to block user: " + responseEntity.getStatusCode());
+        }
+    }
+
+    @Override
+    public void unblock(String nationalId) {
+        ResponseEntity<BlockedUsersResponseDTO> responseEntity = restTemplate.postForEntity(
+                baseUrl + "/unblock/{nationalId}", null, BlockedUsersResponseDTO.class, nationalId);
+        if (responseEntity.getStatusCode() != HttpStatus.OK) {
+            throw new IllegalStateException("Failed to unblock user: " + responseEntity.getStatusCode());
+        }
+    }
+
+    @Override
+    public List<String> blockedIds(String after, String through, int limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("after", after);
+        parameters.put("limit", limit);
+        String url = baseUrl + "/blocked?after={after}&limit={limit}";
+        if (through != null) {
+            parameters.put("through", through);
+            url += "&through={through}";
+        }
+        ResponseEntity<BlockedUsersResponseDTO> responseEntity = restTemplate.getForEntity(
+                url, BlockedUsersResponseDTO.class, parameters);
+        if (responseEntity.getStatusCode() != HttpStatus.OK) {
+            throw new IllegalStateException("Failed to list blocked users: " + responseEntity.getStatusCode());
+        }
+        BlockedUsersResponseDTO responseBody = responseEntity.getBody();
+        if (responseBody != null && responseBody.getNationalIds() != null) {
+            return responseBody.getNationalIds();
+        } else {
+            throw new IllegalStateException("Invalid response from blocked API");
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.exalt.training.users.blockedusers;
+
+import com.exalt.training.common.rpc.RpcFrames;
+import com.exalt.training.users.loadbalancer.InstanceStats;
+import com.exalt.training.users.loadbalancer.InstanceStatsRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link BlockedUsersClient} speaking the binary protocol described in {@link RpcFrames}.
+ * <p>
+ * Instances are picked by the same latency-aware load balancer as the REST calls, which also receives the
+ * latency and failures of every call. Each instance is reached over one persistent {@link RpcConnection}
+ * that carries all concurrent calls. Instances that do not advertise an {@value #PORT_METADATA} in their
+ * metadata are called through the fallback client instead, so services can be upgraded one at a time.
+ * </p>
+ */
+public class RpcBlockedUsersClient implements BlockedUsersClient, Closeable {
+    public static final String SERVICE_ID = "BLOCKED-USERS";
+    public static final String PORT_METADATA = "rpc-port"; // Instance metadata holding the binary protocol port
+    private static final String[] OUTCOMES = {"ok", "rejected", "error"}; // Indexed by response status
+
+    private final LoadBalancerClient loadBalancer; // Picks the instance of each call
+    private final InstanceStatsRegistry statsRegistry; // Receives call latencies and failures
+    private final BlockedUsersClient fallback; // Used for instances without a binary protocol port
+    private final Duration connectTimeout; // Timeout of new connections
+    private final Duration timeout; // Timeout of a call, from sending the request to receiving the response
+    private final Map<String, RpcConnection> connections = new ConcurrentHashMap<>(); // Open connections by host and port
+    private final Timer[][] calls = new Timer[4][OUTCOMES.length]; // Indexed by operation and status
+
+    public RpcBlockedUsersClient(LoadBalancerClient loadBalancer, InstanceStatsRegistry statsRegistry,
+                                 BlockedUsersClient fallback, Duration connectTimeout, Duration timeout,
+                                 MeterRegistry registry) {
+        this.loadBalancer = loadBalancer;
+        this.statsRegistry = statsRegistry;
+        this.fallback = fallback;
+        this.connectTimeout = connectTimeout;
+        this.timeout = timeout;
+        for (byte operation = RpcFrames.IS_BLOCKED; operation <= RpcFrames.UNBLOCK; operation++) {
+            for (int status = 0; status < OUTCOMES.length; status++) {
+                calls[operation][status] = Timer.builder("users.blockedusers.rpc.calls")
+                        .description("Binary protocol calls to BLOCKED-USERS by operation and outcome")
+                        .tag("operation", RpcFrames.operationName(operation))
+                        .tag("outcome", OUTCOMES[status])
+                        .register(registry);
+            }
+        }
+    }
+
+    @Override
+    public boolean isBlocked(String nationalId) {
+        ServiceInstance instance = choose();
+        Integer port = rpcPort(instance);
+        if (port == null) {
+            return fallback.isBlocked(nationalId);
+        }
+        byte[] reply = call(instance, port, RpcFrames.IS_BLOCKED, out -> out.writeUTF(nationalId));
+        if (reply.length != 1) {
+            throw new IllegalStateException("Invalid response from isBlocked call");
+        }
+        return reply[0] != 0;
+    }
+
+    @Override
+    public void block(String nationalId, String userName) {
+        ServiceInstance instance = choose();
+        Integer port = rpcPort(instance);
+        if (port == null) {
+            fallback.block(nationalId, userName);
+            return;
+        }
+        call(instance, port, RpcFrames.BLOCK, out -> {
+            out.writeUTF(nationalId);
+            out.writeUTF(userName);
+        });
+    }
+
+    @Override
+    public void unblock(String nationalId) {
+        ServiceInstance instance = choose();
+        Integer port = rpcPort(instance);
+        if (port == null) {
+            fallback.unblock(nationalId);
+            return;
+        }
+        call(instance, port, RpcFrames.UNBLOCK, out -> out.writeUTF(nationalId));
+    }
+
+    /**
+     * Always goes through the fallback client: listing is a bulk call made by background jobs, which gains nothing
+     * from the binary protocol.
+     */
+    @Override
+    public List<String> blockedIds(String after, String through, int limit) {
+        return fallback.blockedIds(after, through, limit);
+    }
+
+    /**
+     * Closes every open connection; calls in flight fail.
+     */
+    @Override
+    public void close() {
+        connections.values().forEach(RpcConnection::close);
+        connections.clear();
+    }
+
+    /**
+     * Writes the arguments of a call.
+     */
+    @FunctionalInterface
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private ServiceInstance choose() {
+        ServiceInstance instance = loadBalancer.choose(SERVICE_ID);
+        if (instance == null) {
+            throw new IllegalStateException("No instance available for " + SERVICE_ID);
+        }
+        return instance;
+    }
+
+    private static Integer rpcPort(ServiceInstance instance) {
+        String port = instance.getMetadata() == null ? null : instance.getMetadata().get(PORT_METADATA);
+        return port == null || port.isBlank() ? null : Integer.valueOf(port.trim());
+    }
+
+    /**
+     * Sends one call and waits for its response.
+     * Rejections by a business rule are not counted as failures of the instance.
+     *
+     * @param instance the instance to call.
+     * @param port the instance's binary protocol port.
+     * @param operation the operation code.
+     * @param arguments writes the arguments.
+     * @return the response payload.
+     * @throws IllegalStateException if the call is rejected, fails or times out.
+     */
+    private byte[] call(ServiceInstance instance, int port, byte operation, Arguments arguments) {
+        InstanceStats stats = statsRegistry.stats(instance);
+        statsRegistry.requestStarted(stats);
+        long start = System.nanoTime();
+        byte status = RpcFrames.ERROR;
+        try {
+            RpcConnection.Reply reply = connection(instance.getHost(), port)
+                    .send(operation, encode(arguments), timeout)
+                    .get();
+            status = reply.status();
+            return switch (status) {
+                case RpcFrames.OK -> reply.payload();
+                case RpcFrames.REJECTED -> throw new IllegalStateException(message(reply.payload()));
+                default -> {
+                    status = RpcFrames.ERROR;
+                    throw new IllegalStateException("BLOCKED-USERS call failed: " + message(reply.payload()));
+                }
+            };
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof TimeoutException) {
+                throw new IllegalStateException("BLOCKED-USERS call timed out after " + timeout.toMillis() + " ms");
+            }
+            throw new IllegalStateException("BLOCKED-USERS call failed: " + ex.getCause().getMessage(), ex.getCause());
+        } catch (IOException ex) {
+            throw new IllegalStateException("BLOCKED-USERS call failed: " + ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while calling BLOCKED-USERS", ex);
+        } finally {
+            long latency = System.nanoTime() - start;
+            statsRegistry.requestFinished(stats, latency, status != RpcFrames.ERROR);
+            calls[operation][status].record(latency, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private RpcConnection connection(String host, int port) throws IOException {
+        String address = host + ":" + port;
+        RpcConnection connection = connections.get(address);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+        synchronized (connections) {
+            connection = connections.get(address);
+            if (connection == null || !connection.isOpen()) {
+                connection = RpcConnection.open(host, port, connectTimeout);
+                connections.put(address, connection);
+            }
+            return connection;
+        }
+    }
+
+    private static byte[] encode(Arguments arguments) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        arguments.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static String message(byte[] payload) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(payload)).readUTF();
+        } catch (IOException ex) {
+            return "invalid error message";
+        }
+    }
+}
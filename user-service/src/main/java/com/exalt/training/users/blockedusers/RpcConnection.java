@@ -0,0 +1,170 @@
+package com.exalt.training.users.blockedusers;
+
+import com.exalt.training.common.rpc.RpcFrames;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One persistent connection to a BLOCKED-USERS instance, shared by all concurrent calls to it.
+ * <p>
+ * Requests are tagged with a connection-unique ID and written under a lock; a reader thread matches
+ * responses to the pending calls by that ID, so calls do not wait for each other's responses.
+ * Once the connection fails every pending call fails and the connection is replaced on next use.
+ * </p>
+ */
+@Slf4j
+final class RpcConnection implements Closeable {
+
+    /**
+     * A decoded response.
+     *
+     * @param status the {@link RpcFrames} status code.
+     * @param payload the response payload.
+     */
+    record Reply(byte status, byte[] payload) {
+    }
+
+    private final Socket socket; // Connection to the instance
+    private final DataOutputStream out; // Request writer, guarded by itself
+    private final Map<Long, CompletableFuture<Reply>> pending = new ConcurrentHashMap<>(); // Calls awaiting a response
+    private final AtomicLong nextRequestId = new AtomicLong(); // Source of request IDs
+    private volatile boolean open = true; // Cleared once the connection failed or was closed
+
+    private RpcConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.out.writeInt(RpcFrames.MAGIC);
+        this.out.flush();
+        Thread reader = new Thread(this::readResponses, "blocked-users-rpc-" + socket.getRemoteSocketAddress());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Connects to an instance.
+     *
+     * @param host the instance host.
+     * @param port the instance's binary protocol port.
+     * @param connectTimeout the connect timeout.
+     * @return the connection.
+     * @throws IOException if the connection cannot be established.
+     */
+    static RpcConnection open(String host, int port, Duration connectTimeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), (int) connectTimeout.toMillis());
+            return new RpcConnection(socket);
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns whether the connection can still be used.
+     *
+     * @return true until the connection failed or was closed.
+     */
+    boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Sends a request.
+     *
+     * @param operation the {@link RpcFrames} operation code.
+     * @param payload the encoded arguments.
+     * @param timeout how long to wait for the response before failing the call with a timeout.
+     * @return the pending response.
+     * @throws IOException if the request cannot be written.
+     */
+    CompletableFuture<Reply> send(byte operation, byte[] payload, Duration timeout) throws IOException {
+        long requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<Reply> reply = new CompletableFuture<>();
+        pending.put(requestId, reply);
+        if (!open) {
+            pending.remove(requestId);
+            throw new IOException("Connection closed");
+        }
+        try {
+            synchronized (out) {
+                out.writeInt(RpcFrames.HEADER_LENGTH + payload.length);
+                out.writeLong(requestId);
+                out.writeByte(operation);
+                out.write(payload);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            pending.remove(requestId);
+            fail(ex);
+            throw ex;
+        }
+        return reply.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((result, ex) -> pending.remove(requestId));
+    }
+
+    @Override
+    public void close() {
+        fail(new IOException("Connection closed"));
+    }
+
+    private void readResponses() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+                int length = in.readInt();
+                if (length < RpcFrames.HEADER_LENGTH || length > RpcFrames.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                long requestId = in.readLong();
+                byte status = in.readByte();
+                byte[] payload = new byte[length - RpcFrames.HEADER_LENGTH];
+                in.readFully(payload);
+                CompletableFuture<Reply> reply = pending.remove(requestId);
+                if (reply != null) {
+                    reply.complete(new Reply(status, payload));
+                }
+            }
+        } catch (IOException ex) {
+            if (open) {
+                log.debug("Binary protocol connection to {} failed", socket.getRemoteSocketAddress(), ex);
+            }
+            fail(ex);
+        }
+    }
+
+    /**
+     * Closes the socket and fails every pending call.
+     *
+     * @param cause the reason.
+     */
+    private void fail(IOException cause) {
+        open = false;
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            log.debug("Failed to close binary protocol connection", ex);
+        }
+        for (Long requestId : pending.keySet()) {
+            CompletableFuture<Reply> reply = pending.remove(requestId);
+            if (reply != null) {
+                reply.completeExceptionally(cause);
+            }
+        }
+    }
+}
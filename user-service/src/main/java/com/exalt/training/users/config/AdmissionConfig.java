@@ -0,0 +1,67 @@
+package com.exalt.training.users.config;
+
+import com.exalt.training.users.admission.AdmissionFilter;
+import com.exalt.training.users.admission.AdmissionProperties;
+import com.exalt.training.users.admission.CallerTokens;
+import com.exalt.training.users.admission.TieredAdmission;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Clock;
+
+/**
+ * Configuration class for the rule-tiered admission of requests.
+ * The admission filter runs ahead of Spring Security, so shed requests cost as little as possible,
+ * but after the HTTP observation filter, so they still show up in {@code http.server.requests}.
+ */
+@Configuration
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class AdmissionConfig {
+
+    /**
+     * Bean definition for the signed caller tokens used to classify requests.
+     *
+     * @param properties the admission settings.
+     * @return the tokens.
+     */
+    @Bean
+    public CallerTokens callerTokens(AdmissionProperties properties) {
+        return new CallerTokens(properties.getTokenSecret(), properties.getTokenTtl(), Clock.systemUTC());
+    }
+
+    /**
+     * Bean definition for the admission queues and budgets.
+     *
+     * @param properties the admission settings.
+     * @param registry the meter registry.
+     * @return the admission.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.admission.enabled", havingValue = "true", matchIfMissing = true)
+    public TieredAdmission tieredAdmission(AdmissionProperties properties, MeterRegistry registry) {
+        return new TieredAdmission(properties, registry);
+    }
+
+    /**
+     * Bean definition registering the admission filter.
+     *
+     * @param admission the admission.
+     * @param callerTokens the caller tokens.
+     * @param properties the admission settings.
+     * @return the filter registration.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.admission.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(TieredAdmission admission, CallerTokens callerTokens,
+                                                                   AdmissionProperties properties) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(
+                new AdmissionFilter(admission, callerTokens, properties.getSignInRule()));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,101 @@
+package com.exalt.training.users.config;
+
+import com.exalt.training.common.datasource.ReplicaDataSourceConfig;
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.sharding.ShardDataSources;
+import com.exalt.training.users.sharding.ShardDirectory;
+import com.exalt.training.users.sharding.ShardRoutingDataSource;
+import com.exalt.training.users.sharding.ShardingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration class for the shard, primary and replica connection pools.
+ * Users are spread over shard 0 ({@code spring.datasource.*}) and the shards listed in {@code app.sharding.shards};
+ * on shard 0, read-only transactions go to the replica pool when {@code app.datasource.replica.url} is set.
+ * Each pool publishes its own {@code hikaricp.*} metrics, tagged by pool name; the primary and replica pools are
+ * defined by {@link ReplicaDataSourceConfig}.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class DataSourceConfig {
+
+    /**
+     * Bean definition for the writable pools of all shards, shard 0 being the primary pool.
+     * Credentials of the additional shards default to those of the primary.
+     *
+     * @param primary the primary pool.
+     * @param properties the primary datasource properties.
+     * @param sharding the sharding settings.
+     * @param registry the meter registry the additional pools report to.
+     * @return the pools, indexed by shard number.
+     */
+    @Bean
+    public ShardDataSources shardDataSources(@Qualifier("primaryDataSource") DataSource primary,
+                                             DataSourceProperties properties, ShardingProperties sharding,
+                                             MeterRegistry registry) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(primary);
+        for (ShardingProperties.Shard shard : sharding.getShards()) {
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(properties.determineDriverClassName())
+                    .url(shard.getUrl())
+                    .username(StringUtils.hasText(shard.getUsername()) ? shard.getUsername() : properties.determineUsername())
+                    .password(StringUtils.hasText(shard.getPassword()) ? shard.getPassword() : properties.determinePassword())
+                    .build();
+            dataSource.setPoolName("shard-" + shards.size());
+            dataSource.setMaximumPoolSize(shard.getMaximumPoolSize());
+            dataSource.setMetricRegistry(registry);
+            shards.add(dataSource);
+        }
+        return new ShardDataSources(shards);
+    }
+
+    /**
+     * Bean definition for the bucket map, spreading the buckets round-robin until the persisted map is loaded.
+     *
+     * @param sharding the sharding settings.
+     * @return the shard directory.
+     */
+    @Bean
+    public ShardDirectory shardDirectory(ShardingProperties sharding) {
+        return new ShardDirectory(sharding.getBuckets(), sharding.getShards().size() + 1);
+    }
+
+    /**
+     * Bean definition for the data source used by JPA, routing by shard and, on shard 0, read-only
+     * transactions to the replica.
+     *
+     * @param shardDataSources the writable pools of all shards.
+     * @param replica the replica pool, if configured.
+     * @param policy the staleness policy for replica reads.
+     * @return the routing data source.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardDataSources shardDataSources,
+                                 @Qualifier("replicaDataSource") ObjectProvider<DataSource> replica,
+                                 ReplicaReadPolicy policy) {
+        List<DataSource> shards = new ArrayList<>(shardDataSources.all());
+        shards.set(ShardDirectory.DIRECTORY_SHARD, ReplicaDataSourceConfig.readWriteRouting(
+                shards.get(ShardDirectory.DIRECTORY_SHARD), replica.getIfAvailable(), policy));
+        ShardRoutingDataSource shardRouting = new ShardRoutingDataSource(shards);
+        shardRouting.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(shardRouting);
+    }
+}
@@ -0,0 +1,45 @@
+package com.exalt.training.users.config;
+
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.interest.InterestBatchJob;
+import com.exalt.training.users.interest.InterestProperties;
+import com.exalt.training.users.portfolio.PortfolioAggregates;
+import com.exalt.training.users.sharding.ShardDataSources;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for the monthly interest and fees batch.
+ * The batch is off unless {@code app.interest.enabled} is set, together with the terms of every rule.
+ */
+@Configuration
+@EnableConfigurationProperties(InterestProperties.class)
+@ConditionalOnProperty(name = "app.interest.enabled", havingValue = "true")
+public class InterestConfig {
+
+    /**
+     * Bean definition for the monthly interest and fees batch.
+     *
+     * @param properties the terms and pacing of the batch.
+     * @param shardDataSources the writable pool of every shard.
+     * @param directory the bucket map.
+     * @param auditLog records the balance changes.
+     * @param portfolioAggregates the totals per rule.
+     * @param entityManagerFactory provides the SQL dialect.
+     * @param registry the meter registry.
+     * @return the batch job.
+     */
+    @Bean
+    public InterestBatchJob interestBatchJob(InterestProperties properties, ShardDataSources shardDataSources,
+                                             ShardDirectory directory, AuditLog auditLog,
+                                             PortfolioAggregates portfolioAggregates,
+                                             EntityManagerFactory entityManagerFactory, MeterRegistry registry) {
+        return new InterestBatchJob(properties, shardDataSources, directory, auditLog, portfolioAggregates,
+                entityManagerFactory, registry);
+    }
+}
@@ -0,0 +1,54 @@
+package com.exalt.training.users.config;
+
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.reconciliation.ReconciliationEndpoint;
+import com.exalt.training.users.reconciliation.ReconciliationJob;
+import com.exalt.training.users.reconciliation.ReconciliationProperties;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.sharding.ShardDataSources;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for the reconciliation between the users and the blocked users.
+ */
+@Configuration
+@EnableConfigurationProperties(ReconciliationProperties.class)
+@ConditionalOnProperty(name = "app.reconciliation.enabled", havingValue = "true", matchIfMissing = true)
+public class ReconciliationConfig {
+
+    /**
+     * Bean definition for the reconciliation job.
+     *
+     * @param properties the ranges, paging and repair settings.
+     * @param shardDataSources the pool of every shard.
+     * @param blockedUsersClient lists and restores blocks.
+     * @param userRepository checks mismatched users again.
+     * @param auditLog records the restored blocks.
+     * @param registry the meter registry.
+     * @return the job.
+     */
+    @Bean
+    public ReconciliationJob reconciliationJob(ReconciliationProperties properties, ShardDataSources shardDataSources,
+                                               BlockedUsersClient blockedUsersClient,
+                                               ShardedUserRepository userRepository, AuditLog auditLog,
+                                               MeterRegistry registry) {
+        return new ReconciliationJob(properties, shardDataSources, blockedUsersClient, userRepository, auditLog,
+                registry);
+    }
+
+    /**
+     * Bean definition for the {@code reconciliation} actuator endpoint.
+     *
+     * @param job the reconciliation job.
+     * @return the endpoint.
+     */
+    @Bean
+    public ReconciliationEndpoint reconciliationEndpoint(ReconciliationJob job) {
+        return new ReconciliationEndpoint(job);
+    }
+}
@@ -1,25 +1,135 @@
 package com.exalt.training.users.config;
 
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.blockedusers.FaultInjectingBlockedUsersClient;
+import com.exalt.training.users.blockedusers.InProcessBlockedUsersClient;
+import com.exalt.training.users.blockedusers.RemoteFaultProperties;
+import com.exalt.training.users.blockedusers.RestBlockedUsersClient;
+import com.exalt.training.users.blockedusers.RpcBlockedUsersClient;
+import com.exalt.training.users.loadbalancer.InstanceStatsRegistry;
+import com.exalt.training.users.loadbalancer.LatencyAwareLoadBalancerConfiguration;
+import com.exalt.training.users.loadbalancer.LoadBalancingProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+
 /**
  * Configuration class for defining beans related to user services.
  * This class sets up a RestTemplate bean with load balancing support.
+ * Instances are picked by {@link LatencyAwareLoadBalancerConfiguration} rather than round-robin.
+ * It also picks the transport of the {@link BlockedUsersClient}, and adds the faults of {@link RemoteFaultProperties}
+ * to it when any are set.
  */
 @Configuration
+@EnableConfigurationProperties({LoadBalancingProperties.class, RemoteFaultProperties.class})
+@LoadBalancerClients(defaultConfiguration = LatencyAwareLoadBalancerConfiguration.class)
 public class UserConfig {
 
+    /**
+     * Bean definition for the pooled HTTP connection manager used to call other services.
+     * Pool usage is published as {@code httpcomponents.httpclient.pool.*} metrics.
+     *
+     * @param registry the meter registry.
+     * @param maxConnections the maximum number of pooled connections, in total and per instance.
+     * @return the connection manager.
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager httpClientConnectionManager(
+            MeterRegistry registry, @Value("${app.http-client.max-connections}") int maxConnections) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "rest-template").bindTo(registry);
+        return connectionManager;
+    }
+
     /**
      * Bean definition for RestTemplate with load balancing.
+     * Built from the auto-configured builder so requests are recorded as {@code http.client.requests} metrics.
      *
+     * @param builder the auto-configured RestTemplate builder.
+     * @param connectionManager the pooled connection manager.
      * @return a LoadBalanced RestTemplate instance for making HTTP requests.
      */
     @Bean
     @LoadBalanced
-    public RestTemplate restTemplate(){
-        return new RestTemplate();
+    public RestTemplate restTemplate(RestTemplateBuilder builder, PoolingHttpClientConnectionManager connectionManager) {
+        return builder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(
+                        HttpClients.custom().setConnectionManager(connectionManager).build()))
+                .build();
+    }
+
+    /**
+     * Bean definition for the BLOCKED-USERS client calling the REST endpoints,
+     * used when {@code app.blocked-users.transport} is {@code rest}.
+     *
+     * @param restTemplate the load balanced rest template.
+     * @param faults the faults added to every call.
+     * @param registry the meter registry.
+     * @return the client.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.blocked-users.transport", havingValue = "rest", matchIfMissing = true)
+    public BlockedUsersClient restBlockedUsersClient(RestTemplate restTemplate, RemoteFaultProperties faults,
+                                                     MeterRegistry registry) {
+        return FaultInjectingBlockedUsersClient.wrap(
+                new RestBlockedUsersClient(restTemplate, "http://" + RpcBlockedUsersClient.SERVICE_ID), faults, registry);
+    }
+
+    /**
+     * Bean definition for the BLOCKED-USERS client speaking the binary protocol,
+     * used when {@code app.blocked-users.transport} is {@code rpc}.
+     * Instances without a binary protocol port are still called over REST.
+     *
+     * @param loadBalancer the load balancer client.
+     * @param statsRegistry the per-instance statistics fed by every call.
+     * @param restTemplate the load balanced rest template.
+     * @param connectTimeout the connect timeout.
+     * @param timeout the call timeout.
+     * @param faults the faults added to every call.
+     * @param registry the meter registry.
+     * @return the client.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.blocked-users.transport", havingValue = "rpc")
+    public BlockedUsersClient rpcBlockedUsersClient(
+            LoadBalancerClient loadBalancer, InstanceStatsRegistry statsRegistry, RestTemplate restTemplate,
+            @Value("${app.blocked-users.rpc.connect-timeout}") Duration connectTimeout,
+            @Value("${app.blocked-users.rpc.timeout}") Duration timeout, RemoteFaultProperties faults,
+            MeterRegistry registry) {
+        return FaultInjectingBlockedUsersClient.wrap(new RpcBlockedUsersClient(loadBalancer, statsRegistry,
+                new RestBlockedUsersClient(restTemplate, "http://" + RpcBlockedUsersClient.SERVICE_ID),
+                connectTimeout, timeout, registry), faults, registry);
+    }
+
+    /**
+     * Bean definition for the BLOCKED-USERS stand-in kept in this JVM,
+     * used when {@code app.blocked-users.transport} is {@code in-process}.
+     *
+     * @param faults the faults added to every call.
+     * @param registry the meter registry.
+     * @return the client.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.blocked-users.transport", havingValue = "in-process")
+    public BlockedUsersClient inProcessBlockedUsersClient(RemoteFaultProperties faults, MeterRegistry registry) {
+        return FaultInjectingBlockedUsersClient.wrap(new InProcessBlockedUsersClient(), faults, registry);
     }
 }
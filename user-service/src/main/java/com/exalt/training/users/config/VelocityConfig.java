@@ -0,0 +1,36 @@
+package com.exalt.training.users.config;
+
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.fraud.VelocityProperties;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for the debit velocity detector.
+ */
+@Configuration
+@EnableConfigurationProperties(VelocityProperties.class)
+public class VelocityConfig {
+
+    /**
+     * Bean definition for the debit velocity detector.
+     *
+     * @param properties the velocity limits.
+     * @param userRepository signs tripped users out.
+     * @param blockedUsersClient blocks tripped users.
+     * @param auditLog records the blocks.
+     * @param registry the meter registry.
+     * @return the detector.
+     */
+    @Bean
+    public VelocityDetector velocityDetector(VelocityProperties properties, ShardedUserRepository userRepository,
+                                             BlockedUsersClient blockedUsersClient, AuditLog auditLog,
+                                             MeterRegistry registry) {
+        return new VelocityDetector(properties, userRepository, blockedUsersClient, auditLog, registry);
+    }
+}
@@ -1,5 +1,7 @@
 package com.exalt.training.users.controller;
 
+import com.exalt.training.users.admission.AdmissionFilter;
+import com.exalt.training.users.admission.CallerTokens;
 import com.exalt.training.users.dto.UserDTO;
 import com.exalt.training.users.exception.EmailAlreadyUsedException;
 import com.exalt.training.users.exception.InvalidCredentialsException;
@@ -29,6 +31,7 @@ import java.util.Map;
 public class AuthenticationController {
 
     private AuthenticationService authenticationService; //Service for user authentication
+    private CallerTokens callerTokens; // Issues the token requests are admitted by
 
     /**
      * Endpoint for user sign-up.
@@ -69,6 +72,8 @@ public class AuthenticationController {
 
     /**
      * Endpoint for user sign-in.
+     * On success the {@value AdmissionFilter#CALLER_TOKEN_HEADER} response header carries the token that later
+     * requests of the user send back to be admitted under their rule.
      *
      * @param credentials a map containing the user's email and password.
      * @return a ResponseEntity containing the result of the sign-in operation.
@@ -82,7 +87,9 @@ public class AuthenticationController {
             response.put("statusCode", HttpStatus.OK.value());
             response.put("message", "User signed in successfully");
             response.put("user", user);
-            return new ResponseEntity<>(response, HttpStatus.OK);
+            return ResponseEntity.ok()
+                    .header(AdmissionFilter.CALLER_TOKEN_HEADER, callerTokens.issue(user.getNationalId(), user.getRule()))
+                    .body(response);
         } catch (UserNotFoundException | InvalidCredentialsException | UserBlockedException | IllegalStateException ex) {
             Map<String, Object> response = new HashMap<>();
             response.put("status", "error");
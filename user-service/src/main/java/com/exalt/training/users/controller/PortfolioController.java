@@ -0,0 +1,47 @@
+package com.exalt.training.users.controller;
+
+import com.exalt.training.users.portfolio.PortfolioAggregates;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Controller class for serving portfolio statistics.
+ * The totals come from the in-memory {@link PortfolioAggregates}, so serving them does not touch the database.
+ */
+@RestController
+@AllArgsConstructor
+@RequestMapping("/exalt/training/stats")
+public class PortfolioController {
+
+    private PortfolioAggregates portfolioAggregates;
+
+    /**
+     * Endpoint for getting the account count, total balance and average balance of every rule.
+     *
+     * @return a ResponseEntity containing the totals by rule and when they were last reconciled.
+     */
+    @GetMapping("/portfolio")
+    public ResponseEntity<Map<String, Object>> portfolio() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("portfolio", portfolioAggregates.totals());
+            response.put("reconciledAt", portfolioAggregates.reconciledAt());
+            response.put("status", "success");
+            response.put("statusCode", HttpStatus.OK.value());
+
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (IllegalStateException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("statusCode", HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.put("message", ex.getMessage());
+
+            return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+}
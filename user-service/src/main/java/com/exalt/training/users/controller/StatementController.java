@@ -0,0 +1,56 @@
+package com.exalt.training.users.controller;
+
+import com.exalt.training.users.exception.UserNotFoundException;
+import com.exalt.training.users.service.StatementService;
+import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Controller class for handling account statement requests.
+ * Statements are built from the transaction ledger and cover whole UTC days.
+ */
+@RestController
+@AllArgsConstructor
+@RequestMapping("/exalt/training/user")
+public class StatementController {
+
+    private StatementService statementService;
+
+    /**
+     * Endpoint for getting the statement of a user over a range of days.
+     *
+     * @param nationalId the national ID of the user.
+     * @param from the first day included, as an ISO date.
+     * @param to the last day included, as an ISO date.
+     * @return a ResponseEntity containing the statement.
+     */
+    @GetMapping("/statement/{nationalId}")
+    public ResponseEntity<Map<String, Object>> statement(
+            @PathVariable String nationalId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            StatementService.Statement statement = statementService.statement(nationalId, from, to);
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "success");
+            response.put("statusCode", HttpStatus.OK.value());
+            response.put("statement", statement);
+
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (UserNotFoundException | IllegalArgumentException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("statusCode", HttpStatus.BAD_REQUEST.value());
+            response.put("message", ex.getMessage());
+
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.exalt.training.users.controller;
+
+import com.exalt.training.users.dto.TransferBatchDTO;
+import com.exalt.training.users.service.TransferService;
+import jakarta.validation.Valid;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Controller class for handling batch transfer requests.
+ * A batch moves money between many pairs of accounts in one call and reports the outcome of each transfer.
+ */
+@RestController
+@AllArgsConstructor
+@RequestMapping("/exalt/training/user")
+public class TransferController {
+
+    private TransferService transferService;
+
+    /**
+     * Endpoint for applying a batch of transfers.
+     *
+     * @param batch the transfers to apply, in order.
+     * @param bindingResult the result of validating the batch.
+     * @return a ResponseEntity containing the outcome of each transfer.
+     */
+    @PostMapping("/transfers")
+    public ResponseEntity<Map<String, Object>> transfer(@Valid @RequestBody TransferBatchDTO batch,
+                                                        BindingResult bindingResult) {
+        if (bindingResult.hasErrors()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("statusCode", HttpStatus.BAD_REQUEST.value());
+            response.put("message", "Validation failed");
+            response.put("errors", bindingResult.getFieldErrors().stream()
+                    .map(FieldError::getDefaultMessage).toArray());
+
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+        try {
+            List<TransferService.Result> results = transferService.transfer(batch.getTransfers());
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "success");
+            response.put("statusCode", HttpStatus.OK.value());
+            response.put("applied", results.stream()
+                    .filter(result -> result.outcome() == TransferService.Outcome.APPLIED).count());
+            response.put("results", results);
+
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (IllegalArgumentException ex) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("statusCode", HttpStatus.BAD_REQUEST.value());
+            response.put("message", ex.getMessage());
+
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+}
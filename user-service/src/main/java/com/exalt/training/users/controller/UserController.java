@@ -1,5 +1,7 @@
 package com.exalt.training.users.controller;
 
+import com.exalt.training.users.metrics.AccountMetrics.Operation;
+import com.exalt.training.users.service.IdempotencyService;
 import com.exalt.training.users.service.UserServices;
 import com.exalt.training.users.exception.UserNotFoundException;
 import com.exalt.training.users.model.User;
@@ -15,13 +17,19 @@ import java.util.Map;
 /**
  * Controller class for handling user-related requests.
  * This class provides endpoints for checking balance, requesting credit and debit, and logging out.
+ * Credit and debit accept an optional {@value #IDEMPOTENCY_KEY_HEADER} header so clients can retry them safely.
  */
 @RestController
 @AllArgsConstructor
 @RequestMapping("/exalt/training/user")
 public class UserController {
 
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private UserServices userService;
+    private IdempotencyService idempotencyService;
 
     /**
      * Endpoint for checking the balance of a user by their national ID.
@@ -53,12 +61,14 @@ public class UserController {
      * Endpoint for requesting credit to a user's account.
      *
      * @param nationalId the national ID of the user requesting credit.
+     * @param idempotencyKey optional client-chosen key; a retry with the same key returns the original result.
      * @param requestBody a map containing the amount to be credited.
      * @return a ResponseEntity with the status of the credit request.
      */
     @PostMapping("/requestCredit/{nationalId}")
     public ResponseEntity<Map<String, Object>> requestCredit(
             @PathVariable String nationalId,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
             @RequestBody Map<String, Object> requestBody) {
         if (requestBody.isEmpty()) {
             return buildErrorResponse(HttpStatus.BAD_REQUEST, "Request body cannot be empty");
@@ -67,15 +77,21 @@ public class UserController {
         if (amount == null || amount <= 0) {
             return buildErrorResponse(HttpStatus.BAD_REQUEST, "Invalid amount");
         }
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return buildErrorResponse(HttpStatus.BAD_REQUEST, "Invalid idempotency key");
+        }
         try {
-            User user = userService.requestCredit(nationalId, amount);
+            IdempotencyService.Result result = idempotencyService.execute(nationalId, idempotencyKey, Operation.CREDIT,
+                    amount, () -> userService.requestCredit(nationalId, amount));
             Map<String, Object> response = new HashMap<>();
             response.put("status", "success");
             response.put("statusCode", HttpStatus.OK.value());
             response.put("message", "Credit added successfully");
-            response.put("newBalance", user.getBalance());
+            response.put("newBalance", result.newBalance());
 
-            return new ResponseEntity<>(response, HttpStatus.OK);
+            return ResponseEntity.ok()
+                    .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.replayed()))
+                    .body(response);
         } catch (UserNotFoundException ex) {
             Map<String, Object> response = new HashMap<>();
             response.put("status", "error");
@@ -90,12 +106,14 @@ public class UserController {
      * Endpoint for requesting debit from a user's account.
      *
      * @param nationalId the national ID of the user requesting debit.
+     * @param idempotencyKey optional client-chosen key; a retry with the same key returns the original result.
      * @param requestBody a map containing the amount to be debited.
      * @return a ResponseEntity with the status of the debit request.
      */
     @PostMapping("/requestDebit/{nationalId}")
     public ResponseEntity<Map<String, Object>> requestDebit(
             @PathVariable String nationalId,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
             @RequestBody Map<String, Object> requestBody) {
         if (requestBody.isEmpty()) {
             return buildErrorResponse(HttpStatus.BAD_REQUEST, "Request body cannot be empty");
@@ -104,15 +122,21 @@ public class UserController {
         if (amount == null || amount <= 0) {
             return buildErrorResponse(HttpStatus.BAD_REQUEST, "Invalid amount");
         }
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return buildErrorResponse(HttpStatus.BAD_REQUEST, "Invalid idempotency key");
+        }
         try {
-            User user = userService.requestDebit(nationalId, amount);
+            IdempotencyService.Result result = idempotencyService.execute(nationalId, idempotencyKey, Operation.DEBIT,
+                    amount, () -> userService.requestDebit(nationalId, amount));
             Map<String, Object> response = new HashMap<>();
             response.put("status", "success");
             response.put("statusCode", HttpStatus.OK.value());
             response.put("message", "Debit processed successfully");
-            response.put("newBalance", user.getBalance());
+            response.put("newBalance", result.newBalance());
 
-            return new ResponseEntity<>(response, HttpStatus.OK);
+            return ResponseEntity.ok()
+                    .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.replayed()))
+                    .body(response);
         } catch (UserNotFoundException ex) {
             Map<String, Object> response = new HashMap<>();
             response.put("status", "error");
@@ -0,0 +1,21 @@
+package com.exalt.training.users.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) for the responses of the BLOCKED-USERS REST endpoints.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class BlockedUsersResponseDTO {
+    private String status; // "success" or "error"
+    private Integer statusCode; // HTTP status code
+    private String message; // Human readable result
+    private Boolean isBlocked; // Lookup result, only set by the isBlocked endpoint
+    private List<String> nationalIds; // Page of blocked national IDs, only set by the blocked endpoint
+}
@@ -0,0 +1,23 @@
+package com.exalt.training.users.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) for a batch of transfers.
+ * Transfers are applied in the order they are listed.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class TransferBatchDTO {
+    @NotNull(message = "Transfers are required.")
+    @NotEmpty(message = "A batch needs at least one transfer.")
+    private List<@Valid @NotNull(message = "Transfers cannot be null.") TransferDTO> transfers; // Transfers of the batch, in order
+}
@@ -0,0 +1,27 @@
+package com.exalt.training.users.dto;
+
+import jakarta.validation.constraints.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object (DTO) for one transfer of a batch.
+ * Used to validate the accounts and amount of a transfer.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class TransferDTO {
+    @NotNull(message = "Source national ID is required.")
+    @Pattern(regexp = "\\d{9}", message = "Source national ID must be exactly 9 digits.")
+    private String fromNationalId; // National ID of the user the amount is debited from
+
+    @NotNull(message = "Target national ID is required.")
+    @Pattern(regexp = "\\d{9}", message = "Target national ID must be exactly 9 digits.")
+    private String toNationalId; // National ID of the user the amount is credited to
+
+    @NotNull(message = "Amount is required.")
+    @Positive(message = "Amount must be positive.")
+    private Double amount; // Amount moved from the source to the target
+}
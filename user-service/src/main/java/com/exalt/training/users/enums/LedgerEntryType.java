@@ -0,0 +1,10 @@
+package com.exalt.training.users.enums;
+
+/**
+ * Enum to represent the kinds of entries in the transaction ledger.
+ */
+public enum LedgerEntryType {
+    OPENING, // Balance the account was opened with
+    CREDIT, // Amount added to the balance
+    DEBIT // Amount taken from the balance
+}
@@ -77,4 +77,37 @@ public class GlobalExceptionHandler {
     public ResponseEntity<?> handleUnauthorizedException (UnauthorizedException  ex) {
         return buildResponse(ex.getMessage(), HttpStatus.UNAUTHORIZED);
     }
+
+    /**
+     * Handles ShardUnavailableException by returning a SERVICE_UNAVAILABLE (503) response with the exception message.
+     *
+     * @param ex the ShardUnavailableException that was thrown.
+     * @return a ResponseEntity containing the exception message and a SERVICE_UNAVAILABLE status.
+     */
+    @ExceptionHandler(ShardUnavailableException.class)
+    public ResponseEntity<?> handleShardUnavailableException(ShardUnavailableException ex) {
+        return buildResponse(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Handles IdempotencyKeyReuseException by returning an UNPROCESSABLE_ENTITY (422) response with the exception message.
+     *
+     * @param ex the IdempotencyKeyReuseException that was thrown.
+     * @return a ResponseEntity containing the exception message and an UNPROCESSABLE_ENTITY status.
+     */
+    @ExceptionHandler(IdempotencyKeyReuseException.class)
+    public ResponseEntity<?> handleIdempotencyKeyReuseException(IdempotencyKeyReuseException ex) {
+        return buildResponse(ex.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    /**
+     * Handles VelocityLimitExceededException by returning a FORBIDDEN (403) response with the exception message.
+     *
+     * @param ex the VelocityLimitExceededException that was thrown.
+     * @return a ResponseEntity containing the exception message and a FORBIDDEN status.
+     */
+    @ExceptionHandler(VelocityLimitExceededException.class)
+    public ResponseEntity<?> handleVelocityLimitExceededException(VelocityLimitExceededException ex) {
+        return buildResponse(ex.getMessage(), HttpStatus.FORBIDDEN);
+    }
 }
@@ -0,0 +1,16 @@
+package com.exalt.training.users.exception;
+
+/**
+ * Exception thrown when an idempotency key is sent again with a different operation or amount.
+ */
+public class IdempotencyKeyReuseException extends RuntimeException {
+
+    /**
+     * Constructs a new IdempotencyKeyReuseException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public IdempotencyKeyReuseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.exalt.training.users.exception;
+
+/**
+ * Exception thrown when a user's shard cannot take a write, for example while their bucket is being moved.
+ */
+public class ShardUnavailableException extends RuntimeException {
+
+    /**
+     * Constructs a new ShardUnavailableException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public ShardUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.exalt.training.users.exception;
+
+/**
+ * Exception thrown when a debit is rejected because the account crossed its velocity limits.
+ */
+public class VelocityLimitExceededException extends RuntimeException {
+    /**
+     * Constructs a new VelocityLimitExceededException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public VelocityLimitExceededException(String message) {
+        super(message);
+    }
+}
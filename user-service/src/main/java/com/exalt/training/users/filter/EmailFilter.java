@@ -0,0 +1,145 @@
+package com.exalt.training.users.filter;
+
+import com.exalt.training.users.repository.UserEmailRepository;
+import com.exalt.training.users.sharding.ShardContext;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * In-memory {@link ScalableBloomFilter} of registered emails, so sign-ups with an email that was definitely
+ * never registered skip the email lookup and rely on the unique email index instead.
+ * <p>
+ * The filter is rebuilt from the email index in the background once the application is ready; until then every
+ * email is reported as possibly registered. Sign-ups through this instance are added as they happen. Sign-ups
+ * through other instances are not, which is why the unique index stays the final check.
+ * </p>
+ */
+@Slf4j
+@Component
+public class EmailFilter {
+    private static final int REBUILD_PAGE_SIZE = 10_000; // Emails read per query while rebuilding
+
+    private final UserEmailRepository userEmailRepository; // Global email index, on the directory shard
+    private final ScalableBloomFilter filter; // Registered emails
+    private final Counter definitelyNew; // Lookups skipped
+    private final Counter registered; // Lookups that found the email
+    private final Counter falsePositives; // Lookups that did not find the email
+    private volatile boolean ready; // Set once the filter holds every email of the index
+
+    public EmailFilter(UserEmailRepository userEmailRepository,
+                       @Value("${app.signup.email-filter.initial-capacity}") long initialCapacity,
+                       @Value("${app.signup.email-filter.false-positive-rate}") double falsePositiveRate,
+                       MeterRegistry registry) {
+        this.userEmailRepository = userEmailRepository;
+        this.filter = new ScalableBloomFilter(initialCapacity, falsePositiveRate);
+        this.definitelyNew = result(registry, "definitely_new");
+        this.registered = result(registry, "registered");
+        this.falsePositives = result(registry, "false_positive");
+        Gauge.builder("users.signup.email.filter.false.positive.rate", this, EmailFilter::observedFalsePositiveRate)
+                .description("Share of new emails the filter reported as possibly registered")
+                .register(registry);
+        Gauge.builder("users.signup.email.filter.estimated.false.positive.rate", filter,
+                        ScalableBloomFilter::estimatedFalsePositiveRate)
+                .description("False-positive rate estimated from the filter's fill ratio")
+                .register(registry);
+        Gauge.builder("users.signup.email.filter.entries", filter, ScalableBloomFilter::entries)
+                .description("Emails added to the filter")
+                .register(registry);
+    }
+
+    /**
+     * Starts rebuilding the filter in the background once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildInBackground() {
+        Thread rebuild = new Thread(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException ex) {
+                log.warn("Failed to rebuild the email filter, sign-ups keep looking up every email", ex);
+            }
+        }, "email-filter-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    /**
+     * Adds every email of the index to the filter, then lets sign-ups rely on it.
+     */
+    @SuppressWarnings("try")
+    public void rebuild() {
+        long start = System.nanoTime();
+        String after = "";
+        List<String> emails;
+        do {
+            try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+                emails = userEmailRepository.findEmailsAfter(after, PageRequest.ofSize(REBUILD_PAGE_SIZE));
+            }
+            emails.forEach(filter::add);
+            if (!emails.isEmpty()) {
+                after = emails.get(emails.size() - 1);
+            }
+        } while (emails.size() == REBUILD_PAGE_SIZE);
+        ready = true;
+        log.info("Rebuilt email filter with {} emails in {} ms", filter.entries(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Returns whether an email may already be registered.
+     *
+     * @param email the email address.
+     * @return false if the email was definitely never registered.
+     */
+    public boolean mightBeRegistered(String email) {
+        if (ready && !filter.mightContain(email)) {
+            definitelyNew.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of a lookup made because {@link #mightBeRegistered} returned true.
+     *
+     * @param found whether the email was registered.
+     */
+    public void lookedUp(boolean found) {
+        if (!ready) {
+            return;
+        }
+        (found ? registered : falsePositives).increment();
+    }
+
+    /**
+     * Adds a newly registered email.
+     *
+     * @param email the email address.
+     */
+    public void add(String email) {
+        filter.add(email);
+    }
+
+    private double observedFalsePositiveRate() {
+        double falsePositive = falsePositives.count();
+        double total = falsePositive + definitelyNew.count();
+        return total == 0 ? 0 : falsePositive / total;
+    }
+
+    private static Counter result(MeterRegistry registry, String result) {
+        return Counter.builder("users.signup.email.filter")
+                .description("Sign-up email checks by filter result")
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,162 @@
+package com.exalt.training.users.filter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of strings that grows with the number of entries instead of being sized up front.
+ * <p>
+ * Entries go into the newest of a list of fixed-size filters (slices). When a slice is full a new one is added
+ * with twice the capacity and half the false-positive rate, so the combined false-positive rate stays below
+ * twice the rate of the first slice however many entries are added. Lookups are lock-free; additions are
+ * serialized. Entries cannot be removed.
+ * </p>
+ */
+final class ScalableBloomFilter {
+    private static final int GROWTH = 2; // Capacity multiplier of each new slice
+    private static final double TIGHTENING = 0.5; // False-positive rate multiplier of each new slice
+
+    /**
+     * One fixed-size Bloom filter, using double hashing to derive its bit positions.
+     */
+    private static final class Slice {
+        private final AtomicLongArray words; // Bit set, written under the filter lock
+        private final long bits; // Number of bits
+        private final int hashes; // Bits set per entry
+        private final long capacity; // Entries before the slice is full
+        private long entries; // Entries added, written under the filter lock
+
+        Slice(long capacity, double falsePositiveRate) {
+            long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = Math.max(Long.SIZE, (bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+            this.words = new AtomicLongArray(Math.toIntExact(this.bits / Long.SIZE));
+            this.hashes = Math.max(1, (int) Math.round(-Math.log(falsePositiveRate) / Math.log(2)));
+            this.capacity = capacity;
+        }
+
+        boolean mightContain(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bits);
+                int word = (int) (bit >>> 6);
+                words.set(word, words.get(word) | (1L << bit));
+            }
+            entries++;
+        }
+
+        /**
+         * Estimates the false-positive rate from the share of bits set.
+         */
+        double estimatedFalsePositiveRate() {
+            long set = 0;
+            for (int i = 0; i < words.length(); i++) {
+                set += Long.bitCount(words.get(i));
+            }
+            return Math.pow((double) set / bits, hashes);
+        }
+    }
+
+    private final double firstFalsePositiveRate; // False-positive rate of the first slice
+    private volatile Slice[] slices; // Oldest first, replaced under the filter lock
+    private long entries; // Entries across all slices, written under the filter lock
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param initialCapacity entries of the first slice.
+     * @param falsePositiveRate upper bound of the combined false-positive rate.
+     */
+    ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        if (initialCapacity < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter capacity or false-positive rate");
+        }
+        this.firstFalsePositiveRate = falsePositiveRate * (1 - TIGHTENING);
+        this.slices = new Slice[]{new Slice(initialCapacity, firstFalsePositiveRate)};
+    }
+
+    /**
+     * Returns whether a value may have been added.
+     *
+     * @param value the value.
+     * @return false if the value was definitely never added.
+     */
+    boolean mightContain(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a value, adding a slice first if the newest one is full.
+     *
+     * @param value the value.
+     */
+    synchronized void add(String value) {
+        if (mightContain(value)) {
+            return;
+        }
+        Slice newest = slices[slices.length - 1];
+        if (newest.entries >= newest.capacity) {
+            Slice[] grown = Arrays.copyOf(slices, slices.length + 1);
+            newest = new Slice(newest.capacity * GROWTH,
+                    firstFalsePositiveRate * Math.pow(TIGHTENING, slices.length));
+            grown[slices.length] = newest;
+            slices = grown;
+        }
+        newest.add(hash(value, 0x9E3779B97F4A7C15L), hash(value, 0xC2B2AE3D27D4EB4FL) | 1);
+        entries++;
+    }
+
+    /**
+     * Returns the number of distinct entries added, give or take the false positives among them.
+     *
+     * @return the entry count.
+     */
+    synchronized long entries() {
+        return entries;
+    }
+
+    /**
+     * Estimates the current false-positive rate from how full the slices are.
+     *
+     * @return the estimated probability that a value never added is reported as present.
+     */
+    double estimatedFalsePositiveRate() {
+        double allNegative = 1;
+        for (Slice slice : slices) {
+            allNegative *= 1 - slice.estimatedFalsePositiveRate();
+        }
+        return 1 - allNegative;
+    }
+
+    /**
+     * 64-bit hash of a string's characters, finished with the MurmurHash3 mixer.
+     */
+    private static long hash(String value, long seed) {
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= value.length();
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,239 @@
+package com.exalt.training.users.fraud;
+
+import com.exalt.training.users.audit.AuditEventType;
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.fraud.VelocityWindows.Thresholds;
+import com.exalt.training.users.fraud.VelocityWindows.Verdict;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming detector of accounts being drained, fed by every credit and debit.
+ * <p>
+ * Each change is recorded in per-account {@link VelocityWindows}; a debit that would take an account past the
+ * limits of its rule within a minute or an hour is rejected, and so is every later debit of that account until it
+ * is unblocked. The first rejection also signs the user out and blocks them through the blocked-users service, on
+ * a background thread so the remote call stays off the debit path.
+ * </p>
+ * <p>
+ * Changes made inside a transaction are only recorded once it commits, so a rolled-back credit or debit never
+ * counts; until then they are kept with the transaction and counted by its later checks, so a transfer batch
+ * cannot split a drain into debits that each stay under the limits.
+ * </p>
+ */
+@Slf4j
+public class VelocityDetector {
+    private static final int BLOCK_QUEUE_CAPACITY = 1_000; // Blocks waiting for the background thread
+    private static final Rule[] RULES = Rule.values();
+    private static final long[] NO_CHANGES = new long[2];
+
+    private final boolean enabled; // Whether debits are checked at all
+    private final VelocityWindows windows; // Recent changes per account
+    private final Thresholds[] thresholds = new Thresholds[RULES.length]; // Limits by rule ordinal, in cents
+    private final ShardedUserRepository userRepository; // Signs tripped users out
+    private final BlockedUsersClient blockedUsersClient; // Blocks tripped users
+    private final AuditLog auditLog; // Records the blocks
+    private final ThreadPoolExecutor blocker; // Runs the blocks off the debit path
+    private final Counter[] trips = new Counter[RULES.length]; // Accounts tripped by rule ordinal
+    private final Counter[] held = new Counter[RULES.length]; // Debits rejected after a trip, by rule ordinal
+
+    public VelocityDetector(VelocityProperties properties, ShardedUserRepository userRepository,
+                            BlockedUsersClient blockedUsersClient, AuditLog auditLog, MeterRegistry registry) {
+        this.enabled = properties.isEnabled();
+        this.windows = new VelocityWindows(properties.getMaxAccounts());
+        this.userRepository = userRepository;
+        this.blockedUsersClient = blockedUsersClient;
+        this.auditLog = auditLog;
+        this.blocker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(BLOCK_QUEUE_CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "velocity-block");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Rule rule : RULES) {
+            VelocityProperties.Limits limits = properties.getLimits().get(rule);
+            if (limits == null) {
+                throw new IllegalArgumentException("No velocity limits for rule " + rule);
+            }
+            thresholds[rule.ordinal()] = new Thresholds(limits.getMinuteChanges(), toCents(limits.getMinuteDebitAmount()),
+                    limits.getHourChanges(), toCents(limits.getHourDebitAmount()));
+            String tag = rule.name().toLowerCase(Locale.ROOT);
+            trips[rule.ordinal()] = Counter.builder("users.velocity.trips")
+                    .description("Accounts that crossed the velocity limits and were blocked")
+                    .tag("rule", tag)
+                    .register(registry);
+            held[rule.ordinal()] = Counter.builder("users.velocity.held")
+                    .description("Debits rejected because the account had crossed the velocity limits")
+                    .tag("rule", tag)
+                    .register(registry);
+        }
+        FunctionCounter.builder("users.velocity.evictions", windows, VelocityWindows::evictions)
+                .description("Active accounts whose windows were dropped to make room for others")
+                .register(registry);
+        FunctionCounter.builder("users.velocity.untracked", windows, VelocityWindows::untracked)
+                .description("Changes not counted because their accounts' slots were all held by tripped accounts")
+                .register(registry);
+    }
+
+    /**
+     * Checks a debit against the account's limits, and records it once the current transaction commits if it is
+     * allowed.
+     *
+     * @param user   the user debited.
+     * @param amount the amount of the debit.
+     * @return false if the debit must be rejected.
+     */
+    public boolean tryDebit(User user, double amount) {
+        if (!enabled) {
+            return true;
+        }
+        Rule rule = user.getRule();
+        int account = Integer.parseInt(user.getNationalId());
+        long cents = toCents(amount);
+        long[] pending = pendingChanges(account);
+        Verdict verdict = windows.check(account, System.currentTimeMillis(), cents, pending[0], pending[1],
+                thresholds[rule.ordinal()]);
+        switch (verdict) {
+            case ALLOWED -> {
+                record(account, cents);
+                return true;
+            }
+            case TRIPPED -> {
+                trips[rule.ordinal()].increment();
+                blockInBackground(user.getNationalId(), user.getUsername());
+            }
+            case HELD -> held[rule.ordinal()].increment();
+        }
+        return false;
+    }
+
+    /**
+     * Records a credit once the current transaction commits.
+     *
+     * @param user the user credited.
+     */
+    public void credit(User user) {
+        if (enabled) {
+            record(Integer.parseInt(user.getNationalId()), 0);
+        }
+    }
+
+    /**
+     * Forgets the recent changes of an account, so an unblocked user can debit again.
+     *
+     * @param nationalId the national ID of the user.
+     */
+    public void reset(String nationalId) {
+        windows.reset(Integer.parseInt(nationalId));
+    }
+
+    /**
+     * Stops the background thread, dropping blocks that have not run yet.
+     */
+    @PreDestroy
+    public void stop() {
+        blocker.shutdownNow();
+    }
+
+    /**
+     * Creates a detector that tracks every change but never trips, for code run outside the application context.
+     *
+     * @param userRepository the users.
+     * @param registry the registry for the velocity meters.
+     * @return the detector.
+     */
+    public static VelocityDetector unlimited(ShardedUserRepository userRepository, MeterRegistry registry) {
+        VelocityProperties properties = new VelocityProperties();
+        for (Rule rule : RULES) {
+            properties.getLimits().put(rule, new VelocityProperties.Limits(Integer.MAX_VALUE, Double.MAX_VALUE,
+                    Integer.MAX_VALUE, Double.MAX_VALUE));
+        }
+        return new VelocityDetector(properties, userRepository, null, AuditLog.disabled(registry), registry);
+    }
+
+    /**
+     * Records a change after the current transaction commits, or at once outside a transaction.
+     */
+    private void record(int account, long cents) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            windows.record(account, System.currentTimeMillis(), 1, cents);
+            return;
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        long[] changes = pending.byAccount.computeIfAbsent(account, key -> new long[2]);
+        changes[0]++;
+        changes[1] += cents;
+    }
+
+    /**
+     * Returns the changes and debited cents of an account made in the current transaction and not recorded yet.
+     */
+    private long[] pendingChanges(int account) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return NO_CHANGES;
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        return pending == null ? NO_CHANGES : pending.byAccount.getOrDefault(account, NO_CHANGES);
+    }
+
+    /**
+     * Changes of one transaction, recorded in the windows when it commits and dropped otherwise.
+     */
+    private final class PendingChanges implements TransactionSynchronization {
+        private final Map<Integer, long[]> byAccount = new HashMap<>(); // Changes and debited cents by account
+
+        @Override
+        public void afterCommit() {
+            long now = System.currentTimeMillis();
+            byAccount.forEach((account, changes) -> windows.record(account, now, (int) changes[0], changes[1]));
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(VelocityDetector.this);
+        }
+    }
+
+    private void blockInBackground(String nationalId, String username) {
+        try {
+            blocker.execute(() -> {
+                try {
+                    userRepository.markSignedOut(nationalId);
+                    blockedUsersClient.block(nationalId, username);
+                    auditLog.publish(AuditEventType.BLOCK, nationalId, 0, 0);
+                    log.warn("Blocked user {} for crossing the debit velocity limits", nationalId);
+                } catch (RuntimeException ex) {
+                    log.warn("Failed to block user {} after crossing the debit velocity limits", nationalId, ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            log.warn("Too many pending blocks, user {} stays signed in but their debits are rejected", nationalId);
+        }
+    }
+
+    private static long toCents(double amount) {
+        return amount >= Long.MAX_VALUE / 100.0 ? Long.MAX_VALUE : Math.round(amount * 100);
+    }
+}
@@ -0,0 +1,40 @@
+package com.exalt.training.users.fraud;
+
+import com.exalt.training.users.enums.Rule;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of the debit velocity detector, bound from {@code app.velocity.*}.
+ * The windows are kept per instance, so with several instances an account may reach up to that many times
+ * the limits before it trips.
+ */
+@Data
+@ConfigurationProperties("app.velocity")
+public class VelocityProperties {
+    private boolean enabled = true; // Whether debits are checked at all
+    private int maxAccounts = 65_536; // Accounts tracked at once; the least recently active untripped ones are evicted
+    private Map<Rule, Limits> limits = new EnumMap<>(Map.of(
+            Rule.GOLDEN_SUBSCRIPTION, new Limits(30, 20_000, 300, 100_000),
+            Rule.SHABAB, new Limits(15, 2_000, 120, 10_000),
+            Rule.REGULAR, new Limits(10, 5_000, 100, 20_000))); // Limits by rule
+
+    /**
+     * Limits of the accounts of one rule. Credits and debits both count as changes; only debits count
+     * towards the amounts.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limits {
+        private int minuteChanges; // Most credits and debits within a minute
+        private double minuteDebitAmount; // Most debited within a minute
+        private int hourChanges; // Most credits and debits within an hour
+        private double hourDebitAmount; // Most debited within an hour
+    }
+}
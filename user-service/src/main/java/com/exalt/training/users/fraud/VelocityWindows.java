@@ -0,0 +1,275 @@
+package com.exalt.training.users.fraud;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sliding one-minute and one-hour windows of the balance changes of each account, in preallocated arrays.
+ * <p>
+ * Each window is a ring of time buckets holding the number of changes and the debited cents, so a window total
+ * is the sum of its buckets and sliding it only clears the buckets that expired. Accounts live in a fixed-size
+ * open-addressing table split into stripes with their own lock; an account is looked for among a bounded run of
+ * slots, and a new account takes an empty or idle slot there, or else evicts the least recently active one that
+ * has not tripped. Debits are checked and recorded in separate calls, so only committed ones are counted. No call
+ * allocates, so the windows add no garbage to the debit path.
+ * </p>
+ */
+final class VelocityWindows {
+    static final long MINUTE_BUCKET_MILLIS = 10_000; // Span of a bucket of the minute window
+    static final long HOUR_BUCKET_MILLIS = 600_000; // Span of a bucket of the hour window
+    private static final int BUCKETS = 6; // Buckets per window
+    private static final int STRIPES = 64; // Independently locked parts of the table
+    private static final int MAX_PROBES = 16; // Slots an account may be found in
+    private static final int EMPTY = -1; // Key of a free slot
+
+    /**
+     * Outcome of checking a debit.
+     */
+    enum Verdict {
+        ALLOWED, // Within the thresholds, to be recorded once committed
+        TRIPPED, // This debit would have crossed a threshold
+        HELD // The account tripped earlier and has not been reset
+    }
+
+    /**
+     * Thresholds of one rule. A debit trips them if, counting it, either window would hold more changes or more
+     * debited cents than allowed.
+     *
+     * @param minuteChanges   the most credits and debits in the minute window.
+     * @param minuteDebitCents the most cents debited in the minute window.
+     * @param hourChanges     the most credits and debits in the hour window.
+     * @param hourDebitCents  the most cents debited in the hour window.
+     */
+    record Thresholds(long minuteChanges, long minuteDebitCents, long hourChanges, long hourDebitCents) {
+    }
+
+    private final int slotsPerStripe; // Slots in each stripe
+    private final Object[] locks = new Object[STRIPES]; // Lock of each stripe
+    private final int[] keys; // Account in each slot, EMPTY if free
+    private final long[] lastMillis; // Time of the last change of each slot
+    private final boolean[] tripped; // Whether the account of each slot tripped
+    private final int[] minuteChanges; // Per slot, BUCKETS buckets of changes
+    private final long[] minuteCents; // Per slot, BUCKETS buckets of debited cents
+    private final int[] hourChanges; // Per slot, BUCKETS buckets of changes
+    private final long[] hourCents; // Per slot, BUCKETS buckets of debited cents
+    private final LongAdder evictions = new LongAdder(); // Active accounts evicted to make room
+    private final LongAdder untracked = new LongAdder(); // Changes dropped because every slot of the run was tripped
+
+    /**
+     * Creates empty windows.
+     *
+     * @param maxAccounts how many accounts can be tracked at once, rounded up to a multiple of the stripes.
+     */
+    VelocityWindows(int maxAccounts) {
+        this.slotsPerStripe = Math.max(MAX_PROBES, (maxAccounts + STRIPES - 1) / STRIPES);
+        int slots = slotsPerStripe * STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.keys = new int[slots];
+        Arrays.fill(keys, EMPTY);
+        this.lastMillis = new long[slots];
+        this.tripped = new boolean[slots];
+        this.minuteChanges = new int[slots * BUCKETS];
+        this.minuteCents = new long[slots * BUCKETS];
+        this.hourChanges = new int[slots * BUCKETS];
+        this.hourCents = new long[slots * BUCKETS];
+    }
+
+    /**
+     * Checks whether a debit keeps the account within the thresholds, without recording it; if not, marks the
+     * account as tripped. Changes of the same transaction that are not recorded yet are counted as well.
+     *
+     * @param account        the account, as a non-negative number.
+     * @param nowMillis      the current time.
+     * @param cents          the debited amount in cents.
+     * @param pendingChanges changes of the account checked but not recorded yet.
+     * @param pendingCents   cents debited from the account checked but not recorded yet.
+     * @param thresholds     the thresholds of the account's rule.
+     * @return whether the debit may go ahead, and if not why.
+     */
+    Verdict check(int account, long nowMillis, long cents, long pendingChanges, long pendingCents,
+                  Thresholds thresholds) {
+        int hash = hash(account);
+        synchronized (locks[stripe(hash)]) {
+            int slot = find(account, hash);
+            long minuteTotal = pendingChanges;
+            long minuteDebited = pendingCents;
+            long hourTotal = pendingChanges;
+            long hourDebited = pendingCents;
+            if (slot >= 0) {
+                advance(slot, nowMillis);
+                if (tripped[slot]) {
+                    return Verdict.HELD;
+                }
+                int base = slot * BUCKETS;
+                for (int i = base; i < base + BUCKETS; i++) {
+                    minuteTotal += minuteChanges[i];
+                    minuteDebited += minuteCents[i];
+                    hourTotal += hourChanges[i];
+                    hourDebited += hourCents[i];
+                }
+            }
+            if (minuteTotal + 1 > thresholds.minuteChanges() || minuteDebited + cents > thresholds.minuteDebitCents()
+                    || hourTotal + 1 > thresholds.hourChanges() || hourDebited + cents > thresholds.hourDebitCents()) {
+                if (slot < 0) {
+                    slot = claim(account, hash, nowMillis);
+                }
+                if (slot >= 0) {
+                    tripped[slot] = true;
+                }
+                return Verdict.TRIPPED;
+            }
+            return Verdict.ALLOWED;
+        }
+    }
+
+    /**
+     * Records committed changes of an account. Credits count as changes but never trip the thresholds.
+     *
+     * @param account   the account, as a non-negative number.
+     * @param nowMillis the current time.
+     * @param changes   the credits and debits to record.
+     * @param cents     the cents debited by them.
+     */
+    void record(int account, long nowMillis, int changes, long cents) {
+        int hash = hash(account);
+        synchronized (locks[stripe(hash)]) {
+            int slot = claim(account, hash, nowMillis);
+            if (slot < 0) {
+                untracked.add(changes);
+                return;
+            }
+            long now = advance(slot, nowMillis);
+            int base = slot * BUCKETS;
+            int minuteBucket = base + bucket(now, MINUTE_BUCKET_MILLIS);
+            int hourBucket = base + bucket(now, HOUR_BUCKET_MILLIS);
+            minuteChanges[minuteBucket] += changes;
+            minuteCents[minuteBucket] += cents;
+            hourChanges[hourBucket] += changes;
+            hourCents[hourBucket] += cents;
+        }
+    }
+
+    /**
+     * Forgets an account, clearing its windows and its tripped state.
+     *
+     * @param account the account, as a non-negative number.
+     */
+    void reset(int account) {
+        int hash = hash(account);
+        synchronized (locks[stripe(hash)]) {
+            int slot = find(account, hash);
+            if (slot >= 0) {
+                keys[slot] = EMPTY;
+            }
+        }
+    }
+
+    /**
+     * Returns how many active accounts were evicted to make room for others.
+     *
+     * @return the eviction count.
+     */
+    long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns how many changes were not recorded because every slot their account may use holds a tripped account.
+     *
+     * @return the count of dropped changes.
+     */
+    long untracked() {
+        return untracked.sum();
+    }
+
+    private int find(int account, int hash) {
+        int base = stripe(hash) * slotsPerStripe;
+        int start = Math.floorMod(hash, slotsPerStripe);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = base + (start + probe) % slotsPerStripe;
+            if (keys[slot] == account) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot of an account, taking an empty slot, an idle one or the least recently active one of its
+     * run if it has none. Tripped accounts are never evicted, so their debits stay held until they are reset.
+     *
+     * @return the slot, or -1 if every other slot of the run holds a tripped account.
+     */
+    private int claim(int account, int hash, long nowMillis) {
+        int base = stripe(hash) * slotsPerStripe;
+        int start = Math.floorMod(hash, slotsPerStripe);
+        int victim = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = base + (start + probe) % slotsPerStripe;
+            if (keys[slot] == account) {
+                return slot;
+            }
+            if (keys[slot] != EMPTY && tripped[slot]) {
+                continue;
+            }
+            if (victim < 0 || keys[victim] != EMPTY && (keys[slot] == EMPTY || lastMillis[slot] < lastMillis[victim])) {
+                victim = slot;
+            }
+        }
+        if (victim < 0) {
+            return -1;
+        }
+        if (keys[victim] != EMPTY && nowMillis - lastMillis[victim] < BUCKETS * HOUR_BUCKET_MILLIS) {
+            evictions.increment();
+        }
+        keys[victim] = account;
+        lastMillis[victim] = nowMillis;
+        tripped[victim] = false;
+        int from = victim * BUCKETS;
+        Arrays.fill(minuteChanges, from, from + BUCKETS, 0);
+        Arrays.fill(minuteCents, from, from + BUCKETS, 0);
+        Arrays.fill(hourChanges, from, from + BUCKETS, 0);
+        Arrays.fill(hourCents, from, from + BUCKETS, 0);
+        return victim;
+    }
+
+    /**
+     * Clears the buckets of a slot that expired since its last change and makes now its last change.
+     *
+     * @return the time to record at, never before the slot's last change.
+     */
+    private long advance(int slot, long nowMillis) {
+        long last = lastMillis[slot];
+        long now = Math.max(nowMillis, last);
+        int base = slot * BUCKETS;
+        clearExpired(minuteChanges, minuteCents, base, last, now, MINUTE_BUCKET_MILLIS);
+        clearExpired(hourChanges, hourCents, base, last, now, HOUR_BUCKET_MILLIS);
+        lastMillis[slot] = now;
+        return now;
+    }
+
+    private static void clearExpired(int[] changes, long[] cents, int base, long last, long now, long bucketMillis) {
+        long lastBucket = last / bucketMillis;
+        long nowBucket = now / bucketMillis;
+        for (long expired = lastBucket + 1; expired <= nowBucket && expired <= lastBucket + BUCKETS; expired++) {
+            int i = base + (int) (expired % BUCKETS);
+            changes[i] = 0;
+            cents[i] = 0;
+        }
+    }
+
+    private static int bucket(long millis, long bucketMillis) {
+        return (int) (millis / bucketMillis % BUCKETS);
+    }
+
+    private static int stripe(int hash) {
+        return hash >>> 26; // Top six bits, STRIPES = 64
+    }
+
+    private static int hash(int account) {
+        int hash = account * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
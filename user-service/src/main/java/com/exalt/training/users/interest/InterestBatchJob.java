@@ -0,0 +1,472 @@
+package com.exalt.training.users.interest;
+
+import com.exalt.training.users.audit.AuditEventType;
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.portfolio.PortfolioAggregates;
+import com.exalt.training.users.sharding.ShardDataSources;
+import com.exalt.training.users.sharding.ShardDirectory;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies the monthly interest and fees of each {@link Rule} to every account.
+ * <p>
+ * A run covers one closed month. The users of every shard are split into partitions of
+ * {@code app.interest.partition-size} consecutive IDs, and the partitions of all shards are processed on a
+ * fork-join pool of {@code app.interest.parallelism} workers. A worker walks its partition in chunks of
+ * {@code app.interest.chunk-size} accounts, each in one transaction on the shard: the chunk is locked, the new
+ * balances are written with one batched UPDATE and the ledger entries with one batched INSERT. Each account
+ * records the last month applied to it in the same transaction, which is the checkpoint: a run stopped by a
+ * crash is resumed from "interest_runs" on the directory shard every {@code app.interest.resume-interval}, and
+ * accounts already done are not selected again. Accounts opened after the month closed are marked as done at
+ * sign-up.
+ * </p>
+ * <p>
+ * To leave room for online traffic, the job processes at most {@code app.interest.max-accounts-per-second}
+ * accounts, and waits before each chunk while requests are queued for a connection of the shard, up to
+ * {@code app.interest.max-pause}. Accounts whose bucket is being moved are skipped and picked up when the run
+ * is resumed. Works over plain JDBC per shard so it does not depend on the JPA shard routing.
+ * </p>
+ */
+@Slf4j
+public class InterestBatchJob {
+    private static final Rule[] RULES = Rule.values();
+    private static final long PAUSE_POLL_MILLIS = 50; // How often a paused chunk checks the connection pool again
+
+    private final ShardDataSources shardDataSources; // Writable pool per shard
+    private final ShardDirectory directory; // Bucket map, to hold off bucket moves
+    private final AuditLog auditLog; // Records committed balance changes
+    private final PortfolioAggregates portfolioAggregates; // Totals per rule
+    private final InterestProperties.Terms[] terms = new InterestProperties.Terms[RULES.length]; // Terms by rule ordinal
+    private final int parallelism; // Partitions processed at once
+    private final int partitionSize; // Accounts per partition
+    private final int chunkSize; // Accounts per transaction
+    private final long nanosPerAccount; // Pace of the job
+    private final long maxPauseNanos; // Longest wait for a busy connection pool
+    private final String insertLedgerEntry; // Batched insert of ledger entries, with the dialect's sequence call
+    private final ExecutorService runner; // Runs the batch off the scheduler thread
+    private final AtomicBoolean running = new AtomicBoolean(); // Whether a run is in progress on this instance
+    private final AtomicLong pace = new AtomicLong(System.nanoTime()); // When the next chunk may start
+    private volatile boolean stopping; // Set on shutdown, stops the workers between chunks
+    private final Counter[] accounts = new Counter[RULES.length]; // Accounts changed by rule ordinal
+    private final Counter[] entries = new Counter[LedgerEntryType.values().length]; // Ledger entries by type ordinal
+    private final Counter pauses; // Chunks delayed for online traffic
+    private final Timer runs; // Runs and resumptions
+
+    public InterestBatchJob(InterestProperties properties, ShardDataSources shardDataSources, ShardDirectory directory,
+                            AuditLog auditLog, PortfolioAggregates portfolioAggregates,
+                            EntityManagerFactory entityManagerFactory, MeterRegistry registry) {
+        this.shardDataSources = shardDataSources;
+        this.directory = directory;
+        this.auditLog = auditLog;
+        this.portfolioAggregates = portfolioAggregates;
+        this.parallelism = properties.getParallelism();
+        this.partitionSize = properties.getPartitionSize();
+        this.chunkSize = properties.getChunkSize();
+        this.nanosPerAccount = TimeUnit.SECONDS.toNanos(1) / properties.getMaxAccountsPerSecond();
+        this.maxPauseNanos = properties.getMaxPause().toNanos();
+        String nextLedgerId = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices()
+                .getDialect().getSequenceSupport().getSelectSequenceNextValString("ledger_sequence");
+        this.insertLedgerEntry = "insert into ledger_entries (id, national_id, type, amount, balance_after, created_at)"
+                + " values (" + nextLedgerId + ", ?, ?, ?, ?, ?)";
+        this.runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "interest-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Rule rule : RULES) {
+            InterestProperties.Terms ruleTerms = properties.getTerms().get(rule);
+            if (ruleTerms == null) {
+                throw new IllegalArgumentException("No interest terms for rule " + rule + ", set app.interest.terms["
+                        + rule + "].* or disable the batch with app.interest.enabled=false");
+            }
+            terms[rule.ordinal()] = ruleTerms;
+            accounts[rule.ordinal()] = Counter.builder("users.interest.accounts")
+                    .description("Accounts whose balance was changed by the monthly interest and fees")
+                    .tag("rule", rule.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        for (LedgerEntryType type : LedgerEntryType.values()) {
+            entries[type.ordinal()] = Counter.builder("users.ledger.entries")
+                    .description("Entries appended to the transaction ledger by type")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        this.pauses = Counter.builder("users.interest.pauses")
+                .description("Interest chunks delayed because online requests were waiting for a connection")
+                .register(registry);
+        this.runs = Timer.builder("users.interest.runs")
+                .description("Time taken by runs of the monthly interest and fees, including resumptions")
+                .register(registry);
+    }
+
+    /**
+     * Starts the run for the month that just closed.
+     */
+    @Scheduled(cron = "${app.interest.cron}", zone = "UTC")
+    public void startMonthlyRun() {
+        submit(periodOf(YearMonth.now(ZoneOffset.UTC).minusMonths(1)));
+    }
+
+    /**
+     * Resumes the oldest run that has not completed, if any.
+     */
+    @Scheduled(fixedDelayString = "${app.interest.resume-interval}")
+    public void resumeIncompleteRun() {
+        try {
+            List<Integer> incomplete = new JdbcTemplate(shardDataSources.get(ShardDirectory.DIRECTORY_SHARD)).queryForList(
+                    "select period from interest_runs where completed_at is null order by period", Integer.class);
+            if (!incomplete.isEmpty()) {
+                submit(incomplete.get(0));
+            }
+        } catch (DataAccessException ex) {
+            log.warn("Could not look for incomplete interest runs", ex);
+        }
+    }
+
+    /**
+     * Stops the run in progress after the chunks being written.
+     */
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+        runner.shutdown();
+    }
+
+    /**
+     * Returns a month as stored in "interest_through".
+     *
+     * @param month the month.
+     * @return the month as yyyyMM.
+     */
+    public static int periodOf(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    private void submit(int period) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            runner.execute(() -> {
+                try {
+                    runs.record(() -> run(period));
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RuntimeException ex) {
+            running.set(false);
+            throw ex;
+        }
+    }
+
+    /**
+     * Processes every account not yet done for the month, and marks the run complete if none was left out.
+     */
+    private void run(int period) {
+        JdbcTemplate directoryJdbc = new JdbcTemplate(shardDataSources.get(ShardDirectory.DIRECTORY_SHARD));
+        try {
+            directoryJdbc.update("insert into interest_runs (period, started_at, accounts) values (?, ?, 0)",
+                    period, OffsetDateTime.now(ZoneOffset.UTC));
+        } catch (DuplicateKeyException ex) {
+            Boolean completed = directoryJdbc.queryForObject(
+                    "select completed_at is not null from interest_runs where period = ?", Boolean.class, period);
+            if (Boolean.TRUE.equals(completed)) {
+                return;
+            }
+        }
+
+        List<Partition> partitions = plan(period);
+        log.info("Applying the interest and fees of {} over {} partitions", period, partitions.size());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long changed = 0;
+        boolean complete = true;
+        try {
+            List<Callable<Progress>> tasks = partitions.stream()
+                    .map(partition -> (Callable<Progress>) () -> process(partition, period))
+                    .toList();
+            for (Future<Progress> result : pool.invokeAll(tasks)) {
+                try {
+                    Progress progress = result.get();
+                    changed += progress.changed();
+                    complete &= progress.complete();
+                } catch (ExecutionException ex) {
+                    complete = false;
+                    log.warn("Interest partition of {} failed, it is retried when the run is resumed", period, ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            complete = false;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        directoryJdbc.update("update interest_runs set accounts = accounts + ?, completed_at = ? where period = ?",
+                changed, complete ? OffsetDateTime.now(ZoneOffset.UTC) : null, period);
+        if (complete) {
+            log.info("Applied the interest and fees of {}, {} accounts changed by this instance", period, changed);
+        } else {
+            log.warn("Interest run of {} left accounts out, it is resumed in a while", period);
+        }
+    }
+
+    /**
+     * Splits the users of every shard into ranges of {@code partitionSize} IDs, interleaving the shards.
+     */
+    private List<Partition> plan(int period) {
+        List<List<Partition>> byShard = new ArrayList<>();
+        for (int shard = 0; shard < shardDataSources.all().size(); shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(shard));
+            List<Partition> partitions = new ArrayList<>();
+            Long from = jdbcTemplate.queryForObject(
+                    "select min(id) from users where interest_through is null or interest_through < ?", Long.class, period);
+            while (from != null) {
+                List<Long> next = jdbcTemplate.queryForList(
+                        "select id from users where id >= ? order by id limit 1 offset ?", Long.class, from, partitionSize);
+                Long to = next.isEmpty() ? null : next.get(0);
+                partitions.add(new Partition(shard, from, to == null ? Long.MAX_VALUE : to));
+                from = to;
+            }
+            byShard.add(partitions);
+        }
+        List<Partition> interleaved = new ArrayList<>();
+        while (byShard.stream().anyMatch(partitions -> !partitions.isEmpty())) {
+            for (List<Partition> partitions : byShard) {
+                if (!partitions.isEmpty()) {
+                    interleaved.add(partitions.remove(0));
+                }
+            }
+        }
+        return interleaved;
+    }
+
+    /**
+     * Applies the month to the accounts of one partition, one chunk per transaction.
+     */
+    private Progress process(Partition partition, int period) {
+        TransactionTemplate transaction = new TransactionTemplate(
+                new DataSourceTransactionManager(shardDataSources.get(partition.shard())));
+        long after = partition.fromId() - 1;
+        long changed = 0;
+        boolean complete = true;
+        while (!stopping) {
+            throttle(partition.shard());
+            long start = after;
+            Chunk chunk = transaction.execute(status -> applyChunk(partition, start, period));
+            changed += chunk.changed();
+            complete &= chunk.skipped() == 0;
+            if (chunk.selected() < chunkSize) {
+                return new Progress(changed, complete);
+            }
+            after = chunk.lastId();
+        }
+        return new Progress(changed, false);
+    }
+
+    /**
+     * Locks the next accounts of a partition still to do for the month and applies their interest and fees.
+     * Joins the transaction of the shard.
+     */
+    private Chunk applyChunk(Partition partition, long afterId, int period) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(partition.shard()));
+        List<Account> selected = jdbcTemplate.query(
+                "select id, national_id, rule, balance from users where id > ? and id < ?"
+                        + " and (interest_through is null or interest_through < ?) order by id limit ? for update",
+                (resultSet, row) -> new Account(resultSet.getLong(1), resultSet.getString(2),
+                        RULES[resultSet.getInt(3)], resultSet.getDouble(4)),
+                afterId, partition.toId(), period, chunkSize);
+        if (selected.isEmpty()) {
+            return new Chunk(0, afterId, 0, 0);
+        }
+
+        Set<Integer> writable = new HashSet<>();
+        Set<Integer> unavailable = new HashSet<>();
+        List<Account> accepted = new ArrayList<>();
+        for (Account account : selected) {
+            int bucket = directory.bucketOf(account.nationalId());
+            if (!writable.contains(bucket) && (unavailable.contains(bucket) || !beginWrite(bucket, partition.shard()))) {
+                unavailable.add(bucket);
+                continue;
+            }
+            writable.add(bucket);
+            accepted.add(account);
+        }
+
+        List<Change> updated = new ArrayList<>();
+        List<Change> changes = new ArrayList<>();
+        for (Account account : accepted) {
+            InterestProperties.Terms ruleTerms = terms[account.rule().ordinal()];
+            double balance = account.balance();
+            double interest = balance > 0 ? Math.round(balance * ruleTerms.getMonthlyRate() * 100) / 100.0 : 0;
+            double fee = Math.min(ruleTerms.getMonthlyFee(), Math.max(0, balance + interest));
+            double net = Math.round((interest - fee) * 100) / 100.0;
+            Change change = new Change(account, net, net == 0 ? balance : Math.round((balance + net) * 100) / 100.0);
+            updated.add(change);
+            if (net != 0) {
+                changes.add(change);
+            }
+        }
+
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbcTemplate.batchUpdate("update users set balance = ?, interest_through = ? where id = ?",
+                updated, updated.size(), (statement, change) -> {
+                    statement.setDouble(1, change.balanceAfter());
+                    statement.setInt(2, period);
+                    statement.setLong(3, change.account().id());
+                });
+        jdbcTemplate.batchUpdate(insertLedgerEntry, changes, changes.size(), (statement, change) -> {
+            statement.setString(1, change.account().nationalId());
+            statement.setString(2, change.type().name());
+            statement.setDouble(3, Math.abs(change.net()));
+            statement.setDouble(4, change.balanceAfter());
+            statement.setObject(5, now);
+        });
+
+        double[][] totals = new double[RULES.length][LedgerEntryType.values().length];
+        for (Change change : changes) {
+            totals[change.account().rule().ordinal()][change.type().ordinal()] += Math.abs(change.net());
+            accounts[change.account().rule().ordinal()].increment();
+            entries[change.type().ordinal()].increment();
+            auditLog.publishAfterCommit(AuditEventType.of(change.type()), change.account().nationalId(),
+                    Math.abs(change.net()), change.balanceAfter());
+        }
+        for (Rule rule : RULES) {
+            for (LedgerEntryType type : LedgerEntryType.values()) {
+                if (totals[rule.ordinal()][type.ordinal()] != 0) {
+                    portfolioAggregates.recordAfterCommit(rule, type, totals[rule.ordinal()][type.ordinal()]);
+                }
+            }
+        }
+        return new Chunk(selected.size(), selected.get(selected.size() - 1).id(), changes.size(),
+                selected.size() - accepted.size());
+    }
+
+    /**
+     * Holds off moves of a bucket until the current transaction completes, if it is writable and still on the shard.
+     *
+     * @return whether the accounts of the bucket can be written.
+     */
+    private boolean beginWrite(int bucket, int shard) {
+        if (!directory.tryBeginWrite(bucket)) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                directory.endWrite(bucket);
+            }
+        });
+        return directory.ownerOf(bucket) == shard;
+    }
+
+    /**
+     * Waits for the job's pace, then while online requests are queued for a connection of the shard.
+     */
+    private void throttle(int shard) {
+        long cost = chunkSize * nanosPerAccount;
+        long startAt = pace.accumulateAndGet(System.nanoTime(), (next, now) -> Math.max(next, now) + cost) - cost;
+        sleepNanos(startAt - System.nanoTime());
+
+        DataSource dataSource = shardDataSources.get(shard);
+        HikariPoolMXBean pool = dataSource instanceof HikariDataSource hikari ? hikari.getHikariPoolMXBean() : null;
+        if (pool == null || pool.getThreadsAwaitingConnection() == 0) {
+            return;
+        }
+        pauses.increment();
+        long deadline = System.nanoTime() + maxPauseNanos;
+        while (pool.getThreadsAwaitingConnection() > 0 && System.nanoTime() < deadline && !stopping) {
+            sleepNanos(TimeUnit.MILLISECONDS.toNanos(PAUSE_POLL_MILLIS));
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interest batch interrupted", ex);
+        }
+    }
+
+    /**
+     * Users of one shard with an ID from {@code fromId}, inclusive, to {@code toId}, exclusive.
+     */
+    private record Partition(int shard, long fromId, long toId) {
+    }
+
+    /**
+     * An account selected for the month.
+     */
+    private record Account(long id, String nationalId, Rule rule, double balance) {
+    }
+
+    /**
+     * The balance change of an account for the month: interest minus fee, rounded to cents, possibly zero.
+     */
+    private record Change(Account account, double net, double balanceAfter) {
+        LedgerEntryType type() {
+            return net > 0 ? LedgerEntryType.CREDIT : LedgerEntryType.DEBIT;
+        }
+    }
+
+    /**
+     * Outcome of one chunk.
+     *
+     * @param selected the accounts selected.
+     * @param lastId   the highest ID selected.
+     * @param changed  the accounts whose balance changed.
+     * @param skipped  the accounts left out because their bucket was being moved.
+     */
+    private record Chunk(int selected, long lastId, long changed, int skipped) {
+    }
+
+    /**
+     * Outcome of one partition.
+     *
+     * @param changed  the accounts whose balance changed.
+     * @param complete whether no account was left out.
+     */
+    private record Progress(long changed, boolean complete) {
+    }
+}
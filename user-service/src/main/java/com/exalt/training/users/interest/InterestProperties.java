@@ -0,0 +1,40 @@
+package com.exalt.training.users.interest;
+
+import com.exalt.training.users.enums.Rule;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of the monthly interest and fees batch, bound from {@code app.interest.*}.
+ */
+@Data
+@ConfigurationProperties("app.interest")
+public class InterestProperties {
+    private boolean enabled = false; // Whether the batch runs at all, needs terms for every rule
+    private String cron = "0 0 1 1 * *"; // When the run for the month just closed starts, in UTC
+    private Duration resumeInterval = Duration.ofMinutes(10); // How often incomplete runs are looked for and resumed
+    private int parallelism = 4; // Partitions processed at once
+    private int partitionSize = 10_000; // Accounts per partition
+    private int chunkSize = 500; // Accounts updated per transaction
+    private int maxAccountsPerSecond = 5_000; // Accounts processed per second by this instance, at most
+    private Duration maxPause = Duration.ofSeconds(5); // Longest wait for online requests queued on a connection pool
+    private Map<Rule, Terms> terms = new EnumMap<>(Rule.class); // Terms by rule, none until the business sets them
+
+    /**
+     * Monthly terms of the accounts of one rule. The fee is taken after the interest is added, and never takes
+     * the balance below zero.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Terms {
+        private double monthlyRate; // Interest added, as a fraction of the balance
+        private double monthlyFee; // Fee taken
+    }
+}
@@ -0,0 +1,127 @@
+package com.exalt.training.users.ledger;
+
+import com.exalt.training.users.sharding.ShardDataSources;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partitions the "ledger_entries" table by month of {@code created_at} on PostgreSQL shards.
+ * <p>
+ * Hibernate creates the table as a plain one; on startup, an empty plain table is recreated as a range
+ * partitioned table with the same columns, a primary key of {@code (id, created_at)} as partitioning requires,
+ * and a default partition. Monthly partitions are then kept {@code app.ledger.partition-months-ahead} months
+ * ahead, so appends and day-range reads only touch the current month's partition and old months can be
+ * detached or archived whole. Tables that already hold entries are left as they are. Other databases, such as
+ * the in-memory H2 used in development, keep the plain table. Databases managed by migrations instead should
+ * create the partitioned table themselves.
+ * </p>
+ */
+@Slf4j
+@Component
+@DependsOn("shardSchemaInitializer") // The additional shards need their schema before it is changed
+public class LedgerPartitionManager {
+    private final ShardDataSources shardDataSources; // Writable pool per shard
+    private final int monthsAhead; // Months of partitions created ahead of time
+    private final List<Integer> partitionedShards = new ArrayList<>(); // Shards whose ledger is partitioned
+
+    public LedgerPartitionManager(ShardDataSources shardDataSources,
+                                  @Value("${app.ledger.partition-months-ahead}") int monthsAhead) {
+        this.shardDataSources = shardDataSources;
+        this.monthsAhead = monthsAhead;
+    }
+
+    /**
+     * Partitions the ledger of every PostgreSQL shard and creates its upcoming partitions.
+     */
+    @PostConstruct
+    public void initialize() {
+        for (int shard = 0; shard < shardDataSources.all().size(); shard++) {
+            try {
+                if (partition(shard)) {
+                    partitionedShards.add(shard);
+                }
+            } catch (DataAccessException | MetaDataAccessException ex) {
+                log.warn("Could not partition the ledger of shard {}, it stays a plain table", shard, ex);
+            }
+        }
+        createUpcomingPartitions();
+    }
+
+    /**
+     * Creates the monthly partitions that are missing up to {@code app.ledger.partition-months-ahead} months ahead.
+     */
+    @Scheduled(fixedDelayString = "${app.ledger.partition-check-interval}",
+            initialDelayString = "${app.ledger.partition-check-interval}")
+    public void createUpcomingPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int shard : partitionedShards) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(shard));
+            for (int month = 0; month <= monthsAhead; month++) {
+                YearMonth partition = current.plusMonths(month);
+                try {
+                    jdbcTemplate.execute("create table if not exists ledger_entries_" + partition.getYear() + "_"
+                            + String.format("%02d", partition.getMonthValue())
+                            + " partition of ledger_entries for values from ('" + partition.atDay(1) + " 00:00:00+00')"
+                            + " to ('" + partition.plusMonths(1).atDay(1) + " 00:00:00+00')");
+                } catch (DataAccessException ex) {
+                    log.warn("Could not create the ledger partition for {} on shard {}", partition, shard, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recreates the ledger of a shard as a partitioned table if it is an empty plain table on PostgreSQL.
+     *
+     * @return whether the ledger of the shard is partitioned.
+     */
+    private boolean partition(int shard) throws MetaDataAccessException {
+        String product = JdbcUtils.extractDatabaseMetaData(shardDataSources.get(shard),
+                DatabaseMetaData::getDatabaseProductName);
+        if (!"PostgreSQL".equals(product)) {
+            log.info("Ledger of shard {} is not partitioned on {}", shard, product);
+            return false;
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(shard));
+        List<String> kind = jdbcTemplate.queryForList("select c.relkind from pg_class c"
+                + " join pg_namespace n on n.oid = c.relnamespace"
+                + " where c.relname = 'ledger_entries' and n.nspname = current_schema()", String.class);
+        if (kind.isEmpty()) {
+            return false;
+        }
+        if ("p".equals(kind.get(0))) {
+            return true;
+        }
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("select exists (select 1 from ledger_entries)", Boolean.class))) {
+            log.warn("Ledger of shard {} already holds entries and stays a plain table", shard);
+            return false;
+        }
+        new TransactionTemplate(new DataSourceTransactionManager(shardDataSources.get(shard))).executeWithoutResult(status -> {
+            jdbcTemplate.execute("create table ledger_entries_partitioned"
+                    + " (like ledger_entries including defaults including constraints) partition by range (created_at)");
+            jdbcTemplate.execute("drop table ledger_entries");
+            jdbcTemplate.execute("alter table ledger_entries_partitioned rename to ledger_entries");
+            jdbcTemplate.execute("alter table ledger_entries add primary key (id, created_at)");
+            jdbcTemplate.execute("create index ledger_entries_user_time on ledger_entries (national_id, created_at)");
+            jdbcTemplate.execute("create table ledger_entries_default partition of ledger_entries default");
+        });
+        log.info("Partitioned the ledger of shard {} by month", shard);
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+package com.exalt.training.users.ledger;
+
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.model.LedgerRollupProgress;
+import com.exalt.training.users.sharding.ShardDataSources;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the daily ledger rollups the statements are served from.
+ * <p>
+ * Once a UTC day is closed, plus {@code app.ledger.rollup-grace} for transactions that started before midnight
+ * to commit, the job folds the day's ledger entries into one row per active user on every shard, then advances
+ * the watermark in "ledger_rollup_progress" on the directory shard. Each run only reads the entries of the days
+ * it closes, so the cost grows with the day's activity, not with the size of the ledger. The watermark row is
+ * locked while a day is rolled up, so with several instances each day is rolled up once; a day that fails is
+ * retried on the next run, and rolling a day up again replaces its rows. Works over plain JDBC per shard so it
+ * does not depend on the JPA shard routing.
+ * </p>
+ */
+@Slf4j
+@Component
+public class LedgerRollupJob {
+    private static final int BATCH_SIZE = 500;
+
+    private final ShardDataSources shardDataSources; // Writable pool per shard
+    private final Duration grace; // How long after midnight a day is considered closed
+    private final Counter rolledDays; // Days rolled up by this instance
+    private final Counter rollups; // Rollup rows written by this instance
+
+    public LedgerRollupJob(ShardDataSources shardDataSources, @Value("${app.ledger.rollup-grace}") Duration grace,
+                           MeterRegistry registry) {
+        this.shardDataSources = shardDataSources;
+        this.grace = grace;
+        this.rolledDays = Counter.builder("users.ledger.rolled.days")
+                .description("Closed days rolled up on every shard")
+                .register(registry);
+        this.rollups = Counter.builder("users.ledger.rollups")
+                .description("Daily rollup rows written")
+                .register(registry);
+    }
+
+    /**
+     * Rolls up every closed day after the watermark, oldest first.
+     */
+    @Scheduled(fixedDelayString = "${app.ledger.rollup-interval}")
+    public void rollUp() {
+        LocalDate lastClosed = LocalDate.ofInstant(Instant.now().minus(grace), ZoneOffset.UTC).minusDays(1);
+        TransactionTemplate directoryTransaction = new TransactionTemplate(
+                new DataSourceTransactionManager(shardDataSources.get(ShardDirectory.DIRECTORY_SHARD)));
+        try {
+            while (Boolean.TRUE.equals(directoryTransaction.execute(status -> rollUpNextDay(lastClosed)))) {
+                rolledDays.increment();
+            }
+        } catch (DataAccessException ex) {
+            log.warn("Ledger rollup stopped, it is retried on the next run", ex);
+        }
+    }
+
+    /**
+     * Rolls up the day after the watermark if it is closed, holding the lock on the watermark row.
+     *
+     * @return whether a day was rolled up.
+     */
+    private boolean rollUpNextDay(LocalDate lastClosed) {
+        JdbcTemplate directory = new JdbcTemplate(shardDataSources.get(ShardDirectory.DIRECTORY_SHARD));
+        List<LocalDate> watermark = directory.query(
+                "select rolled_up_through from ledger_rollup_progress where id = ? for update",
+                (resultSet, row) -> resultSet.getObject(1, LocalDate.class), LedgerRollupProgress.SINGLETON_ID);
+        LocalDate rolledUpThrough;
+        if (watermark.isEmpty()) {
+            rolledUpThrough = initialWatermark(lastClosed);
+            directory.update("insert into ledger_rollup_progress (id, rolled_up_through) values (?, ?)",
+                    LedgerRollupProgress.SINGLETON_ID, rolledUpThrough);
+        } else {
+            rolledUpThrough = watermark.get(0);
+        }
+        if (!rolledUpThrough.isBefore(lastClosed)) {
+            return false;
+        }
+
+        LocalDate day = rolledUpThrough.plusDays(1);
+        int rows = 0;
+        for (int shard = 0; shard < shardDataSources.all().size(); shard++) {
+            rows += rollUpDay(shard, day);
+        }
+        directory.update("update ledger_rollup_progress set rolled_up_through = ? where id = ?",
+                day, LedgerRollupProgress.SINGLETON_ID);
+        rollups.increment(rows);
+        log.info("Rolled up the ledger of {} into {} daily rows", day, rows);
+        return true;
+    }
+
+    /**
+     * Starts the watermark the day before the oldest ledger entry, or at the last closed day if there is none.
+     */
+    private LocalDate initialWatermark(LocalDate lastClosed) {
+        LocalDate oldest = null;
+        for (DataSource shard : shardDataSources.all()) {
+            OffsetDateTime first = new JdbcTemplate(shard)
+                    .queryForObject("select min(created_at) from ledger_entries", OffsetDateTime.class);
+            if (first != null) {
+                LocalDate firstDay = LocalDate.ofInstant(first.toInstant(), ZoneOffset.UTC);
+                oldest = oldest == null || firstDay.isBefore(oldest) ? firstDay : oldest;
+            }
+        }
+        return oldest == null || oldest.isAfter(lastClosed) ? lastClosed : oldest.minusDays(1);
+    }
+
+    /**
+     * Replaces the rollups of one day on one shard with a fold of that day's entries.
+     *
+     * @return the number of rollup rows written.
+     */
+    private int rollUpDay(int shard, LocalDate day) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(shard));
+        jdbcTemplate.setFetchSize(BATCH_SIZE);
+        List<DailyTotals> rows = new ArrayList<>();
+        jdbcTemplate.query("select national_id, type, amount, balance_after from ledger_entries"
+                        + " where created_at >= ? and created_at < ? order by national_id, created_at, id",
+                resultSet -> {
+                    String nationalId = resultSet.getString(1);
+                    if (rows.isEmpty() || !rows.get(rows.size() - 1).nationalId.equals(nationalId)) {
+                        rows.add(new DailyTotals(nationalId));
+                    }
+                    DailyTotals totals = rows.get(rows.size() - 1);
+                    String type = resultSet.getString(2);
+                    if (LedgerEntryType.DEBIT.name().equals(type)) {
+                        totals.debits += resultSet.getDouble(3);
+                    } else {
+                        totals.credits += resultSet.getDouble(3);
+                    }
+                    totals.entryCount++;
+                    totals.closingBalance = resultSet.getDouble(4);
+                },
+                day.atStartOfDay().atOffset(ZoneOffset.UTC), day.plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+
+        new TransactionTemplate(new DataSourceTransactionManager(shardDataSources.get(shard))).executeWithoutResult(status -> {
+            jdbcTemplate.update("delete from ledger_daily_rollups where rollup_day = ?", day);
+            jdbcTemplate.batchUpdate("insert into ledger_daily_rollups"
+                            + " (national_id, rollup_day, credits, debits, entry_count, closing_balance)"
+                            + " values (?, ?, ?, ?, ?, ?)", rows, BATCH_SIZE, (statement, totals) -> {
+                        statement.setString(1, totals.nationalId);
+                        statement.setObject(2, day);
+                        statement.setDouble(3, totals.credits);
+                        statement.setDouble(4, totals.debits);
+                        statement.setInt(5, totals.entryCount);
+                        statement.setDouble(6, totals.closingBalance);
+                    });
+        });
+        return rows.size();
+    }
+
+    /**
+     * Running totals of one user's entries over the day being rolled up.
+     */
+    private static final class DailyTotals {
+        private final String nationalId; // National ID of the user
+        private double credits; // Sum of the credits and opening balances so far
+        private double debits; // Sum of the debits so far
+        private int entryCount; // Entries folded so far
+        private double closingBalance; // Balance after the last entry folded
+
+        private DailyTotals(String nationalId) {
+            this.nationalId = nationalId;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.exalt.training.users.loadbalancer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live statistics of one service instance: requests in flight, a time-decayed peak EWMA of latency,
+ * and the outlier-ejection state.
+ */
+public final class InstanceStats {
+    private final String serviceId; // Service the instance belongs to
+    private final String instanceId; // Instance identifier, host:port when the registry has none
+    private final double decayNanos; // Time constant of the EWMA
+    private final AtomicInteger inFlight = new AtomicInteger(); // Requests currently outstanding
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(0)); // EWMA latency in nanoseconds
+    private final AtomicLong lastSampleNanos = new AtomicLong(System.nanoTime()); // Time of the last latency sample
+    private final AtomicInteger consecutiveFailures = new AtomicInteger(); // Failures since the last success
+    private final AtomicInteger ejections = new AtomicInteger(); // Times the instance was ejected
+    private final LongAdder requests = new LongAdder(); // Completed requests
+    private final LongAdder failures = new LongAdder(); // Failed requests
+    private volatile long ejectedUntilNanos; // End of the current ejection, 0 when not ejected
+
+    InstanceStats(String serviceId, String instanceId, long decayNanos) {
+        this.serviceId = serviceId;
+        this.instanceId = instanceId;
+        this.decayNanos = decayNanos;
+    }
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Records a finished request and updates the latency EWMA.
+     * Latencies above the average replace it outright, so a slowing instance is penalized immediately
+     * while a recovering one regains traffic gradually.
+     *
+     * @param latencyNanos the request latency, or a negative value if unknown.
+     * @param success whether the request succeeded.
+     */
+    void requestFinished(long latencyNanos, boolean success) {
+        inFlight.decrementAndGet();
+        requests.increment();
+        if (success) {
+            consecutiveFailures.set(0);
+        } else {
+            failures.increment();
+            consecutiveFailures.incrementAndGet();
+        }
+        if (latencyNanos < 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        double weight = Math.exp(-Math.max(0, now - lastSampleNanos.getAndSet(now)) / decayNanos);
+        long current;
+        double updated;
+        do {
+            current = ewmaBits.get();
+            double ewma = Double.longBitsToDouble(current);
+            updated = latencyNanos > ewma ? latencyNanos : ewma * weight + latencyNanos * (1 - weight);
+        } while (!ewmaBits.compareAndSet(current, Double.doubleToRawLongBits(updated)));
+    }
+
+    /**
+     * Returns the load-balancing cost of sending one more request to this instance.
+     *
+     * @return the EWMA latency scaled by the requests in flight.
+     */
+    double cost() {
+        return ewmaNanos() * (inFlight.get() + 1);
+    }
+
+    double ewmaNanos() {
+        return Double.longBitsToDouble(ewmaBits.get());
+    }
+
+    int consecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * Checks whether the instance is ejected, readmitting it with fresh statistics once the ejection expires.
+     *
+     * @param now the current {@link System#nanoTime()}.
+     * @return true while the instance is ejected.
+     */
+    boolean isEjected(long now) {
+        long until = ejectedUntilNanos;
+        if (until == 0) {
+            return false;
+        }
+        if (now - until < 0) {
+            return true;
+        }
+        ejectedUntilNanos = 0;
+        consecutiveFailures.set(0);
+        ewmaBits.set(Double.doubleToRawLongBits(0));
+        return false;
+    }
+
+    /**
+     * Ejects the instance for the base time multiplied by the number of times it was ejected.
+     *
+     * @param now the current {@link System#nanoTime()}.
+     * @param baseNanos the base ejection time.
+     * @param maxNanos the maximum ejection time.
+     */
+    void eject(long now, long baseNanos, long maxNanos) {
+        ejectedUntilNanos = now + Math.min(maxNanos, baseNanos * ejections.incrementAndGet());
+    }
+
+    String serviceId() {
+        return serviceId;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns a snapshot of the statistics for reporting.
+     *
+     * @return the statistics, keyed by name.
+     */
+    public Map<String, Object> describe() {
+        long now = System.nanoTime();
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("instance", instanceId);
+        description.put("inFlight", inFlight.get());
+        description.put("ewmaLatencyMillis", ewmaNanos() / TimeUnit.MILLISECONDS.toNanos(1));
+        description.put("requests", requests.sum());
+        description.put("failures", failures.sum());
+        description.put("consecutiveFailures", consecutiveFailures.get());
+        description.put("ejected", isEjected(now));
+        description.put("ejections", ejections.get());
+        long until = ejectedUntilNanos;
+        description.put("ejectedForMillis", until == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(Math.max(0, until - now)));
+        return description;
+    }
+}
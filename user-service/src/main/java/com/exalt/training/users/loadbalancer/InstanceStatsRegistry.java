@@ -0,0 +1,153 @@
+package com.exalt.training.users.loadbalancer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the {@link InstanceStats} of every service instance called through the load balancer and
+ * decides when an instance is ejected as an outlier.
+ * <p>
+ * Shared by the load balancers of all services, which live in separate child contexts.
+ * Per-instance latency and in-flight requests are also published as gauges.
+ * </p>
+ */
+@Component
+public class InstanceStatsRegistry {
+    private static final long OUTLIER_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LoadBalancingProperties properties; // Load balancer settings
+    private final MeterRegistry meterRegistry; // Registry receiving per-instance gauges
+    private final Map<String, Map<String, InstanceStats>> services = new ConcurrentHashMap<>(); // Stats by service and instance
+    private final Map<String, AtomicLong> lastOutlierCheck = new ConcurrentHashMap<>(); // Last latency outlier check per service
+
+    public InstanceStatsRegistry(LoadBalancingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Returns the statistics of an instance, creating them on first use.
+     *
+     * @param instance the service instance.
+     * @return the statistics.
+     */
+    public InstanceStats stats(ServiceInstance instance) {
+        String serviceId = instance.getServiceId();
+        String instanceId = instance.getInstanceId() != null
+                ? instance.getInstanceId() : instance.getHost() + ":" + instance.getPort();
+        return services.computeIfAbsent(serviceId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(instanceId, id -> register(serviceId, instanceId));
+    }
+
+    /**
+     * Records a request sent to an instance outside the load balancer's request lifecycle.
+     *
+     * @param stats the statistics of the instance serving the request.
+     */
+    public void requestStarted(InstanceStats stats) {
+        stats.requestStarted();
+    }
+
+    /**
+     * Records a finished request and ejects the instance if it has now failed too often in a row.
+     *
+     * @param stats the statistics of the instance that served the request.
+     * @param latencyNanos the request latency, or a negative value if unknown.
+     * @param success whether the request succeeded.
+     */
+    public void requestFinished(InstanceStats stats, long latencyNanos, boolean success) {
+        stats.requestFinished(latencyNanos, success);
+        if (!success && stats.consecutiveFailures() >= properties.getConsecutiveFailures()) {
+            long now = System.nanoTime();
+            if (!stats.isEjected(now) && canEject(stats.serviceId(), now)) {
+                eject(stats, now);
+            }
+        }
+    }
+
+    /**
+     * Ejects instances whose latency is far above the median of their service.
+     * Runs at most once per second per service; callers invoke it on the request path.
+     *
+     * @param serviceId the service to check.
+     */
+    public void ejectLatencyOutliers(String serviceId) {
+        long now = System.nanoTime();
+        AtomicLong lastCheck = lastOutlierCheck.computeIfAbsent(serviceId, id -> new AtomicLong(now));
+        long previous = lastCheck.get();
+        if (now - previous < OUTLIER_CHECK_INTERVAL_NANOS || !lastCheck.compareAndSet(previous, now)) {
+            return;
+        }
+        Map<String, InstanceStats> instances = services.get(serviceId);
+        if (instances == null || instances.size() < 3) {
+            return;
+        }
+        List<InstanceStats> active = new ArrayList<>();
+        for (InstanceStats stats : instances.values()) {
+            if (!stats.isEjected(now) && stats.ewmaNanos() > 0) {
+                active.add(stats);
+            }
+        }
+        if (active.size() < 3) {
+            return;
+        }
+        double[] latencies = active.stream().mapToDouble(InstanceStats::ewmaNanos).toArray();
+        Arrays.sort(latencies);
+        double threshold = Math.max(latencies[latencies.length / 2] * properties.getLatencyOutlierFactor(),
+                properties.getLatencyOutlierMinimum().toNanos());
+        for (InstanceStats stats : active) {
+            if (stats.ewmaNanos() > threshold && canEject(serviceId, now)) {
+                eject(stats, now);
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of every known instance, grouped by service.
+     *
+     * @return the statistics, keyed by service ID.
+     */
+    public Map<String, List<Map<String, Object>>> describe() {
+        Map<String, List<Map<String, Object>>> description = new TreeMap<>();
+        services.forEach((serviceId, instances) -> description.put(serviceId,
+                instances.values().stream().map(InstanceStats::describe).toList()));
+        return description;
+    }
+
+    private boolean canEject(String serviceId, long now) {
+        Map<String, InstanceStats> instances = services.get(serviceId);
+        long ejected = instances.values().stream().filter(stats -> stats.isEjected(now)).count();
+        return ejected + 1 <= instances.size() * properties.getMaxEjectionPercent() / 100;
+    }
+
+    private void eject(InstanceStats stats, long now) {
+        stats.eject(now, properties.getBaseEjectionTime().toNanos(), properties.getMaxEjectionTime().toNanos());
+    }
+
+    private InstanceStats register(String serviceId, String instanceId) {
+        InstanceStats stats = new InstanceStats(serviceId, instanceId, properties.getDecayTime().toNanos());
+        Gauge.builder("users.loadbalancer.instance.latency", stats, s -> s.ewmaNanos() / TimeUnit.MILLISECONDS.toNanos(1))
+                .description("Peak EWMA latency of a service instance")
+                .baseUnit("milliseconds")
+                .tag("service", serviceId)
+                .tag("instance", instanceId)
+                .register(meterRegistry);
+        Gauge.builder("users.loadbalancer.instance.inflight", stats, InstanceStats::inFlight)
+                .description("Requests in flight to a service instance")
+                .tag("service", serviceId)
+                .tag("instance", instanceId)
+                .register(meterRegistry);
+        return stats;
+    }
+}
@@ -0,0 +1,92 @@
+package com.exalt.training.users.loadbalancer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load balancer that picks instances with the power of two choices.
+ * <p>
+ * Two instances are sampled at random and the one with the lower cost (EWMA latency times requests
+ * in flight plus one) wins, so a slow or overloaded instance quickly stops receiving its round-robin
+ * share while load still spreads evenly across healthy ones. Ejected outliers are skipped.
+ * </p>
+ */
+public class LatencyAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider; // Instances of the service
+    private final String serviceId; // Service this load balancer serves
+    private final InstanceStatsRegistry statsRegistry; // Shared instance statistics
+
+    public LatencyAwareLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+                                    String serviceId, InstanceStatsRegistry statsRegistry) {
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.serviceId = serviceId;
+        this.statsRegistry = statsRegistry;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // ReactorLoadBalancer declares the request raw, so Request<?> would not override it
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+                .getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next().map(this::choose);
+    }
+
+    /**
+     * Chooses one instance out of the given list.
+     *
+     * @param instances the instances currently registered.
+     * @return the chosen instance, or an empty response if there is none.
+     */
+    Response<ServiceInstance> choose(List<ServiceInstance> instances) {
+        int size = instances.size();
+        if (size == 0) {
+            return new EmptyResponse();
+        }
+        if (size == 1) {
+            return new DefaultResponse(instances.get(0));
+        }
+        statsRegistry.ejectLatencyOutliers(serviceId);
+        long now = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        InstanceStats firstStats = statsRegistry.stats(instances.get(first));
+        InstanceStats secondStats = statsRegistry.stats(instances.get(second));
+        boolean firstEjected = firstStats.isEjected(now);
+        boolean secondEjected = secondStats.isEjected(now);
+        if (firstEjected && secondEjected) {
+            return new DefaultResponse(instances.get(cheapestAvailable(instances, now, first)));
+        }
+        if (firstEjected != secondEjected) {
+            return new DefaultResponse(instances.get(firstEjected ? second : first));
+        }
+        return new DefaultResponse(instances.get(firstStats.cost() <= secondStats.cost() ? first : second));
+    }
+
+    private int cheapestAvailable(List<ServiceInstance> instances, long now, int fallback) {
+        int best = fallback;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < instances.size(); i++) {
+            InstanceStats stats = statsRegistry.stats(instances.get(i));
+            if (!stats.isEjected(now) && stats.cost() < bestCost) {
+                best = i;
+                bestCost = stats.cost();
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,47 @@
+package com.exalt.training.users.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Per-service load balancer configuration replacing round-robin with {@link LatencyAwareLoadBalancer}.
+ * <p>
+ * Registered through {@code @LoadBalancerClients(defaultConfiguration = ...)} and instantiated in each
+ * service's child context, so it is deliberately not a component-scanned {@code @Configuration}.
+ * </p>
+ */
+public class LatencyAwareLoadBalancerConfiguration {
+
+    /**
+     * Bean definition for the latency-aware load balancer of one service.
+     *
+     * @param environment the child context environment, holding the service ID.
+     * @param loadBalancerClientFactory the factory providing the service's instance supplier.
+     * @param statsRegistry the shared instance statistics.
+     * @return the load balancer.
+     */
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> latencyAwareLoadBalancer(Environment environment,
+                                                                        LoadBalancerClientFactory loadBalancerClientFactory,
+                                                                        InstanceStatsRegistry statsRegistry) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new LatencyAwareLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                serviceId, statsRegistry);
+    }
+
+    /**
+     * Bean definition for the lifecycle recording latencies and failures of the service's requests.
+     *
+     * @param statsRegistry the shared instance statistics.
+     * @return the lifecycle.
+     */
+    @Bean
+    public LatencyTrackingLifecycle latencyTrackingLifecycle(InstanceStatsRegistry statsRegistry) {
+        return new LatencyTrackingLifecycle(statsRegistry);
+    }
+}
@@ -0,0 +1,77 @@
+package com.exalt.training.users.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Load balancer lifecycle that feeds request starts, latencies and failures into the {@link InstanceStatsRegistry}.
+ * Responses with a 5xx status count as failures.
+ */
+public class LatencyTrackingLifecycle implements LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+    private final InstanceStatsRegistry statsRegistry; // Shared instance statistics
+
+    public LatencyTrackingLifecycle(InstanceStatsRegistry statsRegistry) {
+        this.statsRegistry = statsRegistry;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes") // LoadBalancerLifecycle declares the classes raw, so Class<?> would not override it
+    public boolean supports(Class requestContextClass, Class responseClass, Class serverTypeClass) {
+        return ServiceInstance.class.isAssignableFrom(serverTypeClass);
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+        if (lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        if (request.getContext() instanceof TimedRequestContext context) {
+            context.setRequestStartTime(System.nanoTime());
+        }
+        statsRegistry.stats(lbResponse.getServer()).requestStarted();
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        long latency = -1;
+        Request<Object> request = completionContext.getLoadBalancerRequest();
+        if (request != null && request.getContext() instanceof TimedRequestContext context
+                && context.getRequestStartTime() > 0) {
+            latency = System.nanoTime() - context.getRequestStartTime();
+        }
+        boolean success = completionContext.status() == CompletionContext.Status.SUCCESS
+                && !isServerError(completionContext.getClientResponse());
+        statsRegistry.requestFinished(statsRegistry.stats(lbResponse.getServer()), latency, success);
+    }
+
+    private static boolean isServerError(Object clientResponse) {
+        HttpStatusCode status = null;
+        try {
+            if (clientResponse instanceof ResponseData responseData) {
+                status = responseData.getHttpStatus();
+            } else if (clientResponse instanceof ClientHttpResponse httpResponse) {
+                status = httpResponse.getStatusCode();
+            }
+        } catch (IOException ex) {
+            return true;
+        }
+        return status != null && status.is5xxServerError();
+    }
+}
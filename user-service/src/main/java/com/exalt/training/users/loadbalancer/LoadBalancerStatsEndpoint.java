@@ -0,0 +1,29 @@
+package com.exalt.training.users.loadbalancer;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator endpoint ({@code /actuator/loadbalancer}) exposing per-instance load balancer statistics.
+ */
+@Component
+@AllArgsConstructor
+@Endpoint(id = "loadbalancer")
+public class LoadBalancerStatsEndpoint {
+    private final InstanceStatsRegistry statsRegistry; // Shared instance statistics
+
+    /**
+     * Returns the statistics of every instance called through the load balancer.
+     *
+     * @return the statistics, keyed by service ID.
+     */
+    @ReadOperation
+    public Map<String, List<Map<String, Object>>> stats() {
+        return statsRegistry.describe();
+    }
+}
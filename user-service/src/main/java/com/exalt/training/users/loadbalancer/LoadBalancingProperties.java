@@ -0,0 +1,21 @@
+package com.exalt.training.users.loadbalancer;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the latency-aware load balancer, bound from {@code app.loadbalancer.*}.
+ */
+@Data
+@ConfigurationProperties("app.loadbalancer")
+public class LoadBalancingProperties {
+    private Duration decayTime = Duration.ofSeconds(10); // Time constant of the latency EWMA
+    private int consecutiveFailures = 5; // Failures in a row that eject an instance
+    private double latencyOutlierFactor = 3.0; // Ejects instances slower than this multiple of the median
+    private Duration latencyOutlierMinimum = Duration.ofMillis(50); // Latency below which an instance is never an outlier
+    private Duration baseEjectionTime = Duration.ofSeconds(30); // Ejection time, multiplied by the number of ejections
+    private Duration maxEjectionTime = Duration.ofMinutes(5); // Upper bound of a single ejection
+    private int maxEjectionPercent = 50; // Share of a service's instances that may be ejected at once
+}
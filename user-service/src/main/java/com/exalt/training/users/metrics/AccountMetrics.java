@@ -0,0 +1,81 @@
+package com.exalt.training.users.metrics;
+
+import com.exalt.training.users.enums.Rule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.exalt.training.users.metrics.AuthenticationMetrics.tagValue;
+
+/**
+ * Micrometer meters for balance operations, registered up front per operation, rule and failure reason.
+ */
+@Component
+public class AccountMetrics {
+
+    /**
+     * Balance operations.
+     */
+    public enum Operation {
+        CHECK_BALANCE, CREDIT, DEBIT
+    }
+
+    /**
+     * Reasons a balance operation is rejected.
+     */
+    public enum Failure {
+        USER_NOT_FOUND, NOT_LOGGED_IN, INSUFFICIENT_BALANCE, VELOCITY_LIMIT
+    }
+
+    private final Map<Operation, Map<Rule, Timer>> timers = new EnumMap<>(Operation.class); // Successful operations per rule
+    private final Map<Operation, Map<Failure, Counter>> failures = new EnumMap<>(Operation.class); // Rejected operations per reason
+
+    public AccountMetrics(MeterRegistry registry) {
+        for (Operation operation : Operation.values()) {
+            Map<Rule, Timer> byRule = new EnumMap<>(Rule.class);
+            for (Rule rule : Rule.values()) {
+                byRule.put(rule, Timer.builder("users.account.operation")
+                        .description("Successful balance operations by operation and rule")
+                        .tag("operation", tagValue(operation))
+                        .tag("rule", tagValue(rule))
+                        .register(registry));
+            }
+            timers.put(operation, byRule);
+            Map<Failure, Counter> byFailure = new EnumMap<>(Failure.class);
+            for (Failure failure : Failure.values()) {
+                byFailure.put(failure, Counter.builder("users.account.operation.failures")
+                        .description("Rejected balance operations by operation and reason")
+                        .tag("operation", tagValue(operation))
+                        .tag("reason", tagValue(failure))
+                        .register(registry));
+            }
+            failures.put(operation, byFailure);
+        }
+    }
+
+    /**
+     * Records a successful operation.
+     *
+     * @param operation the operation.
+     * @param rule the rule of the user.
+     * @param startNanos the {@link System#nanoTime()} at which the operation started.
+     */
+    public void success(Operation operation, Rule rule, long startNanos) {
+        timers.get(operation).get(rule).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts a rejected operation.
+     *
+     * @param operation the operation.
+     * @param failure the reason it was rejected.
+     */
+    public void failure(Operation operation, Failure failure) {
+        failures.get(operation).get(failure).increment();
+    }
+}
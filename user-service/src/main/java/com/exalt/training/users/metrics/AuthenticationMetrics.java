@@ -0,0 +1,114 @@
+package com.exalt.training.users.metrics;
+
+import com.exalt.training.users.enums.Rule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for sign-up and sign-in.
+ * <p>
+ * Every meter is registered up front and looked up by enum, so recording on the request path
+ * does not allocate or touch the registry.
+ * </p>
+ */
+@Component
+public class AuthenticationMetrics {
+
+    /**
+     * Timed phases of a sign-in.
+     */
+    public enum SignInPhase {
+        FIND_USER, // Loading the user by email
+        BLOCKED_CHECK, // Asking BLOCKED-USERS whether the user is blocked
+        PASSWORD_CHECK, // Verifying the BCrypt password hash
+        SAVE // Persisting the login state or failed attempt
+    }
+
+    /**
+     * Final outcome of a sign-in.
+     */
+    public enum SignInOutcome {
+        SUCCESS, USER_NOT_FOUND, BLOCKED, INVALID_CREDENTIALS, ERROR
+    }
+
+    private final Map<SignInPhase, Timer> phaseTimers = new EnumMap<>(SignInPhase.class); // Timer per sign-in phase
+    private final Map<SignInOutcome, Counter> signInOutcomes = new EnumMap<>(SignInOutcome.class); // Sign-ins per outcome
+    private final Map<Rule, Counter> signUps = new EnumMap<>(Rule.class); // Successful sign-ups per rule
+    private final Counter signUpsRejected; // Sign-ups rejected because the email is used
+
+    public AuthenticationMetrics(MeterRegistry registry) {
+        for (SignInPhase phase : SignInPhase.values()) {
+            phaseTimers.put(phase, Timer.builder("users.signin.phase")
+                    .description("Time spent in each phase of a sign-in")
+                    .tag("phase", tagValue(phase))
+                    .register(registry));
+        }
+        for (SignInOutcome outcome : SignInOutcome.values()) {
+            signInOutcomes.put(outcome, Counter.builder("users.signin")
+                    .description("Sign-in attempts by outcome")
+                    .tag("outcome", tagValue(outcome))
+                    .register(registry));
+        }
+        for (Rule rule : Rule.values()) {
+            signUps.put(rule, Counter.builder("users.signup")
+                    .description("Sign-up attempts by outcome and rule")
+                    .tag("outcome", "success")
+                    .tag("rule", tagValue(rule))
+                    .register(registry));
+        }
+        signUpsRejected = Counter.builder("users.signup")
+                .description("Sign-up attempts by outcome and rule")
+                .tag("outcome", "email_already_used")
+                .tag("rule", "unknown")
+                .register(registry);
+    }
+
+    /**
+     * Records the duration of a sign-in phase.
+     *
+     * @param phase the phase that just finished.
+     * @param startNanos the {@link System#nanoTime()} at which the phase started.
+     * @return the current {@link System#nanoTime()}, to be used as the start of the next phase.
+     */
+    public long recordPhase(SignInPhase phase, long startNanos) {
+        long now = System.nanoTime();
+        phaseTimers.get(phase).record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    /**
+     * Counts a finished sign-in.
+     *
+     * @param outcome the outcome of the sign-in.
+     */
+    public void signIn(SignInOutcome outcome) {
+        signInOutcomes.get(outcome).increment();
+    }
+
+    /**
+     * Counts a successful sign-up.
+     *
+     * @param rule the rule of the new user.
+     */
+    public void signUp(Rule rule) {
+        signUps.get(rule).increment();
+    }
+
+    /**
+     * Counts a sign-up rejected because the email is already used.
+     */
+    public void signUpRejected() {
+        signUpsRejected.increment();
+    }
+
+    static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
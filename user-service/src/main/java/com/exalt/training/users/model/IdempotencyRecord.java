@@ -0,0 +1,54 @@
+package com.exalt.training.users.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Entity representing the outcome of a credit or debit made with an idempotency key.
+ * Maps to the "idempotency_keys" table, which lives on the shard of the user.
+ */
+@Entity
+@Table(name = "idempotency_keys")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class IdempotencyRecord {
+    @EmbeddedId
+    private Key key; // User and client-supplied key
+
+    @Column(name = "operation", nullable = false)
+    private String operation; // Balance operation the key was used for
+
+    @Column(name = "amount", nullable = false)
+    private double amount; // Amount requested with the key
+
+    @Column(name = "new_balance", nullable = false)
+    private double newBalance; // Balance right after the operation, returned to retries
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt; // When the operation was applied, used for retention
+
+    /**
+     * Identifier of an idempotency record: keys are scoped to the user they were sent for.
+     */
+    @Embeddable
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class Key implements Serializable {
+        @Column(name = "national_id", nullable = false)
+        private String nationalId; // National ID of the user
+
+        @Column(name = "idempotency_key", nullable = false)
+        private String idempotencyKey; // Value of the Idempotency-Key header
+    }
+}
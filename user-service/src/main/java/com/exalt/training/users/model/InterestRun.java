@@ -0,0 +1,35 @@
+package com.exalt.training.users.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Entity representing one run of the monthly interest and fees batch.
+ * Maps to the "interest_runs" table, which lives on the directory shard and holds one row per month.
+ */
+@Entity
+@Table(name = "interest_runs")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class InterestRun {
+    @Id
+    @Column(name = "period")
+    private Integer period; // Month the interest and fees are for, as yyyyMM
+
+    @Column(name = "started_at", nullable = false)
+    private Instant startedAt; // When the run was first started
+
+    @Column(name = "completed_at")
+    private Instant completedAt; // When every account had been processed, null while the run is incomplete
+
+    @Column(name = "accounts", nullable = false)
+    private long accounts; // Accounts whose balance was changed by the run
+}
@@ -0,0 +1,54 @@
+package com.exalt.training.users.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Entity representing the ledger activity of one user over one UTC day, precomputed once the day is closed.
+ * Maps to the "ledger_daily_rollups" table, which lives on the shard of the user.
+ */
+@Entity
+@Table(name = "ledger_daily_rollups")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class LedgerDailyRollup {
+    @EmbeddedId
+    private Key key; // User and day
+
+    @Column(name = "credits", nullable = false)
+    private double credits; // Sum of the day's credits, including opening balances
+
+    @Column(name = "debits", nullable = false)
+    private double debits; // Sum of the day's debits
+
+    @Column(name = "entry_count", nullable = false)
+    private int entryCount; // Number of ledger entries of the day
+
+    @Column(name = "closing_balance", nullable = false)
+    private double closingBalance; // Balance after the day's last entry
+
+    /**
+     * Identifier of a daily rollup.
+     */
+    @Embeddable
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class Key implements Serializable {
+        @Column(name = "national_id", nullable = false)
+        private String nationalId; // National ID of the user
+
+        @Column(name = "rollup_day", nullable = false)
+        private LocalDate day; // UTC day the rollup covers
+    }
+}
@@ -0,0 +1,50 @@
+package com.exalt.training.users.model;
+
+import com.exalt.training.users.enums.LedgerEntryType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Entity representing one balance change of a user. Entries are only ever inserted.
+ * Maps to the "ledger_entries" table, which lives on the shard of the user.
+ */
+@Entity
+@Table(name = "ledger_entries", indexes = @Index(name = "ledger_entries_user_time", columnList = "national_id, created_at"))
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class LedgerEntry {
+    @Id
+    @SequenceGenerator(name = "ledger_seq", sequenceName = "ledger_sequence", allocationSize = 1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledger_seq")
+    private Long id; // Unique ID of the entry, auto-generated using a sequence generator
+
+    @Column(name = "national_id", nullable = false)
+    private String nationalId; // National ID of the user whose balance changed
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false)
+    private LedgerEntryType type; // Kind of balance change
+
+    @Column(name = "amount", nullable = false)
+    private double amount; // Amount of the change, always positive
+
+    @Column(name = "balance_after", nullable = false)
+    private double balanceAfter; // Balance right after the change
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt; // When the change was applied, the partitioning key
+}
@@ -0,0 +1,31 @@
+package com.exalt.training.users.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Entity representing how far the daily ledger rollups have been computed on every shard.
+ * Maps to the "ledger_rollup_progress" table, which lives on the directory shard and holds a single row.
+ */
+@Entity
+@Table(name = "ledger_rollup_progress")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class LedgerRollupProgress {
+    public static final int SINGLETON_ID = 1;
+
+    @Id
+    @Column(name = "id")
+    private Integer id; // Always SINGLETON_ID
+
+    @Column(name = "rolled_up_through", nullable = false)
+    private LocalDate rolledUpThrough; // Last UTC day whose rollups are complete on every shard
+}
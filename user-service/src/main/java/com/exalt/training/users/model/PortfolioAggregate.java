@@ -0,0 +1,39 @@
+package com.exalt.training.users.model;
+
+import com.exalt.training.users.enums.Rule;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Entity representing the last checkpoint of the portfolio aggregates of one rule.
+ * Maps to the "portfolio_aggregates" table, which lives on the directory shard and holds one row per rule.
+ */
+@Entity
+@Table(name = "portfolio_aggregates")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class PortfolioAggregate {
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "rule", length = 32)
+    private Rule rule; // Rule the totals are for
+
+    @Column(name = "accounts", nullable = false)
+    private long accounts; // Number of accounts with this rule
+
+    @Column(name = "balance_cents", nullable = false)
+    private long balanceCents; // Sum of their balances, in cents
+
+    @Column(name = "reconciled_at", nullable = false)
+    private Instant reconciledAt; // When the totals were last recomputed from the "users" table
+}
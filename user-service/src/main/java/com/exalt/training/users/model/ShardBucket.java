@@ -0,0 +1,30 @@
+package com.exalt.training.users.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entity representing the shard assignment of one hash bucket of national IDs.
+ * Maps to the "shard_buckets" table, which lives on the directory shard.
+ */
+@Entity
+@Table(name = "shard_buckets")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class ShardBucket {
+    @Id
+    @Column(name = "bucket")
+    private Integer bucket; // Bucket number, from 0 to the configured bucket count
+
+    @Column(name = "shard", nullable = false)
+    private int shard; // Shard owning the users of this bucket
+
+    @Column(name = "frozen", nullable = false)
+    private boolean frozen; // Whether writes are held off while the bucket is moved
+}
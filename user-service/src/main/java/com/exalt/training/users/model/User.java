@@ -65,4 +65,7 @@ public class User {
 
     @Column(name = "failed_attempts")
     private int failedAttempts=0; // Number of failed login attempts
+
+    @Column(name = "interest_through")
+    private Integer interestThrough; // Last month (yyyyMM) the monthly interest and fees were applied for, null if never
 }
@@ -0,0 +1,27 @@
+package com.exalt.training.users.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Entity representing an entry of the global email index, which resolves a sign-in email to the user's shard.
+ * Maps to the "user_email_index" table, which lives on the directory shard.
+ */
+@Entity
+@Table(name = "user_email_index")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class UserEmail {
+    @Id
+    @Column(name = "email")
+    private String email; // Email address, unique across all shards
+
+    @Column(name = "national_id", nullable = false)
+    private String nationalId; // National ID of the user, which determines the shard through its bucket
+}
@@ -0,0 +1,326 @@
+package com.exalt.training.users.portfolio;
+
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.sharding.ShardDataSources;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Account count and total balance per {@link Rule}, maintained in memory so they can be served without scanning
+ * the "users" table.
+ * <p>
+ * Every committed ledger entry adjusts the totals of its rule through striped {@link LongAdder}s, in cents. The
+ * changes are checkpointed every {@code app.portfolio.checkpoint-interval} by adding them to the rows of the
+ * "portfolio_aggregates" table on the directory shard and reading the rows back, so each instance also picks up
+ * the changes made through the others. Every {@code app.portfolio.reconcile-interval} one instance recomputes the
+ * totals from the "users" table of every shard, holding the lock on the rows, and records how far they had drifted.
+ * Changes committed while a reconciliation scans may be counted twice or not at all until the next one.
+ * Works over plain JDBC so it does not depend on the JPA shard routing.
+ * </p>
+ */
+@Slf4j
+@Component
+public class PortfolioAggregates {
+    private static final Rule[] RULES = Rule.values();
+
+    /**
+     * Totals of one rule.
+     *
+     * @param accounts       the number of accounts.
+     * @param totalBalance   the sum of their balances.
+     * @param averageBalance the average balance, 0 without accounts.
+     */
+    public record Totals(long accounts, double totalBalance, double averageBalance) {
+    }
+
+    /**
+     * Totals read from the table, indexed by rule ordinal.
+     */
+    private record Checkpoint(long[] accounts, long[] cents, Instant reconciledAt) {
+    }
+
+    private final ShardDataSources shardDataSources; // Users per shard, aggregates on the directory shard
+    private final Duration reconcileInterval; // How often the totals are recomputed from the users
+    private final LongAdder[] pendingAccounts = new LongAdder[RULES.length]; // Changes since the last checkpoint
+    private final LongAdder[] pendingCents = new LongAdder[RULES.length]; // Changes since the last checkpoint
+    private final double[] drift = new double[RULES.length]; // Balance error found by the last reconciliation
+    private final Timer reconciliations; // Duration of the reconciliations run by this instance
+    private volatile Checkpoint checkpoint; // Null until the table has been read
+
+    public PortfolioAggregates(ShardDataSources shardDataSources,
+                               @Value("${app.portfolio.reconcile-interval}") Duration reconcileInterval,
+                               MeterRegistry registry) {
+        this.shardDataSources = shardDataSources;
+        this.reconcileInterval = reconcileInterval;
+        this.reconciliations = Timer.builder("users.portfolio.reconciliations")
+                .description("Recomputations of the portfolio aggregates from the users table")
+                .register(registry);
+        for (Rule rule : RULES) {
+            pendingAccounts[rule.ordinal()] = new LongAdder();
+            pendingCents[rule.ordinal()] = new LongAdder();
+            String tag = rule.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("users.portfolio.accounts", this, aggregates -> aggregates.gauge(rule, Totals::accounts))
+                    .description("Accounts by rule")
+                    .tag("rule", tag)
+                    .register(registry);
+            Gauge.builder("users.portfolio.balance", this, aggregates -> aggregates.gauge(rule, Totals::totalBalance))
+                    .description("Total balance by rule")
+                    .tag("rule", tag)
+                    .register(registry);
+            Gauge.builder("users.portfolio.drift", drift, values -> values[rule.ordinal()])
+                    .description("Balance error of the aggregates found by the last reconciliation")
+                    .tag("rule", tag)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Folds a ledger entry into the totals once the current transaction commits, or right away outside a transaction.
+     *
+     * @param rule   the rule of the user.
+     * @param type   the kind of balance change; an opening also adds an account.
+     * @param amount the amount of the change.
+     */
+    public void recordAfterCommit(Rule rule, LedgerEntryType type, double amount) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(rule, type, amount);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(rule, type, amount);
+            }
+        });
+    }
+
+    /**
+     * Returns the totals of every rule, as of the last checkpoint plus the changes made through this instance since.
+     *
+     * @return the totals by rule.
+     * @throws IllegalStateException if the aggregates have not been loaded yet.
+     */
+    public Map<Rule, Totals> totals() {
+        Checkpoint current = requireCheckpoint();
+        Map<Rule, Totals> totals = new EnumMap<>(Rule.class);
+        for (Rule rule : RULES) {
+            totals.put(rule, totals(current, rule));
+        }
+        return totals;
+    }
+
+    /**
+     * Returns the totals of one rule.
+     *
+     * @param rule the rule.
+     * @return the totals.
+     * @throws IllegalStateException if the aggregates have not been loaded yet.
+     */
+    public Totals totals(Rule rule) {
+        return totals(requireCheckpoint(), rule);
+    }
+
+    /**
+     * Returns when the totals were last recomputed from the users table.
+     *
+     * @return the time of the last reconciliation.
+     * @throws IllegalStateException if the aggregates have not been loaded yet.
+     */
+    public Instant reconciledAt() {
+        return requireCheckpoint().reconciledAt();
+    }
+
+    /**
+     * Adds the changes made through this instance to the table and reads back the totals of all instances.
+     * Loads the table first, reconciling if it has no rows yet.
+     */
+    @Scheduled(fixedDelayString = "${app.portfolio.checkpoint-interval}")
+    public void checkpoint() {
+        try {
+            if (checkpoint == null) {
+                checkpoint = directoryTransaction().execute(status -> read(directory()));
+                if (checkpoint == null) {
+                    reconcile(true);
+                }
+                return;
+            }
+            long[] accounts = new long[RULES.length];
+            long[] cents = new long[RULES.length];
+            for (int i = 0; i < RULES.length; i++) {
+                accounts[i] = pendingAccounts[i].sum();
+                cents[i] = pendingCents[i].sum();
+            }
+            Checkpoint next = directoryTransaction().execute(status -> {
+                JdbcTemplate directory = directory();
+                for (int i = 0; i < RULES.length; i++) {
+                    if (accounts[i] != 0 || cents[i] != 0) {
+                        directory.update("update portfolio_aggregates set accounts = accounts + ?,"
+                                + " balance_cents = balance_cents + ? where rule = ?", accounts[i], cents[i], RULES[i].name());
+                    }
+                }
+                return read(directory);
+            });
+            for (int i = 0; i < RULES.length; i++) {
+                pendingAccounts[i].add(-accounts[i]);
+                pendingCents[i].add(-cents[i]);
+            }
+            checkpoint = next;
+        } catch (DataAccessException ex) {
+            log.warn("Failed to checkpoint the portfolio aggregates, retrying on the next run", ex);
+        }
+    }
+
+    /**
+     * Recomputes the totals from the users table, unless another instance did within half the interval.
+     */
+    @Scheduled(fixedDelayString = "${app.portfolio.reconcile-interval}",
+            initialDelayString = "${app.portfolio.reconcile-interval}")
+    public void reconcile() {
+        try {
+            reconcile(false);
+        } catch (DataAccessException ex) {
+            log.warn("Failed to reconcile the portfolio aggregates, retrying on the next run", ex);
+        }
+    }
+
+    private void reconcile(boolean force) {
+        directoryTransaction().executeWithoutResult(status -> {
+            JdbcTemplate directory = directory();
+            List<Instant> locked = directory.query("select reconciled_at from portfolio_aggregates for update",
+                    (resultSet, row) -> resultSet.getObject(1, OffsetDateTime.class).toInstant());
+            Instant now = Instant.now();
+            Instant recent = now.minus(reconcileInterval.dividedBy(2));
+            if (!force && locked.size() == RULES.length && locked.stream().allMatch(at -> at.isAfter(recent))) {
+                return;
+            }
+            long start = System.nanoTime();
+            Checkpoint before = read(directory);
+            long[] accounts = new long[RULES.length];
+            long[] cents = new long[RULES.length];
+            for (DataSource shard : shardDataSources.all()) {
+                new JdbcTemplate(shard).query("select rule, count(*), coalesce(sum(cast(round(balance * 100) as bigint)), 0)"
+                        + " from users group by rule", resultSet -> {
+                    int rule = resultSet.getInt(1);
+                    accounts[rule] += resultSet.getLong(2);
+                    cents[rule] += resultSet.getLong(3);
+                });
+            }
+            for (int i = 0; i < RULES.length; i++) {
+                // The scan covers the changes committed before it, so they must not be checkpointed again
+                pendingAccounts[i].add(-pendingAccounts[i].sum());
+                pendingCents[i].add(-pendingCents[i].sum());
+                String rule = RULES[i].name();
+                OffsetDateTime reconciledAt = now.atOffset(ZoneOffset.UTC);
+                if (directory.update("update portfolio_aggregates set accounts = ?, balance_cents = ?, reconciled_at = ?"
+                        + " where rule = ?", accounts[i], cents[i], reconciledAt, rule) == 0) {
+                    directory.update("insert into portfolio_aggregates (rule, accounts, balance_cents, reconciled_at)"
+                            + " values (?, ?, ?, ?)", rule, accounts[i], cents[i], reconciledAt);
+                }
+                drift[i] = before == null ? 0 : (before.cents()[i] - cents[i]) / 100.0;
+            }
+            checkpoint = new Checkpoint(accounts, cents, now);
+            reconciliations.record(Duration.ofNanos(System.nanoTime() - start));
+            log.info("Reconciled the portfolio aggregates in {} ms", (System.nanoTime() - start) / 1_000_000);
+        });
+    }
+
+    /**
+     * Reads the checkpointed totals of every rule.
+     *
+     * @return the totals, or null if some rule has no row yet.
+     */
+    private Checkpoint read(JdbcTemplate directory) {
+        long[] accounts = new long[RULES.length];
+        long[] cents = new long[RULES.length];
+        Instant[] reconciledAt = new Instant[1];
+        int rows = directory.query("select rule, accounts, balance_cents, reconciled_at from portfolio_aggregates",
+                (resultSet, row) -> {
+                    int rule = Rule.valueOf(resultSet.getString(1)).ordinal();
+                    accounts[rule] = resultSet.getLong(2);
+                    cents[rule] = resultSet.getLong(3);
+                    Instant at = resultSet.getObject(4, OffsetDateTime.class).toInstant();
+                    if (reconciledAt[0] == null || at.isBefore(reconciledAt[0])) {
+                        reconciledAt[0] = at;
+                    }
+                    return rule;
+                }).size();
+        return rows < RULES.length ? null : new Checkpoint(accounts, cents, reconciledAt[0]);
+    }
+
+    private void record(Rule rule, LedgerEntryType type, double amount) {
+        long cents = Math.round(amount * 100);
+        switch (type) {
+            case OPENING -> {
+                pendingAccounts[rule.ordinal()].increment();
+                pendingCents[rule.ordinal()].add(cents);
+            }
+            case CREDIT -> pendingCents[rule.ordinal()].add(cents);
+            case DEBIT -> pendingCents[rule.ordinal()].add(-cents);
+        }
+    }
+
+    private Totals totals(Checkpoint current, Rule rule) {
+        int i = rule.ordinal();
+        long accounts = current.accounts()[i] + pendingAccounts[i].sum();
+        double balance = (current.cents()[i] + pendingCents[i].sum()) / 100.0;
+        return new Totals(accounts, balance, accounts == 0 ? 0 : balance / accounts);
+    }
+
+    private Checkpoint requireCheckpoint() {
+        Checkpoint current = checkpoint;
+        if (current == null) {
+            throw new IllegalStateException("Portfolio aggregates are not loaded yet");
+        }
+        return current;
+    }
+
+    private double gauge(Rule rule, ToDoubleFunction<Totals> value) {
+        Checkpoint current = checkpoint;
+        return current == null ? Double.NaN : value.applyAsDouble(totals(current, rule));
+    }
+
+    /**
+     * Creates aggregates that are never checkpointed, for code run outside the application context.
+     *
+     * @param registry the registry for the portfolio meters.
+     * @return the detached aggregates.
+     */
+    public static PortfolioAggregates detached(MeterRegistry registry) {
+        return new PortfolioAggregates(null, Duration.ZERO, registry);
+    }
+
+    private JdbcTemplate directory() {
+        return new JdbcTemplate(shardDataSources.get(ShardDirectory.DIRECTORY_SHARD));
+    }
+
+    private TransactionTemplate directoryTransaction() {
+        return new TransactionTemplate(
+                new DataSourceTransactionManager(shardDataSources.get(ShardDirectory.DIRECTORY_SHARD)));
+    }
+}
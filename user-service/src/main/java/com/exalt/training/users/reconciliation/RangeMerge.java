@@ -0,0 +1,179 @@
+package com.exalt.training.users.reconciliation;
+
+import com.exalt.training.users.reconciliation.ReconciliationJob.Mismatch;
+import com.exalt.training.users.service.AuthenticationService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Merge-join of the users of every shard with the blocked IDs over one national ID range.
+ * <p>
+ * Each side is read in ascending order, one page at a time, each page starting after the last ID of the previous
+ * one. The shards are merged into one sorted stream and joined with the blocked IDs in a single walk, so no ID is
+ * looked up on its own. A user seen on two shards while their bucket is being moved counts once, with the higher
+ * failed attempts.
+ * </p>
+ */
+final class RangeMerge {
+    private final List<Cursor<UserRow>> shards = new ArrayList<>(); // Users of each shard
+    private final Cursor<String> blockedIds; // Blocked national IDs
+    private final BooleanSupplier stopping; // Whether to stop between pages
+    private long accounts; // Users walked
+    private long blocked; // Blocked IDs walked
+
+    /**
+     * National ID and failed attempts of a user as read from a shard.
+     *
+     * @param nationalId the national ID.
+     * @param failedAttempts the failed sign-in attempts.
+     */
+    record UserRow(String nationalId, int failedAttempts) {
+    }
+
+    /**
+     * Creates the merge of a range.
+     *
+     * @param after the national ID the range starts after.
+     * @param shardPages per shard, reads the users after a national ID, in ascending order.
+     * @param blockedPages reads the blocked IDs after a national ID, in ascending order.
+     * @param pageSize the rows a full page holds; a shorter page is the last one.
+     * @param stopping whether to stop between pages.
+     */
+    RangeMerge(String after, List<Function<String, List<UserRow>>> shardPages,
+               Function<String, List<String>> blockedPages, int pageSize, BooleanSupplier stopping) {
+        for (Function<String, List<UserRow>> pages : shardPages) {
+            shards.add(new Cursor<>(after, UserRow::nationalId, pages, pageSize, stopping));
+        }
+        this.blockedIds = new Cursor<>(after, Function.identity(), blockedPages, pageSize, stopping);
+        this.stopping = stopping;
+    }
+
+    /**
+     * Walks the range, reporting the users over the failed-attempt limit who are not blocked and the blocked IDs of
+     * no user.
+     *
+     * @param mismatches receives each mismatch with its national ID, in ascending order.
+     * @return false if stopped before the end of the range.
+     */
+    boolean walk(BiConsumer<Mismatch, String> mismatches) {
+        UserRow user = nextUser();
+        String blockedId = blockedIds.next();
+        while ((user != null || blockedId != null) && !stopping.getAsBoolean()) {
+            int order = user == null ? 1 : blockedId == null ? -1 : user.nationalId().compareTo(blockedId);
+            if (order < 0 && user.failedAttempts() >= AuthenticationService.MAX_FAILED_ATTEMPTS) {
+                mismatches.accept(Mismatch.MISSING_BLOCK, user.nationalId());
+            } else if (order > 0) {
+                mismatches.accept(Mismatch.UNKNOWN_USER, blockedId);
+            }
+            if (order <= 0) {
+                accounts++;
+                user = nextUser();
+            }
+            if (order >= 0) {
+                blocked++;
+                blockedId = blockedIds.next();
+            }
+        }
+        return !stopping.getAsBoolean();
+    }
+
+    /**
+     * Returns the users walked.
+     *
+     * @return the user count.
+     */
+    long accounts() {
+        return accounts;
+    }
+
+    /**
+     * Returns the blocked IDs walked.
+     *
+     * @return the blocked ID count.
+     */
+    long blocked() {
+        return blocked;
+    }
+
+    /**
+     * Takes the lowest national ID of the shards, consuming it from every shard that holds it.
+     */
+    private UserRow nextUser() {
+        UserRow lowest = null;
+        for (Cursor<UserRow> shard : shards) {
+            UserRow head = shard.peek();
+            if (head != null && (lowest == null || head.nationalId().compareTo(lowest.nationalId()) < 0)) {
+                lowest = head;
+            }
+        }
+        if (lowest == null) {
+            return null;
+        }
+        int failedAttempts = 0;
+        for (Cursor<UserRow> shard : shards) {
+            UserRow head = shard.peek();
+            if (head != null && head.nationalId().equals(lowest.nationalId())) {
+                failedAttempts = Math.max(failedAttempts, head.failedAttempts());
+                shard.next();
+            }
+        }
+        return new UserRow(lowest.nationalId(), failedAttempts);
+    }
+
+    /**
+     * Reads a sorted stream of rows page by page, each page starting after the last ID of the previous one.
+     */
+    private static final class Cursor<T> {
+        private final Function<T, String> key; // National ID of a row
+        private final Function<String, List<T>> pages; // Reads the page after a national ID
+        private final int pageSize; // Rows of a full page
+        private final BooleanSupplier stopping; // Whether to stop reading
+        private String after; // Last national ID read
+        private List<T> page = List.of(); // Current page
+        private int index; // Position in the current page
+        private boolean exhausted; // Whether the current page is the last one
+
+        private Cursor(String after, Function<T, String> key, Function<String, List<T>> pages, int pageSize,
+                       BooleanSupplier stopping) {
+            this.after = after;
+            this.key = key;
+            this.pages = pages;
+            this.pageSize = pageSize;
+            this.stopping = stopping;
+        }
+
+        /**
+         * Returns the next row without consuming it, or null at the end.
+         */
+        private T peek() {
+            if (index == page.size()) {
+                if (exhausted || stopping.getAsBoolean()) {
+                    return null;
+                }
+                page = pages.apply(after);
+                index = 0;
+                exhausted = page.size() < pageSize;
+                if (page.isEmpty()) {
+                    return null;
+                }
+                after = key.apply(page.get(page.size() - 1));
+            }
+            return page.get(index);
+        }
+
+        /**
+         * Consumes the next row, or returns null at the end.
+         */
+        private T next() {
+            T row = peek();
+            if (row != null) {
+                index++;
+            }
+            return row;
+        }
+    }
+}
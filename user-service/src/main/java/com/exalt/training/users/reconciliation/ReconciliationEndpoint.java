@@ -0,0 +1,43 @@
+package com.exalt.training.users.reconciliation;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint ({@code /actuator/reconciliation}) showing the last reconciliation pass and starting new ones.
+ */
+@AllArgsConstructor
+@Endpoint(id = "reconciliation")
+public class ReconciliationEndpoint {
+    private final ReconciliationJob job; // Compares the users with the blocked users
+
+    /**
+     * Returns whether a pass is running and the report of the last completed one.
+     *
+     * @return the state of the reconciliation.
+     */
+    @ReadOperation
+    public Map<String, Object> reconciliation() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("running", job.isRunning());
+        state.put("lastReport", job.lastReport());
+        return state;
+    }
+
+    /**
+     * Starts a pass in the background; the report is shown once it completes.
+     *
+     * @return whether a pass was started, false if one is already running.
+     */
+    @WriteOperation
+    public Map<String, Object> start() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("started", job.start());
+        return result;
+    }
+}
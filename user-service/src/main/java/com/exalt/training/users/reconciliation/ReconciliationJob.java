@@ -0,0 +1,359 @@
+package com.exalt.training.users.reconciliation;
+
+import com.exalt.training.users.audit.AuditEventType;
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.reconciliation.RangeMerge.UserRow;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.service.AuthenticationService;
+import com.exalt.training.users.sharding.ShardDataSources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Compares the users with the blocked users of BLOCKED-USERS and restores the blocks that are missing.
+ * <p>
+ * A user is blocked by a call to BLOCKED-USERS made after their failed attempts are saved, so a failed call
+ * leaves a user with {@value AuthenticationService#MAX_FAILED_ATTEMPTS} or more failed attempts who can still
+ * sign in. A pass splits the 9-digit national ID space into {@code app.reconciliation.partitions} ranges, compared
+ * on a fork-join pool of {@code app.reconciliation.parallelism} workers. Each range is walked by a
+ * {@link RangeMerge}, reading the users of every shard and the blocked IDs {@code app.reconciliation.page-size}
+ * at a time.
+ * </p>
+ * <p>
+ * Two kinds of mismatch are counted: users over the failed-attempt limit who are not blocked, and blocked IDs
+ * of no known user. Blocked users under the limit are not mismatches, since blocks also come from the velocity
+ * limits. When {@code app.reconciliation.repair} is set, each missing block is checked again on its own once its
+ * range is walked, since the user may have been unblocked or blocked meanwhile, and then restored, at most
+ * {@code app.reconciliation.max-repairs} per pass. Unknown users are only reported. Passes start on
+ * {@code app.reconciliation.cron} or from the {@code reconciliation} actuator endpoint, which also shows the
+ * report of the last pass.
+ * </p>
+ */
+@Slf4j
+public class ReconciliationJob {
+    private static final long ID_SPACE = 1_000_000_000L; // National IDs are 9 digits
+
+    private final ShardDataSources shardDataSources; // Pool per shard, the users are read from every one
+    private final BlockedUsersClient blockedUsersClient; // Lists and restores blocks
+    private final ShardedUserRepository userRepository; // Checks a mismatched user again
+    private final AuditLog auditLog; // Records the restored blocks
+    private final int partitions; // Ranges of a pass
+    private final int parallelism; // Ranges compared at once
+    private final int pageSize; // IDs read per query
+    private final boolean repair; // Whether missing blocks are restored
+    private final int maxRepairs; // Blocks restored per pass at most
+    private final int sampleSize; // Mismatched IDs kept in the report, per kind
+    private final ExecutorService runner; // Runs the pass off the scheduler thread
+    private final AtomicBoolean running = new AtomicBoolean(); // Whether a pass is in progress on this instance
+    private volatile boolean stopping; // Set on shutdown, stops the workers between pages
+    private volatile Report lastReport; // Report of the last pass, null before the first one completes
+    private final Counter accounts; // Users compared
+    private final Counter[] mismatches = new Counter[Mismatch.values().length]; // Mismatches by kind ordinal
+    private final Counter repairs; // Blocks restored
+    private final Timer runs; // Passes
+
+    /**
+     * Kinds of mismatch between the users and the blocked users.
+     */
+    public enum Mismatch {
+        MISSING_BLOCK, // The user is over the failed-attempt limit but not blocked
+        UNKNOWN_USER // The blocked ID belongs to no user
+    }
+
+    /**
+     * Outcome of a pass.
+     *
+     * @param startedAt when the pass started.
+     * @param completedAt when the pass ended.
+     * @param accounts the users compared.
+     * @param blocked the blocked IDs compared.
+     * @param missingBlocks the users over the failed-attempt limit found not blocked.
+     * @param unknownUsers the blocked IDs of no user.
+     * @param repaired the blocks restored.
+     * @param failedRanges the ranges that could not be compared to the end.
+     * @param missingBlockSample some of the users found not blocked.
+     * @param unknownUserSample some of the blocked IDs of no user.
+     */
+    public record Report(Instant startedAt, Instant completedAt, long accounts, long blocked, long missingBlocks,
+                         long unknownUsers, long repaired, int failedRanges, List<String> missingBlockSample,
+                         List<String> unknownUserSample) {
+    }
+
+    public ReconciliationJob(ReconciliationProperties properties, ShardDataSources shardDataSources,
+                             BlockedUsersClient blockedUsersClient, ShardedUserRepository userRepository,
+                             AuditLog auditLog, MeterRegistry registry) {
+        this.shardDataSources = shardDataSources;
+        this.blockedUsersClient = blockedUsersClient;
+        this.userRepository = userRepository;
+        this.auditLog = auditLog;
+        this.partitions = properties.getPartitions();
+        this.parallelism = properties.getParallelism();
+        this.pageSize = properties.getPageSize();
+        this.repair = properties.isRepair();
+        this.maxRepairs = properties.getMaxRepairs();
+        this.sampleSize = properties.getSampleSize();
+        this.runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.accounts = Counter.builder("users.reconciliation.accounts")
+                .description("Users compared with the blocked users")
+                .register(registry);
+        for (Mismatch mismatch : Mismatch.values()) {
+            mismatches[mismatch.ordinal()] = Counter.builder("users.reconciliation.mismatches")
+                    .description("Mismatches found between the users and the blocked users by kind")
+                    .tag("kind", mismatch.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        this.repairs = Counter.builder("users.reconciliation.repairs")
+                .description("Missing blocks restored by the reconciliation")
+                .register(registry);
+        this.runs = Timer.builder("users.reconciliation.runs")
+                .description("Time taken by reconciliation passes")
+                .register(registry);
+    }
+
+    /**
+     * Starts the scheduled pass.
+     */
+    @Scheduled(cron = "${app.reconciliation.cron}", zone = "UTC")
+    public void scheduledRun() {
+        start();
+    }
+
+    /**
+     * Starts a pass unless one is already in progress on this instance.
+     *
+     * @return whether a pass was started.
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            runner.execute(() -> {
+                try {
+                    runs.record(this::run);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RuntimeException ex) {
+            running.set(false);
+            throw ex;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a pass is in progress on this instance.
+     *
+     * @return true while a pass runs.
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Returns the report of the last completed pass.
+     *
+     * @return the report, or null if no pass completed yet.
+     */
+    public Report lastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Stops the pass in progress after the pages being read.
+     */
+    @PreDestroy
+    public void stop() {
+        stopping = true;
+        runner.shutdown();
+    }
+
+    /**
+     * Compares every range and keeps the report.
+     */
+    private void run() {
+        Instant startedAt = Instant.now();
+        AtomicInteger repairBudget = new AtomicInteger(maxRepairs);
+        List<Callable<Tally>> tasks = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            String after = partition == 0 ? "" : boundary(partition);
+            String through = partition == partitions - 1 ? null : boundary(partition + 1);
+            tasks.add(() -> compare(after, through, repairBudget));
+        }
+        log.info("Reconciling the users with the blocked users over {} ranges", partitions);
+        Tally total = new Tally();
+        int failedRanges = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<Tally> result : pool.invokeAll(tasks)) {
+                try {
+                    total.add(result.get());
+                } catch (ExecutionException ex) {
+                    failedRanges++;
+                    log.warn("Reconciliation range failed, it is compared again on the next pass", ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failedRanges = partitions;
+        } finally {
+            pool.shutdownNow();
+        }
+        lastReport = new Report(startedAt, Instant.now(), total.accounts, total.blocked, total.missingBlocks,
+                total.unknownUsers, total.repaired, failedRanges, List.copyOf(total.missingBlockSample),
+                List.copyOf(total.unknownUserSample));
+        log.info("Reconciled {} users with {} blocked users: {} missing blocks, {} restored, {} unknown users,"
+                        + " {} failed ranges", total.accounts, total.blocked, total.missingBlocks, total.repaired,
+                total.unknownUsers, failedRanges);
+    }
+
+    /**
+     * Returns the national ID that ends the range before a partition, as the ranges exclude their first ID.
+     */
+    private String boundary(int partition) {
+        return String.format("%09d", partition * ID_SPACE / partitions);
+    }
+
+    /**
+     * Merge-joins the users of every shard with the blocked IDs over a range, then restores the missing blocks.
+     *
+     * @param after the national ID the range starts after.
+     * @param through the last national ID of the range, or null for no end.
+     */
+    private Tally compare(String after, String through, AtomicInteger repairBudget) {
+        List<Function<String, List<UserRow>>> shards = new ArrayList<>();
+        for (DataSource dataSource : shardDataSources.all()) {
+            shards.add(from -> users(dataSource, from, through));
+        }
+        RangeMerge merge = new RangeMerge(after, shards, from -> blockedUsersClient.blockedIds(from, through, pageSize),
+                pageSize, () -> stopping);
+        Tally tally = new Tally();
+        List<String> missing = new ArrayList<>();
+        boolean completed = merge.walk((kind, nationalId) -> {
+            tally.mismatch(kind, nationalId);
+            if (kind == Mismatch.MISSING_BLOCK) {
+                missing.add(nationalId);
+            }
+        });
+        if (!completed) {
+            throw new IllegalStateException("Stopped before the end of the range");
+        }
+        tally.accounts = merge.accounts();
+        tally.blocked = merge.blocked();
+        accounts.increment(tally.accounts);
+        if (repair) {
+            restore(missing, tally, repairBudget);
+        }
+        return tally;
+    }
+
+    /**
+     * Reads the next users of a shard after a national ID, in ascending order.
+     */
+    private List<UserRow> users(DataSource dataSource, String after, String through) {
+        String bound = through == null ? "" : " and national_id <= ?";
+        Object[] arguments = through == null ? new Object[]{after, pageSize} : new Object[]{after, through, pageSize};
+        return new JdbcTemplate(dataSource).query("select national_id, failed_attempts from users"
+                        + " where national_id > ?" + bound + " order by national_id limit ?",
+                (resultSet, row) -> new UserRow(resultSet.getString(1), resultSet.getInt(2)), arguments);
+    }
+
+    /**
+     * Checks each missing block again and restores the ones still missing, within the budget of the pass.
+     */
+    private void restore(List<String> missing, Tally tally, AtomicInteger repairBudget) {
+        for (String nationalId : missing) {
+            if (stopping) {
+                return;
+            }
+            try {
+                Optional<User> user = userRepository.findByNationalId(nationalId);
+                if (user.isEmpty() || user.get().getFailedAttempts() < AuthenticationService.MAX_FAILED_ATTEMPTS
+                        || blockedUsersClient.isBlocked(nationalId)) {
+                    continue;
+                }
+                if (repairBudget.getAndUpdate(left -> Math.max(left - 1, 0)) == 0) {
+                    return;
+                }
+                blockedUsersClient.block(nationalId, user.get().getUsername());
+                auditLog.publish(AuditEventType.BLOCK, nationalId, 0, 0);
+                repairs.increment();
+                tally.repaired++;
+                log.info("Restored the missing block of {}", nationalId);
+            } catch (RuntimeException ex) {
+                log.warn("Could not restore the missing block of {}", nationalId, ex);
+            }
+        }
+    }
+
+    /**
+     * Counts of one range, added up over the pass.
+     */
+    private final class Tally {
+        private long accounts; // Users compared
+        private long blocked; // Blocked IDs compared
+        private long missingBlocks; // Users over the limit not blocked
+        private long unknownUsers; // Blocked IDs of no user
+        private long repaired; // Blocks restored
+        private final List<String> missingBlockSample = new ArrayList<>(); // First users found not blocked
+        private final List<String> unknownUserSample = new ArrayList<>(); // First blocked IDs of no user
+
+        private void mismatch(Mismatch kind, String nationalId) {
+            mismatches[kind.ordinal()].increment();
+            if (kind == Mismatch.MISSING_BLOCK) {
+                missingBlocks++;
+                sample(missingBlockSample, List.of(nationalId));
+            } else {
+                unknownUsers++;
+                sample(unknownUserSample, List.of(nationalId));
+            }
+        }
+
+        private void add(Tally other) {
+            accounts += other.accounts;
+            blocked += other.blocked;
+            missingBlocks += other.missingBlocks;
+            unknownUsers += other.unknownUsers;
+            repaired += other.repaired;
+            sample(missingBlockSample, other.missingBlockSample);
+            sample(unknownUserSample, other.unknownUserSample);
+        }
+
+        private void sample(List<String> sample, List<String> nationalIds) {
+            for (String nationalId : nationalIds) {
+                if (sample.size() >= sampleSize) {
+                    return;
+                }
+                sample.add(nationalId);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.exalt.training.users.reconciliation;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the reconciliation between the users and the blocked users, bound from {@code app.reconciliation.*}.
+ */
+@Data
+@ConfigurationProperties("app.reconciliation")
+public class ReconciliationProperties {
+    private boolean enabled = true; // Whether the job runs at all
+    private String cron = "0 30 2 * * *"; // When a pass starts, in UTC
+    private int partitions = 64; // National ID ranges the pass is split into
+    private int parallelism = 8; // Ranges compared at once
+    private int pageSize = 5_000; // National IDs read per query, on each side, BLOCKED-USERS returns 10000 at most
+    private boolean repair = true; // Whether missing blocks are restored or only reported
+    private int maxRepairs = 10_000; // Blocks restored per pass at most, the rest are only reported
+    private int sampleSize = 20; // Mismatched national IDs kept in the report, per kind
+}
@@ -0,0 +1,48 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Repository interface for managing {@link IdempotencyRecord} entities.
+ * Callers route it to the shard of the user.
+ */
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, IdempotencyRecord.Key> {
+
+    /**
+     * Records the outcome of an operation. Unlike {@code save}, this never overwrites an existing record:
+     * a key that is already used fails with a {@link org.springframework.dao.DataIntegrityViolationException}.
+     * Joins the caller's transaction, so the record commits or rolls back with the balance change.
+     *
+     * @param nationalId the national ID of the user.
+     * @param idempotencyKey the client-supplied key.
+     * @param operation the balance operation.
+     * @param amount the amount requested.
+     * @param newBalance the balance after the operation.
+     * @param createdAt when the operation was applied.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into idempotency_keys (national_id, idempotency_key, operation, amount, new_balance, created_at)"
+            + " values (:nationalId, :idempotencyKey, :operation, :amount, :newBalance, :createdAt)", nativeQuery = true)
+    void insert(@Param("nationalId") String nationalId, @Param("idempotencyKey") String idempotencyKey,
+                @Param("operation") String operation, @Param("amount") double amount,
+                @Param("newBalance") double newBalance, @Param("createdAt") Instant createdAt);
+
+    /**
+     * Deletes the records created before a cutoff.
+     *
+     * @param cutoff the oldest creation time to keep.
+     * @return the number of records deleted.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyRecord r where r.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
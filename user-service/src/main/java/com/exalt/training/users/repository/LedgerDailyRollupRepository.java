@@ -0,0 +1,29 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.model.LedgerDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Repository interface for managing {@link LedgerDailyRollup} entities.
+ * Callers route it to the shard of the user; the rollups themselves are written by the rollup job.
+ */
+public interface LedgerDailyRollupRepository extends JpaRepository<LedgerDailyRollup, LedgerDailyRollup.Key> {
+
+    /**
+     * Finds the rollups of a user between two days, oldest first.
+     *
+     * @param nationalId the national ID of the user.
+     * @param from the first day included.
+     * @param to the last day included.
+     * @return the rollups of the days the user had entries on.
+     */
+    @Query("select r from LedgerDailyRollup r where r.key.nationalId = :nationalId"
+            + " and r.key.day between :from and :to order by r.key.day")
+    List<LedgerDailyRollup> findBetween(@Param("nationalId") String nationalId, @Param("from") LocalDate from,
+                                        @Param("to") LocalDate to);
+}
@@ -0,0 +1,40 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.model.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for managing {@link LedgerEntry} entities.
+ * Callers route it to the shard of the user.
+ */
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    /**
+     * Finds the entries of a user in a time range, oldest first.
+     *
+     * @param nationalId the national ID of the user.
+     * @param from the first instant included.
+     * @param to the first instant excluded.
+     * @return the entries.
+     */
+    @Query("select e from LedgerEntry e where e.nationalId = :nationalId and e.createdAt >= :from and e.createdAt < :to"
+            + " order by e.createdAt, e.id")
+    List<LedgerEntry> findBetween(@Param("nationalId") String nationalId, @Param("from") Instant from,
+                                  @Param("to") Instant to);
+
+    /**
+     * Finds the last entry of a user before an instant, which holds their balance at that instant.
+     *
+     * @param nationalId the national ID of the user.
+     * @param before the first instant excluded.
+     * @return the entry, if the user had one.
+     */
+    Optional<LedgerEntry> findFirstByNationalIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(String nationalId,
+                                                                                           Instant before);
+}
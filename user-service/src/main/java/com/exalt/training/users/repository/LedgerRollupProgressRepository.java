@@ -0,0 +1,11 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.model.LedgerRollupProgress;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Repository interface for managing {@link LedgerRollupProgress} entities.
+ * Callers route it to the directory shard.
+ */
+public interface LedgerRollupProgressRepository extends JpaRepository<LedgerRollupProgress, Integer> {
+}
@@ -0,0 +1,11 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.model.ShardBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * Repository interface for managing {@link ShardBucket} entities.
+ * Callers route it to the directory shard.
+ */
+public interface ShardBucketRepository extends JpaRepository<ShardBucket, Integer> {
+}
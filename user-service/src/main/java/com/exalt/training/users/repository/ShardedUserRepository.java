@@ -0,0 +1,308 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.exception.ShardUnavailableException;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.model.UserEmail;
+import com.exalt.training.users.sharding.ShardContext;
+import com.exalt.training.users.sharding.ShardDirectory;
+import com.exalt.training.users.sharding.ShardingProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToIntFunction;
+
+/**
+ * Shard-aware access to {@link User} entities, used by the services instead of {@link UserRepository}.
+ * <p>
+ * Lookups and saves by national ID go to the shard owning the ID's bucket. Email lookups first resolve the
+ * email to a national ID through the global email index on the directory shard; with a single shard they skip
+ * the index. New users claim their email in the index before they are saved, so an email stays unique across
+ * shards. Each call touches one shard, so a transaction around several calls must stay within one user. A save
+ * inside a transaction holds off bucket moves until the transaction completes, so rows written alongside the
+ * user in the same transaction are moved with it. Login-state and failed-attempt changes go through narrow updates
+ * that write only the changed columns, without loading the user.
+ * </p>
+ */
+@Component
+public class ShardedUserRepository {
+    private static final long FREEZE_POLL_MILLIS = 20;
+    private static final int LOCK_CHUNK_SIZE = 500; // National IDs per locking query, chunks are locked in order
+
+    private final UserRepository userRepository; // Users table, routed by ShardContext
+    private final UserEmailRepository userEmailRepository; // Global email index
+    private final ShardDirectory directory; // Bucket map
+    private final long freezeTimeoutMillis; // How long a write waits for a bucket that is being moved
+
+    public ShardedUserRepository(UserRepository userRepository, UserEmailRepository userEmailRepository,
+                                 ShardDirectory directory, ShardingProperties shardingProperties) {
+        this.userRepository = userRepository;
+        this.userEmailRepository = userEmailRepository;
+        this.directory = directory;
+        this.freezeTimeoutMillis = shardingProperties.getFreezeTimeout().toMillis();
+    }
+
+    /**
+     * Finds a user by their email.
+     *
+     * @param email the email address of the user to find.
+     * @return an {@link Optional} containing the found {@link User} if present, or {@link Optional#empty()} if not.
+     */
+    @SuppressWarnings("try")
+    public Optional<User> findByEmail(String email) {
+        if (directory.shardCount() == 1) {
+            return userRepository.findByEmail(email);
+        }
+        Optional<UserEmail> indexed;
+        try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+            indexed = userEmailRepository.findById(email);
+        }
+        return indexed.flatMap(entry -> findByNationalId(entry.getNationalId()))
+                .filter(user -> email.equals(user.getEmail()));
+    }
+
+    /**
+     * Finds a user by their nationalId on the shard owning it.
+     *
+     * @param nationalId the national ID of the user to find.
+     * @return an {@link Optional} containing the found {@link User} if present, or {@link Optional#empty()} if not.
+     */
+    @SuppressWarnings("try")
+    public Optional<User> findByNationalId(String nationalId) {
+        try (ShardContext.Scope ignored = ShardContext.use(directory.shardOf(nationalId))) {
+            return userRepository.findByNationalId(nationalId);
+        }
+    }
+
+    /**
+     * Finds a user by their nationalId on the shard owning it and locks their row for the rest of the current
+     * transaction, so balance changes of the user wait for each other and for transfer batches holding the row.
+     * Like {@link #save}, the user's bucket is held off from moves until the transaction completes.
+     *
+     * @param nationalId the national ID of the user to find.
+     * @return an {@link Optional} containing the found {@link User} if present, or {@link Optional#empty()} if not.
+     * @throws ShardUnavailableException if the user's bucket is still being moved after the timeout.
+     */
+    @SuppressWarnings("try")
+    public Optional<User> findByNationalIdForUpdate(String nationalId) {
+        int bucket = directory.bucketOf(nationalId);
+        awaitWritable(bucket);
+        boolean deferred = false;
+        try {
+            Integer transactionShard = ShardContext.transactionShard();
+            if (transactionShard != null && transactionShard != directory.ownerOf(bucket)) {
+                throw new ShardUnavailableException("User data was moved, try again");
+            }
+            deferred = endWriteAfterCompletion(bucket);
+            try (ShardContext.Scope ignored = ShardContext.use(directory.ownerOf(bucket))) {
+                return userRepository.findByNationalIdForUpdate(nationalId);
+            }
+        } finally {
+            if (!deferred) {
+                directory.endWrite(bucket);
+            }
+        }
+    }
+
+    /**
+     * Claims an email for a new user in the global email index, in its own transaction on the directory shard.
+     * Must be called outside of a transaction, before the user is saved.
+     *
+     * @param email the email address.
+     * @param nationalId the national ID of the new user.
+     * @throws org.springframework.dao.DataIntegrityViolationException if the email is already claimed.
+     */
+    @SuppressWarnings("try")
+    public void claimEmail(String email, String nationalId) {
+        try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+            userEmailRepository.claim(email, nationalId);
+        }
+    }
+
+    /**
+     * Releases the claim on an email of a user that could not be saved.
+     * Must be called outside of a transaction.
+     *
+     * @param email the email address.
+     */
+    @SuppressWarnings("try")
+    public void releaseEmail(String email) {
+        try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+            userEmailRepository.deleteById(email);
+        }
+    }
+
+    /**
+     * Saves a user on the shard owning their national ID. New users must have claimed their email with
+     * {@link #claimEmail} first. Waits up to {@code app.sharding.freeze-timeout} while the user's bucket is being moved.
+     *
+     * @param user the user to save.
+     * @return the saved user.
+     * @throws ShardUnavailableException if the bucket is still being moved after the timeout, or was moved
+     *                                   away from the shard the current transaction already reads from.
+     */
+    @SuppressWarnings("try")
+    public User save(User user) {
+        int bucket = directory.bucketOf(user.getNationalId());
+        awaitWritable(bucket);
+        boolean deferred = false;
+        try {
+            Integer transactionShard = ShardContext.transactionShard();
+            if (transactionShard != null && transactionShard != directory.ownerOf(bucket)) {
+                throw new ShardUnavailableException("User data was moved, try again");
+            }
+            deferred = endWriteAfterCompletion(bucket);
+            try (ShardContext.Scope ignored = ShardContext.use(directory.ownerOf(bucket))) {
+                return userRepository.save(user);
+            }
+        } finally {
+            if (!deferred) {
+                directory.endWrite(bucket);
+            }
+        }
+    }
+
+    /**
+     * Marks a user as signed in and clears their failed attempts.
+     *
+     * @param nationalId the national ID of the user.
+     * @return whether the user exists.
+     * @throws ShardUnavailableException if the user's bucket is still being moved after the timeout.
+     */
+    public boolean markSignedIn(String nationalId) {
+        return update(nationalId, userRepository::markSignedIn) > 0;
+    }
+
+    /**
+     * Marks a user as signed out if they are signed in.
+     *
+     * @param nationalId the national ID of the user.
+     * @return whether the user exists and was signed in.
+     * @throws ShardUnavailableException if the user's bucket is still being moved after the timeout.
+     */
+    public boolean markSignedOut(String nationalId) {
+        return update(nationalId, userRepository::markSignedOut) > 0;
+    }
+
+    /**
+     * Adds one to the failed sign-in attempts of a user and returns the new count, read on the same connection.
+     *
+     * @param nationalId the national ID of the user.
+     * @return the failed attempts after this one, 0 if the user does not exist.
+     * @throws ShardUnavailableException if the user's bucket is still being moved after the timeout.
+     */
+    public int incrementFailedAttempts(String nationalId) {
+        return update(nationalId, userRepository::incrementAndGetFailedAttempts);
+    }
+
+    /**
+     * Clears the failed sign-in attempts of a user.
+     *
+     * @param nationalId the national ID of the user.
+     * @return whether the user exists.
+     * @throws ShardUnavailableException if the user's bucket is still being moved after the timeout.
+     */
+    public boolean resetFailedAttempts(String nationalId) {
+        return update(nationalId, userRepository::resetFailedAttempts) > 0;
+    }
+
+    /**
+     * Locks users of one shard for update, in national ID order, for the rest of the current transaction.
+     * Their buckets are held off from moves until the transaction completes; buckets being moved are waited
+     * for up to {@code app.sharding.freeze-timeout}.
+     *
+     * @param shard the shard the users are on.
+     * @param nationalIds the national IDs of the users.
+     * @return the users found, by national ID.
+     * @throws IllegalStateException if no transaction is active.
+     * @throws ShardUnavailableException if a bucket is still being moved after the timeout, or is no longer on the shard.
+     */
+    @SuppressWarnings("try")
+    public Map<String, User> lockAllForUpdate(int shard, Collection<String> nationalIds) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Users can only be locked inside a transaction");
+        }
+        List<String> sorted = nationalIds.stream().distinct().sorted().toList();
+        for (int bucket : sorted.stream().map(directory::bucketOf).distinct().sorted().toList()) {
+            awaitWritable(bucket);
+            endWriteAfterCompletion(bucket);
+            if (directory.ownerOf(bucket) != shard) {
+                throw new ShardUnavailableException("User data was moved, try again");
+            }
+        }
+        Map<String, User> users = new LinkedHashMap<>();
+        try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+            for (int from = 0; from < sorted.size(); from += LOCK_CHUNK_SIZE) {
+                List<String> chunk = sorted.subList(from, Math.min(sorted.size(), from + LOCK_CHUNK_SIZE));
+                for (User user : userRepository.findAllForUpdate(chunk)) {
+                    users.put(user.getNationalId(), user);
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Releases the write slot of a bucket when the current transaction completes, if there is one.
+     *
+     * @return whether the release was deferred.
+     */
+    private boolean endWriteAfterCompletion(int bucket) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                directory.endWrite(bucket);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Runs an update of one user on the shard owning them, holding off bucket moves like {@link #save}.
+     *
+     * @return the number of rows updated.
+     */
+    @SuppressWarnings("try")
+    private int update(String nationalId, ToIntFunction<String> update) {
+        int bucket = directory.bucketOf(nationalId);
+        awaitWritable(bucket);
+        boolean deferred = false;
+        try {
+            Integer transactionShard = ShardContext.transactionShard();
+            if (transactionShard != null && transactionShard != directory.ownerOf(bucket)) {
+                throw new ShardUnavailableException("User data was moved, try again");
+            }
+            deferred = endWriteAfterCompletion(bucket);
+            try (ShardContext.Scope ignored = ShardContext.use(directory.ownerOf(bucket))) {
+                return update.applyAsInt(nationalId);
+            }
+        } finally {
+            if (!deferred) {
+                directory.endWrite(bucket);
+            }
+        }
+    }
+
+    private void awaitWritable(int bucket) {
+        long deadline = System.currentTimeMillis() + freezeTimeoutMillis;
+        while (!directory.tryBeginWrite(bucket)) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new ShardUnavailableException("User data is being moved, try again later");
+            }
+            try {
+                Thread.sleep(FREEZE_POLL_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ShardUnavailableException("Interrupted while waiting for user data to be moved");
+            }
+        }
+    }
+}
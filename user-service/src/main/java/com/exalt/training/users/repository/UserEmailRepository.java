@@ -0,0 +1,40 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.model.UserEmail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Repository interface for managing {@link UserEmail} entities of the global email index.
+ * Callers route it to the directory shard.
+ */
+public interface UserEmailRepository extends JpaRepository<UserEmail, String> {
+
+    /**
+     * Claims an email for a user. Unlike {@code save}, this never overwrites an existing claim:
+     * a duplicate email fails with a {@link org.springframework.dao.DataIntegrityViolationException}.
+     *
+     * @param email the email address.
+     * @param nationalId the national ID of the user claiming it.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "insert into user_email_index (email, national_id) values (:email, :nationalId)", nativeQuery = true)
+    void claim(@Param("email") String email, @Param("nationalId") String nationalId);
+
+    /**
+     * Returns the next page of emails in email order, for reading the whole index without an offset scan.
+     *
+     * @param after the last email of the previous page, or an empty string for the first page.
+     * @param page the page size.
+     * @return the emails.
+     */
+    @Query("select e.email from UserEmail e where e.email > :after order by e.email")
+    List<String> findEmailsAfter(@Param("after") String after, Pageable page);
+}
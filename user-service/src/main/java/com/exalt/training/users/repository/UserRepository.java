@@ -1,8 +1,16 @@
 package com.exalt.training.users.repository;
 
 import com.exalt.training.users.model.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -26,4 +34,94 @@ public interface UserRepository extends JpaRepository<User,Integer> {
      * @return an {@link Optional} containing the found {@link User} if present, or {@link Optional#empty()} if not.
      */
     Optional<User> findByNationalId (String nationalId);
+
+    /**
+     * Finds a user by their nationalId and locks their row for the rest of the transaction.
+     *
+     * @param nationalId the national ID of the user to lock.
+     * @return an {@link Optional} containing the found {@link User} if present, or {@link Optional#empty()} if not.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from User u where u.nationalId = :nationalId")
+    Optional<User> findByNationalIdForUpdate(@Param("nationalId") String nationalId);
+
+    /**
+     * Finds users by their nationalIds and locks their rows for the rest of the transaction.
+     * Rows are locked in national ID order, so transactions locking overlapping sets cannot deadlock.
+     *
+     * @param nationalIds the national IDs of the users to lock.
+     * @return the users found, ordered by national ID.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from User u where u.nationalId in :nationalIds order by u.nationalId")
+    List<User> findAllForUpdate(@Param("nationalIds") Collection<String> nationalIds);
+
+    /**
+     * Marks a user as signed in and clears their failed attempts, writing only those two columns.
+     *
+     * @param nationalId the national ID of the user.
+     * @return the number of users updated, 0 if there is none with this national ID.
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.isLoggedIn = true, u.failedAttempts = 0 where u.nationalId = :nationalId")
+    int markSignedIn(@Param("nationalId") String nationalId);
+
+    /**
+     * Marks a user as signed out if they are signed in, writing only the login state.
+     *
+     * @param nationalId the national ID of the user.
+     * @return the number of users updated, 0 if there is none with this national ID or they are already signed out.
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.isLoggedIn = false where u.nationalId = :nationalId and u.isLoggedIn = true")
+    int markSignedOut(@Param("nationalId") String nationalId);
+
+    /**
+     * Adds one to the failed sign-in attempts of a user, in the database so concurrent attempts are all counted.
+     *
+     * @param nationalId the national ID of the user.
+     * @return the number of users updated, 0 if there is none with this national ID.
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.failedAttempts = u.failedAttempts + 1 where u.nationalId = :nationalId")
+    int incrementFailedAttempts(@Param("nationalId") String nationalId);
+
+    /**
+     * Returns the failed sign-in attempts of a user, reading only that column.
+     *
+     * @param nationalId the national ID of the user.
+     * @return the failed attempts, or {@link Optional#empty()} if there is no user with this national ID.
+     */
+    @Query("select u.failedAttempts from User u where u.nationalId = :nationalId")
+    Optional<Integer> findFailedAttempts(@Param("nationalId") String nationalId);
+
+    /**
+     * Adds one to the failed sign-in attempts of a user and reads the new count back in the same transaction.
+     * The update keeps the row locked until the transaction ends, so the count read is the one this call produced
+     * even when attempts run concurrently.
+     *
+     * @param nationalId the national ID of the user.
+     * @return the failed attempts after this one, 0 if there is no user with this national ID.
+     */
+    @Transactional
+    default int incrementAndGetFailedAttempts(String nationalId) {
+        if (incrementFailedAttempts(nationalId) == 0) {
+            return 0;
+        }
+        return findFailedAttempts(nationalId).orElse(0);
+    }
+
+    /**
+     * Clears the failed sign-in attempts of a user, writing only that column.
+     *
+     * @param nationalId the national ID of the user.
+     * @return the number of users updated, 0 if there is none with this national ID.
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.failedAttempts = 0 where u.nationalId = :nationalId")
+    int resetFailedAttempts(@Param("nationalId") String nationalId);
 }
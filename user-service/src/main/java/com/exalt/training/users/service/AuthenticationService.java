@@ -1,22 +1,34 @@
 package com.exalt.training.users.service;
 
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.audit.AuditEventType;
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
 import com.exalt.training.users.dto.UserDTO;
+import com.exalt.training.users.enums.LedgerEntryType;
 import com.exalt.training.users.exception.EmailAlreadyUsedException;
 import com.exalt.training.users.exception.InvalidCredentialsException;
 import com.exalt.training.users.exception.UserBlockedException;
 import com.exalt.training.users.exception.UserNotFoundException;
+import com.exalt.training.users.filter.EmailFilter;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.interest.InterestBatchJob;
+import com.exalt.training.users.metrics.AuthenticationMetrics;
+import com.exalt.training.users.metrics.AuthenticationMetrics.SignInOutcome;
+import com.exalt.training.users.metrics.AuthenticationMetrics.SignInPhase;
 import com.exalt.training.users.model.User;
-import com.exalt.training.users.repository.UserRepository;
+import com.exalt.training.users.repository.ShardedUserRepository;
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Optional;
 
 /**
  * Service class for handling user authentication operations such as sign up, sign in, blocking, and unblocking users.
@@ -25,30 +37,75 @@ import java.util.Map;
 @Service
 @AllArgsConstructor
 public class AuthenticationService {
-    private final UserRepository userRepository;
+    public static final int MAX_FAILED_ATTEMPTS = 3; // Failed sign-ins in a row after which the user is blocked
+
+    private final ShardedUserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-    private final RestTemplate restTemplate;
+    private final BlockedUsersClient blockedUsersClient;
+    private final AuthenticationMetrics authenticationMetrics;
+    private final ReplicaReadPolicy replicaReadPolicy;
+    private final LedgerService ledgerService;
+    private final AuditLog auditLog;
+    private final EmailFilter emailFilter;
+    private final VelocityDetector velocityDetector;
+    private final TransactionOperations transactionOperations;
 
     /**
      * Signs up a new user by creating a User entity and saving it to the repository.
+     * The email is only looked up if the {@link EmailFilter} cannot rule out that it is registered;
+     * otherwise the unique email index rejects a duplicate when the email is claimed.
+     * The user and the opening entry of their ledger, which records the initial balance, are then saved in one
+     * transaction on the user's shard; the email claim, which lives on the directory shard, is released if that
+     * transaction fails. The sign-up is audited once, as the {@code OPENING} event of the ledger entry, after the
+     * commit. The account starts out as done for the month that already closed, so it only earns interest and pays
+     * fees from its first full month.
      *
      * @param userDTO the user data transfer object containing user details.
      * @return the saved User entity.
      * @throws EmailAlreadyUsedException if the email provided is already in use.
      */
     public User signUp(UserDTO userDTO) {
-        if (userRepository.findByEmail(userDTO.getEmail()).isPresent()) {
-            throw new EmailAlreadyUsedException("Email is already used");
+        String email = userDTO.getEmail();
+        if (emailFilter.mightBeRegistered(email)) {
+            boolean registered = userRepository.findByEmail(email).isPresent();
+            emailFilter.lookedUp(registered);
+            if (registered) {
+                authenticationMetrics.signUpRejected();
+                throw new EmailAlreadyUsedException("Email is already used");
+            }
         }
         User user = new User();
         user.setNationalId(userDTO.getNationalId());
         user.setUsername(userDTO.getUsername());
-        user.setEmail(userDTO.getEmail());
+        user.setEmail(email);
         user.setPassword(passwordEncoder.encode(userDTO.getPassword()));
         user.setRule(userDTO.getRule());
         user.setPhoneNumber(userDTO.getPhoneNumber());
         user.setBalance(userDTO.getBalance());
-        return userRepository.save(user);
+        user.setInterestThrough(InterestBatchJob.periodOf(YearMonth.now(ZoneOffset.UTC).minusMonths(1)));
+        try {
+            userRepository.claimEmail(email, user.getNationalId());
+        } catch (DataIntegrityViolationException ex) {
+            emailFilter.add(email);
+            authenticationMetrics.signUpRejected();
+            throw new EmailAlreadyUsedException("Email is already used");
+        }
+        User savedUser;
+        try {
+            savedUser = transactionOperations.execute(status -> {
+                User created = userRepository.save(user);
+                ledgerService.record(created.getNationalId(), created.getRule(), LedgerEntryType.OPENING,
+                        created.getBalance(), created.getBalance());
+                return created;
+            });
+        } catch (RuntimeException ex) {
+            userRepository.releaseEmail(email);
+            throw ex;
+        }
+        emailFilter.add(email);
+        replicaReadPolicy.recordWrite(savedUser.getNationalId());
+        authenticationMetrics.signUp(savedUser.getRule());
+        return savedUser;
     }
 
     /**
@@ -63,35 +120,50 @@ public class AuthenticationService {
      * @throws IllegalStateException       if the API call to check if the user is blocked fails or returns an invalid response.
      */
     public User signIn(String email, String password) {
-        User foundUser = userRepository.findByEmail(email)
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
-
-        ResponseEntity<Map> responseEntity = restTemplate.getForEntity("http://BLOCKED-USERS/exalt/training/userscontrol/isBlocked/{nationalId}", Map.class,foundUser.getNationalId());
-        if (responseEntity.getStatusCode() != HttpStatus.OK) {
-            throw new IllegalStateException("Failed to determine if user is blocked: " + responseEntity.getStatusCode());
+        long phaseStart = System.nanoTime();
+        Optional<User> user = userRepository.findByEmail(email);
+        phaseStart = authenticationMetrics.recordPhase(SignInPhase.FIND_USER, phaseStart);
+        if (user.isEmpty()) {
+            authenticationMetrics.signIn(SignInOutcome.USER_NOT_FOUND);
+            throw new UserNotFoundException("User not found");
         }
-        Map<String, Object> responseBody = responseEntity.getBody();
-        boolean isBlocked = false;
-        if (responseBody != null && responseBody.containsKey("isBlocked")) {
-            isBlocked = (Boolean) responseBody.get("isBlocked");
-        } else {
-            throw new IllegalStateException("Invalid response from isBlocked API");
+        User foundUser = user.get();
+
+        boolean isBlocked;
+        try {
+            isBlocked = blockedUsersClient.isBlocked(foundUser.getNationalId());
+        } catch (RuntimeException ex) {
+            authenticationMetrics.signIn(SignInOutcome.ERROR);
+            throw ex;
+        } finally {
+            phaseStart = authenticationMetrics.recordPhase(SignInPhase.BLOCKED_CHECK, phaseStart);
         }
         if (isBlocked) {
+            authenticationMetrics.signIn(SignInOutcome.BLOCKED);
             throw new UserBlockedException("User is blocked");
         }
-        if (!passwordEncoder.matches(password, foundUser.getPassword())) {
-            foundUser.setFailedAttempts(foundUser.getFailedAttempts() + 1);
-            userRepository.save(foundUser);
+        boolean passwordMatches = passwordEncoder.matches(password, foundUser.getPassword());
+        phaseStart = authenticationMetrics.recordPhase(SignInPhase.PASSWORD_CHECK, phaseStart);
+        if (!passwordMatches) {
+            int failedAttempts = userRepository.incrementFailedAttempts(foundUser.getNationalId());
+            foundUser.setFailedAttempts(failedAttempts);
+            replicaReadPolicy.recordWrite(foundUser.getNationalId());
+            authenticationMetrics.recordPhase(SignInPhase.SAVE, phaseStart);
+            authenticationMetrics.signIn(SignInOutcome.INVALID_CREDENTIALS);
+            auditLog.publish(AuditEventType.SIGN_IN_FAILED, foundUser.getNationalId(), 0, 0);
 
-            if (foundUser.getFailedAttempts() >= 3) {
+            if (failedAttempts >= MAX_FAILED_ATTEMPTS) {
                 blockUser(foundUser.getNationalId());
             }
             throw new InvalidCredentialsException("Invalid credentials");
         }
         foundUser.setLoggedIn(true);
         foundUser.setFailedAttempts(0);
-        userRepository.save(foundUser);
+        userRepository.markSignedIn(foundUser.getNationalId());
+        replicaReadPolicy.recordWrite(foundUser.getNationalId());
+        authenticationMetrics.recordPhase(SignInPhase.SAVE, phaseStart);
+        authenticationMetrics.signIn(SignInOutcome.SUCCESS);
+        auditLog.publish(AuditEventType.SIGN_IN, foundUser.getNationalId(), 0, 0);
         return foundUser;
     }
 
@@ -105,34 +177,30 @@ public class AuthenticationService {
     public void blockUser(String nationalId) {
         User user = userRepository.findByNationalId(nationalId)
                 .orElseThrow(() -> new UserNotFoundException("User not found"));
-        Map<String, Object> userData = new HashMap<>();
-        userData.put("nationalId", nationalId);
-        userData.put("userName", user.getUsername());
-
-        ResponseEntity<Map> responseEntity = restTemplate.postForEntity("http://BLOCKED-USERS/exalt/training/userscontrol/block", userData, Map.class);
-
-        if (responseEntity.getStatusCode() != HttpStatus.OK) {
-            throw new IllegalStateException("Failed to block user: " + responseEntity.getStatusCode());
-        }
+        blockedUsersClient.block(nationalId, user.getUsername());
+        auditLog.publish(AuditEventType.BLOCK, nationalId, 0, 0);
     }
 
     /**
      * Unblocks a user by sending a request to an external service and updating the user status.
+     * The failed attempts are reset first, by a single update whose row count tells whether the user exists, and the
+     * block is lifted within the same transaction, so the reset is only committed once the block is lifted: if the
+     * call fails the reset rolls back and the user stays blocked with their attempts, and if the commit fails the
+     * reconciliation job sees a user over the limit who is not blocked and blocks them again, rather than leaving a
+     * blocked user with no failed attempts that nothing repairs. The user's row stays locked during the call.
      *
      * @param nationalId the national ID of the user to be unblocked.
      * @throws UserNotFoundException if the user is not found.
      * @throws IllegalStateException if the API call to unblock the user fails.
      */
-
+    @Transactional
     public void unblockUser(String nationalId) {
-        User user = userRepository.findByNationalId(nationalId)
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
-        String unblockUrl = "http://BLOCKED-USERS/exalt/training/userscontrol/unblock/{nationalId}";
-        ResponseEntity<Map> responseEntity = restTemplate.postForEntity(unblockUrl, null, Map.class,user.getNationalId());
-        if (responseEntity.getStatusCode() != HttpStatus.OK) {
-            throw new IllegalStateException("Failed to unblock user: " + responseEntity.getStatusCode());
+        if (!userRepository.resetFailedAttempts(nationalId)) {
+            throw new UserNotFoundException("User not found");
         }
-        user.setFailedAttempts(0);
-        userRepository.save(user);
+        blockedUsersClient.unblock(nationalId);
+        velocityDetector.reset(nationalId);
+        replicaReadPolicy.recordWrite(nationalId);
+        auditLog.publishAfterCommit(AuditEventType.UNBLOCK, nationalId, 0, 0);
     }
 }
@@ -0,0 +1,179 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.users.exception.IdempotencyKeyReuseException;
+import com.exalt.training.users.metrics.AccountMetrics.Operation;
+import com.exalt.training.users.model.IdempotencyRecord;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.IdempotencyRecordRepository;
+import com.exalt.training.users.sharding.ShardContext;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Service class making credits and debits safe to retry with an {@code Idempotency-Key}.
+ * <p>
+ * The first request with a key applies the operation and stores its outcome in the "idempotency_keys" table of
+ * the user's shard, in the same transaction as the balance change. Retries with the same key get the stored
+ * outcome back without touching the account row: recent keys are answered from a bounded in-memory cache,
+ * older ones from the table. Cached outcomes past the retention period are dropped rather than replayed, so the
+ * cache never answers for a key the table no longer holds. Two concurrent requests with the same key race on the table's primary key; the
+ * loser's transaction rolls back and it returns the winner's outcome. Failed operations store nothing, so
+ * they can be retried with the same key. Records are kept for {@code app.idempotency.retention}.
+ * </p>
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    /**
+     * Outcome of a balance operation.
+     *
+     * @param newBalance the balance right after the operation.
+     * @param replayed   whether the outcome was stored by an earlier request with the same key.
+     */
+    public record Result(double newBalance, boolean replayed) {
+    }
+
+    /**
+     * How a request with a key was served.
+     */
+    private enum Outcome {
+        APPLIED, REPLAYED_FROM_CACHE, REPLAYED_FROM_STORE, CONFLICT
+    }
+
+    private final IdempotencyRecordRepository repository; // Persisted outcomes, per shard
+    private final ShardDirectory directory; // Locates the user's shard
+    private final TransactionOperations transactionOperations; // Applies the operation and its record together
+    private final Duration retention; // How long outcomes are kept
+    private final Map<String, IdempotencyRecord> recent; // Least recently used outcomes within the retention, bounded
+    private final Counter[] requests = new Counter[Outcome.values().length]; // Requests with a key, by outcome
+
+    public IdempotencyService(IdempotencyRecordRepository repository, ShardDirectory directory,
+                              TransactionOperations transactionOperations,
+                              @Value("${app.idempotency.cache-size}") int cacheSize,
+                              @Value("${app.idempotency.retention}") Duration retention,
+                              MeterRegistry registry) {
+        this.repository = repository;
+        this.directory = directory;
+        this.transactionOperations = transactionOperations;
+        this.retention = retention;
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > cacheSize || eldest.getValue().getCreatedAt().isBefore(cutoff());
+            }
+        });
+        for (Outcome outcome : Outcome.values()) {
+            requests[outcome.ordinal()] = Counter.builder("users.idempotency.requests")
+                    .description("Credit and debit requests sent with an idempotency key")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Applies a balance operation once per idempotency key.
+     *
+     * @param nationalId     the national ID of the user.
+     * @param idempotencyKey the client-supplied key, or null to apply the operation unconditionally.
+     * @param operation      the balance operation.
+     * @param amount         the amount requested.
+     * @param action         applies the operation and returns the updated user.
+     * @return the new balance, and whether it was replayed.
+     * @throws IdempotencyKeyReuseException if the key was already used with a different operation or amount.
+     */
+    @SuppressWarnings("try")
+    public Result execute(String nationalId, String idempotencyKey, Operation operation, double amount,
+                          Supplier<User> action) {
+        if (idempotencyKey == null) {
+            return new Result(action.get().getBalance(), false);
+        }
+        String cacheKey = nationalId + '\n' + idempotencyKey;
+        IdempotencyRecord cached = recent.get(cacheKey);
+        if (cached != null) {
+            if (!cached.getCreatedAt().isBefore(cutoff())) {
+                return replay(cached, operation, amount, Outcome.REPLAYED_FROM_CACHE);
+            }
+            recent.remove(cacheKey, cached);
+        }
+
+        IdempotencyRecord.Key key = new IdempotencyRecord.Key(nationalId, idempotencyKey);
+        try (ShardContext.Scope ignored = ShardContext.use(directory.shardOf(nationalId))) {
+            Optional<IdempotencyRecord> stored = repository.findById(key);
+            if (stored.isPresent()) {
+                remember(cacheKey, stored.get());
+                return replay(stored.get(), operation, amount, Outcome.REPLAYED_FROM_STORE);
+            }
+            IdempotencyRecord applied;
+            try {
+                applied = transactionOperations.execute(status -> {
+                    User user = action.get();
+                    IdempotencyRecord outcome = new IdempotencyRecord(key, operation.name(), amount,
+                            user.getBalance(), Instant.now());
+                    repository.insert(nationalId, idempotencyKey, outcome.getOperation(), amount,
+                            outcome.getNewBalance(), outcome.getCreatedAt());
+                    return outcome;
+                });
+            } catch (DataIntegrityViolationException ex) {
+                IdempotencyRecord winner = repository.findById(key).orElseThrow(() -> ex);
+                remember(cacheKey, winner);
+                return replay(winner, operation, amount, Outcome.REPLAYED_FROM_STORE);
+            }
+            remember(cacheKey, applied);
+            requests[Outcome.APPLIED.ordinal()].increment();
+            return new Result(applied.getNewBalance(), false);
+        }
+    }
+
+    private void remember(String cacheKey, IdempotencyRecord record) {
+        if (!record.getCreatedAt().isBefore(cutoff())) {
+            recent.put(cacheKey, record);
+        }
+    }
+
+    private Instant cutoff() {
+        return Instant.now().minus(retention);
+    }
+
+    private Result replay(IdempotencyRecord record, Operation operation, double amount, Outcome outcome) {
+        if (!record.getOperation().equals(operation.name()) || Double.compare(record.getAmount(), amount) != 0) {
+            requests[Outcome.CONFLICT.ordinal()].increment();
+            throw new IdempotencyKeyReuseException("Idempotency key was already used for a different request");
+        }
+        requests[outcome.ordinal()].increment();
+        return new Result(record.getNewBalance(), true);
+    }
+
+    /**
+     * Deletes outcomes older than the retention period from every shard and from the cache.
+     */
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval}")
+    @SuppressWarnings("try")
+    public void deleteExpired() {
+        Instant cutoff = cutoff();
+        synchronized (recent) {
+            recent.values().removeIf(record -> record.getCreatedAt().isBefore(cutoff));
+        }
+        for (int shard = 0; shard < directory.shardCount(); shard++) {
+            try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+                int deleted = repository.deleteCreatedBefore(cutoff);
+                log.debug("Deleted {} expired idempotency keys from shard {}", deleted, shard);
+            }
+        }
+    }
+}
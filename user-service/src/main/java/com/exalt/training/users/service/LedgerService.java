@@ -0,0 +1,73 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.users.audit.AuditEventType;
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.model.LedgerEntry;
+import com.exalt.training.users.portfolio.PortfolioAggregates;
+import com.exalt.training.users.repository.LedgerEntryRepository;
+import com.exalt.training.users.sharding.ShardContext;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Service class appending balance changes to the transaction ledger.
+ * <p>
+ * Callers record an entry in the same transaction as the balance change, so the ledger and the balance commit
+ * or roll back together. Entries are never updated; statements are built from the daily rollups the
+ * {@link com.exalt.training.users.ledger.LedgerRollupJob} derives from them. Each entry is also published to
+ * the {@link AuditLog} and folded into the {@link PortfolioAggregates} once its transaction commits.
+ * </p>
+ */
+@Service
+public class LedgerService {
+    private final LedgerEntryRepository repository; // Ledger entries, per shard
+    private final ShardDirectory directory; // Locates the user's shard
+    private final AuditLog auditLog; // Records committed balance changes
+    private final PortfolioAggregates portfolioAggregates; // Totals per rule
+    private final Map<LedgerEntryType, Counter> entries = new EnumMap<>(LedgerEntryType.class); // Entries recorded per type
+
+    public LedgerService(LedgerEntryRepository repository, ShardDirectory directory, AuditLog auditLog,
+                         PortfolioAggregates portfolioAggregates, MeterRegistry registry) {
+        this.repository = repository;
+        this.directory = directory;
+        this.auditLog = auditLog;
+        this.portfolioAggregates = portfolioAggregates;
+        for (LedgerEntryType type : LedgerEntryType.values()) {
+            entries.put(type, Counter.builder("users.ledger.entries")
+                    .description("Entries appended to the transaction ledger by type")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Appends an entry to the ledger of a user. Joins the caller's transaction.
+     *
+     * @param nationalId   the national ID of the user.
+     * @param rule         the rule of the user.
+     * @param type         the kind of balance change.
+     * @param amount       the amount of the change.
+     * @param balanceAfter the balance right after the change.
+     * @return the recorded entry.
+     */
+    @SuppressWarnings("try")
+    public LedgerEntry record(String nationalId, Rule rule, LedgerEntryType type, double amount, double balanceAfter) {
+        LedgerEntry entry = new LedgerEntry(null, nationalId, type, amount, balanceAfter, Instant.now());
+        try (ShardContext.Scope ignored = ShardContext.use(directory.shardOf(nationalId))) {
+            LedgerEntry saved = repository.save(entry);
+            entries.get(type).increment();
+            auditLog.publishAfterCommit(AuditEventType.of(type), nationalId, amount, balanceAfter);
+            portfolioAggregates.recordAfterCommit(rule, type, amount);
+            return saved;
+        }
+    }
+}
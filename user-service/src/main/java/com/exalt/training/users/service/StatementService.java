@@ -0,0 +1,187 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.exception.UnauthorizedException;
+import com.exalt.training.users.exception.UserNotFoundException;
+import com.exalt.training.users.model.LedgerDailyRollup;
+import com.exalt.training.users.model.LedgerEntry;
+import com.exalt.training.users.model.LedgerRollupProgress;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.LedgerDailyRollupRepository;
+import com.exalt.training.users.repository.LedgerEntryRepository;
+import com.exalt.training.users.repository.LedgerRollupProgressRepository;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.sharding.ShardContext;
+import com.exalt.training.users.sharding.ShardDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Service class building account statements from the transaction ledger.
+ * <p>
+ * Days up to the rollup watermark, the last day the {@link com.exalt.training.users.ledger.LedgerRollupJob}
+ * finished on every shard, are read from the precomputed daily rollups: one row per active day, however many
+ * entries it had. Only the days after the watermark, normally today and possibly yesterday, are folded from raw
+ * ledger entries. The opening balance is the balance after the user's last entry before the range, and the
+ * balance an account was opened with counts as a credit. Days are UTC days, and days without activity are left out.
+ * </p>
+ */
+@Service
+public class StatementService {
+
+    /**
+     * Activity of one day of a statement.
+     *
+     * @param day            the UTC day.
+     * @param credits        the sum of the day's credits, including an opening balance.
+     * @param debits         the sum of the day's debits.
+     * @param entryCount     the number of ledger entries of the day.
+     * @param closingBalance the balance at the end of the day.
+     */
+    public record Day(LocalDate day, double credits, double debits, int entryCount, double closingBalance) {
+    }
+
+    /**
+     * Account statement over a range of days.
+     *
+     * @param nationalId     the national ID of the user.
+     * @param from           the first day included.
+     * @param to             the last day included.
+     * @param openingBalance the balance at the start of the range.
+     * @param closingBalance the balance at the end of the range.
+     * @param totalCredits   the sum of the credits in the range.
+     * @param totalDebits    the sum of the debits in the range.
+     * @param days           the days with activity, oldest first.
+     */
+    public record Statement(String nationalId, LocalDate from, LocalDate to, double openingBalance,
+                            double closingBalance, double totalCredits, double totalDebits, List<Day> days) {
+    }
+
+    private final ShardedUserRepository userRepository; // Checks the user is logged in
+    private final LedgerEntryRepository entryRepository; // Raw entries, per shard
+    private final LedgerDailyRollupRepository rollupRepository; // Precomputed days, per shard
+    private final LedgerRollupProgressRepository progressRepository; // Rollup watermark, on the directory shard
+    private final ShardDirectory directory; // Locates the user's shard
+    private final int maxDays; // Longest range a statement may cover
+
+    public StatementService(ShardedUserRepository userRepository, LedgerEntryRepository entryRepository,
+                            LedgerDailyRollupRepository rollupRepository,
+                            LedgerRollupProgressRepository progressRepository, ShardDirectory directory,
+                            @Value("${app.ledger.statement-max-days}") int maxDays) {
+        this.userRepository = userRepository;
+        this.entryRepository = entryRepository;
+        this.rollupRepository = rollupRepository;
+        this.progressRepository = progressRepository;
+        this.directory = directory;
+        this.maxDays = maxDays;
+    }
+
+    /**
+     * Builds the statement of a logged-in user.
+     *
+     * @param nationalId the national ID of the user.
+     * @param from       the first day included.
+     * @param to         the last day included.
+     * @return the statement.
+     * @throws IllegalArgumentException if the range is empty or longer than {@code app.ledger.statement-max-days}.
+     * @throws UserNotFoundException    if the user is not found.
+     * @throws UnauthorizedException    if the user is not logged in.
+     */
+    @SuppressWarnings("try")
+    public Statement statement(String nationalId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The statement must end on or after its first day");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= maxDays) {
+            throw new IllegalArgumentException("A statement covers at most " + maxDays + " days");
+        }
+        User user = userRepository.findByNationalId(nationalId)
+                .orElseThrow(() -> new UserNotFoundException("User not found"));
+        if (!user.isLoggedIn()) {
+            throw new UnauthorizedException("User is not logged in");
+        }
+
+        LocalDate rolledUpThrough = rolledUpThrough();
+        List<Day> days = new ArrayList<>();
+        double openingBalance;
+        try (ShardContext.Scope ignored = ShardContext.use(directory.shardOf(nationalId))) {
+            openingBalance = entryRepository
+                    .findFirstByNationalIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(nationalId, startOf(from))
+                    .map(LedgerEntry::getBalanceAfter)
+                    .orElse(0.0);
+            if (!from.isAfter(rolledUpThrough)) {
+                LocalDate lastRolled = to.isBefore(rolledUpThrough) ? to : rolledUpThrough;
+                for (LedgerDailyRollup rollup : rollupRepository.findBetween(nationalId, from, lastRolled)) {
+                    days.add(new Day(rollup.getKey().getDay(), rollup.getCredits(), rollup.getDebits(),
+                            rollup.getEntryCount(), rollup.getClosingBalance()));
+                }
+            }
+            if (to.isAfter(rolledUpThrough)) {
+                LocalDate firstRaw = from.isAfter(rolledUpThrough) ? from : rolledUpThrough.plusDays(1);
+                foldEntries(entryRepository.findBetween(nationalId, startOf(firstRaw), startOf(to.plusDays(1))), days);
+            }
+        }
+
+        double totalCredits = 0;
+        double totalDebits = 0;
+        for (Day day : days) {
+            totalCredits += day.credits();
+            totalDebits += day.debits();
+        }
+        double closingBalance = days.isEmpty() ? openingBalance : days.get(days.size() - 1).closingBalance();
+        return new Statement(nationalId, from, to, openingBalance, closingBalance, totalCredits, totalDebits, days);
+    }
+
+    /**
+     * Folds raw entries, oldest first, into one {@link Day} per UTC day.
+     */
+    private static void foldEntries(List<LedgerEntry> entries, List<Day> days) {
+        LocalDate current = null;
+        double credits = 0;
+        double debits = 0;
+        int count = 0;
+        double balance = 0;
+        for (LedgerEntry entry : entries) {
+            LocalDate day = LocalDate.ofInstant(entry.getCreatedAt(), ZoneOffset.UTC);
+            if (!day.equals(current)) {
+                if (current != null) {
+                    days.add(new Day(current, credits, debits, count, balance));
+                }
+                current = day;
+                credits = 0;
+                debits = 0;
+                count = 0;
+            }
+            if (entry.getType() == LedgerEntryType.DEBIT) {
+                debits += entry.getAmount();
+            } else {
+                credits += entry.getAmount();
+            }
+            count++;
+            balance = entry.getBalanceAfter();
+        }
+        if (current != null) {
+            days.add(new Day(current, credits, debits, count, balance));
+        }
+    }
+
+    @SuppressWarnings("try")
+    private LocalDate rolledUpThrough() {
+        try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+            return progressRepository.findById(LedgerRollupProgress.SINGLETON_ID)
+                    .map(LedgerRollupProgress::getRolledUpThrough)
+                    .orElse(LocalDate.MIN);
+        }
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
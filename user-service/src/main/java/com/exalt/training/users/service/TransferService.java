@@ -0,0 +1,178 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.dto.TransferDTO;
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.exception.ShardUnavailableException;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Service class applying batches of transfers between accounts.
+ * <p>
+ * The transfers of a batch whose two accounts are on the same shard run in a single transaction per shard:
+ * every account involved is locked up front in national ID order, which is the same global order for every
+ * batch, so concurrent batches cannot deadlock. Single credits and debits lock their one account the same way
+ * before reading its balance, so they wait for a batch holding it and never overwrite its changes; holding a
+ * single row, they cannot take part in a deadlock either. The transfers are then applied in
+ * the order they were submitted against the locked balances, and the balance updates and ledger entries are
+ * flushed together at commit as JDBC batches. Each transfer gets its own outcome; a rejected transfer does not
+ * fail the rest of the batch, and transfers draining their source account faster than its velocity limits are
+ * rejected like single debits. Transfers between accounts on different shards cannot be applied atomically and
+ * are rejected.
+ * </p>
+ */
+@Slf4j
+@Service
+public class TransferService {
+
+    /**
+     * Outcome of one transfer.
+     */
+    public enum Outcome {
+        APPLIED, SAME_ACCOUNT, USER_NOT_FOUND, NOT_LOGGED_IN, INSUFFICIENT_BALANCE, VELOCITY_LIMIT, CROSS_SHARD,
+        SHARD_UNAVAILABLE
+    }
+
+    /**
+     * Result of one transfer of a batch.
+     *
+     * @param index           the position of the transfer in the batch.
+     * @param outcome         whether the transfer was applied, or why not.
+     * @param fromBalance     the source balance after the transfer, or null if it was not applied.
+     * @param toBalance       the target balance after the transfer, or null if it was not applied.
+     */
+    public record Result(int index, Outcome outcome, Double fromBalance, Double toBalance) {
+    }
+
+    private final ShardedUserRepository userRepository; // Locks the accounts on their shard
+    private final LedgerService ledgerService; // Records both legs of each transfer
+    private final VelocityDetector velocityDetector; // Rejects transfers draining the source account
+    private final ReplicaReadPolicy replicaReadPolicy; // Keeps reads of changed accounts on the primary
+    private final ShardDirectory directory; // Groups transfers by shard
+    private final TransactionOperations transactionOperations; // One transaction per shard of a batch
+    private final int maxBatchSize; // Largest batch accepted
+    private final Map<Outcome, Counter> transfers = new EnumMap<>(Outcome.class); // Transfers per outcome
+
+    public TransferService(ShardedUserRepository userRepository, LedgerService ledgerService,
+                           VelocityDetector velocityDetector, ReplicaReadPolicy replicaReadPolicy, ShardDirectory directory,
+                           TransactionOperations transactionOperations,
+                           @Value("${app.transfers.max-batch-size}") int maxBatchSize, MeterRegistry registry) {
+        this.userRepository = userRepository;
+        this.ledgerService = ledgerService;
+        this.velocityDetector = velocityDetector;
+        this.replicaReadPolicy = replicaReadPolicy;
+        this.directory = directory;
+        this.transactionOperations = transactionOperations;
+        this.maxBatchSize = maxBatchSize;
+        for (Outcome outcome : Outcome.values()) {
+            transfers.put(outcome, Counter.builder("users.transfers")
+                    .description("Transfers submitted in batches by outcome")
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Applies a batch of transfers. Only the transfers whose source account is logged in are applied.
+     *
+     * @param batch the transfers, applied in order.
+     * @return the result of each transfer, in the order of the batch.
+     * @throws IllegalArgumentException if the batch is larger than {@code app.transfers.max-batch-size}.
+     */
+    public List<Result> transfer(List<TransferDTO> batch) {
+        if (batch.size() > maxBatchSize) {
+            throw new IllegalArgumentException("A batch holds at most " + maxBatchSize + " transfers");
+        }
+        Result[] results = new Result[batch.size()];
+        Map<Integer, List<Integer>> byShard = new TreeMap<>();
+        for (int index = 0; index < batch.size(); index++) {
+            TransferDTO transfer = batch.get(index);
+            int fromShard = directory.shardOf(transfer.getFromNationalId());
+            if (transfer.getFromNationalId().equals(transfer.getToNationalId())) {
+                results[index] = new Result(index, Outcome.SAME_ACCOUNT, null, null);
+            } else if (fromShard != directory.shardOf(transfer.getToNationalId())) {
+                results[index] = new Result(index, Outcome.CROSS_SHARD, null, null);
+            } else {
+                byShard.computeIfAbsent(fromShard, shard -> new ArrayList<>()).add(index);
+            }
+        }
+
+        for (Map.Entry<Integer, List<Integer>> entry : byShard.entrySet()) {
+            try {
+                List<Result> applied = transactionOperations.execute(status ->
+                        applyOnShard(entry.getKey(), batch, entry.getValue()));
+                for (Result result : applied) {
+                    results[result.index()] = result;
+                }
+            } catch (ShardUnavailableException | DataAccessException ex) {
+                log.warn("Could not apply {} transfers on shard {}", entry.getValue().size(), entry.getKey(), ex);
+                for (int index : entry.getValue()) {
+                    results[index] = new Result(index, Outcome.SHARD_UNAVAILABLE, null, null);
+                }
+            }
+        }
+        for (Result result : results) {
+            transfers.get(result.outcome()).increment();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Locks the accounts of the given transfers on one shard and applies the transfers in order.
+     * Must run inside a transaction.
+     */
+    private List<Result> applyOnShard(int shard, List<TransferDTO> batch, List<Integer> indexes) {
+        Set<String> nationalIds = new HashSet<>();
+        for (int index : indexes) {
+            nationalIds.add(batch.get(index).getFromNationalId());
+            nationalIds.add(batch.get(index).getToNationalId());
+        }
+        Map<String, User> accounts = userRepository.lockAllForUpdate(shard, nationalIds);
+
+        List<Result> results = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            TransferDTO transfer = batch.get(index);
+            User from = accounts.get(transfer.getFromNationalId());
+            User to = accounts.get(transfer.getToNationalId());
+            double amount = transfer.getAmount();
+            if (from == null || to == null) {
+                results.add(new Result(index, Outcome.USER_NOT_FOUND, null, null));
+            } else if (!from.isLoggedIn()) {
+                results.add(new Result(index, Outcome.NOT_LOGGED_IN, null, null));
+            } else if (from.getBalance() < amount) {
+                results.add(new Result(index, Outcome.INSUFFICIENT_BALANCE, null, null));
+            } else if (!velocityDetector.tryDebit(from, amount)) {
+                results.add(new Result(index, Outcome.VELOCITY_LIMIT, null, null));
+            } else {
+                velocityDetector.credit(to);
+                from.setBalance(from.getBalance() - amount);
+                to.setBalance(to.getBalance() + amount);
+                ledgerService.record(from.getNationalId(), from.getRule(), LedgerEntryType.DEBIT, amount, from.getBalance());
+                ledgerService.record(to.getNationalId(), to.getRule(), LedgerEntryType.CREDIT, amount, to.getBalance());
+                results.add(new Result(index, Outcome.APPLIED, from.getBalance(), to.getBalance()));
+            }
+        }
+        accounts.keySet().forEach(replicaReadPolicy::recordWrite);
+        return results;
+    }
+}
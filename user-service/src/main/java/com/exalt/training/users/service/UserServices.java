@@ -1,11 +1,19 @@
 package com.exalt.training.users.service;
 
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.enums.LedgerEntryType;
 import com.exalt.training.users.exception.UnauthorizedException;
 import com.exalt.training.users.exception.UserNotFoundException;
+import com.exalt.training.users.exception.VelocityLimitExceededException;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.metrics.AccountMetrics;
+import com.exalt.training.users.metrics.AccountMetrics.Failure;
+import com.exalt.training.users.metrics.AccountMetrics.Operation;
 import com.exalt.training.users.model.User;
-import com.exalt.training.users.repository.UserRepository;
+import com.exalt.training.users.repository.ShardedUserRepository;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Service class for handling user-related operations such as checking balance, requesting credit and debit, and logging out.
@@ -13,20 +21,31 @@ import org.springframework.stereotype.Service;
 @Service
 @AllArgsConstructor
 public class UserServices {
-    private final UserRepository userRepository;
+    private final ShardedUserRepository userRepository;
+    private final AccountMetrics accountMetrics;
+    private final ReplicaReadPolicy replicaReadPolicy;
+    private final LedgerService ledgerService;
+    private final VelocityDetector velocityDetector;
 
     /**
      * Retrieves the user if they are logged in.
      *
      * @param nationalId the national ID of the user to be retrieved.
+     * @param operation the operation the user is retrieved for, used to count rejections.
+     * @param forUpdate whether to lock the user's row for the rest of the transaction, before changing the balance.
      * @return the User entity if the user is logged in.
      * @throws UserNotFoundException if the user is not found.
      * @throws UnauthorizedException if the user is not logged in.
      */
-    private User getUserIfLoggedIn(String nationalId) {
-        User user = userRepository.findByNationalId(nationalId)
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
+    private User getUserIfLoggedIn(String nationalId, Operation operation, boolean forUpdate) {
+        User user = (forUpdate ? userRepository.findByNationalIdForUpdate(nationalId)
+                : userRepository.findByNationalId(nationalId)).orElse(null);
+        if (user == null) {
+            accountMetrics.failure(operation, Failure.USER_NOT_FOUND);
+            throw new UserNotFoundException("User not found");
+        }
         if ( !user.isLoggedIn()) {
+            accountMetrics.failure(operation, Failure.NOT_LOGGED_IN);
             throw new UnauthorizedException("User is not logged in");
         }
         return user;
@@ -34,46 +53,79 @@ public class UserServices {
 
     /**
      * Checks the balance of the user identified by the given national ID.
+     * Served by the read replica unless the user was written within the staleness bound.
      *
      * @param nationalId the national ID of the user whose balance is to be checked.
      * @return the User entity containing the balance.
      * @throws UnauthorizedException if the user is not logged in.
      */
+    @Transactional(readOnly = true)
+    @SuppressWarnings("try")
     public User checkBalance(String nationalId) {
-        return getUserIfLoggedIn(nationalId);
+        long start = System.nanoTime();
+        User user;
+        try (ReplicaReadPolicy.Scope ignored = replicaReadPolicy.readYourWrites(nationalId)) {
+            user = getUserIfLoggedIn(nationalId, Operation.CHECK_BALANCE, false);
+        }
+        accountMetrics.success(Operation.CHECK_BALANCE, user.getRule(), start);
+        return user;
     }
 
     /**
      * Requests a credit operation for the user identified by the given national ID.
+     * The user's row is locked before the balance is read, so concurrent changes to the same account (other credits
+     * and debits, transfer batches, the interest job) are applied one after the other instead of overwriting each other.
+     * The balance change and its ledger entry are committed together.
      *
      * @param nationalId the national ID of the user to be credited.
      * @param amount     the amount to be credited.
      * @return the updated User entity with the new balance.
      * @throws UnauthorizedException if the user is not logged in.
      */
+    @Transactional
     public User requestCredit(String nationalId, double amount) {
-        User user = getUserIfLoggedIn(nationalId);
+        long start = System.nanoTime();
+        User user = getUserIfLoggedIn(nationalId, Operation.CREDIT, true);
+        velocityDetector.credit(user);
         user.setBalance(user.getBalance() + amount);
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        ledgerService.record(nationalId, savedUser.getRule(), LedgerEntryType.CREDIT, amount, savedUser.getBalance());
+        replicaReadPolicy.recordWrite(nationalId);
+        accountMetrics.success(Operation.CREDIT, savedUser.getRule(), start);
+        return savedUser;
     }
 
     /**
      * Requests a debit operation for the user identified by the given national ID.
+     * The user's row is locked before the balance is checked, like for credits.
+     * The balance change and its ledger entry are committed together. Debits that take the account past its
+     * velocity limits are rejected, and the user is blocked.
      *
      * @param nationalId the national ID of the user to be debited.
      * @param amount     the amount to be debited.
      * @return the updated User entity with the new balance.
      * @throws UnauthorizedException if the user is not logged in.
      * @throws UnauthorizedException if the user has insufficient balance for the debit operation.
+     * @throws VelocityLimitExceededException if the account crossed its velocity limits.
      */
+    @Transactional
     public User requestDebit(String nationalId, double amount) {
-        User user = getUserIfLoggedIn(nationalId);
-        if (user.getBalance() >= amount) {
-            user.setBalance(user.getBalance() - amount);
-        } else {
+        long start = System.nanoTime();
+        User user = getUserIfLoggedIn(nationalId, Operation.DEBIT, true);
+        if (user.getBalance() < amount) {
+            accountMetrics.failure(Operation.DEBIT, Failure.INSUFFICIENT_BALANCE);
             throw new UnauthorizedException("Insufficient balance for debit operation");
         }
-        return userRepository.save(user);
+        if (!velocityDetector.tryDebit(user, amount)) {
+            accountMetrics.failure(Operation.DEBIT, Failure.VELOCITY_LIMIT);
+            throw new VelocityLimitExceededException("Unusual debit activity, the account has been blocked");
+        }
+        user.setBalance(user.getBalance() - amount);
+        User savedUser = userRepository.save(user);
+        ledgerService.record(nationalId, savedUser.getRule(), LedgerEntryType.DEBIT, amount, savedUser.getBalance());
+        replicaReadPolicy.recordWrite(nationalId);
+        accountMetrics.success(Operation.DEBIT, savedUser.getRule(), start);
+        return savedUser;
     }
 
     /**
@@ -84,12 +136,12 @@ public class UserServices {
      * @throws IllegalStateException if the user is already logged out.
      */
     public void logoutUser(String nationalId) {
-        User user = userRepository.findByNationalId(nationalId)
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
-        if (!user.isLoggedIn()) {
+        if (!userRepository.markSignedOut(nationalId)) {
+            if (userRepository.findByNationalId(nationalId).isEmpty()) {
+                throw new UserNotFoundException("User not found");
+            }
             throw new IllegalStateException("User is already logged out");
         }
-        user.setLoggedIn(false);
-        userRepository.save(user);
+        replicaReadPolicy.recordWrite(nationalId);
     }
 }
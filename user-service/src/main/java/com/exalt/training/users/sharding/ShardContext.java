@@ -0,0 +1,78 @@
+package com.exalt.training.users.sharding;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the shard the current thread's database work is routed to, read by {@link ShardRoutingDataSource}.
+ * <p>
+ * The shard is picked when a connection is actually opened, so a transaction stays on the shard that was
+ * current at its first statement. The first shard used inside a transaction is bound to it, and using another
+ * shard before the transaction completes is rejected rather than silently running on the wrong database.
+ * Without a scope, work goes to the {@link ShardDirectory#DIRECTORY_SHARD}.
+ * </p>
+ */
+public final class ShardContext {
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+    private static final Object TRANSACTION_SHARD = new Object(); // Resource key of the shard bound to a transaction
+
+    /**
+     * Scope of a {@link #use(int)} call; closing it restores the previous shard.
+     * It is only ever closed by try-with-resources, so methods opening one suppress javac's {@code try} lint
+     * about the unreferenced resource.
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private ShardContext() {
+    }
+
+    /**
+     * Routes database work on this thread to a shard until the returned scope is closed.
+     *
+     * @param shard the shard number.
+     * @return the scope.
+     * @throws IllegalStateException if the current transaction already used a different shard.
+     */
+    public static Scope use(int shard) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Integer bound = (Integer) TransactionSynchronizationManager.getResource(TRANSACTION_SHARD);
+            if (bound == null) {
+                TransactionSynchronizationManager.bindResource(TRANSACTION_SHARD, shard);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_SHARD);
+                    }
+                });
+            } else if (bound != shard) {
+                throw new IllegalStateException("A transaction cannot span shards " + bound + " and " + shard);
+            }
+        }
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        return previous == null ? CURRENT::remove : () -> CURRENT.set(previous);
+    }
+
+    /**
+     * Returns the shard the current transaction is bound to.
+     *
+     * @return the shard number, or null outside a transaction or before its first shard was picked.
+     */
+    public static Integer transactionShard() {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                ? (Integer) TransactionSynchronizationManager.getResource(TRANSACTION_SHARD) : null;
+    }
+
+    /**
+     * Returns the shard database work on this thread is routed to.
+     *
+     * @return the shard number.
+     */
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : ShardDirectory.DIRECTORY_SHARD;
+    }
+}
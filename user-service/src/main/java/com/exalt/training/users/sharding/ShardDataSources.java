@@ -0,0 +1,48 @@
+package com.exalt.training.users.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * The writable connection pool of every shard, indexed by shard number, for work that bypasses JPA routing
+ * such as moving buckets. Shard 0 is the primary pool, which is a bean of its own; the pools of the
+ * additional shards are owned and closed here.
+ */
+public class ShardDataSources implements DisposableBean {
+    private final List<DataSource> shards; // Writable pool per shard
+
+    public ShardDataSources(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    /**
+     * Returns the writable pool of a shard.
+     *
+     * @param shard the shard number.
+     * @return the pool.
+     */
+    public DataSource get(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Returns the writable pools of all shards.
+     *
+     * @return the pools, indexed by shard number.
+     */
+    public List<DataSource> all() {
+        return shards;
+    }
+
+    @Override
+    public void destroy() {
+        for (int shard = 1; shard < shards.size(); shard++) {
+            if (shards.get(shard) instanceof HikariDataSource pool) {
+                pool.close();
+            }
+        }
+    }
+}
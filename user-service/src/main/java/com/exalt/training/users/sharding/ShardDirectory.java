@@ -0,0 +1,172 @@
+package com.exalt.training.users.sharding;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * In-memory copy of the bucket map that places every user on a shard.
+ * <p>
+ * A national ID hashes to one of a fixed number of buckets, and each bucket is owned by one shard, so
+ * resharding moves whole buckets without rehashing anyone else. A bucket that is being moved is frozen:
+ * reads keep going to its current owner while writes wait. The map is persisted by {@link ShardDirectoryStore}
+ * on the {@link #DIRECTORY_SHARD}; this class only holds the latest version and counts writes in flight.
+ * </p>
+ */
+public class ShardDirectory {
+    public static final int DIRECTORY_SHARD = 0; // Shard holding the bucket map and the email index
+
+    private final int shardCount; // Number of configured shards
+    private final AtomicIntegerArray writesInFlight; // Writes currently running, per bucket
+    private volatile int[] owners; // Owning shard, per bucket
+    private volatile boolean[] frozen; // Whether writes are held off, per bucket
+
+    /**
+     * Creates a directory spreading the buckets round-robin over the shards.
+     *
+     * @param buckets the number of buckets.
+     * @param shardCount the number of shards.
+     */
+    public ShardDirectory(int buckets, int shardCount) {
+        this.shardCount = shardCount;
+        this.writesInFlight = new AtomicIntegerArray(buckets);
+        int[] initialOwners = new int[buckets];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            initialOwners[bucket] = bucket % shardCount;
+        }
+        this.owners = initialOwners;
+        this.frozen = new boolean[buckets];
+    }
+
+    /**
+     * Returns the bucket of a national ID.
+     *
+     * @param nationalId the national ID.
+     * @return the bucket number.
+     */
+    public int bucketOf(String nationalId) {
+        int hash = nationalId.hashCode();
+        hash = (hash ^ (hash >>> 16)) * 0x45d9f3b;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, writesInFlight.length());
+    }
+
+    /**
+     * Returns the shard owning a national ID.
+     *
+     * @param nationalId the national ID.
+     * @return the shard number.
+     */
+    public int shardOf(String nationalId) {
+        return owners[bucketOf(nationalId)];
+    }
+
+    /**
+     * Returns the shard owning a bucket.
+     *
+     * @param bucket the bucket number.
+     * @return the shard number.
+     */
+    public int ownerOf(int bucket) {
+        return owners[bucket];
+    }
+
+    /**
+     * Indicates whether writes to a bucket are held off because it is being moved.
+     *
+     * @param bucket the bucket number.
+     * @return true if the bucket is frozen.
+     */
+    public boolean isFrozen(int bucket) {
+        return frozen[bucket];
+    }
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return the bucket count.
+     */
+    public int bucketCount() {
+        return writesInFlight.length();
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the shard count.
+     */
+    public int shardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Registers a write to a bucket, unless the bucket is frozen.
+     * The write is counted before the freeze is checked, so a mover that freezes the bucket and then waits
+     * for {@link #writesInFlight(int)} to drain never misses it.
+     *
+     * @param bucket the bucket number.
+     * @return true if the write may proceed and must be ended with {@link #endWrite(int)}, false if the bucket is frozen.
+     */
+    public boolean tryBeginWrite(int bucket) {
+        writesInFlight.incrementAndGet(bucket);
+        if (frozen[bucket]) {
+            writesInFlight.decrementAndGet(bucket);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends a write started with {@link #tryBeginWrite(int)}.
+     *
+     * @param bucket the bucket number.
+     */
+    public void endWrite(int bucket) {
+        writesInFlight.decrementAndGet(bucket);
+    }
+
+    /**
+     * Returns the number of writes to a bucket currently running on this instance.
+     *
+     * @param bucket the bucket number.
+     * @return the write count.
+     */
+    public int writesInFlight(int bucket) {
+        return writesInFlight.get(bucket);
+    }
+
+    /**
+     * Returns a copy of the current bucket owners.
+     *
+     * @return the owning shard, per bucket.
+     */
+    public int[] owners() {
+        return owners.clone();
+    }
+
+    /**
+     * Returns a copy of the current frozen flags.
+     *
+     * @return whether writes are held off, per bucket.
+     */
+    public boolean[] frozen() {
+        return frozen.clone();
+    }
+
+    /**
+     * Replaces the bucket map with a newer version.
+     *
+     * @param newOwners the owning shard, per bucket.
+     * @param newFrozen whether writes are held off, per bucket.
+     * @throws IllegalArgumentException if the bucket count differs or a shard is not configured.
+     */
+    void update(int[] newOwners, boolean[] newFrozen) {
+        if (newOwners.length != bucketCount() || newFrozen.length != bucketCount()) {
+            throw new IllegalArgumentException("Bucket map has " + newOwners.length + " buckets, expected " + bucketCount());
+        }
+        if (Arrays.stream(newOwners).anyMatch(shard -> shard < 0 || shard >= shardCount)) {
+            throw new IllegalArgumentException("Bucket map references a shard that is not configured");
+        }
+        owners = newOwners; // Published first, so a writer that sees a bucket thawed also sees its new owner
+        frozen = newFrozen;
+    }
+}
@@ -0,0 +1,101 @@
+package com.exalt.training.users.sharding;
+
+import com.exalt.training.users.model.ShardBucket;
+import com.exalt.training.users.repository.ShardBucketRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persists the {@link ShardDirectory} bucket map in the "shard_buckets" table of the directory shard.
+ * <p>
+ * The first instance to start seeds the table with the round-robin layout; every instance then reloads it
+ * every {@code app.sharding.refresh-interval}, which is how bucket moves made by the {@link ShardRebalancer}
+ * of one instance reach the others.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ShardDirectoryStore {
+    private final ShardDirectory directory; // In-memory bucket map kept up to date
+    private final ShardBucketRepository shardBucketRepository; // Persistent bucket map
+
+    public ShardDirectoryStore(ShardDirectory directory, ShardBucketRepository shardBucketRepository,
+                               MeterRegistry registry) {
+        this.directory = directory;
+        this.shardBucketRepository = shardBucketRepository;
+        for (int shard = 0; shard < directory.shardCount(); shard++) {
+            int owner = shard;
+            Gauge.builder("users.sharding.buckets", directory,
+                            current -> Arrays.stream(current.owners()).filter(bucket -> bucket == owner).count())
+                    .description("Buckets owned by each shard")
+                    .tag("shard", String.valueOf(shard))
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Loads the bucket map, seeding it on first start.
+     */
+    @PostConstruct
+    @SuppressWarnings("try")
+    public void load() {
+        try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+            if (shardBucketRepository.count() == 0) {
+                int[] owners = directory.owners();
+                List<ShardBucket> buckets = new ArrayList<>(owners.length);
+                for (int bucket = 0; bucket < owners.length; bucket++) {
+                    buckets.add(new ShardBucket(bucket, owners[bucket], false));
+                }
+                shardBucketRepository.saveAll(buckets);
+                log.info("Seeded shard directory with {} buckets over {} shards", owners.length, directory.shardCount());
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * Reloads the bucket map from the directory shard.
+     */
+    @Scheduled(fixedDelayString = "${app.sharding.refresh-interval}")
+    @SuppressWarnings("try")
+    public void refresh() {
+        List<ShardBucket> buckets;
+        try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+            buckets = shardBucketRepository.findAll();
+        }
+        int[] owners = new int[buckets.size()];
+        boolean[] frozen = new boolean[buckets.size()];
+        for (ShardBucket bucket : buckets) {
+            if (bucket.getBucket() < 0 || bucket.getBucket() >= owners.length) {
+                throw new IllegalStateException("Shard directory has an unexpected bucket " + bucket.getBucket());
+            }
+            owners[bucket.getBucket()] = bucket.getShard();
+            frozen[bucket.getBucket()] = bucket.isFrozen();
+        }
+        directory.update(owners, frozen);
+    }
+
+    /**
+     * Assigns buckets to a shard and freezes or thaws them, then reloads the map.
+     *
+     * @param buckets the bucket numbers.
+     * @param shard the owning shard.
+     * @param frozen whether writes to the buckets are held off.
+     */
+    @SuppressWarnings("try")
+    public void assign(Collection<Integer> buckets, int shard, boolean frozen) {
+        try (ShardContext.Scope ignored = ShardContext.use(ShardDirectory.DIRECTORY_SHARD)) {
+            shardBucketRepository.saveAll(buckets.stream().map(bucket -> new ShardBucket(bucket, shard, frozen)).toList());
+        }
+        refresh();
+    }
+}
@@ -0,0 +1,267 @@
+package com.exalt.training.users.sharding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Moves buckets of users from one shard to another while the service keeps running.
+ * <p>
+ * A move freezes the buckets, waits until every instance has seen the freeze and the writes already running
+ * here have finished, copies the buckets' rows to the target shard, then hands the buckets to the target and
+ * thaws them in one directory update. The source rows are deleted only after every instance has seen the new
+ * owner, so instances still reading from the source in the meantime find the data. Every table keyed by
+ * national ID moves with the user. Reads continue throughout;
+ * writes to the moved buckets wait for at most {@code app.sharding.freeze-timeout}. Rows are copied column by
+ * column, so user IDs are kept. The users of the buckets are found with one scan of the national IDs of the source
+ * shard, so moving several buckets at once costs a single scan; their rows are then read and written in batches of
+ * {@value #BATCH_SIZE} users, selected by national ID in the SQL, with results streamed rather than loaded whole.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ShardRebalancer {
+    private static final List<String> USER_TABLES = List.of("users", "idempotency_keys", "ledger_entries",
+            "ledger_daily_rollups"); // Tables keyed by national_id, the only tables the statements below are built for
+    private static final int BATCH_SIZE = 500;
+    private static final String IN_BATCH = "(" + String.join(", ", Collections.nCopies(BATCH_SIZE, "?")) + ")";
+    private static final String SELECT_NATIONAL_IDS = "select national_id from users";
+    private static final Map<String, String> SELECT_BATCH = perTable("select * from %s where national_id in " + IN_BATCH);
+    private static final Map<String, String> DELETE_BATCH = perTable("delete from %s where national_id in " + IN_BATCH);
+    private static final long DRAIN_POLL_MILLIS = 20;
+
+    private final ShardDirectory directory; // Bucket map
+    private final ShardDirectoryStore store; // Persists bucket moves for all instances
+    private final ShardDataSources shardDataSources; // Writable pool per shard
+    private final ShardingProperties properties; // Refresh interval and freeze timeout
+    private final Counter movedBuckets; // Buckets moved by this instance
+    private final Counter movedUsers; // Users moved by this instance
+
+    public ShardRebalancer(ShardDirectory directory, ShardDirectoryStore store, ShardDataSources shardDataSources,
+                           ShardingProperties properties, MeterRegistry registry) {
+        this.directory = directory;
+        this.store = store;
+        this.shardDataSources = shardDataSources;
+        this.properties = properties;
+        this.movedBuckets = Counter.builder("users.sharding.moved.buckets")
+                .description("Buckets moved to another shard")
+                .register(registry);
+        this.movedUsers = Counter.builder("users.sharding.moved.users")
+                .description("Users moved to another shard")
+                .register(registry);
+    }
+
+    /**
+     * Moves buckets to a shard. Buckets already on the target are skipped.
+     *
+     * @param buckets the bucket numbers.
+     * @param targetShard the shard to move them to.
+     * @return the number of buckets and users moved.
+     * @throws IllegalArgumentException if a bucket or the shard does not exist.
+     * @throws InterruptedException if interrupted while waiting for instances to catch up.
+     */
+    public synchronized Map<String, Object> moveBuckets(Collection<Integer> buckets, int targetShard)
+            throws InterruptedException {
+        if (targetShard < 0 || targetShard >= directory.shardCount()) {
+            throw new IllegalArgumentException("Shard " + targetShard + " is not configured");
+        }
+        for (int bucket : buckets) {
+            if (bucket < 0 || bucket >= directory.bucketCount()) {
+                throw new IllegalArgumentException("Bucket " + bucket + " does not exist");
+            }
+        }
+        Map<Integer, List<Integer>> bySource = buckets.stream()
+                .distinct()
+                .filter(bucket -> directory.ownerOf(bucket) != targetShard)
+                .collect(Collectors.groupingBy(directory::ownerOf, TreeMap::new, Collectors.toList()));
+        List<Integer> moving = bySource.values().stream().flatMap(List::stream).toList();
+        if (moving.isEmpty()) {
+            return result(0, 0);
+        }
+
+        bySource.forEach((source, group) -> store.assign(group, source, true));
+        Map<Integer, List<String>> copied = new LinkedHashMap<>();
+        try {
+            awaitPropagation();
+            awaitWritesDrained(moving);
+            for (Map.Entry<Integer, List<Integer>> entry : bySource.entrySet()) {
+                List<String> nationalIds = nationalIdsIn(entry.getKey(), new HashSet<>(entry.getValue()));
+                copy(entry.getKey(), targetShard, nationalIds);
+                copied.put(entry.getKey(), nationalIds);
+            }
+        } catch (InterruptedException | RuntimeException ex) {
+            bySource.forEach((source, group) -> store.assign(group, source, false));
+            throw ex;
+        }
+        store.assign(moving, targetShard, false);
+        awaitPropagation();
+
+        int users = 0;
+        for (Map.Entry<Integer, List<String>> entry : copied.entrySet()) {
+            for (String table : USER_TABLES) {
+                delete(table, entry.getKey(), entry.getValue());
+            }
+            users += entry.getValue().size();
+        }
+        movedBuckets.increment(moving.size());
+        movedUsers.increment(users);
+        log.info("Moved {} buckets with {} users to shard {}", moving.size(), users, targetShard);
+        return result(moving.size(), users);
+    }
+
+    /**
+     * Lists the users of a shard in the given buckets. Buckets are a hash of the national ID, so this reads the
+     * national IDs of the whole shard, but only that column.
+     */
+    private List<String> nationalIdsIn(int shard, Set<Integer> buckets) {
+        List<String> nationalIds = new ArrayList<>();
+        streaming(shard, source -> source.query(SELECT_NATIONAL_IDS, resultSet -> {
+            String nationalId = resultSet.getString(1);
+            if (buckets.contains(directory.bucketOf(nationalId))) {
+                nationalIds.add(nationalId);
+            }
+        }));
+        return nationalIds;
+    }
+
+    /**
+     * Copies the rows of the given users from every user table of one shard to another, replacing any leftover
+     * copies on the target. Users are copied {@value #BATCH_SIZE} at a time, one target transaction per batch.
+     */
+    private void copy(int sourceShard, int targetShard, List<String> nationalIds) {
+        JdbcTemplate target = new JdbcTemplate(shardDataSources.get(targetShard));
+        TransactionTemplate targetTransactions = new TransactionTemplate(
+                new DataSourceTransactionManager(shardDataSources.get(targetShard)));
+        for (int from = 0; from < nationalIds.size(); from += BATCH_SIZE) {
+            Object[] batch = batch(nationalIds, from);
+            targetTransactions.executeWithoutResult(status -> {
+                for (String table : USER_TABLES) {
+                    target.update(DELETE_BATCH.get(table), batch);
+                    streaming(sourceShard, source -> copyRows(table, source, target, batch));
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies the rows of a batch of users from one table, inserting them {@value #BATCH_SIZE} rows at a time as
+     * they are read. Rows are copied column by column, so generated IDs are kept.
+     */
+    private static void copyRows(String table, JdbcTemplate source, JdbcTemplate target, Object[] batch) {
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        String[] insert = new String[1];
+        source.query(SELECT_BATCH.get(table), resultSet -> {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            if (insert[0] == null) {
+                List<String> columns = new ArrayList<>();
+                for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                    columns.add(metaData.getColumnName(column));
+                }
+                insert[0] = "insert into " + table + " (" + String.join(", ", columns) + ") values ("
+                        + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+            }
+            Object[] row = new Object[metaData.getColumnCount()];
+            for (int column = 0; column < row.length; column++) {
+                row[column] = resultSet.getObject(column + 1);
+            }
+            rows.add(row);
+            if (rows.size() == BATCH_SIZE) {
+                target.batchUpdate(insert[0], rows);
+                rows.clear();
+            }
+        }, batch);
+        if (!rows.isEmpty()) {
+            target.batchUpdate(insert[0], rows);
+        }
+    }
+
+    private void delete(String table, int shard, List<String> nationalIds) {
+        try {
+            JdbcTemplate source = new JdbcTemplate(shardDataSources.get(shard));
+            for (int from = 0; from < nationalIds.size(); from += BATCH_SIZE) {
+                source.update(DELETE_BATCH.get(table), batch(nationalIds, from));
+            }
+        } catch (RuntimeException ex) {
+            // The buckets already belong to the target, so the leftovers are never read
+            log.warn("Failed to delete moved rows of {} users from {} on shard {}", nationalIds.size(), table, shard, ex);
+        }
+    }
+
+    /**
+     * Runs queries on a shard in a read-only transaction with a fetch size, so the driver streams the results
+     * instead of reading them whole (PostgreSQL only uses a cursor outside auto-commit).
+     */
+    private void streaming(int shard, Consumer<JdbcTemplate> queries) {
+        JdbcTemplate source = new JdbcTemplate(shardDataSources.get(shard));
+        source.setFetchSize(BATCH_SIZE);
+        TransactionTemplate transactions = new TransactionTemplate(
+                new DataSourceTransactionManager(shardDataSources.get(shard)));
+        transactions.setReadOnly(true);
+        transactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactions.executeWithoutResult(status -> queries.accept(source));
+    }
+
+    /**
+     * Returns the next {@value #BATCH_SIZE} national IDs as query arguments, padded with the last one so every
+     * batch fits the same statement.
+     */
+    private static Object[] batch(List<String> nationalIds, int from) {
+        Object[] batch = new Object[BATCH_SIZE];
+        int size = Math.min(BATCH_SIZE, nationalIds.size() - from);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch[i] = nationalIds.get(from + Math.min(i, size - 1));
+        }
+        return batch;
+    }
+
+    private static Map<String, String> perTable(String template) {
+        Map<String, String> statements = new HashMap<>();
+        for (String table : USER_TABLES) {
+            statements.put(table, template.formatted(table));
+        }
+        return Map.copyOf(statements);
+    }
+
+    /**
+     * Waits two directory refresh intervals, so every instance has reloaded the bucket map at least once.
+     */
+    private void awaitPropagation() throws InterruptedException {
+        Thread.sleep(properties.getRefreshInterval().multipliedBy(2).toMillis());
+    }
+
+    private void awaitWritesDrained(List<Integer> buckets) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + properties.getFreezeTimeout().toMillis();
+        while (buckets.stream().anyMatch(bucket -> directory.writesInFlight(bucket) > 0)) {
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("Writes to the moved buckets did not finish in time");
+            }
+            Thread.sleep(DRAIN_POLL_MILLIS);
+        }
+    }
+
+    private static Map<String, Object> result(int buckets, int users) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("buckets", buckets);
+        result.put("users", users);
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package com.exalt.training.users.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes connections to the shard selected by {@link ShardContext}.
+ * Like the read/write routing below it, this sits behind a lazy connection proxy so the shard is
+ * resolved at the first statement rather than when the transaction begins.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * Creates the routing data source.
+     *
+     * @param shards the data source of each shard, indexed by shard number.
+     */
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(ShardDirectory.DIRECTORY_SHARD));
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
@@ -0,0 +1,104 @@
+package com.exalt.training.users.sharding;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.metamodel.EntityType;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies {@code spring.jpa.hibernate.ddl-auto} to the additional shards, which Hibernate itself only runs on shard 0.
+ * <p>
+ * When the schema is created, the ID sequences of shard {@code n} are restarted at {@code n} times their range
+ * ({@link #ID_RANGE} for users, {@link #LEDGER_ID_RANGE} for ledger entries), so IDs are unique across shards
+ * and rows keep their ID when their bucket moves. Databases managed by migrations instead must set the same
+ * sequence starts. User IDs are ints, so at most {@link #MAX_SHARDS} shards, shard 0 included, may be configured.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ShardSchemaInitializer {
+    public static final int ID_RANGE = 100_000_000; // User IDs reserved for each shard
+    public static final long LEDGER_ID_RANGE = 1_000_000_000_000L; // Ledger entry IDs reserved for each shard
+    public static final int MAX_SHARDS = Integer.MAX_VALUE / ID_RANGE; // Shards whose user ID range fits in an int
+    private static final Map<String, Long> SEQUENCE_RANGES = Map.of(
+            "user_sequence", (long) ID_RANGE,
+            "ledger_sequence", LEDGER_ID_RANGE);
+    private static final Set<String> CREATING_ACTIONS = Set.of("create", "create-drop", "create-only", "drop-and-create");
+
+    private final ShardDataSources shardDataSources; // Pools of the shards to initialize
+    private final EntityManagerFactory entityManagerFactory; // Source of the mapped entity classes
+    private final Map<String, Object> hibernateSettings; // Hibernate settings derived from spring.jpa.*
+    private final List<StandardServiceRegistry> registries = new ArrayList<>(); // Kept open for the drop on shutdown
+    private final List<Runnable> dropActions = new ArrayList<>(); // create-drop actions to run on shutdown
+
+    public ShardSchemaInitializer(ShardDataSources shardDataSources, EntityManagerFactory entityManagerFactory,
+                                  JpaProperties jpaProperties, HibernateProperties hibernateProperties) {
+        if (shardDataSources.all().size() > MAX_SHARDS) {
+            throw new IllegalStateException("At most " + MAX_SHARDS + " shards are supported, user IDs of shard "
+                    + MAX_SHARDS + " and above would overflow");
+        }
+        this.shardDataSources = shardDataSources;
+        this.entityManagerFactory = entityManagerFactory;
+        this.hibernateSettings = hibernateProperties.determineHibernateProperties(jpaProperties.getProperties(),
+                new HibernateSettings().ddlAuto(() -> "none"));
+    }
+
+    /**
+     * Creates or updates the schema of every additional shard.
+     */
+    @PostConstruct
+    public void initialize() {
+        String action = String.valueOf(hibernateSettings.getOrDefault(AvailableSettings.HBM2DDL_AUTO, "none"));
+        if ("none".equals(action)) {
+            return;
+        }
+        for (int shard = 1; shard < shardDataSources.all().size(); shard++) {
+            Map<String, Object> settings = new HashMap<>(hibernateSettings);
+            settings.put(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, shardDataSources.get(shard));
+            StandardServiceRegistry registry = new StandardServiceRegistryBuilder().applySettings(settings).build();
+            registries.add(registry);
+            MetadataSources sources = new MetadataSources(registry);
+            for (EntityType<?> entity : entityManagerFactory.getMetamodel().getEntities()) {
+                sources.addAnnotatedClass(entity.getJavaType());
+            }
+            Metadata metadata = sources.buildMetadata();
+            SchemaManagementToolCoordinator.process(metadata, registry, settings,
+                    drop -> dropActions.add(() -> drop.perform(registry)));
+            if (CREATING_ACTIONS.contains(action)) {
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(shard));
+                for (Map.Entry<String, Long> sequence : SEQUENCE_RANGES.entrySet()) {
+                    jdbcTemplate.execute("alter sequence " + sequence.getKey() + " restart with "
+                            + (shard * sequence.getValue() + 1));
+                }
+            }
+            log.info("Applied schema action '{}' to shard {}", action, shard);
+        }
+    }
+
+    /**
+     * Drops the schema of the additional shards if {@code create-drop} was used, and releases the Hibernate registries.
+     */
+    @PreDestroy
+    public void close() {
+        dropActions.forEach(Runnable::run);
+        registries.forEach(StandardServiceRegistryBuilder::destroy);
+    }
+}
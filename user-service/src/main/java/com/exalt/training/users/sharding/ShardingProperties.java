@@ -0,0 +1,32 @@
+package com.exalt.training.users.sharding;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the users table sharding, bound from {@code app.sharding.*}.
+ * Shard 0 is the {@code spring.datasource.*} database (with its optional replica); {@code shards} lists the others.
+ */
+@Data
+@ConfigurationProperties("app.sharding")
+public class ShardingProperties {
+    private int buckets = 1024; // Hash buckets national IDs are spread over; fixed for the life of the data
+    private Duration refreshInterval = Duration.ofSeconds(5); // How often the bucket map is reloaded from the directory
+    private Duration freezeTimeout = Duration.ofSeconds(10); // How long a write waits for a bucket that is being moved
+    private List<Shard> shards = new ArrayList<>(); // Additional shards, numbered from 1
+
+    /**
+     * Connection settings of an additional shard.
+     */
+    @Data
+    public static class Shard {
+        private String url; // JDBC URL of the shard
+        private String username; // Database user, the primary's if empty
+        private String password; // Database password, the primary's if empty
+        private int maximumPoolSize = 10; // Connection pool size
+    }
+}
@@ -0,0 +1,73 @@
+package com.exalt.training.users.sharding;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator endpoint ({@code /actuator/shards}) showing the bucket layout and moving buckets between shards.
+ */
+@Component
+@AllArgsConstructor
+@Endpoint(id = "shards")
+public class ShardsEndpoint {
+    private final ShardDirectory directory; // Bucket map
+    private final ShardRebalancer rebalancer; // Moves buckets
+
+    /**
+     * Returns how many buckets each shard owns and which buckets are frozen.
+     *
+     * @return the layout, per shard.
+     */
+    @ReadOperation
+    public Map<String, Object> shards() {
+        int[] owners = directory.owners();
+        boolean[] frozen = directory.frozen();
+        List<Map<String, Object>> shards = new ArrayList<>();
+        for (int shard = 0; shard < directory.shardCount(); shard++) {
+            int owned = 0;
+            List<Integer> frozenBuckets = new ArrayList<>();
+            for (int bucket = 0; bucket < owners.length; bucket++) {
+                if (owners[bucket] == shard) {
+                    owned++;
+                    if (frozen[bucket]) {
+                        frozenBuckets.add(bucket);
+                    }
+                }
+            }
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("shard", shard);
+            description.put("buckets", owned);
+            description.put("frozenBuckets", frozenBuckets);
+            shards.add(description);
+        }
+        Map<String, Object> layout = new LinkedHashMap<>();
+        layout.put("buckets", owners.length);
+        layout.put("shards", shards);
+        return layout;
+    }
+
+    /**
+     * Moves buckets to a shard; the call returns once the move is complete.
+     *
+     * @param buckets the bucket numbers, comma-separated.
+     * @param target the shard to move them to.
+     * @return the number of buckets and users moved.
+     * @throws InterruptedException if interrupted while waiting for instances to catch up.
+     */
+    @WriteOperation
+    public Map<String, Object> move(String buckets, int target) throws InterruptedException {
+        return rebalancer.moveBuckets(Arrays.stream(buckets.split(","))
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .toList(), target);
+    }
+}
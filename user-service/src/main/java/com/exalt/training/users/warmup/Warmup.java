@@ -0,0 +1,101 @@
+package com.exalt.training.users.warmup;
+
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up the JIT compiler before the instance takes traffic.
+ * <p>
+ * The instance registers with Eureka as {@code STARTING} ({@code eureka.instance.initial-status}), so clients,
+ * which only pick {@code UP} instances, leave it alone. Once the application is ready, {@link WarmupWorkload}
+ * runs until the JIT compiler spends less than {@code app.warmup.settled-compilation-time} per
+ * {@code app.warmup.check-interval}, or until {@code app.warmup.max-duration}. Only then is the instance marked
+ * {@code UP}. This runs ahead of the other ready listeners, and Spring Boot reports readiness
+ * ({@code /actuator/health/readiness}) only after them, so readiness is held back as well.
+ * </p>
+ */
+@Slf4j
+@Component
+public class Warmup {
+    private final ObjectMapper objectMapper; // Application object mapper, writes the request bodies
+    private final BlockedUsersClient blockedUsersClient; // Configured BLOCKED-USERS client
+    private final ObjectProvider<ApplicationInfoManager> applicationInfoManager; // Eureka registration, absent when Eureka is disabled
+    private final boolean enabled; // Whether to run the workload before marking the instance UP
+    private final Duration maxDuration; // Upper bound on the warm-up time
+    private final Duration checkInterval; // How often JIT activity is sampled
+    private final Duration settledCompilationTime; // JIT time per interval below which compilation counts as settled
+
+    public Warmup(ObjectMapper objectMapper, BlockedUsersClient blockedUsersClient,
+                  ObjectProvider<ApplicationInfoManager> applicationInfoManager,
+                  @Value("${app.warmup.enabled}") boolean enabled,
+                  @Value("${app.warmup.max-duration}") Duration maxDuration,
+                  @Value("${app.warmup.check-interval}") Duration checkInterval,
+                  @Value("${app.warmup.settled-compilation-time}") Duration settledCompilationTime) {
+        this.objectMapper = objectMapper;
+        this.blockedUsersClient = blockedUsersClient;
+        this.applicationInfoManager = applicationInfoManager;
+        this.enabled = enabled;
+        this.maxDuration = maxDuration;
+        this.checkInterval = checkInterval;
+        this.settledCompilationTime = settledCompilationTime;
+    }
+
+    /**
+     * Runs the warm-up, if enabled, then marks the instance UP in Eureka.
+     *
+     * @param event the ready event, whose environment holds the port the web server listens on.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void warmUpAndRegister(ApplicationReadyEvent event) {
+        Integer port = event.getApplicationContext().getEnvironment().getProperty("local.server.port", Integer.class);
+        if (enabled && port != null) {
+            try {
+                warmUp(port);
+            } catch (Exception ex) {
+                log.warn("Warm-up failed, taking traffic without it", ex);
+            }
+        }
+        applicationInfoManager.ifAvailable(manager -> manager.setInstanceStatus(InstanceStatus.UP));
+    }
+
+    private void warmUp(int port) throws Exception {
+        WarmupWorkload workload = new WarmupWorkload(port, objectMapper, blockedUsersClient);
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        boolean monitored = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+        long start = System.nanoTime();
+        long deadline = start + maxDuration.toNanos();
+        long nextCheck = start + checkInterval.toNanos();
+        long compilationMillis = monitored ? compiler.getTotalCompilationTime() : 0;
+        boolean settled = false;
+        int iterations = 0;
+        while (!settled && System.nanoTime() < deadline) {
+            workload.run(iterations++);
+            long now = System.nanoTime();
+            if (monitored && now >= nextCheck) {
+                long total = compiler.getTotalCompilationTime();
+                settled = total - compilationMillis <= settledCompilationTime.toMillis();
+                compilationMillis = total;
+                nextCheck = now + checkInterval.toNanos();
+            }
+        }
+        log.info("Warm-up ran {} iterations in {} ms, {}", iterations,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                settled ? "JIT compilation settled" : "time limit reached");
+    }
+}
@@ -0,0 +1,95 @@
+package com.exalt.training.users.warmup;
+
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Synthetic traffic for the warm-up: balance checks, credits, debits, sign-ins and sign-ups sent to this instance's
+ * own endpoints over the loopback interface, and isBlocked lookups through the configured {@link BlockedUsersClient}.
+ * <p>
+ * The requests go through the whole production stack (Tomcat, the filters, Jackson, validation, the controllers,
+ * the services and the database), so the code compiled is the code that later serves requests. They are built so
+ * that they change nothing: account requests use 10-digit national IDs, which sign-up rejects, so no account can
+ * ever have one; sign-ins use an email no account can have; sign-ups fail validation. Sign-ins only reach
+ * BLOCKED-USERS for existing accounts, so the client is called directly, and its failures are ignored since
+ * BLOCKED-USERS may not be up yet. The requests do show up in the exported metrics, as failed operations.
+ * </p>
+ */
+final class WarmupWorkload {
+    private static final int ACCOUNTS = 4096;
+    private static final long FIRST_NATIONAL_ID = 9_000_000_000L;
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final HttpClient httpClient; // Loopback client
+    private final BlockedUsersClient blockedUsersClient; // Production BLOCKED-USERS client
+    private final URI baseUri; // Base URI of this instance's API
+    private final String amount; // Body of the credit and debit requests
+    private final String signUp; // Body of the sign-up request, invalid on purpose
+
+    WarmupWorkload(int port, ObjectMapper objectMapper, BlockedUsersClient blockedUsersClient)
+            throws JsonProcessingException {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+        this.blockedUsersClient = blockedUsersClient;
+        this.baseUri = URI.create("http://localhost:" + port + "/exalt/training/");
+        this.amount = objectMapper.writeValueAsString(Map.of("amount", 10.0));
+        this.signUp = objectMapper.writeValueAsString(Map.of("nationalId", nationalId(0), "username", "warmup",
+                "email", "not-an-email", "password", "warmup", "phoneNumber", "0599000000", "rule", "REGULAR",
+                "balance", 0.0));
+    }
+
+    /**
+     * Runs one round of requests for one of the synthetic national IDs.
+     * Every other round sends the credit with an idempotency key, so the keyed path is compiled too.
+     * Every fourth round also signs in and asks BLOCKED-USERS about the national ID, and every eighth one signs up.
+     *
+     * @param iteration the round number.
+     * @throws IOException if a request cannot be sent.
+     * @throws InterruptedException if interrupted while waiting for a response.
+     */
+    void run(int iteration) throws IOException, InterruptedException {
+        String nationalId = nationalId(iteration % ACCOUNTS);
+        send(request("user/checkBalance/" + nationalId).GET());
+        HttpRequest.Builder credit = post("user/requestCredit/" + nationalId, amount);
+        if (iteration % 2 == 0) {
+            credit.header("Idempotency-Key", "warmup-" + iteration);
+        }
+        send(credit);
+        send(post("user/requestDebit/" + nationalId, amount));
+        if (iteration % 4 == 0) {
+            send(post("auth/signin", "{\"email\":\"warmup" + iteration + "@warmup.invalid\",\"password\":\"warmup\"}"));
+            try {
+                blockedUsersClient.isBlocked(nationalId);
+            } catch (RuntimeException ex) {
+                // BLOCKED-USERS unavailable, the client code ran anyway
+            }
+        }
+        if (iteration % 8 == 0) {
+            send(post("auth/signup", signUp));
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(TIMEOUT);
+    }
+
+    private HttpRequest.Builder post(String path, String body) {
+        return request(path).header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private void send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static String nationalId(int i) {
+        return String.valueOf(FIRST_NATIONAL_ID + i);
+    }
+}
@@ -0,0 +1,58 @@
+package com.exalt.training.users.admission;
+
+import com.exalt.training.users.enums.Rule;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that caller tokens carry the rule across instances sharing the secret and cannot be forged or reused
+ * after they expire.
+ */
+class CallerTokensTest {
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Duration TTL = Duration.ofHours(1);
+
+    private final CallerTokens tokens = new CallerTokens("shared-secret", TTL, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    @Test
+    void anyInstanceWithTheSecretReadsTheRule() {
+        String token = tokens.issue("123456789", Rule.GOLDEN_SUBSCRIPTION);
+        CallerTokens otherInstance = new CallerTokens("shared-secret", TTL, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertEquals(Rule.GOLDEN_SUBSCRIPTION, otherInstance.ruleOf(token));
+    }
+
+    @Test
+    void tamperedOrForeignTokensAreRejected() {
+        String token = tokens.issue("123456789", Rule.REGULAR);
+        String payload = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("123456789:GOLDEN_SUBSCRIPTION:9999999999".getBytes(StandardCharsets.UTF_8));
+        String raised = payload + token.substring(token.indexOf('.'));
+        CallerTokens otherSecret = new CallerTokens("other-secret", TTL, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertNull(tokens.ruleOf(raised));
+        assertNull(otherSecret.ruleOf(token));
+        assertNull(tokens.ruleOf("not-a-token"));
+        assertNull(tokens.ruleOf("a.b.c"));
+        assertNull(tokens.ruleOf(null));
+    }
+
+    @Test
+    void expiredTokensAreRejected() {
+        String token = tokens.issue("123456789", Rule.SHABAB);
+        Clock later = Clock.fixed(NOW.plus(TTL).plusSeconds(1), ZoneOffset.UTC);
+
+        assertEquals(Rule.SHABAB, new CallerTokens("shared-secret", TTL, Clock.fixed(NOW.plus(TTL), ZoneOffset.UTC))
+                .ruleOf(token));
+        assertNull(new CallerTokens("shared-secret", TTL, later).ruleOf(token));
+    }
+}
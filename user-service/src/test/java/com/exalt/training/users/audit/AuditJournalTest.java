@@ -0,0 +1,108 @@
+package com.exalt.training.users.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the journal rolls over to new segments, reads its events back in order, continues the sequence when
+ * reopened, and overwrites a record torn by a crash.
+ */
+class AuditJournalTest {
+    private static final long SEGMENT_SIZE = 4L * AuditJournal.RECORD_SIZE;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void eventsAreReadBackAcrossSegments() throws IOException {
+        try (AuditJournal journal = new AuditJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(1_000 + i, AuditEventType.CREDIT, 100_000_000 + i, i, 100 + i);
+            }
+        }
+
+        List<AuditJournal.Event> events = read();
+        assertEquals(10, events.size());
+        for (int i = 0; i < 10; i++) {
+            AuditJournal.Event event = events.get(i);
+            assertEquals(i, event.sequence());
+            assertEquals(1_000 + i, event.timestamp().toEpochMilli());
+            assertEquals(AuditEventType.CREDIT, event.type());
+            assertEquals(100_000_000 + i, event.nationalId());
+            assertEquals(i, event.amount());
+            assertEquals(100 + i, event.balanceAfter());
+        }
+        assertEquals(List.of("audit-00000000000000000000.log", "audit-00000000000000000004.log",
+                "audit-00000000000000000008.log"), segments());
+    }
+
+    @Test
+    void reopenedJournalContinuesTheSequence() throws IOException {
+        try (AuditJournal journal = new AuditJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 6; i++) {
+                journal.append(i, AuditEventType.DEBIT, 1, i, 0);
+            }
+        }
+
+        try (AuditJournal journal = new AuditJournal(directory, SEGMENT_SIZE)) {
+            assertEquals(6, journal.nextSequence());
+            journal.append(6, AuditEventType.DEBIT, 1, 6, 0);
+        }
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L), read().stream().map(AuditJournal.Event::sequence).toList());
+    }
+
+    @Test
+    void tornRecordIsOverwritten() throws IOException {
+        try (AuditJournal journal = new AuditJournal(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(i, AuditEventType.CREDIT, 1, i, 0);
+            }
+        }
+        try (RandomAccessFile segment = new RandomAccessFile(directory.resolve(segments().get(0)).toFile(), "rw")) {
+            segment.seek(2L * AuditJournal.RECORD_SIZE + 24); // Amount of the last record
+            segment.writeLong(Double.doubleToLongBits(42));
+        }
+
+        try (AuditJournal journal = new AuditJournal(directory, SEGMENT_SIZE)) {
+            assertEquals(2, journal.nextSequence());
+            journal.append(2, AuditEventType.DEBIT, 1, 7, 0);
+        }
+
+        List<AuditJournal.Event> events = read();
+        assertEquals(3, events.size());
+        assertEquals(AuditEventType.DEBIT, events.get(2).type());
+        assertEquals(7, events.get(2).amount());
+    }
+
+    @Test
+    void onlyDecimalNationalIdsHaveAKey() {
+        assertEquals(123456789L, AuditJournal.toKey("123456789"));
+        assertEquals(-1, AuditJournal.toKey("12345678a"));
+        assertEquals(-1, AuditJournal.toKey(""));
+        assertEquals(-1, AuditJournal.toKey(null));
+        assertEquals(-1, AuditJournal.toKey("1234567890123456789"));
+    }
+
+    private List<AuditJournal.Event> read() throws IOException {
+        List<AuditJournal.Event> events = new ArrayList<>();
+        AuditJournal.read(directory, events::add);
+        return events;
+    }
+
+    private List<String> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+}
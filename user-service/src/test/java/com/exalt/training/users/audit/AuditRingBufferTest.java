@@ -0,0 +1,95 @@
+package com.exalt.training.users.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that events published by concurrent producers are each drained once, in the order of each producer,
+ * with all their fields; that a full ring rejects events instead of overwriting undrained ones; and that the
+ * capacity is rounded up to a power of two.
+ */
+class AuditRingBufferTest {
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 50_000;
+
+    @Test
+    void concurrentEventsAreDrainedOnceInProducerOrder() throws Exception {
+        AuditRingBuffer ring = new AuditRingBuffer(256);
+        ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            long nationalId = producer;
+            done.add(producers.submit(() -> {
+                start.await();
+                for (int event = 0; event < EVENTS_PER_PRODUCER; event++) {
+                    while (!ring.tryPublish(event, AuditEventType.CREDIT, nationalId, event, -event)) {
+                        Thread.onSpinWait(); // Ring full, wait for the consumer
+                    }
+                }
+                return null;
+            }));
+        }
+
+        int[] next = new int[PRODUCERS];
+        int drained = 0;
+        start.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (drained < PRODUCERS * EVENTS_PER_PRODUCER) {
+            assertTrue(System.nanoTime() < deadline, "only " + drained + " events drained");
+            drained += ring.drain((timestamp, type, nationalId, amount, balanceAfter) -> {
+                int producer = (int) nationalId;
+                assertEquals(next[producer], timestamp);
+                assertEquals(AuditEventType.CREDIT, type);
+                assertEquals(next[producer], amount);
+                assertEquals(-next[producer], balanceAfter);
+                next[producer]++;
+            }, 64);
+        }
+        for (Future<?> producer : done) {
+            producer.get(5, TimeUnit.SECONDS);
+        }
+        producers.shutdown();
+
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            assertEquals(EVENTS_PER_PRODUCER, next[producer]);
+        }
+        assertEquals(0, ring.backlog());
+        assertEquals(0, ring.drain((timestamp, type, nationalId, amount, balanceAfter) -> { }, 64));
+    }
+
+    @Test
+    void fullRingRejectsEvents() {
+        AuditRingBuffer ring = new AuditRingBuffer(4);
+        for (int event = 0; event < 4; event++) {
+            assertTrue(ring.tryPublish(event, AuditEventType.DEBIT, 1, event, 0));
+        }
+
+        assertFalse(ring.tryPublish(4, AuditEventType.DEBIT, 1, 4, 0));
+        assertEquals(4, ring.backlog());
+
+        List<Long> drained = new ArrayList<>();
+        assertEquals(2, ring.drain((timestamp, type, nationalId, amount, balanceAfter) -> drained.add(timestamp), 2));
+        assertTrue(ring.tryPublish(5, AuditEventType.DEBIT, 1, 5, 0));
+        ring.drain((timestamp, type, nationalId, amount, balanceAfter) -> drained.add(timestamp), 10);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 5L), drained);
+    }
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new AuditRingBuffer(1).capacity());
+        assertEquals(8, new AuditRingBuffer(8).capacity());
+        assertEquals(1024, new AuditRingBuffer(1000).capacity());
+    }
+}
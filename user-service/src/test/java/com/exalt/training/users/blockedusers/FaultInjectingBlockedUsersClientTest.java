@@ -0,0 +1,99 @@
+package com.exalt.training.users.blockedusers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the fault injection leaves the client unwrapped when no fault is set, delays every call by the
+ * configured latency, fails and counts the configured share of calls before they reach the wrapped client, and
+ * rejects invalid settings.
+ */
+class FaultInjectingBlockedUsersClientTest {
+    private static final String NATIONAL_ID = "100000001";
+
+    private SimpleMeterRegistry registry;
+    private InProcessBlockedUsersClient delegate;
+    private RemoteFaultProperties faults;
+
+    @BeforeEach
+    void createDelegate() {
+        registry = new SimpleMeterRegistry();
+        delegate = new InProcessBlockedUsersClient();
+        faults = new RemoteFaultProperties();
+    }
+
+    @Test
+    void clientIsUnwrappedWithoutFaults() {
+        assertSame(delegate, FaultInjectingBlockedUsersClient.wrap(delegate, faults, registry));
+    }
+
+    @Test
+    void everyCallWaitsTheLatency() {
+        faults.setLatency(Duration.ofMillis(20));
+        BlockedUsersClient client = FaultInjectingBlockedUsersClient.wrap(delegate, faults, registry);
+
+        long start = System.nanoTime();
+        client.block(NATIONAL_ID, "user");
+        assertTrue(client.isBlocked(NATIONAL_ID));
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(40), elapsed + " ns");
+        assertEquals(0, failures());
+    }
+
+    @Test
+    void failedCallsDoNotReachTheClient() {
+        faults.setFailureRate(1);
+        BlockedUsersClient client = FaultInjectingBlockedUsersClient.wrap(delegate, faults, registry);
+
+        assertThrows(IllegalStateException.class, () -> client.block(NATIONAL_ID, "user"));
+        assertThrows(IllegalStateException.class, () -> client.isBlocked(NATIONAL_ID));
+
+        assertFalse(delegate.isBlocked(NATIONAL_ID));
+        assertEquals(2, failures());
+    }
+
+    @Test
+    void partOfTheCallsFail() {
+        faults.setFailureRate(0.25);
+        BlockedUsersClient client = FaultInjectingBlockedUsersClient.wrap(delegate, faults, registry);
+
+        int failed = 0;
+        for (int i = 0; i < 4_000; i++) {
+            try {
+                client.isBlocked(NATIONAL_ID);
+            } catch (IllegalStateException ex) {
+                failed++;
+            }
+        }
+
+        assertTrue(failed > 800 && failed < 1_200, failed + " failures");
+        assertEquals(failed, failures());
+    }
+
+    @Test
+    void invalidFaultsAreRejected() {
+        faults.setFailureRate(1.5);
+        assertThrows(IllegalArgumentException.class,
+                () -> FaultInjectingBlockedUsersClient.wrap(delegate, faults, registry));
+
+        faults.setFailureRate(0);
+        faults.setLatency(Duration.ofMillis(-1));
+        assertThrows(IllegalArgumentException.class,
+                () -> FaultInjectingBlockedUsersClient.wrap(delegate, faults, registry));
+    }
+
+    private double failures() {
+        return registry.get("users.blockedusers.faults").tag("fault", "failure").counter().count();
+    }
+}
@@ -0,0 +1,42 @@
+package com.exalt.training.users.blockedusers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the in-process client follows the rules of BLOCKED-USERS and pages through blocked IDs like it.
+ */
+class InProcessBlockedUsersClientTest {
+    private final InProcessBlockedUsersClient client = new InProcessBlockedUsersClient();
+
+    @Test
+    void usersCannotBeBlockedTwiceOrUnblockedWhenNotBlocked() {
+        client.block("100000001", "user");
+
+        assertTrue(client.isBlocked("100000001"));
+        assertThrows(IllegalStateException.class, () -> client.block("100000001", "user"));
+
+        client.unblock("100000001");
+
+        assertFalse(client.isBlocked("100000001"));
+        assertThrows(IllegalStateException.class, () -> client.unblock("100000001"));
+    }
+
+    @Test
+    void blockedIdsArePagedInOrderWithinTheRange() {
+        for (String nationalId : List.of("100000005", "100000001", "100000003", "100000004", "100000002")) {
+            client.block(nationalId, "user");
+        }
+
+        assertEquals(List.of("100000001", "100000002"), client.blockedIds("", null, 2));
+        assertEquals(List.of("100000003", "100000004"), client.blockedIds("100000002", null, 2));
+        assertEquals(List.of("100000005"), client.blockedIds("100000004", null, 2));
+        assertEquals(List.of("100000002", "100000003"), client.blockedIds("100000001", "100000003", 10));
+    }
+}
@@ -0,0 +1,122 @@
+package com.exalt.training.users.blockedusers;
+
+import com.exalt.training.common.rpc.RpcFrames;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the client side of the binary protocol against a scripted server: the connection opens with the magic
+ * number, requests are framed as described in {@link RpcFrames}, responses are matched to their calls by request ID
+ * whatever their order, and a broken frame or a closed connection fails every pending call.
+ */
+class RpcConnectionTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private ServerSocket server;
+    private RpcConnection connection;
+    private Socket accepted;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    @BeforeEach
+    void connect() throws IOException {
+        server = new ServerSocket(0);
+        connection = RpcConnection.open("localhost", server.getLocalPort(), TIMEOUT);
+        accepted = server.accept();
+        accepted.setSoTimeout((int) TIMEOUT.toMillis());
+        in = new DataInputStream(accepted.getInputStream());
+        out = new DataOutputStream(accepted.getOutputStream());
+        assertEquals(RpcFrames.MAGIC, in.readInt());
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        connection.close();
+        accepted.close();
+        server.close();
+    }
+
+    @Test
+    void responsesAreMatchedToTheirCallsInAnyOrder() throws Exception {
+        CompletableFuture<RpcConnection.Reply> first = connection.send(RpcFrames.IS_BLOCKED, new byte[]{1, 2}, TIMEOUT);
+        CompletableFuture<RpcConnection.Reply> second = connection.send(RpcFrames.UNBLOCK, new byte[]{3}, TIMEOUT);
+
+        assertEquals(RpcFrames.HEADER_LENGTH + 2, in.readInt());
+        long firstId = in.readLong();
+        assertEquals(RpcFrames.IS_BLOCKED, in.readByte());
+        assertArrayEquals(new byte[]{1, 2}, in.readNBytes(2));
+        assertEquals(RpcFrames.HEADER_LENGTH + 1, in.readInt());
+        long secondId = in.readLong();
+        assertEquals(RpcFrames.UNBLOCK, in.readByte());
+        assertArrayEquals(new byte[]{3}, in.readNBytes(1));
+
+        respond(secondId, RpcFrames.REJECTED, new byte[]{9});
+        respond(firstId, RpcFrames.OK, new byte[]{1});
+
+        RpcConnection.Reply secondReply = second.get(5, TimeUnit.SECONDS);
+        assertEquals(RpcFrames.REJECTED, secondReply.status());
+        assertArrayEquals(new byte[]{9}, secondReply.payload());
+        RpcConnection.Reply firstReply = first.get(5, TimeUnit.SECONDS);
+        assertEquals(RpcFrames.OK, firstReply.status());
+        assertArrayEquals(new byte[]{1}, firstReply.payload());
+    }
+
+    @Test
+    void invalidFrameFailsThePendingCalls() throws IOException {
+        CompletableFuture<RpcConnection.Reply> call = connection.send(RpcFrames.IS_BLOCKED, new byte[0], TIMEOUT);
+
+        out.writeInt(RpcFrames.MAX_FRAME_LENGTH + 1);
+        out.flush();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, failure.getCause());
+        assertFalse(connection.isOpen());
+        assertThrows(IOException.class, () -> connection.send(RpcFrames.IS_BLOCKED, new byte[0], TIMEOUT));
+    }
+
+    @Test
+    void closedConnectionFailsThePendingCalls() throws IOException {
+        CompletableFuture<RpcConnection.Reply> call = connection.send(RpcFrames.BLOCK, new byte[0], TIMEOUT);
+
+        accepted.close();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, failure.getCause());
+        assertFalse(connection.isOpen());
+    }
+
+    @Test
+    void unansweredCallsTimeOut() throws IOException {
+        CompletableFuture<RpcConnection.Reply> call = connection.send(RpcFrames.IS_BLOCKED, new byte[0],
+                Duration.ofMillis(50));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, failure.getCause());
+    }
+
+    private void respond(long requestId, byte status, byte[] payload) throws IOException {
+        out.writeInt(RpcFrames.HEADER_LENGTH + payload.length);
+        out.writeLong(requestId);
+        out.writeByte(status);
+        out.write(payload);
+        out.flush();
+    }
+}
@@ -0,0 +1,82 @@
+package com.exalt.training.users.filter;
+
+import com.exalt.training.users.repository.UserEmailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the email filter reports every email as possibly registered until it is rebuilt, pages through the
+ * whole email index when rebuilt, and then only sends registered emails, and the few false positives, to the lookup.
+ * The email index is a mocked repository holding emails in order.
+ */
+class EmailFilterTest {
+    private static final int REGISTERED = 25_000; // More than two rebuild pages
+
+    private final List<String> index = new ArrayList<>();
+    private SimpleMeterRegistry registry;
+    private EmailFilter emailFilter;
+
+    @BeforeEach
+    void createFilter() {
+        for (int i = 0; i < REGISTERED; i++) {
+            index.add(String.format("user%06d@exalt.com", i));
+        }
+        UserEmailRepository repository = mock(UserEmailRepository.class);
+        when(repository.findEmailsAfter(anyString(), any())).thenAnswer(invocation -> {
+            String after = invocation.getArgument(0);
+            Pageable page = invocation.getArgument(1);
+            return index.stream().filter(email -> email.compareTo(after) > 0).limit(page.getPageSize()).toList();
+        });
+        registry = new SimpleMeterRegistry();
+        emailFilter = new EmailFilter(repository, 1_000, 0.01, registry);
+    }
+
+    @Test
+    void everyEmailMightBeRegisteredUntilRebuilt() {
+        assertTrue(emailFilter.mightBeRegistered("new@exalt.com"));
+        emailFilter.lookedUp(false);
+
+        assertEquals(0, registry.get("users.signup.email.filter").tag("result", "false_positive").counter().count());
+    }
+
+    @Test
+    void rebuiltFilterHoldsTheWholeIndex() {
+        emailFilter.rebuild();
+
+        for (String email : index) {
+            assertTrue(emailFilter.mightBeRegistered(email), email);
+        }
+        double entries = registry.get("users.signup.email.filter.entries").gauge().value();
+        assertTrue(entries > REGISTERED * 0.98 && entries <= REGISTERED, entries + " entries"); // Less the false positives
+        int definitelyNew = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (!emailFilter.mightBeRegistered("new" + i + "@exalt.com")) {
+                definitelyNew++;
+            }
+        }
+        assertTrue(definitelyNew > 950, definitelyNew + " new emails skipped the lookup");
+    }
+
+    @Test
+    void addedEmailsMightBeRegistered() {
+        emailFilter.rebuild();
+        assertFalse(emailFilter.mightBeRegistered("new@exalt.com"));
+
+        emailFilter.add("new@exalt.com");
+
+        assertTrue(emailFilter.mightBeRegistered("new@exalt.com"));
+    }
+}
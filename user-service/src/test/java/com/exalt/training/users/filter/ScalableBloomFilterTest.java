@@ -0,0 +1,67 @@
+package com.exalt.training.users.filter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the filter never forgets an entry as it grows past its initial capacity, and that its false-positive
+ * rate stays under the configured bound however many slices it adds.
+ */
+class ScalableBloomFilterTest {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void everyEntryIsFoundAfterGrowing() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < 20_000; i++) {
+            filter.add(email(i));
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            assertTrue(filter.mightContain(email(i)), email(i));
+        }
+    }
+
+    @Test
+    void falsePositivesStayUnderTheBoundAfterGrowing() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < 20_000; i++) {
+            filter.add(email(i));
+        }
+
+        int falsePositives = 0;
+        int lookups = 100_000;
+        for (int i = 0; i < lookups; i++) {
+            if (filter.mightContain("new" + i + "@exalt.com")) {
+                falsePositives++;
+            }
+        }
+        assertTrue((double) falsePositives / lookups < FALSE_POSITIVE_RATE, falsePositives + " false positives");
+        assertTrue(filter.estimatedFalsePositiveRate() < FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    void addingAnEntryAgainDoesNotCountIt() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(10, FALSE_POSITIVE_RATE);
+        filter.add(email(1));
+        filter.add(email(1));
+
+        assertEquals(1, filter.entries());
+        assertFalse(filter.mightContain(email(2)));
+    }
+
+    @Test
+    void invalidSizingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(0, FALSE_POSITIVE_RATE));
+        assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(10, 1));
+    }
+
+    private static String email(int i) {
+        return "user" + i + "@exalt.com";
+    }
+}
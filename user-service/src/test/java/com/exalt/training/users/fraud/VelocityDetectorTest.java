@@ -0,0 +1,107 @@
+package com.exalt.training.users.fraud;
+
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.fraud.VelocityWindows.Thresholds;
+import com.exalt.training.users.fraud.VelocityWindows.Verdict;
+import com.exalt.training.users.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that only committed changes count towards the velocity limits, and that tripped accounts stay held.
+ * Transactions are simulated by driving the transaction synchronizations by hand.
+ */
+class VelocityDetectorTest {
+    private static final int MINUTE_CHANGES = 3;
+
+    private SimpleMeterRegistry registry;
+    private VelocityDetector detector;
+
+    @BeforeEach
+    void createDetector() {
+        VelocityProperties properties = new VelocityProperties();
+        for (Rule rule : Rule.values()) {
+            properties.getLimits().put(rule, new VelocityProperties.Limits(MINUTE_CHANGES, 1_000, 100, 10_000));
+        }
+        registry = new SimpleMeterRegistry();
+        detector = new VelocityDetector(properties, null, null, AuditLog.disabled(registry), registry);
+    }
+
+    @AfterEach
+    void stopDetector() {
+        detector.stop();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void rolledBackChangesAreNotCounted() {
+        User user = user("100000001");
+        for (int i = 0; i < MINUTE_CHANGES; i++) {
+            TransactionSynchronizationManager.initSynchronization();
+            assertTrue(detector.tryDebit(user, 10));
+            complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        for (int i = 0; i < MINUTE_CHANGES; i++) {
+            assertTrue(detector.tryDebit(user, 10), "debit " + i);
+        }
+        assertFalse(detector.tryDebit(user, 10));
+    }
+
+    @Test
+    void changesOfOneTransactionCountTogetherAndAreRecordedOnCommit() {
+        User user = user("100000002");
+        TransactionSynchronizationManager.initSynchronization();
+        detector.credit(user);
+        assertTrue(detector.tryDebit(user, 10));
+        assertTrue(detector.tryDebit(user, 10));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertFalse(detector.tryDebit(user, 10));
+        assertEquals(1.0, registry.get("users.velocity.trips").tag("rule", "regular").counter().count());
+    }
+
+    @Test
+    void trippedAccountsAreNeverEvicted() {
+        VelocityWindows windows = new VelocityWindows(1_024);
+        Thresholds thresholds = new Thresholds(1, 1_000, 100, 100_000);
+        long now = 0;
+        windows.record(7, now, 1, 0);
+        assertEquals(Verdict.TRIPPED, windows.check(7, now, 10, 0, 0, thresholds));
+
+        for (int account = 1_000; account < 50_000; account++) {
+            windows.record(account, ++now, 1, 0);
+        }
+
+        assertEquals(Verdict.HELD, windows.check(7, now, 10, 0, 0, thresholds));
+        windows.reset(7);
+        assertEquals(Verdict.ALLOWED, windows.check(7, now, 10, 0, 0, thresholds));
+    }
+
+    private static void complete(int status) {
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        }
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private static User user(String nationalId) {
+        User user = new User();
+        user.setNationalId(nationalId);
+        user.setUsername("velocity" + nationalId);
+        user.setRule(Rule.REGULAR);
+        return user;
+    }
+}
@@ -0,0 +1,192 @@
+package com.exalt.training.users.interest;
+
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.portfolio.PortfolioAggregates;
+import com.exalt.training.users.sharding.ShardDataSources;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a run applies the interest and fee of each rule to every account of every shard, in several partitions
+ * and chunks, with a ledger entry for each balance that changed; that a resumed run leaves the accounts already done
+ * alone; and that accounts whose bucket is being moved are skipped and keep the run incomplete.
+ * The shards are two in-memory H2 databases with a reduced schema.
+ */
+class InterestBatchJobTest {
+    private static final int PERIOD = InterestBatchJob.periodOf(YearMonth.now(ZoneOffset.UTC).minusMonths(1));
+    private static final int ACCOUNTS = 30; // Enough for several partitions and chunks per shard
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final List<DataSource> shards = new ArrayList<>();
+    private ShardDirectory directory;
+    private InterestBatchJob job;
+
+    @BeforeEach
+    void createShards() {
+        for (int shard = 0; shard < 2; shard++) {
+            DataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            jdbc.execute("create table users (id bigint primary key, national_id varchar(9), rule int, balance float,"
+                    + " interest_through int)");
+            jdbc.execute("create sequence ledger_sequence");
+            jdbc.execute("create table ledger_entries (id bigint primary key, national_id varchar(9), type varchar(16),"
+                    + " amount float, balance_after float, created_at timestamp with time zone)");
+            jdbc.execute("create table interest_runs (period int primary key, started_at timestamp with time zone,"
+                    + " accounts bigint, completed_at timestamp with time zone)");
+            shards.add(dataSource);
+        }
+        directory = spy(new ShardDirectory(16, 2));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            user(i, Rule.REGULAR, 200); // 2.00 interest less the 1.00 fee
+        }
+        user(ACCOUNTS, Rule.GOLDEN_SUBSCRIPTION, 1000); // 10.00 interest, no fee
+        user(ACCOUNTS + 1, Rule.REGULAR, 100); // 1.00 interest cancelled by the fee
+        user(ACCOUNTS + 2, Rule.SHABAB, 3); // Fee capped at the balance
+
+        InterestProperties properties = new InterestProperties();
+        properties.setParallelism(2);
+        properties.setPartitionSize(8);
+        properties.setChunkSize(3);
+        properties.setMaxAccountsPerSecond(1_000_000);
+        properties.setMaxPause(Duration.ZERO);
+        properties.setTerms(Map.of(
+                Rule.GOLDEN_SUBSCRIPTION, new InterestProperties.Terms(0.01, 0),
+                Rule.SHABAB, new InterestProperties.Terms(0, 5),
+                Rule.REGULAR, new InterestProperties.Terms(0.01, 1)));
+        SessionFactoryImplementor sessionFactory = mock(SessionFactoryImplementor.class, RETURNS_DEEP_STUBS);
+        when(sessionFactory.getJdbcServices().getDialect()).thenReturn(new H2Dialect());
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManagerFactory.unwrap(SessionFactoryImplementor.class)).thenReturn(sessionFactory);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        job = new InterestBatchJob(properties, new ShardDataSources(shards), directory, AuditLog.disabled(registry),
+                PortfolioAggregates.detached(registry), entityManagerFactory, registry);
+    }
+
+    @AfterEach
+    void dropShards() {
+        job.stop();
+        for (DataSource shard : shards) {
+            new JdbcTemplate(shard).execute("shutdown");
+        }
+    }
+
+    @Test
+    void runAppliesTheTermsOfEachRuleToEveryAccount() throws InterruptedException {
+        job.startMonthlyRun();
+
+        awaitRun(() -> directoryJdbc().queryForObject(
+                "select count(*) from interest_runs where completed_at is not null", Integer.class) == 1);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(201.0, balance(i));
+        }
+        assertEquals(1010.0, balance(ACCOUNTS));
+        assertEquals(100.0, balance(ACCOUNTS + 1));
+        assertEquals(0.0, balance(ACCOUNTS + 2));
+        assertEquals(List.of("CREDIT 10.0 1010.0"), entries(ACCOUNTS));
+        assertEquals(List.of(), entries(ACCOUNTS + 1));
+        assertEquals(List.of("DEBIT 3.0 0.0"), entries(ACCOUNTS + 2));
+        for (DataSource shard : shards) {
+            assertEquals(0, new JdbcTemplate(shard).queryForObject(
+                    "select count(*) from users where interest_through is null or interest_through <> ?",
+                    Integer.class, PERIOD));
+        }
+        assertEquals(ACCOUNTS + 2L, directoryJdbc().queryForObject("select accounts from interest_runs", Long.class));
+    }
+
+    @Test
+    void resumedRunLeavesTheAccountsAlreadyDone() throws InterruptedException {
+        for (int i = 0; i < ACCOUNTS; i += 2) {
+            jdbcOf(i).update("update users set interest_through = ? where id = ?", PERIOD, i);
+        }
+        directoryJdbc().update("insert into interest_runs (period, started_at, accounts) values (?, current_timestamp, ?)",
+                PERIOD, ACCOUNTS / 2);
+
+        job.resumeIncompleteRun();
+
+        awaitRun(() -> directoryJdbc().queryForObject(
+                "select count(*) from interest_runs where completed_at is not null", Integer.class) == 1);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(i % 2 == 0 ? 200.0 : 201.0, balance(i));
+            assertEquals(i % 2 == 0 ? 0 : 1, entries(i).size());
+        }
+        assertEquals(ACCOUNTS + 2L, directoryJdbc().queryForObject("select accounts from interest_runs", Long.class));
+    }
+
+    @Test
+    void accountsOfMovingBucketsKeepTheRunIncomplete() throws InterruptedException {
+        int moving = directory.bucketOf(nationalId(0));
+        doReturn(false).when(directory).tryBeginWrite(moving);
+
+        job.startMonthlyRun();
+
+        awaitRun(() -> directoryJdbc().queryForObject(
+                "select coalesce(max(accounts), 0) from interest_runs", Long.class) > 0);
+        assertNull(directoryJdbc().queryForObject("select completed_at from interest_runs", Object.class));
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(directory.bucketOf(nationalId(i)) == moving ? 200.0 : 201.0, balance(i));
+        }
+    }
+
+    private void user(int id, Rule rule, double balance) {
+        jdbcOf(id).update("insert into users values (?, ?, ?, ?, null)", id, nationalId(id), rule.ordinal(), balance);
+    }
+
+    private double balance(int id) {
+        return jdbcOf(id).queryForObject("select balance from users where id = ?", Double.class, id);
+    }
+
+    private List<String> entries(int id) {
+        return jdbcOf(id).query("select type, amount, balance_after from ledger_entries where national_id = ?",
+                (resultSet, row) -> resultSet.getString(1) + " " + resultSet.getDouble(2) + " " + resultSet.getDouble(3),
+                nationalId(id));
+    }
+
+    private JdbcTemplate jdbcOf(int id) {
+        return new JdbcTemplate(shards.get(directory.shardOf(nationalId(id))));
+    }
+
+    private JdbcTemplate directoryJdbc() {
+        return new JdbcTemplate(shards.get(ShardDirectory.DIRECTORY_SHARD));
+    }
+
+    private static String nationalId(int id) {
+        return String.valueOf(100_000_000 + id);
+    }
+
+    private static void awaitRun(BooleanSupplier finished) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!finished.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "the run did not finish in time");
+            Thread.sleep(20);
+        }
+    }
+}
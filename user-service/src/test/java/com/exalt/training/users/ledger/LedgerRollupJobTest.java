@@ -0,0 +1,117 @@
+package com.exalt.training.users.ledger;
+
+import com.exalt.training.users.sharding.ShardDataSources;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the rollup job folds each closed day's entries into one row per user, starting the day before the
+ * oldest entry, leaves the open day alone, and advances the watermark only over days it rolled up.
+ * The shard is an in-memory H2 database with the ledger tables.
+ */
+class LedgerRollupJobTest {
+    private static final LocalDate TODAY = LocalDate.now(ZoneOffset.UTC);
+
+    private DataSource shard;
+    private SimpleMeterRegistry registry;
+    private LedgerRollupJob job;
+    private long nextId;
+
+    @BeforeEach
+    void createShard() {
+        shard = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(shard);
+        jdbc.execute("create table ledger_entries (id bigint primary key, national_id varchar(9), type varchar(16),"
+                + " amount float, balance_after float, created_at timestamp with time zone)");
+        jdbc.execute("create table ledger_daily_rollups (national_id varchar(9), rollup_day date, credits float,"
+                + " debits float, entry_count int, closing_balance float, primary key (national_id, rollup_day))");
+        jdbc.execute("create table ledger_rollup_progress (id int primary key, rolled_up_through date)");
+        registry = new SimpleMeterRegistry();
+        job = new LedgerRollupJob(new ShardDataSources(List.of(shard)), Duration.ZERO, registry);
+    }
+
+    @AfterEach
+    void dropShard() {
+        new JdbcTemplate(shard).execute("shutdown");
+    }
+
+    @Test
+    void closedDaysAreFoldedPerUser() {
+        LocalDate first = TODAY.minusDays(3);
+        entry("100000001", "OPENING", 100, 100, first, 9);
+        entry("100000001", "DEBIT", 30, 70, first, 10);
+        entry("100000001", "CREDIT", 5, 75, first, 11);
+        entry("100000002", "OPENING", 50, 50, first, 12);
+        entry("100000001", "DEBIT", 25, 50, first.plusDays(1), 8);
+        entry("100000001", "CREDIT", 10, 60, TODAY, 0);
+
+        job.rollUp();
+
+        assertEquals(List.of(
+                Map.of("NATIONAL_ID", "100000001", "ROLLUP_DAY", first, "CREDITS", 105.0, "DEBITS", 30.0,
+                        "ENTRY_COUNT", 3, "CLOSING_BALANCE", 75.0),
+                Map.of("NATIONAL_ID", "100000002", "ROLLUP_DAY", first, "CREDITS", 50.0, "DEBITS", 0.0,
+                        "ENTRY_COUNT", 1, "CLOSING_BALANCE", 50.0),
+                Map.of("NATIONAL_ID", "100000001", "ROLLUP_DAY", first.plusDays(1), "CREDITS", 0.0, "DEBITS", 25.0,
+                        "ENTRY_COUNT", 1, "CLOSING_BALANCE", 50.0)), rollups());
+        assertEquals(TODAY.minusDays(1), watermark());
+        assertEquals(3, registry.get("users.ledger.rolled.days").counter().count());
+    }
+
+    @Test
+    void daysAreRolledUpOnce() {
+        entry("100000001", "OPENING", 100, 100, TODAY.minusDays(1), 12);
+        job.rollUp();
+        entry("100000001", "CREDIT", 10, 110, TODAY.minusDays(1), 13);
+
+        job.rollUp();
+
+        assertEquals(1, rollups().size());
+        assertEquals(100.0, rollups().get(0).get("CLOSING_BALANCE"));
+        assertEquals(1, registry.get("users.ledger.rolled.days").counter().count());
+    }
+
+    @Test
+    void withoutEntriesTheWatermarkStartsAtTheLastClosedDay() {
+        job.rollUp();
+
+        assertEquals(TODAY.minusDays(1), watermark());
+        assertEquals(0, registry.get("users.ledger.rolled.days").counter().count());
+    }
+
+    private void entry(String nationalId, String type, double amount, double balanceAfter, LocalDate day, int hour) {
+        new JdbcTemplate(shard).update("insert into ledger_entries values (?, ?, ?, ?, ?, ?)", nextId++, nationalId,
+                type, amount, balanceAfter, day.atTime(LocalTime.of(hour, 0)).atOffset(ZoneOffset.UTC));
+    }
+
+    private List<Map<String, Object>> rollups() {
+        return new JdbcTemplate(shard).query("select * from ledger_daily_rollups order by rollup_day, national_id",
+                (resultSet, row) -> Map.of(
+                        "NATIONAL_ID", resultSet.getString("national_id"),
+                        "ROLLUP_DAY", resultSet.getObject("rollup_day", LocalDate.class),
+                        "CREDITS", resultSet.getDouble("credits"),
+                        "DEBITS", resultSet.getDouble("debits"),
+                        "ENTRY_COUNT", resultSet.getInt("entry_count"),
+                        "CLOSING_BALANCE", resultSet.getDouble("closing_balance")));
+    }
+
+    private LocalDate watermark() {
+        return new JdbcTemplate(shard).queryForObject("select rolled_up_through from ledger_rollup_progress",
+                LocalDate.class);
+    }
+}
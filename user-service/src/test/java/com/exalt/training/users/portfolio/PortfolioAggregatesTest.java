@@ -0,0 +1,127 @@
+package com.exalt.training.users.portfolio;
+
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.sharding.ShardDataSources;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the aggregates are first loaded by reconciling the users of every shard, follow committed ledger
+ * entries only, share them with other instances through the checkpoints, and that a reconciliation corrects and
+ * reports the drift. The shards are two in-memory H2 databases with a reduced schema.
+ */
+class PortfolioAggregatesTest {
+    private final List<DataSource> shards = new ArrayList<>();
+    private SimpleMeterRegistry registry;
+    private PortfolioAggregates aggregates;
+
+    @BeforeEach
+    void createShards() {
+        for (int shard = 0; shard < 2; shard++) {
+            DataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            jdbc.execute("create table users (national_id varchar(9) primary key, rule int, balance float)");
+            jdbc.execute("create table portfolio_aggregates (rule varchar(32) primary key, accounts bigint,"
+                    + " balance_cents bigint, reconciled_at timestamp with time zone)");
+            shards.add(dataSource);
+        }
+        user(0, "100000001", Rule.REGULAR, 100.10);
+        user(1, "100000002", Rule.REGULAR, 49.90);
+        user(1, "100000003", Rule.GOLDEN_SUBSCRIPTION, 1000);
+        registry = new SimpleMeterRegistry();
+        aggregates = instance(registry);
+    }
+
+    @AfterEach
+    void dropShards() {
+        for (DataSource shard : shards) {
+            new JdbcTemplate(shard).execute("shutdown");
+        }
+    }
+
+    @Test
+    void firstCheckpointReconcilesEveryShard() {
+        assertThrows(IllegalStateException.class, () -> aggregates.totals());
+
+        aggregates.checkpoint();
+
+        assertEquals(new PortfolioAggregates.Totals(2, 150, 75), aggregates.totals(Rule.REGULAR));
+        assertEquals(new PortfolioAggregates.Totals(1, 1000, 1000), aggregates.totals(Rule.GOLDEN_SUBSCRIPTION));
+        assertEquals(new PortfolioAggregates.Totals(0, 0, 0), aggregates.totals(Rule.SHABAB));
+    }
+
+    @Test
+    void onlyCommittedEntriesAreCounted() {
+        aggregates.checkpoint();
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(shards.get(0)));
+
+        transaction.executeWithoutResult(status -> {
+            aggregates.recordAfterCommit(Rule.SHABAB, LedgerEntryType.OPENING, 20);
+            status.setRollbackOnly();
+        });
+        transaction.executeWithoutResult(status -> {
+            aggregates.recordAfterCommit(Rule.REGULAR, LedgerEntryType.CREDIT, 25.25);
+            aggregates.recordAfterCommit(Rule.REGULAR, LedgerEntryType.DEBIT, 0.25);
+            assertEquals(150, aggregates.totals(Rule.REGULAR).totalBalance());
+        });
+
+        assertEquals(new PortfolioAggregates.Totals(2, 175, 87.5), aggregates.totals(Rule.REGULAR));
+        assertEquals(0, aggregates.totals(Rule.SHABAB).accounts());
+    }
+
+    @Test
+    void checkpointsShareChangesBetweenInstances() {
+        aggregates.checkpoint();
+        PortfolioAggregates other = instance(new SimpleMeterRegistry());
+        other.checkpoint();
+
+        aggregates.recordAfterCommit(Rule.SHABAB, LedgerEntryType.OPENING, 30);
+        other.recordAfterCommit(Rule.SHABAB, LedgerEntryType.CREDIT, 10);
+        aggregates.checkpoint();
+        other.checkpoint();
+        aggregates.checkpoint();
+
+        assertEquals(new PortfolioAggregates.Totals(1, 40, 40), aggregates.totals(Rule.SHABAB));
+        assertEquals(new PortfolioAggregates.Totals(1, 40, 40), other.totals(Rule.SHABAB));
+        assertEquals(4000L, new JdbcTemplate(shards.get(0)).queryForObject(
+                "select balance_cents from portfolio_aggregates where rule = 'SHABAB'", Long.class));
+    }
+
+    @Test
+    void reconciliationCorrectsTheDrift() {
+        aggregates.checkpoint();
+        user(0, "100000004", Rule.REGULAR, 50); // Missed by the aggregates
+        aggregates.recordAfterCommit(Rule.REGULAR, LedgerEntryType.CREDIT, 10); // Not in the users table
+
+        aggregates.reconcile();
+
+        assertEquals(new PortfolioAggregates.Totals(3, 200, 200.0 / 3), aggregates.totals(Rule.REGULAR));
+        assertEquals(-50, registry.get("users.portfolio.drift").tag("rule", "regular").gauge().value());
+    }
+
+    private PortfolioAggregates instance(SimpleMeterRegistry registry) {
+        return new PortfolioAggregates(new ShardDataSources(shards), Duration.ZERO, registry);
+    }
+
+    private void user(int shard, String nationalId, Rule rule, double balance) {
+        new JdbcTemplate(shards.get(shard)).update("insert into users values (?, ?, ?)", nationalId, rule.ordinal(),
+                balance);
+    }
+}
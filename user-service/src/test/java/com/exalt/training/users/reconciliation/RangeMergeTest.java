@@ -0,0 +1,106 @@
+package com.exalt.training.users.reconciliation;
+
+import com.exalt.training.users.reconciliation.RangeMerge.UserRow;
+import com.exalt.training.users.reconciliation.ReconciliationJob.Mismatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the merge-join of the reconciliation on in-memory pages, smaller than the data so every walk spans
+ * several pages on each side.
+ */
+class RangeMergeTest {
+    private static final int PAGE_SIZE = 2;
+
+    @Test
+    void reportsMissingBlocksAndUnknownUsersAcrossShardsAndPages() {
+        List<UserRow> firstShard = List.of(row("100000001", 0), row("100000003", 5), row("100000005", 2),
+                row("100000007", 7));
+        List<UserRow> secondShard = List.of(row("100000002", 6), row("100000004", 1), row("100000006", 9));
+        List<String> blocked = List.of("100000002", "100000004", "100000008", "100000009");
+        List<String> found = new ArrayList<>();
+
+        RangeMerge merge = new RangeMerge("", List.of(pages(firstShard, UserRow::nationalId),
+                pages(secondShard, UserRow::nationalId)), pages(blocked, Function.identity()), PAGE_SIZE, () -> false);
+
+        assertTrue(merge.walk((kind, nationalId) -> found.add(kind + " " + nationalId)));
+        assertEquals(List.of(
+                "MISSING_BLOCK 100000003",
+                "MISSING_BLOCK 100000006",
+                "MISSING_BLOCK 100000007",
+                "UNKNOWN_USER 100000008",
+                "UNKNOWN_USER 100000009"), found);
+        assertEquals(7, merge.accounts());
+        assertEquals(4, merge.blocked());
+    }
+
+    @Test
+    void userOnTwoShardsCountsOnceWithTheHigherFailedAttempts() {
+        List<UserRow> source = List.of(row("100000001", 1), row("100000002", 0));
+        List<UserRow> target = List.of(row("100000001", 6), row("100000003", 0));
+        List<String> found = new ArrayList<>();
+
+        RangeMerge merge = new RangeMerge("", List.of(pages(source, UserRow::nationalId),
+                pages(target, UserRow::nationalId)), pages(List.of(), Function.identity()), PAGE_SIZE, () -> false);
+
+        assertTrue(merge.walk((kind, nationalId) -> found.add(kind + " " + nationalId)));
+        assertEquals(List.of("MISSING_BLOCK 100000001"), found);
+        assertEquals(3, merge.accounts());
+    }
+
+    @Test
+    void rangeStartsAfterItsFirstId() {
+        List<UserRow> users = List.of(row("100000001", 9), row("100000002", 9), row("100000003", 0));
+        List<Mismatch> found = new ArrayList<>();
+
+        RangeMerge merge = new RangeMerge("100000001", List.of(pages(users, UserRow::nationalId)),
+                pages(List.of("100000002"), Function.identity()), PAGE_SIZE, () -> false);
+
+        assertTrue(merge.walk((kind, nationalId) -> found.add(kind)));
+        assertEquals(List.of(), found);
+        assertEquals(2, merge.accounts());
+        assertEquals(1, merge.blocked());
+    }
+
+    @Test
+    void stopsBetweenPages() {
+        List<UserRow> users = List.of(row("100000001", 0), row("100000002", 0), row("100000003", 0),
+                row("100000004", 0), row("100000005", 0));
+        AtomicInteger reads = new AtomicInteger();
+        Function<String, List<UserRow>> shard = pages(users, UserRow::nationalId);
+
+        RangeMerge merge = new RangeMerge("", List.of(after -> {
+            reads.incrementAndGet();
+            return shard.apply(after);
+        }), pages(List.of(), Function.identity()), PAGE_SIZE, () -> reads.get() > 1);
+
+        assertFalse(merge.walk((kind, nationalId) -> { }));
+        assertEquals(2, reads.get());
+    }
+
+    /**
+     * Serves sorted rows a page at a time, like the queries of the job: the rows after an ID, at most a page.
+     */
+    private static <T> Function<String, List<T>> pages(List<T> rows, Function<T, String> key) {
+        TreeMap<String, T> byId = new TreeMap<>();
+        rows.forEach(row -> byId.put(key.apply(row), row));
+        return after -> byId.tailMap(after, false).entrySet().stream()
+                .limit(PAGE_SIZE)
+                .map(Map.Entry::getValue)
+                .toList();
+    }
+
+    private static UserRow row(String nationalId, int failedAttempts) {
+        return new UserRow(nationalId, failedAttempts);
+    }
+}
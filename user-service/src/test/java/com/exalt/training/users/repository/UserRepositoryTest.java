@@ -0,0 +1,134 @@
+package com.exalt.training.users.repository;
+
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.model.User;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the sign-in updates of {@link UserRepository} write only the columns they change, without loading
+ * the user, and that batch locks take their rows in national ID order, by recording the SQL Hibernate sends to the
+ * database.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.exalt.training.users.repository.UserRepositoryTest$RecordingStatementInspector"})
+class UserRepositoryTest {
+    private static final String NATIONAL_ID = "123456789";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    void createUser() {
+        User user = new User();
+        user.setNationalId(NATIONAL_ID);
+        user.setUsername("sqlcheck");
+        user.setEmail("sqlcheck@exalt.com");
+        user.setPassword("encoded-password");
+        user.setPhoneNumber("0599000000");
+        user.setRule(Rule.REGULAR);
+        user.setBalance(100.0);
+        entityManager.persistAndFlush(user);
+        entityManager.clear();
+        RecordingStatementInspector.STATEMENTS.clear();
+    }
+
+    @Test
+    void incrementFailedAttemptsUpdatesTheCounterAndReadsItBack() {
+        assertEquals(1, userRepository.incrementAndGetFailedAttempts(NATIONAL_ID));
+        assertEquals(2, userRepository.incrementAndGetFailedAttempts(NATIONAL_ID));
+
+        String update = "update users u1_0 set failed_attempts=(u1_0.failed_attempts+1) where u1_0.national_id=?";
+        String read = "select u1_0.failed_attempts from users u1_0 where u1_0.national_id=?";
+        assertEquals(List.of(update, read, update, read), RecordingStatementInspector.statements());
+    }
+
+    @Test
+    void incrementFailedAttemptsOfAnUnknownUserReturnsZero() {
+        assertEquals(0, userRepository.incrementAndGetFailedAttempts("999999999"));
+
+        assertEquals(List.of("update users u1_0 set failed_attempts=(u1_0.failed_attempts+1) where u1_0.national_id=?"),
+                RecordingStatementInspector.statements());
+    }
+
+    @Test
+    void resetFailedAttemptsWritesOnlyTheCounter() {
+        assertEquals(1, userRepository.resetFailedAttempts(NATIONAL_ID));
+
+        assertEquals(List.of("update users u1_0 set failed_attempts=0 where u1_0.national_id=?"),
+                RecordingStatementInspector.statements());
+    }
+
+    @Test
+    void resetFailedAttemptsOfAnUnknownUserReturnsZero() {
+        assertEquals(0, userRepository.resetFailedAttempts("999999999"));
+
+        assertEquals(List.of("update users u1_0 set failed_attempts=0 where u1_0.national_id=?"),
+                RecordingStatementInspector.statements());
+    }
+
+    @Test
+    void markSignedInWritesOnlyTheLoginStateAndCounter() {
+        assertEquals(1, userRepository.markSignedIn(NATIONAL_ID));
+
+        assertEquals(List.of("update users u1_0 set is_logged_in=true,failed_attempts=0 where u1_0.national_id=?"),
+                RecordingStatementInspector.statements());
+    }
+
+    @Test
+    void findAllForUpdateLocksTheRowsInNationalIdOrder() {
+        for (String nationalId : List.of("300000000", "200000000")) {
+            User user = new User();
+            user.setNationalId(nationalId);
+            user.setUsername("lock" + nationalId);
+            user.setEmail("lock" + nationalId + "@exalt.com");
+            user.setPassword("encoded-password");
+            user.setPhoneNumber("0599000000");
+            user.setRule(Rule.REGULAR);
+            user.setBalance(100.0);
+            entityManager.persistAndFlush(user);
+        }
+        entityManager.clear();
+        RecordingStatementInspector.STATEMENTS.clear();
+
+        List<User> users = userRepository.findAllForUpdate(List.of("300000000", NATIONAL_ID, "200000000"));
+
+        assertEquals(List.of(NATIONAL_ID, "200000000", "300000000"),
+                users.stream().map(User::getNationalId).toList());
+        String select = RecordingStatementInspector.statements().get(0);
+        assertTrue(select.endsWith(" order by u1_0.national_id for update"), select);
+    }
+
+    /**
+     * Records every statement Hibernate prepares, lower-cased and with runs of whitespace collapsed.
+     */
+    public static class RecordingStatementInspector implements StatementInspector {
+        static final List<String> STATEMENTS = new ArrayList<>();
+
+        @Override
+        public synchronized String inspect(String sql) {
+            STATEMENTS.add(sql.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT));
+            return sql;
+        }
+
+        static synchronized List<String> statements() {
+            return List.copyOf(STATEMENTS);
+        }
+    }
+}
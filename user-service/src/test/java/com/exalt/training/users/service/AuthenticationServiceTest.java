@@ -0,0 +1,140 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.audit.AuditLog;
+import com.exalt.training.users.blockedusers.BlockedUsersClient;
+import com.exalt.training.users.dto.UserDTO;
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.exception.EmailAlreadyUsedException;
+import com.exalt.training.users.exception.UserNotFoundException;
+import com.exalt.training.users.filter.EmailFilter;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.metrics.AuthenticationMetrics;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that signing up claims the email before saving the user and the opening ledger entry together, releasing
+ * the claim if they cannot be saved; and that unblocking tells whether the user exists from the row count of the
+ * failed attempts reset, without loading the user, and only lifts the block of users that exist.
+ */
+class AuthenticationServiceTest {
+    private static final String NATIONAL_ID = "100000001";
+    private static final String EMAIL = "new@exalt.com";
+
+    private ShardedUserRepository userRepository;
+    private BlockedUsersClient blockedUsersClient;
+    private VelocityDetector velocityDetector;
+    private LedgerService ledgerService;
+    private AuthenticationService authenticationService;
+
+    @BeforeEach
+    void createService() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        userRepository = mock(ShardedUserRepository.class);
+        blockedUsersClient = mock(BlockedUsersClient.class);
+        velocityDetector = mock(VelocityDetector.class);
+        ledgerService = mock(LedgerService.class);
+        EmailFilter emailFilter = mock(EmailFilter.class);
+        when(emailFilter.mightBeRegistered(anyString())).thenReturn(false);
+        authenticationService = new AuthenticationService(userRepository, new BCryptPasswordEncoder(4),
+                blockedUsersClient, new AuthenticationMetrics(registry),
+                new ReplicaReadPolicy("users", Duration.ofSeconds(1), registry), ledgerService, AuditLog.disabled(registry), emailFilter, velocityDetector,
+                TransactionOperations.withoutTransaction());
+    }
+
+    @Test
+    void signUpClaimsTheEmailThenSavesTheUserAndOpeningEntry() {
+        when(userRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        User user = authenticationService.signUp(userDTO());
+
+        assertEquals(NATIONAL_ID, user.getNationalId());
+        InOrder order = inOrder(userRepository, ledgerService);
+        order.verify(userRepository).claimEmail(EMAIL, NATIONAL_ID);
+        order.verify(userRepository).save(user);
+        order.verify(ledgerService).record(NATIONAL_ID, Rule.REGULAR, LedgerEntryType.OPENING, 100.0, 100.0);
+        verify(userRepository, never()).releaseEmail(anyString());
+    }
+
+    @Test
+    void signUpWithAClaimedEmailSavesNothing() {
+        doThrow(new DataIntegrityViolationException("duplicate")).when(userRepository).claimEmail(EMAIL, NATIONAL_ID);
+
+        assertThrows(EmailAlreadyUsedException.class, () -> authenticationService.signUp(userDTO()));
+
+        verify(userRepository, never()).save(any());
+        verify(ledgerService, never()).record(anyString(), any(), any(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    void failedSignUpReleasesTheEmail() {
+        when(userRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(ledgerService.record(anyString(), any(), any(), anyDouble(), anyDouble()))
+                .thenThrow(new DataIntegrityViolationException("ledger"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> authenticationService.signUp(userDTO()));
+
+        verify(userRepository).releaseEmail(EMAIL);
+    }
+
+    @Test
+    void unblockResetsTheAttemptsAndLiftsTheBlock() {
+        when(userRepository.resetFailedAttempts(NATIONAL_ID)).thenReturn(true);
+
+        authenticationService.unblockUser(NATIONAL_ID);
+
+        InOrder order = inOrder(userRepository, blockedUsersClient, velocityDetector);
+        order.verify(userRepository).resetFailedAttempts(NATIONAL_ID);
+        order.verify(blockedUsersClient).unblock(NATIONAL_ID);
+        order.verify(velocityDetector).reset(NATIONAL_ID);
+        verify(userRepository, never()).findByNationalId(anyString());
+    }
+
+    @Test
+    void unblockOfAnUnknownUserDoesNotCallBlockedUsers() {
+        when(userRepository.resetFailedAttempts(NATIONAL_ID)).thenReturn(false);
+
+        assertThrows(UserNotFoundException.class, () -> authenticationService.unblockUser(NATIONAL_ID));
+
+        verify(blockedUsersClient, never()).unblock(anyString());
+        verify(velocityDetector, never()).reset(anyString());
+        verify(userRepository, never()).findByNationalId(anyString());
+    }
+
+    @Test
+    void failedUnblockPropagatesSoTheResetRollsBack() {
+        when(userRepository.resetFailedAttempts(NATIONAL_ID)).thenReturn(true);
+        doThrow(new IllegalStateException("Failed to unblock user")).when(blockedUsersClient).unblock(NATIONAL_ID);
+
+        assertThrows(IllegalStateException.class, () -> authenticationService.unblockUser(NATIONAL_ID));
+
+        verify(velocityDetector, never()).reset(anyString());
+    }
+
+    private static UserDTO userDTO() {
+        return new UserDTO(NATIONAL_ID, "newuser", EMAIL, "password1", "0599000000", Rule.REGULAR, 100.0);
+    }
+}
@@ -0,0 +1,105 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.users.exception.IdempotencyKeyReuseException;
+import com.exalt.training.users.metrics.AccountMetrics.Operation;
+import com.exalt.training.users.model.IdempotencyRecord;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.IdempotencyRecordRepository;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a key applies its operation once and replays the outcome afterwards, from the cache while the outcome
+ * is within the retention period and from the table once it is not.
+ */
+class IdempotencyServiceTest {
+    private static final String NATIONAL_ID = "100000001";
+    private static final Duration RETENTION = Duration.ofHours(24);
+
+    private IdempotencyRecordRepository repository;
+    private IdempotencyService idempotencyService;
+    private final AtomicInteger applied = new AtomicInteger();
+
+    @BeforeEach
+    void createService() {
+        repository = mock(IdempotencyRecordRepository.class);
+        when(repository.findById(any())).thenReturn(Optional.empty());
+        idempotencyService = new IdempotencyService(repository, new ShardDirectory(16, 1),
+                TransactionOperations.withoutTransaction(), 100, RETENTION, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void retriesReplayTheFirstOutcomeFromTheCache() {
+        IdempotencyService.Result first = credit("key-1", 10);
+        IdempotencyService.Result retry = credit("key-1", 10);
+
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertEquals(first.newBalance(), retry.newBalance());
+        assertEquals(1, applied.get());
+        verify(repository, times(1)).findById(any());
+    }
+
+    @Test
+    void reusingAKeyForAnotherAmountIsRejected() {
+        credit("key-1", 10);
+
+        assertThrows(IdempotencyKeyReuseException.class, () -> credit("key-1", 20));
+        assertEquals(1, applied.get());
+    }
+
+    @Test
+    void storedOutcomesWithinTheRetentionAreCached() {
+        stored("key-1", Instant.now().minus(RETENTION).plusSeconds(60));
+
+        assertTrue(credit("key-1", 10).replayed());
+        assertTrue(credit("key-1", 10).replayed());
+
+        verify(repository, times(1)).findById(any());
+        assertEquals(0, applied.get());
+    }
+
+    @Test
+    void storedOutcomesPastTheRetentionAreNotCached() {
+        stored("key-1", Instant.now().minus(RETENTION).minusSeconds(60));
+
+        assertTrue(credit("key-1", 10).replayed());
+        assertTrue(credit("key-1", 10).replayed());
+
+        verify(repository, times(2)).findById(any());
+        assertEquals(0, applied.get());
+    }
+
+    private void stored(String idempotencyKey, Instant createdAt) {
+        IdempotencyRecord.Key key = new IdempotencyRecord.Key(NATIONAL_ID, idempotencyKey);
+        when(repository.findById(key)).thenReturn(Optional.of(
+                new IdempotencyRecord(key, Operation.CREDIT.name(), 10, 110, createdAt)));
+    }
+
+    private IdempotencyService.Result credit(String idempotencyKey, double amount) {
+        return idempotencyService.execute(NATIONAL_ID, idempotencyKey, Operation.CREDIT, amount, () -> {
+            User user = new User();
+            user.setNationalId(NATIONAL_ID);
+            user.setBalance(100 + amount * applied.incrementAndGet());
+            return user;
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.model.LedgerDailyRollup;
+import com.exalt.training.users.model.LedgerEntry;
+import com.exalt.training.users.model.LedgerRollupProgress;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.LedgerDailyRollupRepository;
+import com.exalt.training.users.repository.LedgerEntryRepository;
+import com.exalt.training.users.repository.LedgerRollupProgressRepository;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.sharding.ShardDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a statement reads the days up to the rollup watermark from the rollups and folds only the later days
+ * from raw entries, opening at the balance after the last entry before the range.
+ */
+class StatementServiceTest {
+    private static final String NATIONAL_ID = "100000001";
+    private static final LocalDate FROM = LocalDate.of(2026, 3, 1);
+    private static final LocalDate WATERMARK = LocalDate.of(2026, 3, 3);
+    private static final LocalDate TO = LocalDate.of(2026, 3, 5);
+
+    private LedgerEntryRepository entryRepository;
+    private LedgerDailyRollupRepository rollupRepository;
+    private LedgerRollupProgressRepository progressRepository;
+    private StatementService statementService;
+
+    @BeforeEach
+    void createService() {
+        ShardedUserRepository userRepository = mock(ShardedUserRepository.class);
+        User user = new User();
+        user.setNationalId(NATIONAL_ID);
+        user.setLoggedIn(true);
+        when(userRepository.findByNationalId(NATIONAL_ID)).thenReturn(Optional.of(user));
+        entryRepository = mock(LedgerEntryRepository.class);
+        rollupRepository = mock(LedgerDailyRollupRepository.class);
+        progressRepository = mock(LedgerRollupProgressRepository.class);
+        when(progressRepository.findById(LedgerRollupProgress.SINGLETON_ID))
+                .thenReturn(Optional.of(new LedgerRollupProgress(LedgerRollupProgress.SINGLETON_ID, WATERMARK)));
+        when(entryRepository.findFirstByNationalIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(NATIONAL_ID,
+                startOf(FROM))).thenReturn(Optional.of(entry(LedgerEntryType.OPENING, 100, 100, FROM.minusDays(1))));
+        statementService = new StatementService(userRepository, entryRepository, rollupRepository,
+                progressRepository, new ShardDirectory(16, 1), 31);
+    }
+
+    @Test
+    void rolledUpDaysAreStitchedWithTheRawDaysAfterTheWatermark() {
+        when(rollupRepository.findBetween(NATIONAL_ID, FROM, WATERMARK)).thenReturn(List.of(
+                new LedgerDailyRollup(new LedgerDailyRollup.Key(NATIONAL_ID, FROM), 50, 20, 4, 130),
+                new LedgerDailyRollup(new LedgerDailyRollup.Key(NATIONAL_ID, WATERMARK), 0, 30, 1, 100)));
+        when(entryRepository.findBetween(NATIONAL_ID, startOf(WATERMARK.plusDays(1)), startOf(TO.plusDays(1))))
+                .thenReturn(List.of(
+                        entry(LedgerEntryType.CREDIT, 10, 110, WATERMARK.plusDays(1)),
+                        entry(LedgerEntryType.DEBIT, 5, 105, WATERMARK.plusDays(1)),
+                        entry(LedgerEntryType.CREDIT, 15, 120, TO)));
+
+        StatementService.Statement statement = statementService.statement(NATIONAL_ID, FROM, TO);
+
+        assertEquals(new StatementService.Statement(NATIONAL_ID, FROM, TO, 100, 120, 75, 55, List.of(
+                new StatementService.Day(FROM, 50, 20, 4, 130),
+                new StatementService.Day(WATERMARK, 0, 30, 1, 100),
+                new StatementService.Day(WATERMARK.plusDays(1), 10, 5, 2, 105),
+                new StatementService.Day(TO, 15, 0, 1, 120))), statement);
+    }
+
+    @Test
+    void rangesWithinTheWatermarkReadNoRawEntries() {
+        when(rollupRepository.findBetween(NATIONAL_ID, FROM, FROM)).thenReturn(List.of(
+                new LedgerDailyRollup(new LedgerDailyRollup.Key(NATIONAL_ID, FROM), 50, 20, 4, 130)));
+
+        StatementService.Statement statement = statementService.statement(NATIONAL_ID, FROM, FROM);
+
+        assertEquals(130, statement.closingBalance());
+        verify(entryRepository, never()).findBetween(any(), any(), any());
+    }
+
+    @Test
+    void rangesAfterTheWatermarkReadNoRollups() {
+        LocalDate day = WATERMARK.plusDays(1);
+        when(entryRepository.findFirstByNationalIdAndCreatedAtBeforeOrderByCreatedAtDescIdDesc(NATIONAL_ID,
+                startOf(day))).thenReturn(Optional.of(entry(LedgerEntryType.DEBIT, 30, 100, WATERMARK)));
+
+        StatementService.Statement statement = statementService.statement(NATIONAL_ID, day, day);
+
+        assertEquals(new StatementService.Statement(NATIONAL_ID, day, day, 100, 100, 0, 0, List.of()), statement);
+        verify(rollupRepository, never()).findBetween(any(), any(), any());
+    }
+
+    @Test
+    void rangesLongerThanTheLimitAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> statementService.statement(NATIONAL_ID, FROM, FROM.plusDays(31)));
+        assertThrows(IllegalArgumentException.class,
+                () -> statementService.statement(NATIONAL_ID, FROM, FROM.minusDays(1)));
+    }
+
+    private static LedgerEntry entry(LedgerEntryType type, double amount, double balanceAfter, LocalDate day) {
+        return new LedgerEntry(null, NATIONAL_ID, type, amount, balanceAfter, startOf(day).plusSeconds(3600));
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
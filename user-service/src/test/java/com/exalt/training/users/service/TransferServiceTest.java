@@ -0,0 +1,176 @@
+package com.exalt.training.users.service;
+
+import com.exalt.training.common.datasource.ReplicaReadPolicy;
+import com.exalt.training.users.dto.TransferDTO;
+import com.exalt.training.users.enums.LedgerEntryType;
+import com.exalt.training.users.enums.Rule;
+import com.exalt.training.users.exception.ShardUnavailableException;
+import com.exalt.training.users.fraud.VelocityDetector;
+import com.exalt.training.users.model.User;
+import com.exalt.training.users.repository.ShardedUserRepository;
+import com.exalt.training.users.service.TransferService.Outcome;
+import com.exalt.training.users.service.TransferService.Result;
+import com.exalt.training.users.sharding.ShardDirectory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that a batch locks all the accounts of each shard at once, applies its transfers in submission order
+ * against the locked balances, and gives each transfer its own outcome, so rejected transfers, cross-shard transfers
+ * and an unavailable shard do not fail the rest of the batch. The accounts are locked by a mocked repository.
+ */
+class TransferServiceTest {
+    private final ShardDirectory directory = new ShardDirectory(16, 2);
+    private final Map<String, User> accounts = new HashMap<>();
+    private ShardedUserRepository userRepository;
+    private LedgerService ledgerService;
+    private VelocityDetector velocityDetector;
+    private TransferService transferService;
+
+    @BeforeEach
+    void createService() {
+        userRepository = mock(ShardedUserRepository.class);
+        when(userRepository.lockAllForUpdate(anyInt(), any())).thenAnswer(invocation -> {
+            Map<String, User> locked = new HashMap<>();
+            for (String nationalId : invocation.<Collection<String>>getArgument(1)) {
+                if (accounts.containsKey(nationalId)) {
+                    locked.put(nationalId, accounts.get(nationalId));
+                }
+            }
+            return locked;
+        });
+        ledgerService = mock(LedgerService.class);
+        velocityDetector = mock(VelocityDetector.class);
+        when(velocityDetector.tryDebit(any(), anyDouble())).thenReturn(true);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        transferService = new TransferService(userRepository, ledgerService, velocityDetector,
+                new ReplicaReadPolicy("users", Duration.ofSeconds(1), registry), directory,
+                TransactionOperations.withoutTransaction(), 10, registry);
+    }
+
+    @Test
+    void transfersApplyInOrderAgainstTheLockedBalances() {
+        List<String> ids = onShard(0, 3);
+        String a = account(ids.get(0), 100);
+        String b = account(ids.get(1), 0);
+        String c = account(ids.get(2), 0);
+
+        List<Result> results = transferService.transfer(List.of(
+                new TransferDTO(a, b, 80.0),
+                new TransferDTO(b, c, 50.0),
+                new TransferDTO(a, c, 30.0)));
+
+        assertEquals(List.of(
+                new Result(0, Outcome.APPLIED, 20.0, 80.0),
+                new Result(1, Outcome.APPLIED, 30.0, 50.0),
+                new Result(2, Outcome.INSUFFICIENT_BALANCE, null, null)), results);
+        verify(userRepository).lockAllForUpdate(0, Set.of(a, b, c));
+        InOrder order = inOrder(ledgerService);
+        order.verify(ledgerService).record(a, Rule.REGULAR, LedgerEntryType.DEBIT, 80.0, 20.0);
+        order.verify(ledgerService).record(b, Rule.REGULAR, LedgerEntryType.CREDIT, 80.0, 80.0);
+        order.verify(ledgerService).record(b, Rule.REGULAR, LedgerEntryType.DEBIT, 50.0, 30.0);
+        order.verify(ledgerService).record(c, Rule.REGULAR, LedgerEntryType.CREDIT, 50.0, 50.0);
+    }
+
+    @Test
+    void rejectedTransfersDoNotFailTheBatch() {
+        List<String> ids = onShard(0, 4);
+        String a = account(ids.get(0), 100);
+        String b = account(ids.get(1), 0);
+        String signedOut = account(ids.get(2), 100);
+        accounts.get(signedOut).setLoggedIn(false);
+        String unknown = ids.get(3);
+        String cross = onShard(1, 1).get(0);
+        when(velocityDetector.tryDebit(accounts.get(b), 5.0)).thenReturn(false);
+
+        List<Result> results = transferService.transfer(List.of(
+                new TransferDTO(a, a, 10.0),
+                new TransferDTO(a, cross, 10.0),
+                new TransferDTO(a, unknown, 10.0),
+                new TransferDTO(signedOut, a, 10.0),
+                new TransferDTO(a, b, 10.0),
+                new TransferDTO(b, a, 5.0)));
+
+        assertEquals(List.of(Outcome.SAME_ACCOUNT, Outcome.CROSS_SHARD, Outcome.USER_NOT_FOUND,
+                Outcome.NOT_LOGGED_IN, Outcome.APPLIED, Outcome.VELOCITY_LIMIT), outcomes(results));
+        assertEquals(90.0, accounts.get(a).getBalance());
+        verify(userRepository, never()).lockAllForUpdate(eq(1), any());
+    }
+
+    @Test
+    void eachShardAppliesItsTransfersSeparately() {
+        List<String> first = onShard(0, 2);
+        List<String> second = onShard(1, 2);
+        account(first.get(0), 100);
+        account(first.get(1), 0);
+        account(second.get(0), 100);
+        account(second.get(1), 0);
+        when(userRepository.lockAllForUpdate(1, Set.of(second.get(0), second.get(1))))
+                .thenThrow(new ShardUnavailableException("User data was moved, try again"));
+
+        List<Result> results = transferService.transfer(List.of(
+                new TransferDTO(second.get(0), second.get(1), 10.0),
+                new TransferDTO(first.get(0), first.get(1), 10.0)));
+
+        assertEquals(List.of(Outcome.SHARD_UNAVAILABLE, Outcome.APPLIED), outcomes(results));
+        assertEquals(100.0, accounts.get(second.get(0)).getBalance());
+    }
+
+    @Test
+    void batchesLargerThanTheLimitAreRejected() {
+        List<TransferDTO> batch = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            batch.add(new TransferDTO("100000001", "100000002", 1.0));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> transferService.transfer(batch));
+        verify(userRepository, never()).lockAllForUpdate(anyInt(), any());
+    }
+
+    private String account(String nationalId, double balance) {
+        User user = new User();
+        user.setNationalId(nationalId);
+        user.setRule(Rule.REGULAR);
+        user.setBalance(balance);
+        user.setLoggedIn(true);
+        accounts.put(nationalId, user);
+        return nationalId;
+    }
+
+    private List<String> onShard(int shard, int count) {
+        List<String> nationalIds = new ArrayList<>();
+        for (int i = 100_000_000; nationalIds.size() < count; i++) {
+            if (directory.shardOf(String.valueOf(i)) == shard) {
+                nationalIds.add(String.valueOf(i));
+            }
+        }
+        return nationalIds;
+    }
+
+    private static List<Outcome> outcomes(List<Result> results) {
+        return results.stream().map(Result::outcome).toList();
+    }
+}
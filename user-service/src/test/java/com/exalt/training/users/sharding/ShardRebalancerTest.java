@@ -0,0 +1,187 @@
+package com.exalt.training.users.sharding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks that moving buckets copies exactly their users' rows to the target shard, in several batches, hands the
+ * buckets over, and only then deletes the rows from the source; and that a failed copy leaves the source in charge.
+ * The shards are two in-memory H2 databases with a reduced schema; the directory store applies assignments in memory.
+ */
+class ShardRebalancerTest {
+    private static final int BUCKETS = 16;
+    private static final int USERS = 2_000; // Enough for the moved buckets to take several copy batches
+    private static final Set<Integer> MOVED = Set.of(0, 2, 4, 6); // Buckets of shard 0
+
+    private final List<DataSource> shards = new ArrayList<>();
+    private ShardDirectory directory;
+    private ShardRebalancer rebalancer;
+
+    @BeforeEach
+    void createShards() {
+        for (int shard = 0; shard < 2; shard++) {
+            DataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            jdbc.execute("create table users (id int primary key, national_id varchar(10) unique, balance float)");
+            jdbc.execute("create table idempotency_keys (national_id varchar(10), idempotency_key varchar(64))");
+            jdbc.execute("create table ledger_entries (id bigint primary key, national_id varchar(10), amount float)");
+            jdbc.execute("create table ledger_daily_rollups (national_id varchar(10), rollup_day date, net float)");
+            shards.add(dataSource);
+        }
+        directory = new ShardDirectory(BUCKETS, 2);
+        for (int user = 0; user < USERS; user++) {
+            String nationalId = nationalId(user);
+            JdbcTemplate jdbc = new JdbcTemplate(shards.get(directory.shardOf(nationalId)));
+            jdbc.update("insert into users values (?, ?, ?)", user, nationalId, 100.0 + user);
+            jdbc.update("insert into idempotency_keys values (?, ?)", nationalId, "key-" + user);
+            jdbc.update("insert into ledger_entries values (?, ?, ?)", 2L * user, nationalId, 100.0);
+            jdbc.update("insert into ledger_entries values (?, ?, ?)", 2L * user + 1, nationalId, (double) user);
+            jdbc.update("insert into ledger_daily_rollups values (?, current_date, ?)", nationalId, 100.0 + user);
+        }
+
+        ShardDirectoryStore store = mock(ShardDirectoryStore.class);
+        doAnswer(invocation -> {
+            Collection<Integer> buckets = invocation.getArgument(0);
+            int[] owners = directory.owners();
+            boolean[] frozen = directory.frozen();
+            for (int bucket : buckets) {
+                owners[bucket] = invocation.getArgument(1);
+                frozen[bucket] = invocation.getArgument(2);
+            }
+            directory.update(owners, frozen);
+            return null;
+        }).when(store).assign(any(), anyInt(), anyBoolean());
+        ShardingProperties properties = new ShardingProperties();
+        properties.setRefreshInterval(Duration.ofMillis(1));
+        rebalancer = new ShardRebalancer(directory, store, new ShardDataSources(shards), properties,
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void dropShards() {
+        for (DataSource shard : shards) {
+            new JdbcTemplate(shard).execute("shutdown");
+        }
+    }
+
+    @Test
+    void moveCopiesTheBucketsUsersThenDeletesThemFromTheSource() throws InterruptedException {
+        List<String> moving = new ArrayList<>();
+        for (int user = 0; user < USERS; user++) {
+            if (MOVED.contains(directory.bucketOf(nationalId(user)))) {
+                moving.add(nationalId(user));
+            }
+        }
+        assertTrue(moving.size() > 500, "the moved users span several batches");
+        Map<String, Long> before = counts(0);
+
+        Map<String, Object> result = rebalancer.moveBuckets(MOVED, 1);
+
+        assertEquals(Map.of("buckets", MOVED.size(), "users", moving.size()), result);
+        for (int bucket : MOVED) {
+            assertEquals(1, directory.ownerOf(bucket));
+            assertFalse(directory.isFrozen(bucket));
+        }
+        Map<String, Long> after = counts(0);
+        assertEquals(before.get("users") - moving.size(), after.get("users"));
+        assertEquals(before.get("ledger_entries") - 2L * moving.size(), after.get("ledger_entries"));
+        JdbcTemplate target = new JdbcTemplate(shards.get(1));
+        for (String nationalId : moving) {
+            assertEquals(1, target.queryForObject("select count(*) from users where national_id = ?", Integer.class,
+                    nationalId));
+            assertEquals(2, target.queryForObject("select count(*) from ledger_entries where national_id = ?",
+                    Integer.class, nationalId));
+            assertEquals(1, target.queryForObject("select count(*) from idempotency_keys where national_id = ?",
+                    Integer.class, nationalId));
+            assertEquals(1, target.queryForObject("select count(*) from ledger_daily_rollups where national_id = ?",
+                    Integer.class, nationalId));
+        }
+        String first = moving.get(0);
+        assertEquals(100.0 + Integer.parseInt(first.substring(1)),
+                target.queryForObject("select balance from users where national_id = ?", Double.class, first));
+    }
+
+    @Test
+    void leftoverCopiesOnTheTargetAreReplaced() throws InterruptedException {
+        String nationalId = firstUserIn(MOVED);
+        JdbcTemplate target = new JdbcTemplate(shards.get(1));
+        target.update("insert into users values (?, ?, ?)", -1, nationalId, -1.0);
+        target.update("insert into ledger_entries values (?, ?, ?)", -1L, nationalId, -1.0);
+
+        rebalancer.moveBuckets(MOVED, 1);
+
+        assertEquals(List.of(100.0 + Integer.parseInt(nationalId.substring(1))),
+                target.queryForList("select balance from users where national_id = ?", Double.class, nationalId));
+        assertEquals(2, target.queryForObject("select count(*) from ledger_entries where national_id = ?",
+                Integer.class, nationalId));
+    }
+
+    @Test
+    void failedCopyKeepsTheBucketsOnTheSource() {
+        new JdbcTemplate(shards.get(1)).execute("drop table ledger_daily_rollups");
+        Map<String, Long> before = counts(0);
+
+        assertThrows(RuntimeException.class, () -> rebalancer.moveBuckets(MOVED, 1));
+
+        for (int bucket : MOVED) {
+            assertEquals(0, directory.ownerOf(bucket));
+            assertFalse(directory.isFrozen(bucket));
+        }
+        assertEquals(before, counts(0));
+    }
+
+    @Test
+    void bucketsAlreadyOnTheTargetAreSkipped() throws InterruptedException {
+        int[] owners = directory.owners();
+
+        assertEquals(Map.of("buckets", 0, "users", 0), rebalancer.moveBuckets(MOVED, 0));
+
+        assertArrayEquals(owners, directory.owners());
+    }
+
+    private Map<String, Long> counts(int shard) {
+        JdbcTemplate jdbc = new JdbcTemplate(shards.get(shard));
+        return Map.of(
+                "users", jdbc.queryForObject("select count(*) from users", Long.class),
+                "idempotency_keys", jdbc.queryForObject("select count(*) from idempotency_keys", Long.class),
+                "ledger_entries", jdbc.queryForObject("select count(*) from ledger_entries", Long.class),
+                "ledger_daily_rollups", jdbc.queryForObject("select count(*) from ledger_daily_rollups", Long.class));
+    }
+
+    private String firstUserIn(Set<Integer> buckets) {
+        for (int user = 0; ; user++) {
+            if (buckets.contains(directory.bucketOf(nationalId(user)))) {
+                return nationalId(user);
+            }
+        }
+    }
+
+    private static String nationalId(int user) {
+        return String.valueOf(100_000_000 + user);
+    }
+}
@@ -0,0 +1,135 @@
+package com.exalt.training.users.sharding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that work is routed to the shard of the innermost {@link ShardContext} scope, or to the directory shard
+ * without one; that a transaction stays on the shard of its first statement and refuses to use another; and that
+ * the directory holds off writes to frozen buckets and rejects bucket maps naming unknown shards. The shards are
+ * two in-memory H2 databases behind the same lazy proxy and routing data source as in the application.
+ */
+class ShardRoutingTest {
+    private final List<DataSource> shards = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void createShards() {
+        for (int shard = 0; shard < 2; shard++) {
+            DataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            jdbc.execute("create table shard_name (name varchar(16))");
+            jdbc.update("insert into shard_name values (?)", "shard" + shard);
+            shards.add(dataSource);
+        }
+        ShardRoutingDataSource shardRouting = new ShardRoutingDataSource(shards);
+        shardRouting.afterPropertiesSet();
+        DataSource routing = new LazyConnectionDataSourceProxy(shardRouting);
+        jdbcTemplate = new JdbcTemplate(routing);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(routing));
+    }
+
+    @AfterEach
+    void dropShards() {
+        for (DataSource shard : shards) {
+            new JdbcTemplate(shard).execute("shutdown");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    void workGoesToTheShardOfTheInnermostScope() {
+        assertEquals("shard0", shardName());
+        try (ShardContext.Scope outer = ShardContext.use(1)) {
+            assertEquals("shard1", shardName());
+            try (ShardContext.Scope inner = ShardContext.use(0)) {
+                assertEquals("shard0", shardName());
+            }
+            assertEquals("shard1", shardName());
+        }
+        assertEquals("shard0", shardName());
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    void transactionStaysOnTheShardOfItsFirstStatement() {
+        String name = transactionTemplate.execute(status -> {
+            assertNull(ShardContext.transactionShard());
+            try (ShardContext.Scope scope = ShardContext.use(1)) {
+                assertEquals(1, ShardContext.transactionShard());
+                jdbcTemplate.update("insert into shard_name values ('written')");
+            }
+            try (ShardContext.Scope scope = ShardContext.use(1)) {
+                return shardName();
+            }
+        });
+
+        assertEquals("shard1", name);
+        assertEquals(2, new JdbcTemplate(shards.get(1)).queryForObject("select count(*) from shard_name",
+                Integer.class));
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    void transactionCannotSpanShards() {
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            try (ShardContext.Scope scope = ShardContext.use(1)) {
+                jdbcTemplate.update("insert into shard_name values ('rolled back')");
+            }
+            try (ShardContext.Scope scope = ShardContext.use(0)) {
+                shardName();
+            }
+        }));
+
+        assertEquals(1, new JdbcTemplate(shards.get(1)).queryForObject("select count(*) from shard_name",
+                Integer.class));
+        String name = transactionTemplate.execute(status -> {
+            try (ShardContext.Scope scope = ShardContext.use(0)) {
+                return shardName();
+            }
+        });
+        assertEquals("shard0", name);
+    }
+
+    @Test
+    void frozenBucketsHoldOffWrites() {
+        ShardDirectory directory = new ShardDirectory(4, 2);
+        assertArrayEquals(new int[]{0, 1, 0, 1}, directory.owners());
+
+        directory.update(new int[]{0, 1, 1, 1}, new boolean[]{false, false, true, false});
+
+        assertEquals(1, directory.ownerOf(2));
+        assertFalse(directory.tryBeginWrite(2));
+        assertEquals(0, directory.writesInFlight(2));
+        assertTrue(directory.tryBeginWrite(3));
+        assertEquals(1, directory.writesInFlight(3));
+        directory.endWrite(3);
+        assertEquals(0, directory.writesInFlight(3));
+        assertThrows(IllegalArgumentException.class,
+                () -> directory.update(new int[]{0, 1, 2, 1}, new boolean[4]));
+    }
+
+    private String shardName() {
+        return jdbcTemplate.queryForObject("select name from shard_name fetch first 1 rows only", String.class);
+    }
+}